@@ -3,6 +3,14 @@ grammar LittleCalc
 import LittleCalcLexerRules
     ;
 
+@lexer::members {
+    // identifiers are interned as they're lexed
+    @Override
+    public void emit(Token token) {
+        super.emit(token.getType() == ID ? new SymbolToken(token) : token);
+    }
+}
+
 replIn: stmts EOF # replStmts | antlrUtil EOF # AntlrUtilStmt;
 
 calcIn: stmts EOF;
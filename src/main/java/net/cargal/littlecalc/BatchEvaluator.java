@@ -0,0 +1,262 @@
+package net.cargal.littlecalc;
+
+import java.util.Arrays;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+
+import net.cargal.littlecalc.LittleCalcParser.AddSubExprContext;
+import net.cargal.littlecalc.LittleCalcParser.AndExprContext;
+import net.cargal.littlecalc.LittleCalcParser.CompareExprContext;
+import net.cargal.littlecalc.LittleCalcParser.EqualityExprContext;
+import net.cargal.littlecalc.LittleCalcParser.ExpExprContext;
+import net.cargal.littlecalc.LittleCalcParser.ExprContext;
+import net.cargal.littlecalc.LittleCalcParser.FalseExprContext;
+import net.cargal.littlecalc.LittleCalcParser.IDExprContext;
+import net.cargal.littlecalc.LittleCalcParser.MulDivExprContext;
+import net.cargal.littlecalc.LittleCalcParser.NegationExprContext;
+import net.cargal.littlecalc.LittleCalcParser.NumberExprContext;
+import net.cargal.littlecalc.LittleCalcParser.OrExprContext;
+import net.cargal.littlecalc.LittleCalcParser.ParenExprContext;
+import net.cargal.littlecalc.LittleCalcParser.TernaryExprContext;
+import net.cargal.littlecalc.LittleCalcParser.TrueExprContext;
+import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
+
+/**
+ * Evaluates a (validated) expression for every row of some Columns, a column
+ * at a time: each operator is applied to a block of rows at once (by the
+ * Vector API's BatchKernels, if it's available, or plain loops if it isn't),
+ * and the results are the same bits the tree interpreter would give for each
+ * row (but for the payloads of NaNs, which Java leaves to the hardware).
+ *
+ * Both sides of && and || (and both branches of a ternary) are evaluated for
+ * every row (which is safe, since with every variable bound to a column of the
+ * right type nothing can fail). Strings can't be in columns, so they aren't
+ * supported.
+ *
+ * Evaluators are immutable (each evaluation has its own blocks), so threads
+ * can share them.
+ */
+public class BatchEvaluator {
+    // (a multiple of any vector's length)
+    static final int BLOCK = 2048;
+
+    private final ExprContext expr;
+    private final BatchKernels kernels;
+
+    public BatchEvaluator(ExprContext expr) {
+        this(expr, BatchKernels.BEST);
+    }
+
+    BatchEvaluator(ExprContext expr, BatchKernels kernels) {
+        this.expr = expr;
+        this.kernels = kernels;
+    }
+
+    /** whether the kernels use the Vector API */
+    public boolean isVectorized() {
+        return !(kernels instanceof ScalarKernels);
+    }
+
+    /** whether the expression's value is a number (for these columns), rather than a boolean */
+    public boolean isNumber(Columns columns) {
+        return new Compiler(columns).isNumber(expr);
+    }
+
+    public double[] numbers(Columns columns) {
+        var block = new Compiler(columns).number(expr);
+        var result = new double[columns.rows()];
+        var out = new double[BLOCK];
+        for (int from = 0; from < result.length; from += BLOCK) {
+            var n = Math.min(BLOCK, result.length - from);
+            block.eval(from, n, out);
+            System.arraycopy(out, 0, result, from, n);
+        }
+        return result;
+    }
+
+    public boolean[] booleans(Columns columns) {
+        var block = new Compiler(columns).bool(expr);
+        var result = new boolean[columns.rows()];
+        var out = new boolean[BLOCK];
+        for (int from = 0; from < result.length; from += BLOCK) {
+            var n = Math.min(BLOCK, result.length - from);
+            block.eval(from, n, out);
+            System.arraycopy(out, 0, result, from, n);
+        }
+        return result;
+    }
+
+    // evaluates n rows (from row from) into the first n elements of out
+    @FunctionalInterface
+    private interface NumberBlock {
+        void eval(int from, int n, double[] out);
+    }
+
+    @FunctionalInterface
+    private interface BoolBlock {
+        void eval(int from, int n, boolean[] out);
+    }
+
+    // compiles the expression for the types of some columns (every operand gets its own block)
+    private final class Compiler {
+        private final Columns columns;
+
+        Compiler(Columns columns) {
+            this.columns = columns;
+        }
+
+        NumberBlock number(ExprContext ctx) {
+            if (ctx instanceof ParenExprContext paren) {
+                return number(paren.expr());
+            } else if (ctx instanceof NumberExprContext literal) {
+                var value = Double.parseDouble(literal.NUMBER().getText().replace("_", ""));
+                return (from, n, out) -> Arrays.fill(out, 0, n, value);
+            } else if (ctx instanceof IDExprContext id) {
+                var column = columns.numbers(Symbol.of(id.ID().getSymbol()));
+                if (column == null) {
+                    throw error(id.getText() + " has no column of numbers", ctx);
+                }
+                return (from, n, out) -> System.arraycopy(column, from, out, 0, n);
+            } else if (ctx instanceof ExpExprContext exp) {
+                return numbers(exp.base, exp.exp, kernels::pow);
+            } else if (ctx instanceof MulDivExprContext mulDiv) {
+                return numbers(mulDiv.lhs, mulDiv.rhs,
+                        mulDiv.op.getType() == LittleCalcLexer.MUL ? kernels::mul : kernels::div);
+            } else if (ctx instanceof AddSubExprContext addSub) {
+                return numbers(addSub.lhs, addSub.rhs,
+                        addSub.op.getType() == LittleCalcLexer.ADD ? kernels::add : kernels::sub);
+            } else if (ctx instanceof TernaryExprContext ternary) {
+                var cond = bool(ternary.cond);
+                var tv = number(ternary.tv);
+                var fv = number(ternary.fv);
+                var c = new boolean[BLOCK];
+                var t = new double[BLOCK];
+                var f = new double[BLOCK];
+                return (from, n, out) -> {
+                    cond.eval(from, n, c);
+                    tv.eval(from, n, t);
+                    fv.eval(from, n, f);
+                    kernels.blend(c, t, f, out, n);
+                };
+            }
+            throw error(ctx.getText() + " is not numeric", ctx);
+        }
+
+        BoolBlock bool(ExprContext ctx) {
+            if (ctx instanceof ParenExprContext paren) {
+                return bool(paren.expr());
+            } else if (ctx instanceof TrueExprContext || ctx instanceof FalseExprContext) {
+                var value = ctx instanceof TrueExprContext;
+                return (from, n, out) -> Arrays.fill(out, 0, n, value);
+            } else if (ctx instanceof IDExprContext id) {
+                var column = columns.booleans(Symbol.of(id.ID().getSymbol()));
+                if (column == null) {
+                    throw error(id.getText() + " has no column of booleans", ctx);
+                }
+                return (from, n, out) -> System.arraycopy(column, from, out, 0, n);
+            } else if (ctx instanceof NegationExprContext negation) {
+                var operand = bool(negation.expr());
+                var a = new boolean[BLOCK];
+                return (from, n, out) -> {
+                    operand.eval(from, n, a);
+                    kernels.not(a, out, n);
+                };
+            } else if (ctx instanceof AndExprContext and) {
+                return bools(and.lhs, and.rhs, kernels::and);
+            } else if (ctx instanceof OrExprContext or) {
+                return bools(or.lhs, or.rhs, kernels::or);
+            } else if (ctx instanceof CompareExprContext compare) {
+                var op = LVComparableOp.fromToken(compare.op);
+                return compared(compare.lhs, compare.rhs, (a, b, out, n) -> kernels.compare(op, a, b, out, n));
+            } else if (ctx instanceof EqualityExprContext equality) {
+                var negated = equality.op.getType() == LittleCalcLexer.NE;
+                if (isNumber(equality.lhs)) {
+                    return compared(equality.lhs, equality.rhs,
+                            (a, b, out, n) -> kernels.equal(a, b, negated, out, n));
+                }
+                return bools(equality.lhs, equality.rhs, (a, b, out, n) -> kernels.equal(a, b, negated, out, n));
+            } else if (ctx instanceof TernaryExprContext ternary) {
+                var cond = bool(ternary.cond);
+                var tv = bool(ternary.tv);
+                var fv = bool(ternary.fv);
+                var c = new boolean[BLOCK];
+                var t = new boolean[BLOCK];
+                var f = new boolean[BLOCK];
+                return (from, n, out) -> {
+                    cond.eval(from, n, c);
+                    tv.eval(from, n, t);
+                    fv.eval(from, n, f);
+                    kernels.blend(c, t, f, out, n);
+                };
+            }
+            throw error(ctx.getText() + " is not boolean", ctx);
+        }
+
+        boolean isNumber(ExprContext ctx) {
+            if (ctx instanceof ParenExprContext paren) {
+                return isNumber(paren.expr());
+            } else if (ctx instanceof TernaryExprContext ternary) {
+                return isNumber(ternary.tv);
+            } else if (ctx instanceof IDExprContext id) {
+                return columns.numbers(Symbol.of(id.ID().getSymbol())) != null;
+            }
+            return ExprTypes.isNumber(ctx);
+        }
+
+        private NumberBlock numbers(ExprContext lhs, ExprContext rhs, NumberKernel kernel) {
+            var l = number(lhs);
+            var r = number(rhs);
+            var a = new double[BLOCK];
+            var b = new double[BLOCK];
+            return (from, n, out) -> {
+                l.eval(from, n, a);
+                r.eval(from, n, b);
+                kernel.apply(a, b, out, n);
+            };
+        }
+
+        private BoolBlock compared(ExprContext lhs, ExprContext rhs, CompareKernel kernel) {
+            var l = number(lhs);
+            var r = number(rhs);
+            var a = new double[BLOCK];
+            var b = new double[BLOCK];
+            return (from, n, out) -> {
+                l.eval(from, n, a);
+                r.eval(from, n, b);
+                kernel.apply(a, b, out, n);
+            };
+        }
+
+        private BoolBlock bools(ExprContext lhs, ExprContext rhs, BoolKernel kernel) {
+            var l = bool(lhs);
+            var r = bool(rhs);
+            var a = new boolean[BLOCK];
+            var b = new boolean[BLOCK];
+            return (from, n, out) -> {
+                l.eval(from, n, a);
+                r.eval(from, n, b);
+                kernel.apply(a, b, out, n);
+            };
+        }
+
+        private LittleCalcRuntimeException error(String message, ParserRuleContext ctx) {
+            return new LittleCalcRuntimeException(message, ctx.getStart().getLine(),
+                    ctx.getStart().getCharPositionInLine());
+        }
+    }
+
+    @FunctionalInterface
+    private interface NumberKernel {
+        void apply(double[] a, double[] b, double[] out, int n);
+    }
+
+    @FunctionalInterface
+    private interface CompareKernel {
+        void apply(double[] a, double[] b, boolean[] out, int n);
+    }
+
+    @FunctionalInterface
+    private interface BoolKernel {
+        void apply(boolean[] a, boolean[] b, boolean[] out, int n);
+    }
+}
@@ -0,0 +1,51 @@
+package net.cargal.littlecalc;
+
+/**
+ * The operators of BatchEvaluator, applied to the first n elements of blocks
+ * (every array is BatchEvaluator.BLOCK long, so an implementation can work a
+ * whole vector at a time, past n, without bounds checks for the tail).
+ *
+ * Numbers compare (and are equal) the way Double.compare() says, as they do
+ * everywhere else.
+ */
+interface BatchKernels {
+
+    // the Vector API kernels, if jdk.incubator.vector is available (java --add-modules jdk.incubator.vector)
+    BatchKernels BEST = best();
+
+    void add(double[] a, double[] b, double[] out, int n);
+
+    void sub(double[] a, double[] b, double[] out, int n);
+
+    void mul(double[] a, double[] b, double[] out, int n);
+
+    void div(double[] a, double[] b, double[] out, int n);
+
+    void pow(double[] a, double[] b, double[] out, int n);
+
+    void compare(LVComparableOp op, double[] a, double[] b, boolean[] out, int n);
+
+    void equal(double[] a, double[] b, boolean negated, boolean[] out, int n);
+
+    void equal(boolean[] a, boolean[] b, boolean negated, boolean[] out, int n);
+
+    void and(boolean[] a, boolean[] b, boolean[] out, int n);
+
+    void or(boolean[] a, boolean[] b, boolean[] out, int n);
+
+    void not(boolean[] a, boolean[] out, int n);
+
+    void blend(boolean[] cond, double[] t, double[] f, double[] out, int n);
+
+    void blend(boolean[] cond, boolean[] t, boolean[] f, boolean[] out, int n);
+
+    private static BatchKernels best() {
+        try {
+            // (by name, so nothing links against the Vector API unless it's there)
+            return (BatchKernels) Class.forName("net.cargal.littlecalc.VectorKernels").getDeclaredConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarKernels();
+        }
+    }
+}
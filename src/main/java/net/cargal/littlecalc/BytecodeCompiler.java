@@ -0,0 +1,415 @@
+package net.cargal.littlecalc;
+
+import static net.cargal.littlecalc.ClassFileWriter.ACC_FINAL;
+import static net.cargal.littlecalc.ClassFileWriter.ACC_PRIVATE;
+import static net.cargal.littlecalc.ClassFileWriter.ACC_PUBLIC;
+import static net.cargal.littlecalc.ClassFileWriter.Code.AALOAD;
+import static net.cargal.littlecalc.ClassFileWriter.Code.ARETURN;
+import static net.cargal.littlecalc.ClassFileWriter.Code.DADD;
+import static net.cargal.littlecalc.ClassFileWriter.Code.DDIV;
+import static net.cargal.littlecalc.ClassFileWriter.Code.DMUL;
+import static net.cargal.littlecalc.ClassFileWriter.Code.DSUB;
+import static net.cargal.littlecalc.ClassFileWriter.Code.GETFIELD;
+import static net.cargal.littlecalc.ClassFileWriter.Code.GETSTATIC;
+import static net.cargal.littlecalc.ClassFileWriter.Code.GOTO;
+import static net.cargal.littlecalc.ClassFileWriter.Code.ICONST_0;
+import static net.cargal.littlecalc.ClassFileWriter.Code.ICONST_1;
+import static net.cargal.littlecalc.ClassFileWriter.Code.IFEQ;
+import static net.cargal.littlecalc.ClassFileWriter.Code.IFGE;
+import static net.cargal.littlecalc.ClassFileWriter.Code.IFGT;
+import static net.cargal.littlecalc.ClassFileWriter.Code.IFLE;
+import static net.cargal.littlecalc.ClassFileWriter.Code.IFLT;
+import static net.cargal.littlecalc.ClassFileWriter.Code.IFNE;
+import static net.cargal.littlecalc.ClassFileWriter.Code.IF_ICMPEQ;
+import static net.cargal.littlecalc.ClassFileWriter.Code.IF_ICMPNE;
+import static net.cargal.littlecalc.ClassFileWriter.Code.INVOKESPECIAL;
+import static net.cargal.littlecalc.ClassFileWriter.Code.INVOKESTATIC;
+import static net.cargal.littlecalc.ClassFileWriter.Code.INVOKEVIRTUAL;
+import static net.cargal.littlecalc.ClassFileWriter.Code.IXOR;
+import static net.cargal.littlecalc.ClassFileWriter.Code.PUTFIELD;
+import static net.cargal.littlecalc.ClassFileWriter.Code.RETURN;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.antlr.v4.runtime.tree.ParseTreeProperty;
+
+import net.cargal.littlecalc.ClassFileWriter.Code;
+import net.cargal.littlecalc.ClassFileWriter.Label;
+import net.cargal.littlecalc.LittleCalcParser.AddSubExprContext;
+import net.cargal.littlecalc.LittleCalcParser.AndExprContext;
+import net.cargal.littlecalc.LittleCalcParser.CompareExprContext;
+import net.cargal.littlecalc.LittleCalcParser.EqualityExprContext;
+import net.cargal.littlecalc.LittleCalcParser.ExpExprContext;
+import net.cargal.littlecalc.LittleCalcParser.ExprContext;
+import net.cargal.littlecalc.LittleCalcParser.FalseExprContext;
+import net.cargal.littlecalc.LittleCalcParser.IDExprContext;
+import net.cargal.littlecalc.LittleCalcParser.MulDivExprContext;
+import net.cargal.littlecalc.LittleCalcParser.NegationExprContext;
+import net.cargal.littlecalc.LittleCalcParser.NumberExprContext;
+import net.cargal.littlecalc.LittleCalcParser.OrExprContext;
+import net.cargal.littlecalc.LittleCalcParser.ParenExprContext;
+import net.cargal.littlecalc.LittleCalcParser.StringExprContext;
+import net.cargal.littlecalc.LittleCalcParser.TernaryExprContext;
+import net.cargal.littlecalc.LittleCalcParser.TrueExprContext;
+import net.cargal.littlecalc.exceptions.LittleCalcImplementationException;
+import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
+
+/**
+ * Compiles an expression into a hidden class implementing CompiledExpr, so the
+ * JIT sees straight-line code: arithmetic (and comparisons of numbers) is done
+ * on doubles, and logical operators on ints, with a LittleValue only created
+ * where the expression needs one (its result, the operands of operators that
+ * could be given any type, and the branches of a ternary).
+ *
+ * Evaluation is the same as LittleCalcExprVisitor's (values and errors).
+ * Expressions with values in constants (see LittleCalcOptimizer) are compiled
+ * to those values. Constant values (literal or folded) and symbols are passed
+ * to the generated class's constructor and kept in final fields.
+ *
+ * Generated classes aren't strongly tied to their class loader, so they're
+ * unloaded once their CompiledExpr is no longer referenced. An expression too
+ * large for a class file (too much code, or too many constants), or whose
+ * class the JVM won't load (a ClassFormatError or VerifyError), is compiled by
+ * ExprCompiler instead.
+ */
+public class BytecodeCompiler {
+    private static final String CLASS_NAME = "net/cargal/littlecalc/GeneratedExpr";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String DOUBLE = "java/lang/Double";
+    private static final String COMPILED_EXPR = "net/cargal/littlecalc/CompiledExpr";
+    private static final String LITTLE_VALUE = "net/cargal/littlecalc/LittleValue";
+    private static final String LITTLE_VALUE_DESC = "L" + LITTLE_VALUE + ";";
+    private static final String SYMBOL_DESC = "Lnet/cargal/littlecalc/Symbol;";
+    private static final String SLOTS_DESC = "Lnet/cargal/littlecalc/Slots;";
+    private static final String SYMBOL_TABLE_DESC = "Lnet/cargal/littlecalc/SymbolTable;";
+    private static final String COMPILER = "net/cargal/littlecalc/BytecodeCompiler";
+    private static final int THIS = 0;
+    private static final int VARIABLES = 1;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final ParseTreeProperty<LittleValue> constants;
+    private final Slots slots;
+    private final ExprCompiler fallback;
+
+    public BytecodeCompiler() {
+        this(new ParseTreeProperty<>());
+    }
+
+    public BytecodeCompiler(ParseTreeProperty<LittleValue> constants) {
+        this(constants, new Slots());
+    }
+
+    /** a compiler that resolves variables to their slots (for tables that share slots) */
+    public BytecodeCompiler(ParseTreeProperty<LittleValue> constants, Slots slots) {
+        this.constants = constants;
+        this.slots = slots;
+        fallback = new ExprCompiler(constants, slots);
+    }
+
+    public CompiledExpr compile(ExprContext ctx) {
+        var generator = new Generator(constants, slots);
+        var eval = generator.writer.method(ACC_PUBLIC, "eval", "(" + SYMBOL_TABLE_DESC + ")" + LITTLE_VALUE_DESC, 2);
+        generator.value(eval, ctx);
+        eval.op(ARETURN, -1);
+        if (generator.writer.isTooLarge()) {
+            return fallback.compile(ctx);
+        }
+        try {
+            return generator.define();
+        } catch (LinkageError e) {
+            // (a limit this compiler doesn't check, e.g. the operand stack's depth)
+            return fallback.compile(ctx);
+        }
+    }
+
+    /** looks up a variable, resolved to a slot (for generated code) */
+    static LittleValue variable(SymbolTable<LittleValue> variables, Symbol id, Slots slots, int slot, int line,
+            int column) {
+        var value = variables.find(id, slots, slot);
+        if (value == null) {
+            throw new LittleCalcRuntimeException(id + " has not been assigned a value", line, column);
+        }
+        return value;
+    }
+
+    /** value.doubleValue(), with the position of the operand (for generated code) */
+    static double number(LittleValue value, int line, int column) {
+        try {
+            return value.doubleValue();
+        } catch (LittleCalcRuntimeException e) {
+            throw e.at(line, column);
+        }
+    }
+
+    /** value.bool(), with the position of the operand (for generated code) */
+    static boolean bool(LittleValue value, int line, int column) {
+        try {
+            return value.bool();
+        } catch (LittleCalcRuntimeException e) {
+            throw e.at(line, column);
+        }
+    }
+
+    /** lhs.evalCompare(), with the position of lhs (for generated code) */
+    static boolean compare(LittleValue lhs, LVComparableOp op, LittleValue rhs, int line, int column) {
+        try {
+            return lhs.evalCompare(op, rhs);
+        } catch (LittleCalcRuntimeException e) {
+            throw e.at(line, column);
+        }
+    }
+
+    private static class Generator {
+        private final ParseTreeProperty<LittleValue> constants;
+        private final Slots slots;
+        // the field with slots (once a variable needs it)
+        private int slotsField = -1;
+        private final ClassFileWriter writer = new ClassFileWriter(CLASS_NAME, OBJECT, COMPILED_EXPR);
+        private final List<Object> fieldValues = new ArrayList<>();
+        private final List<String> fieldDescriptors = new ArrayList<>();
+        private final ExprCompiler literals = new ExprCompiler();
+
+        private Generator(ParseTreeProperty<LittleValue> constants, Slots slots) {
+            this.constants = constants;
+            this.slots = slots;
+        }
+
+        private CompiledExpr define() {
+            var init = writer.method(ACC_PUBLIC, "<init>", "([Ljava/lang/Object;)V", 2);
+            init.aload(THIS);
+            init.invoke(INVOKESPECIAL, OBJECT, "<init>", "()V");
+            for (int i = 0; i < fieldValues.size(); i++) {
+                var descriptor = fieldDescriptors.get(i);
+                init.aload(THIS);
+                init.aload(1);
+                init.pushInt(i);
+                init.op(AALOAD, -1);
+                init.checkcast(descriptor.substring(1, descriptor.length() - 1));
+                init.field(PUTFIELD, CLASS_NAME, "c" + i, descriptor);
+            }
+            init.op(RETURN, 0);
+            try {
+                var generated = LOOKUP.defineHiddenClass(writer.toByteArray(), true).lookupClass();
+                return (CompiledExpr) generated.getConstructor(Object[].class)
+                        .newInstance((Object) fieldValues.toArray());
+            } catch (ReflectiveOperationException e) {
+                throw new LittleCalcImplementationException("could not load generated class: " + e);
+            }
+        }
+
+        // pushes a constant (from the generated class's fields)
+        private void constant(Code code, Object value, String descriptor) {
+            var index = fieldValues.size();
+            fieldValues.add(value);
+            fieldDescriptors.add(descriptor);
+            writer.field(ACC_PRIVATE | ACC_FINAL, "c" + index, descriptor);
+            code.aload(THIS);
+            code.field(GETFIELD, CLASS_NAME, "c" + index, descriptor);
+        }
+
+        // pushes the expression's LittleValue
+        private void value(Code code, ExprContext ctx) {
+            var folded = constants.get(ctx);
+            if (folded != null) {
+                constant(code, folded, LITTLE_VALUE_DESC);
+            } else if (ctx instanceof ParenExprContext paren) {
+                value(code, paren.expr());
+            } else if (ctx instanceof NumberExprContext || ctx instanceof TrueExprContext
+                    || ctx instanceof FalseExprContext || ctx instanceof StringExprContext) {
+                // (a compiled literal is a constant, which doesn't look at the variables)
+                constant(code, literals.compile(ctx).eval(null), LITTLE_VALUE_DESC);
+            } else if (ctx instanceof IDExprContext id) {
+                code.aload(VARIABLES);
+                var symbol = Symbol.of(id.ID().getSymbol());
+                constant(code, symbol, SYMBOL_DESC);
+                if (slotsField < 0) {
+                    slotsField = fieldValues.size();
+                    constant(code, slots, SLOTS_DESC);
+                } else {
+                    code.aload(THIS);
+                    code.field(GETFIELD, CLASS_NAME, "c" + slotsField, SLOTS_DESC);
+                }
+                code.pushInt(slots.slot(symbol));
+                position(code, ctx);
+                code.invoke(INVOKESTATIC, COMPILER, "variable",
+                        "(" + SYMBOL_TABLE_DESC + SYMBOL_DESC + SLOTS_DESC + "III)" + LITTLE_VALUE_DESC);
+            } else if (ctx instanceof TernaryExprContext ternary) {
+                var otherwise = new Label();
+                var end = new Label();
+                bool(code, ternary.cond);
+                code.branch(IFEQ, otherwise);
+                value(code, ternary.tv);
+                code.branch(GOTO, end);
+                code.mark(otherwise);
+                value(code, ternary.fv);
+                code.mark(end);
+            } else if (ExprTypes.isNumber(ctx)) {
+                number(code, ctx);
+                code.invoke(INVOKESTATIC, LITTLE_VALUE, "numberValue", "(D)" + LITTLE_VALUE_DESC);
+            } else {
+                bool(code, ctx);
+                code.invoke(INVOKESTATIC, LITTLE_VALUE, "booleanValue", "(Z)" + LITTLE_VALUE_DESC);
+            }
+        }
+
+        // pushes the expression's number (as a double)
+        private void number(Code code, ExprContext ctx) {
+            var folded = constants.get(ctx);
+            if (folded != null && folded.isNumber()) {
+                code.pushDouble(folded.doubleValue());
+            } else if (folded != null) {
+                value(code, ctx);
+                unbox(code, ctx, "number", "D");
+            } else if (ctx instanceof ParenExprContext paren) {
+                number(code, paren.expr());
+            } else if (ctx instanceof NumberExprContext literal) {
+                code.pushDouble(Double.parseDouble(literal.NUMBER().getText().replace("_", "")));
+            } else if (ctx instanceof ExpExprContext exp) {
+                number(code, exp.base);
+                number(code, exp.exp);
+                code.invoke(INVOKESTATIC, "java/lang/Math", "pow", "(DD)D");
+            } else if (ctx instanceof MulDivExprContext mulDiv) {
+                number(code, mulDiv.lhs);
+                number(code, mulDiv.rhs);
+                code.op(mulDiv.op.getType() == LittleCalcLexer.MUL ? DMUL : DDIV, -2);
+            } else if (ctx instanceof AddSubExprContext addSub) {
+                number(code, addSub.lhs);
+                number(code, addSub.rhs);
+                code.op(addSub.op.getType() == LittleCalcLexer.ADD ? DADD : DSUB, -2);
+            } else if (ctx instanceof TernaryExprContext ternary) {
+                var otherwise = new Label();
+                var end = new Label();
+                bool(code, ternary.cond);
+                code.branch(IFEQ, otherwise);
+                number(code, ternary.tv);
+                code.branch(GOTO, end);
+                code.mark(otherwise);
+                number(code, ternary.fv);
+                code.mark(end);
+            } else {
+                // (number() reports a value of the wrong type)
+                value(code, ctx);
+                unbox(code, ctx, "number", "D");
+            }
+        }
+
+        // pushes the expression's boolean (as an int)
+        private void bool(Code code, ExprContext ctx) {
+            var folded = constants.get(ctx);
+            if (folded != null && folded.isBoolean()) {
+                code.op(folded.bool() ? ICONST_1 : ICONST_0, 1);
+            } else if (folded != null) {
+                value(code, ctx);
+                unbox(code, ctx, "bool", "Z");
+            } else if (ctx instanceof ParenExprContext paren) {
+                bool(code, paren.expr());
+            } else if (ctx instanceof TrueExprContext) {
+                code.op(ICONST_1, 1);
+            } else if (ctx instanceof FalseExprContext) {
+                code.op(ICONST_0, 1);
+            } else if (ctx instanceof NegationExprContext negation) {
+                bool(code, negation.expr());
+                code.op(ICONST_1, 1);
+                code.op(IXOR, -1);
+            } else if (ctx instanceof AndExprContext and) {
+                var isFalse = new Label();
+                bool(code, and.lhs);
+                code.branch(IFEQ, isFalse);
+                bool(code, and.rhs);
+                code.branch(IFEQ, isFalse);
+                pushResult(code, isFalse, ICONST_1, ICONST_0);
+            } else if (ctx instanceof OrExprContext or) {
+                var isTrue = new Label();
+                bool(code, or.lhs);
+                code.branch(IFNE, isTrue);
+                bool(code, or.rhs);
+                code.branch(IFNE, isTrue);
+                pushResult(code, isTrue, ICONST_0, ICONST_1);
+            } else if (ctx instanceof CompareExprContext compare) {
+                if (ExprTypes.isNumber(compare.lhs) && ExprTypes.isNumber(compare.rhs)) {
+                    // Double.compare() orders the same way as LVNumber's compareTo() (unlike <, <=, etc.)
+                    number(code, compare.lhs);
+                    number(code, compare.rhs);
+                    code.invoke(INVOKESTATIC, DOUBLE, "compare", "(DD)I");
+                    var isFalse = new Label();
+                    code.branch(switch (compare.op.getType()) {
+                        case LittleCalcLexer.LT -> IFGE;
+                        case LittleCalcLexer.LE -> IFGT;
+                        case LittleCalcLexer.GT -> IFLE;
+                        default -> IFLT;
+                    }, isFalse);
+                    pushResult(code, isFalse, ICONST_1, ICONST_0);
+                } else {
+                    value(code, compare.lhs);
+                    code.field(GETSTATIC, "net/cargal/littlecalc/LVComparableOp",
+                            LVComparableOp.fromToken(compare.op).name(), "Lnet/cargal/littlecalc/LVComparableOp;");
+                    value(code, compare.rhs);
+                    position(code, compare.lhs);
+                    code.invoke(INVOKESTATIC, COMPILER, "compare", "(" + LITTLE_VALUE_DESC
+                            + "Lnet/cargal/littlecalc/LVComparableOp;" + LITTLE_VALUE_DESC + "II)Z");
+                }
+            } else if (ctx instanceof EqualityExprContext equality) {
+                var isEQ = equality.op.getType() == LittleCalcLexer.EQ;
+                var isFalse = new Label();
+                if (ExprTypes.isNumber(equality.lhs) && ExprTypes.isNumber(equality.rhs)) {
+                    // (LVNumber's equals() is Double's, which agrees with Double.compare())
+                    number(code, equality.lhs);
+                    number(code, equality.rhs);
+                    code.invoke(INVOKESTATIC, DOUBLE, "compare", "(DD)I");
+                    code.branch(isEQ ? IFNE : IFEQ, isFalse);
+                    pushResult(code, isFalse, ICONST_1, ICONST_0);
+                } else if (ExprTypes.isBool(equality.lhs) && ExprTypes.isBool(equality.rhs)) {
+                    bool(code, equality.lhs);
+                    bool(code, equality.rhs);
+                    code.branch(isEQ ? IF_ICMPNE : IF_ICMPEQ, isFalse);
+                    pushResult(code, isFalse, ICONST_1, ICONST_0);
+                } else {
+                    value(code, equality.lhs);
+                    code.field(GETSTATIC, "net/cargal/littlecalc/LVEquatableOp", isEQ ? "EQ" : "NE",
+                            "Lnet/cargal/littlecalc/LVEquatableOp;");
+                    value(code, equality.rhs);
+                    code.invoke(INVOKEVIRTUAL, LITTLE_VALUE, "evalEquality",
+                            "(Lnet/cargal/littlecalc/LVEquatableOp;" + LITTLE_VALUE_DESC + ")Z");
+                }
+            } else if (ctx instanceof TernaryExprContext ternary) {
+                var otherwise = new Label();
+                var end = new Label();
+                bool(code, ternary.cond);
+                code.branch(IFEQ, otherwise);
+                bool(code, ternary.tv);
+                code.branch(GOTO, end);
+                code.mark(otherwise);
+                bool(code, ternary.fv);
+                code.mark(end);
+            } else {
+                // (bool() reports a value of the wrong type)
+                value(code, ctx);
+                unbox(code, ctx, "bool", "Z");
+            }
+        }
+
+        // pushes whenTrue, unless the branches to whenFalse are taken
+        private static void pushResult(Code code, Label whenFalse, int whenTrue, int otherwise) {
+            var end = new Label();
+            code.op(whenTrue, 1);
+            code.branch(GOTO, end);
+            code.mark(whenFalse);
+            code.op(otherwise, 1);
+            code.mark(end);
+        }
+
+        // converts the LittleValue on the stack (reporting a value of the wrong type at ctx)
+        private static void unbox(Code code, ExprContext ctx, String method, String type) {
+            position(code, ctx);
+            code.invoke(INVOKESTATIC, COMPILER, method, "(" + LITTLE_VALUE_DESC + "II)" + type);
+        }
+
+        private static void position(Code code, ExprContext ctx) {
+            code.pushInt(ctx.getStart().getLine());
+            code.pushInt(ctx.getStart().getCharPositionInLine());
+        }
+    }
+}
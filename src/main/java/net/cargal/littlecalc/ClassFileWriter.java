@@ -0,0 +1,427 @@
+package net.cargal.littlecalc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough of a class file writer for BytecodeCompiler: a constant pool,
+ * fields, and methods with a Code attribute (with max stack computed from the
+ * instructions emitted).
+ *
+ * Classes are written as version 49 (Java 5), so they're verified by type
+ * inference and don't need StackMapTable frames.
+ */
+class ClassFileWriter {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int VERSION = 49;
+    private static final int MAX_CODE_LENGTH = 65535;
+    // (the constant pool's count is a u2, and its indexes are one less)
+    private static final int MAX_POOL_COUNT = 65535;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndexes = new HashMap<>();
+    private int poolCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<Code> methods = new ArrayList<>();
+
+    ClassFileWriter(String name, String superName, String... interfaceNames) {
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+        interfaces = new int[interfaceNames.length];
+        for (int i = 0; i < interfaceNames.length; i++) {
+            interfaces[i] = classRef(interfaceNames[i]);
+        }
+    }
+
+    int utf8(String value) {
+        return constant("U" + value, 1, out -> {
+            out.writeByte(CONSTANT_UTF8);
+            out.writeUTF(value);
+        });
+    }
+
+    int integer(int value) {
+        return constant("I" + value, 1, out -> {
+            out.writeByte(CONSTANT_INTEGER);
+            out.writeInt(value);
+        });
+    }
+
+    int doubleConstant(double value) {
+        // keyed by the bits, so 0.0 and -0.0 (and NaNs) are different constants
+        return constant("D" + Double.doubleToRawLongBits(value), 2, out -> {
+            out.writeByte(CONSTANT_DOUBLE);
+            out.writeDouble(value);
+        });
+    }
+
+    int classRef(String internalName) {
+        var name = utf8(internalName);
+        return constant("C" + internalName, 1, out -> {
+            out.writeByte(CONSTANT_CLASS);
+            out.writeShort(name);
+        });
+    }
+
+    int string(String value) {
+        var utf8 = utf8(value);
+        return constant("S" + value, 1, out -> {
+            out.writeByte(CONSTANT_STRING);
+            out.writeShort(utf8);
+        });
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_INTERFACE_METHODREF, owner, name, descriptor);
+    }
+
+    void field(int access, String name, String descriptor) {
+        var bytes = new ByteArrayOutputStream();
+        write(bytes, out -> {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+        });
+        fields.add(bytes.toByteArray());
+    }
+
+    Code method(int access, String name, String descriptor, int maxLocals) {
+        var code = new Code(access, utf8(name), utf8(descriptor), maxLocals);
+        methods.add(code);
+        return code;
+    }
+
+    /**
+     * Whether any method is too big for a class file (more than 64K of code,
+     * or a branch further than 32K), or there are too many constants for the
+     * pool (whose indexes were written truncated to 16 bits).
+     */
+    boolean isTooLarge() {
+        return poolCount > MAX_POOL_COUNT || methods.stream().anyMatch(Code::isTooLarge);
+    }
+
+    byte[] toByteArray() {
+        var codeName = utf8("Code");
+        var bytes = new ByteArrayOutputStream();
+        write(bytes, out -> {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for (var anInterface : interfaces) {
+                out.writeShort(anInterface);
+            }
+            out.writeShort(fields.size());
+            for (var field : fields) {
+                out.write(field);
+            }
+            out.writeShort(methods.size());
+            for (var method : methods) {
+                method.writeTo(out, codeName);
+            }
+            out.writeShort(0);
+        });
+        return bytes.toByteArray();
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        var classIndex = classRef(owner);
+        var nameIndex = utf8(name);
+        var descriptorIndex = utf8(descriptor);
+        var nameAndType = constant("N" + name + ":" + descriptor, 1, out -> {
+            out.writeByte(CONSTANT_NAME_AND_TYPE);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+        return constant(tag + owner + "." + name + ":" + descriptor, 1, out -> {
+            out.writeByte(tag);
+            out.writeShort(classIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    // adds a constant to the pool (once), returning its index
+    private int constant(String key, int slots, Writer writer) {
+        var index = poolIndexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        // (any constants this one refers to have already been added)
+        try {
+            writer.write(pool);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        index = poolCount;
+        poolCount += slots;
+        poolIndexes.put(key, index);
+        return index;
+    }
+
+    private static void write(ByteArrayOutputStream bytes, Writer writer) {
+        try (var out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static class Label {
+        private int offset = -1;
+        private int stackDepth = -1;
+        private final List<Integer> branches = new ArrayList<>();
+    }
+
+    class Code {
+        static final int ICONST_0 = 0x03;
+        static final int ICONST_1 = 0x04;
+        static final int BIPUSH = 0x10;
+        static final int SIPUSH = 0x11;
+        static final int LDC_W = 0x13;
+        static final int LDC2_W = 0x14;
+        static final int ALOAD = 0x19;
+        static final int AALOAD = 0x32;
+        static final int DADD = 0x63;
+        static final int DSUB = 0x67;
+        static final int DMUL = 0x6B;
+        static final int DDIV = 0x6F;
+        static final int IXOR = 0x82;
+        static final int IFEQ = 0x99;
+        static final int IFNE = 0x9A;
+        static final int IFLT = 0x9B;
+        static final int IFGE = 0x9C;
+        static final int IFGT = 0x9D;
+        static final int IFLE = 0x9E;
+        static final int IF_ICMPEQ = 0x9F;
+        static final int IF_ICMPNE = 0xA0;
+        static final int GOTO = 0xA7;
+        static final int ARETURN = 0xB0;
+        static final int RETURN = 0xB1;
+        static final int GETSTATIC = 0xB2;
+        static final int GETFIELD = 0xB4;
+        static final int PUTFIELD = 0xB5;
+        static final int INVOKEVIRTUAL = 0xB6;
+        static final int INVOKESPECIAL = 0xB7;
+        static final int INVOKESTATIC = 0xB8;
+        static final int INVOKEINTERFACE = 0xB9;
+        static final int CHECKCAST = 0xC0;
+
+        private final int access;
+        private final int name;
+        private final int descriptor;
+        private final int maxLocals;
+        private byte[] code = new byte[256];
+        private int length = 0;
+        private int stackDepth = 0;
+        private int maxStack = 0;
+        private boolean branchTooFar = false;
+
+        private Code(int access, int name, int descriptor, int maxLocals) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.maxLocals = maxLocals;
+        }
+
+        /** an instruction without operands, that changes the stack depth by stackDelta (in slots) */
+        void op(int opcode, int stackDelta) {
+            write(opcode);
+            adjustStack(stackDelta);
+        }
+
+        void aload(int local) {
+            write(ALOAD);
+            write(local);
+            adjustStack(1);
+        }
+
+        void pushInt(int value) {
+            if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                write(BIPUSH);
+                write(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                write(SIPUSH);
+                writeShort(value);
+            } else {
+                write(LDC_W);
+                writeShort(integer(value));
+            }
+            adjustStack(1);
+        }
+
+        void pushDouble(double value) {
+            write(LDC2_W);
+            writeShort(doubleConstant(value));
+            adjustStack(2);
+        }
+
+        void field(int opcode, String owner, String name, String descriptor) {
+            write(opcode);
+            writeShort(fieldRef(owner, name, descriptor));
+            var size = slots(descriptor.charAt(0));
+            adjustStack(switch (opcode) {
+                case GETSTATIC -> size;
+                case GETFIELD -> size - 1;
+                case PUTFIELD -> -size - 1;
+                default -> throw new IllegalArgumentException("not a field instruction: " + opcode);
+            });
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor) {
+            write(opcode);
+            if (opcode == INVOKEINTERFACE) {
+                writeShort(interfaceMethodRef(owner, name, descriptor));
+                write(argumentSlots(descriptor) + 1);
+                write(0);
+            } else {
+                writeShort(methodRef(owner, name, descriptor));
+            }
+            var receiver = opcode == INVOKESTATIC ? 0 : 1;
+            adjustStack(slots(descriptor.charAt(descriptor.indexOf(')') + 1)) - argumentSlots(descriptor) - receiver);
+        }
+
+        void checkcast(String internalName) {
+            write(CHECKCAST);
+            writeShort(classRef(internalName));
+        }
+
+        /** a conditional or unconditional branch */
+        void branch(int opcode, Label target) {
+            var offset = length;
+            adjustStack(switch (opcode) {
+                case GOTO -> 0;
+                case IF_ICMPEQ, IF_ICMPNE -> -2;
+                default -> -1;
+            });
+            write(opcode);
+            if (target.offset >= 0) {
+                writeBranchOffset(target.offset - offset);
+            } else {
+                target.branches.add(offset);
+                writeShort(0);
+            }
+            target.stackDepth = stackDepth;
+        }
+
+        /** places a label at the current position */
+        void mark(Label label) {
+            label.offset = length;
+            for (var branch : label.branches) {
+                var offset = label.offset - branch;
+                branchTooFar |= offset > Short.MAX_VALUE;
+                code[branch + 1] = (byte) (offset >> 8);
+                code[branch + 2] = (byte) offset;
+            }
+            // only reachable from branches (after a goto or return) or falling through at the same depth
+            stackDepth = label.stackDepth >= 0 ? label.stackDepth : stackDepth;
+        }
+
+        private boolean isTooLarge() {
+            return branchTooFar || length > MAX_CODE_LENGTH;
+        }
+
+        private void writeTo(DataOutputStream out, int codeName) throws IOException {
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(length);
+            out.write(code, 0, length);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+
+        private void adjustStack(int delta) {
+            stackDepth += delta;
+            maxStack = Math.max(maxStack, stackDepth);
+        }
+
+        private void write(int value) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, length * 2);
+            }
+            code[length++] = (byte) value;
+        }
+
+        private void writeShort(int value) {
+            write(value >> 8);
+            write(value);
+        }
+
+        private void writeBranchOffset(int offset) {
+            branchTooFar |= offset < Short.MIN_VALUE;
+            writeShort(offset);
+        }
+    }
+
+    private static int slots(char type) {
+        return switch (type) {
+            case 'V' -> 0;
+            case 'D', 'J' -> 2;
+            default -> 1;
+        };
+    }
+
+    private static int argumentSlots(String descriptor) {
+        var count = 0;
+        for (int i = 1; descriptor.charAt(i) != ')'; i++) {
+            var type = descriptor.charAt(i);
+            count += slots(type);
+            while (descriptor.charAt(i) == '[') {
+                i++;
+            }
+            if (descriptor.charAt(i) == 'L') {
+                i = descriptor.indexOf(';', i);
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,52 @@
+package net.cargal.littlecalc;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The bindings of a batch: a column (a double[] or boolean[], one element a
+ * row) for each variable. Every column has rows() elements.
+ */
+public final class Columns {
+    private final int rows;
+    private final Map<Symbol, double[]> numbers = new HashMap<>();
+    private final Map<Symbol, boolean[]> booleans = new HashMap<>();
+
+    public Columns(int rows) {
+        this.rows = rows;
+    }
+
+    public Columns add(String name, double[] column) {
+        checkLength(name, column.length);
+        numbers.put(Symbol.intern(name), column);
+        booleans.remove(Symbol.intern(name));
+        return this;
+    }
+
+    public Columns add(String name, boolean[] column) {
+        checkLength(name, column.length);
+        booleans.put(Symbol.intern(name), column);
+        numbers.remove(Symbol.intern(name));
+        return this;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    /** the variable's column, or null if it doesn't have a column of numbers */
+    public double[] numbers(Symbol variable) {
+        return numbers.get(variable);
+    }
+
+    /** the variable's column, or null if it doesn't have a column of booleans */
+    public boolean[] booleans(Symbol variable) {
+        return booleans.get(variable);
+    }
+
+    private void checkLength(String name, int length) {
+        if (length != rows) {
+            throw new IllegalArgumentException(name + " has " + length + " rows (not " + rows + ")");
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package net.cargal.littlecalc;
+
+/**
+ * An expression compiled (by ExprCompiler) into a tree of closures, with its
+ * operators and constants resolved, so evaluating it doesn't touch the parse
+ * tree. It can be evaluated any number of times, against any variables.
+ */
+@FunctionalInterface
+public interface CompiledExpr {
+    LittleValue eval(SymbolTable<LittleValue> variables);
+}
@@ -0,0 +1,110 @@
+package net.cargal.littlecalc;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import net.cargal.littlecalc.LittleCalcParser.CalcInContext;
+import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
+
+/**
+ * A script compiled by LittleCalcEngine: a RegisterProgram (which doesn't
+ * refer to the parse tree, so evaluating it never touches ANTLR) and the types
+ * of its inputs. It also keeps the validated (and optimized) parse tree, so
+ * LittleCalc can run scripts from its ScriptCache with the other EvalModes.
+ *
+ * Compiled scripts are immutable, and each eval() has its own variables (and
+ * VM), so threads can share them.
+ */
+public final class CompiledScript {
+    private final RegisterProgram program;
+    private final Map<Symbol, LVType> inputs;
+    private final Set<Symbol> required;
+    // (Slots are thread safe, so every eval()'s variables can share them)
+    private final Slots slots;
+    private final CalcInContext calcIn;
+    // (null if the script wasn't optimized)
+    private final LittleCalcOptimizer optimizer;
+
+    /** the variables when the script finished, and what it printed */
+    public record Result(Map<String, LittleValue> variables, String output) {
+        public LittleValue get(String name) {
+            return variables.get(name);
+        }
+    }
+
+    CompiledScript(RegisterProgram program, Map<Symbol, LVType> inputs, Set<Symbol> required, Slots slots,
+            CalcInContext calcIn, LittleCalcOptimizer optimizer) {
+        this.program = program;
+        this.inputs = Map.copyOf(inputs);
+        this.required = Set.copyOf(required);
+        this.slots = slots;
+        this.calcIn = calcIn;
+        this.optimizer = optimizer;
+    }
+
+    public RegisterProgram program() {
+        return program;
+    }
+
+    Slots slots() {
+        return slots;
+    }
+
+    CalcInContext calcIn() {
+        return calcIn;
+    }
+
+    LittleCalcOptimizer optimizer() {
+        return optimizer;
+    }
+
+    /**
+     * the inputs declared when the script was compiled, and their types
+     * (eval() can bind any of them, and has to bind the ones the script reads
+     * before assigning them)
+     */
+    public Map<String, LVType> inputs() {
+        var names = new LinkedHashMap<String, LVType>();
+        inputs.forEach((symbol, type) -> names.put(symbol.name(), type));
+        return Collections.unmodifiableMap(names);
+    }
+
+    public Result eval() {
+        return eval(Map.of());
+    }
+
+    public Result eval(Map<String, LittleValue> bindings) {
+        var variables = new SymbolTable<LittleValue>(slots);
+        for (var binding : bindings.entrySet()) {
+            var symbol = Symbol.intern(binding.getKey());
+            var type = inputs.get(symbol);
+            if (type == null) {
+                throw new LittleCalcRuntimeException(symbol + " is not an input of the script");
+            }
+            if (binding.getValue() == null) {
+                throw new LittleCalcRuntimeException(symbol + " is bound to null");
+            }
+            if (!type.equals(binding.getValue().type())) {
+                throw new LittleCalcRuntimeException(symbol + " must be bound to a " + type);
+            }
+            variables.put(symbol, binding.getValue());
+        }
+        for (var input : required) {
+            if (variables.find(input) == null) {
+                throw new LittleCalcRuntimeException(input + " has not been bound");
+            }
+        }
+
+        var output = new StringBuilder();
+        // (tracing commands need a parser, so they're ignored)
+        new RegisterVM(variables, command -> {
+        }, () -> variables.keyStream().forEach(key -> output.append("\t" + key + " : " + variables.get(key).get())
+                .append(System.lineSeparator())), output::append).run(program);
+
+        var values = new LinkedHashMap<String, LittleValue>();
+        variables.keyStream().forEach(key -> values.put(key, variables.get(key).get()));
+        return new Result(Collections.unmodifiableMap(values), output.toString());
+    }
+}
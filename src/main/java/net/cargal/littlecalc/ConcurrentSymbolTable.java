@@ -0,0 +1,89 @@
+package net.cargal.littlecalc;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Stream;
+
+/**
+ * A SymbolTable that threads can share (a session that many threads evaluate
+ * against while another updates its inputs), each with its own executor or
+ * expression visitor.
+ *
+ * Values are in fixed-size chunks of slots (AtomicReferenceArrays) that are
+ * never moved, so reads don't lock and writes are a single atomic set; only
+ * adding a chunk, or a variable that hadn't been assigned before, locks.
+ * keyStream() is a snapshot of the variables assigned when it was called.
+ */
+public class ConcurrentSymbolTable<T> extends SymbolTable<T> {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private volatile AtomicReferenceArray<T>[] chunks = newChunks(0);
+    // the variables in the order they were assigned (keyCount is written last)
+    private volatile Symbol[] keys = new Symbol[16];
+    private volatile int keyCount = 0;
+
+    public ConcurrentSymbolTable() {
+        super();
+    }
+
+    public ConcurrentSymbolTable(Slots slots) {
+        super(slots);
+    }
+
+    public ConcurrentSymbolTable(SymbolTable<T> parent) {
+        super(parent);
+    }
+
+    @Override
+    public T slot(int slot) {
+        var chunks = this.chunks;
+        var chunk = slot >>> CHUNK_BITS;
+        return chunk < chunks.length ? chunks[chunk].get(slot & (CHUNK_SIZE - 1)) : null;
+    }
+
+    @Override
+    public void put(Symbol symbol, T value) {
+        var slot = slots().slot(symbol);
+        if (chunk(slot).getAndSet(slot & (CHUNK_SIZE - 1), value) == null) {
+            added(symbol);
+        }
+    }
+
+    @Override
+    protected Stream<Symbol> localKeys() {
+        var count = keyCount;
+        return Arrays.stream(keys, 0, count);
+    }
+
+    private AtomicReferenceArray<T> chunk(int slot) {
+        var chunks = this.chunks;
+        var chunk = slot >>> CHUNK_BITS;
+        return chunk < chunks.length ? chunks[chunk] : grow(chunk);
+    }
+
+    private synchronized AtomicReferenceArray<T> grow(int chunk) {
+        if (chunk >= chunks.length) {
+            var grown = Arrays.copyOf(chunks, Math.max(chunk + 1, chunks.length * 2));
+            for (int i = chunks.length; i < grown.length; i++) {
+                grown[i] = new AtomicReferenceArray<>(CHUNK_SIZE);
+            }
+            chunks = grown;
+        }
+        return chunks[chunk];
+    }
+
+    // (only the thread whose put() assigned a variable first adds it)
+    private synchronized void added(Symbol symbol) {
+        if (keyCount == keys.length) {
+            keys = Arrays.copyOf(keys, keyCount * 2);
+        }
+        keys[keyCount] = symbol;
+        keyCount = keyCount + 1;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static <T> AtomicReferenceArray<T>[] newChunks(int length) {
+        return new AtomicReferenceArray[length];
+    }
+}
@@ -0,0 +1,79 @@
+package net.cargal.littlecalc;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * A SymbolTable (with a flat frame indexed by slot, as SymbolTable has) whose
+ * snapshot() is O(1): a snapshot shares the frame, and whichever of the two is
+ * changed first copies it (once, so only the first put() after a snapshot
+ * pays for the variables it doesn't change).
+ *
+ * The REPL keeps its session in these, so reading a variable is still an
+ * index into the frame. (A PersistentSymbolTable is for forks that each only
+ * change a few of very many variables.)
+ */
+public class CopyOnWriteSymbolTable<T> extends SymbolTable<T> {
+    // indexed by slot
+    private Object[] values = new Object[16];
+    private Set<Symbol> keys = new HashSet<>();
+    // whether values and keys are shared with another table (which mustn't see this one's changes)
+    private boolean shared = false;
+
+    public CopyOnWriteSymbolTable() {
+        super();
+    }
+
+    public CopyOnWriteSymbolTable(Slots slots) {
+        super(slots);
+    }
+
+    public CopyOnWriteSymbolTable(SymbolTable<T> parent) {
+        super(parent);
+    }
+
+    /** a table with this table's variables, that doesn't see (or make) later changes (its parent is shared) */
+    public CopyOnWriteSymbolTable<T> snapshot() {
+        var snapshot = parent().isPresent() ? new CopyOnWriteSymbolTable<>(parent().get())
+                : new CopyOnWriteSymbolTable<T>(slots());
+        snapshot.restore(this);
+        return snapshot;
+    }
+
+    /** gives this table the variables a snapshot has (without copying them) */
+    public void restore(CopyOnWriteSymbolTable<T> snapshot) {
+        values = snapshot.values;
+        keys = snapshot.keys;
+        shared = true;
+        snapshot.shared = true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T slot(int slot) {
+        return slot < values.length ? (T) values[slot] : null;
+    }
+
+    @Override
+    public void put(Symbol symbol, T value) {
+        var slot = slots().slot(symbol);
+        if (shared) {
+            values = Arrays.copyOf(values, Math.max(slot + 1, values.length));
+            keys = new HashSet<>(keys);
+            shared = false;
+        } else if (slot >= values.length) {
+            values = Arrays.copyOf(values, Math.max(slot + 1, values.length * 2));
+        }
+        if (values[slot] == null) {
+            keys.add(symbol);
+        }
+        values[slot] = value;
+    }
+
+    @Override
+    protected Stream<Symbol> localKeys() {
+        return keys.stream();
+    }
+}
@@ -0,0 +1,329 @@
+package net.cargal.littlecalc;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+
+import net.cargal.littlecalc.LittleCalcParser.AssignmentStmtContext;
+import net.cargal.littlecalc.LittleCalcParser.CalcInContext;
+import net.cargal.littlecalc.LittleCalcParser.ExprContext;
+import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
+
+/**
+ * Runs a script's assignments once for each row of a CSV file (whose header
+ * names the variables its columns are bound to), and writes the values of
+ * some of the variables (the outputs) as CSV.
+ *
+ * Each column's type is taken from the first row (a number, written as a
+ * script would write it, true or false, or a string), and the script is validated (and compiled) once, for those
+ * types. Reading (and converting) rows, running the script and writing its
+ * outputs each have a thread, with bounded queues of batches of rows between
+ * them, so memory use doesn't grow with the size of the file.
+ *
+ * Statements other than assignments aren't run, and quoted fields can't
+ * contain line breaks.
+ */
+public class CsvBatch {
+    private static final int BATCH = 1024;
+    private static final int QUEUED_BATCHES = 16;
+    // (an empty batch ends the queue)
+    private static final List<LittleValue[]> END = List.of();
+
+    private final CalcInContext script;
+    private final EvalMode evalMode;
+
+    public CsvBatch(CalcInContext script, EvalMode evalMode) {
+        this.script = script;
+        this.evalMode = evalMode;
+    }
+
+    /** returns false (without running anything) if the script isn't valid for the columns' types */
+    public boolean run(Reader input, Writer output, List<String> outputs) throws IOException {
+        var reader = new BufferedReader(input);
+        var header = reader.readLine();
+        if (header == null) {
+            throw new IOException("no header");
+        }
+        var columns = columns(parseLine(header));
+        var first = reader.readLine();
+        var firstRow = first != null ? parseLine(first) : new String[0];
+        var columnTypes = types(firstRow, columns.length);
+        var types = new SymbolTable<LVType>();
+        for (int i = 0; i < columns.length; i++) {
+            types.put(columns[i], columnTypes[i]);
+        }
+        if (types.slots().size() != columns.length) {
+            throw new IOException("the header has a column name more than once");
+        }
+
+        var listener = new LittleCalcSemanticValidationListener(types);
+        ParseTreeWalker.DEFAULT.walk(listener, script);
+        for (var name : outputs) {
+            if (types.get(name).isEmpty()) {
+                throw new LittleCalcRuntimeException(name + " is neither a column nor assigned by the script");
+            }
+        }
+        if (listener.hasErrors()) {
+            return false;
+        }
+
+        var variables = new SymbolTable<LittleValue>(types.slots());
+        var evaluator = evalMode.evaluator(variables);
+        var targets = new ArrayList<Symbol>();
+        var exprs = new ArrayList<ExprContext>();
+        for (var stmt : script.stmts().stmt()) {
+            if (stmt instanceof AssignmentStmtContext assignment) {
+                targets.add(Symbol.of(assignment.ID().getSymbol()));
+                exprs.add(assignment.expr());
+            }
+        }
+        var outputSymbols = outputs.stream().map(Symbol::intern).toArray(Symbol[]::new);
+
+        BlockingQueue<List<LittleValue[]>> rows = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+        BlockingQueue<List<LittleValue[]>> results = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+        var threads = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> reading = threads.submit(() -> {
+                var batch = new ArrayList<LittleValue[]>(BATCH);
+                var line = 2;
+                if (first != null) {
+                    batch.add(values(firstRow, columns, columnTypes, line));
+                }
+                for (var text = reader.readLine(); text != null; text = reader.readLine()) {
+                    line++;
+                    if (text.isBlank()) {
+                        continue;
+                    }
+                    batch.add(values(parseLine(text), columns, columnTypes, line));
+                    if (batch.size() == BATCH) {
+                        rows.put(batch);
+                        batch = new ArrayList<>(BATCH);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    rows.put(batch);
+                }
+                rows.put(END);
+                return null;
+            });
+            Future<?> writing = threads.submit(() -> {
+                output.write(String.join(",", outputs.stream().map(CsvBatch::field).toList()));
+                output.write('\n');
+                for (var batch = results.take(); batch != END; batch = results.take()) {
+                    for (var result : batch) {
+                        for (int i = 0; i < result.length; i++) {
+                            if (i > 0) {
+                                output.write(',');
+                            }
+                            output.write(field(result[i].toString()));
+                        }
+                        output.write('\n');
+                    }
+                }
+                output.flush();
+                return null;
+            });
+
+            for (var batch = take(rows, reading); batch != END; batch = take(rows, reading)) {
+                var batchResults = new ArrayList<LittleValue[]>(batch.size());
+                for (var row : batch) {
+                    for (int i = 0; i < columns.length; i++) {
+                        variables.put(columns[i], row[i]);
+                    }
+                    for (int i = 0; i < targets.size(); i++) {
+                        variables.put(targets.get(i), evaluator.evaluate(exprs.get(i)));
+                    }
+                    var result = new LittleValue[outputSymbols.length];
+                    for (int i = 0; i < result.length; i++) {
+                        result[i] = variables.find(outputSymbols[i]);
+                    }
+                    batchResults.add(result);
+                }
+                put(results, batchResults, writing);
+            }
+            put(results, END, writing);
+            get(writing);
+            return true;
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    private static Symbol[] columns(String[] names) {
+        var columns = new Symbol[names.length];
+        for (int i = 0; i < names.length; i++) {
+            columns[i] = Symbol.intern(names[i].trim());
+        }
+        return columns;
+    }
+
+    // the type of each column (from the first row)
+    private static LVType[] types(String[] firstRow, int count) {
+        var types = new LVType[count];
+        for (int i = 0; i < count; i++) {
+            var field = i < firstRow.length ? firstRow[i] : "";
+            if (field.equals("true") || field.equals("false")) {
+                types[i] = LVBooleanType.INSTANCE;
+            } else if (isNumber(field)) {
+                types[i] = LVNumberType.INSTANCE;
+            } else {
+                types[i] = LVStringType.INSTANCE;
+            }
+        }
+        return types;
+    }
+
+    private static LittleValue[] values(String[] fields, Symbol[] columns, LVType[] types, int line) {
+        if (fields.length != columns.length) {
+            throw new LittleCalcRuntimeException(
+                    "line " + line + " has " + fields.length + " fields (not " + columns.length + ")");
+        }
+        var values = new LittleValue[columns.length];
+        for (int i = 0; i < values.length; i++) {
+            var field = fields[i];
+            if (types[i] == LVNumberType.INSTANCE) {
+                if (!isNumber(field)) {
+                    throw new LittleCalcRuntimeException(
+                            "line " + line + ": " + columns[i] + " is not a number (" + field + ")");
+                }
+                values[i] = LittleValue.numberValue(Double.parseDouble(field.replace("_", "")));
+            } else if (types[i] == LVBooleanType.INSTANCE) {
+                if (!field.equals("true") && !field.equals("false")) {
+                    throw new LittleCalcRuntimeException(
+                            "line " + line + ": " + columns[i] + " is not a boolean (" + field + ")");
+                }
+                values[i] = LittleValue.booleanValue(field.equals("true"));
+            } else {
+                values[i] = LittleValue.stringValue(field);
+            }
+        }
+        return values;
+    }
+
+    // a NUMBER, as a script would write it (digits and _, and an optional fraction)
+    static boolean isNumber(String field) {
+        var point = field.indexOf('.');
+        if (point < 0) {
+            return isWhole(field);
+        }
+        return isWhole(field.substring(0, point)) && isDigits(field.substring(point + 1));
+    }
+
+    private static boolean isWhole(String text) {
+        return !text.isEmpty() && text.charAt(0) >= '0' && text.charAt(0) <= '9' && isDigits(text);
+    }
+
+    private static boolean isDigits(String text) {
+        if (text.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            var c = text.charAt(i);
+            if ((c < '0' || c > '9') && c != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the fields of a line ("quoted" fields can contain commas, and "" for a quote)
+    static String[] parseLine(String line) {
+        var fields = new ArrayList<String>();
+        var field = new StringBuilder();
+        var quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            var c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    private static String field(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    // (the other stages are watched while waiting on them, so their errors aren't lost in a deadlock)
+
+    private static List<LittleValue[]> take(BlockingQueue<List<LittleValue[]>> queue, Future<?> producer)
+            throws IOException {
+        try {
+            for (;;) {
+                var batch = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (batch != null) {
+                    return batch;
+                }
+                if (producer.isDone()) {
+                    get(producer);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        }
+    }
+
+    private static void put(BlockingQueue<List<LittleValue[]>> queue, List<LittleValue[]> batch, Future<?> consumer)
+            throws IOException {
+        try {
+            while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                if (consumer.isDone()) {
+                    get(consumer);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        }
+    }
+
+    private static void get(Future<?> stage) throws IOException {
+        try {
+            stage.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        } catch (ExecutionException e) {
+            var cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            } else if (cause instanceof UncheckedIOException io) {
+                throw io.getCause();
+            } else if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
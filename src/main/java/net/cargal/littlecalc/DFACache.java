@@ -0,0 +1,557 @@
+package net.cargal.littlecalc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RuntimeMetaData;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ATNConfig;
+import org.antlr.v4.runtime.atn.ATNConfigSet;
+import org.antlr.v4.runtime.atn.ATNSimulator;
+import org.antlr.v4.runtime.atn.ArrayPredictionContext;
+import org.antlr.v4.runtime.atn.DecisionState;
+import org.antlr.v4.runtime.atn.LexerATNConfig;
+import org.antlr.v4.runtime.atn.LexerAction;
+import org.antlr.v4.runtime.atn.LexerActionExecutor;
+import org.antlr.v4.runtime.atn.LexerIndexedCustomAction;
+import org.antlr.v4.runtime.atn.OrderedATNConfigSet;
+import org.antlr.v4.runtime.atn.PredictionContext;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.atn.SemanticContext;
+import org.antlr.v4.runtime.atn.SingletonPredictionContext;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.dfa.DFAState;
+import org.tinylog.Logger;
+
+import net.cargal.littlecalc.exceptions.LittleCalcImplementationException;
+
+/**
+ * Saves the lexer and parser DFAs (warmed up by parsing a training corpus) to
+ * a file, and loads them back into LittleCalcLexer and LittleCalcParser so a
+ * new JVM doesn't start with empty DFAs.
+ *
+ * DFA states are saved with their ATN configurations, so the simulators can
+ * keep extending a loaded DFA. The file records a hash of both serialized ATNs
+ * (and the ANTLR runtime version), and a cache for any other grammar is ignored.
+ */
+public class DFACache {
+    public static final String CACHE_FILE_PROPERTY = "littlecalc.dfaCache";
+    public static final String DEFAULT_CACHE_FILE = "./littlecalc.dfa";
+
+    private static final String MAGIC = "LittleCalcDFA";
+    private static final int FORMAT_VERSION = 1;
+    private static final int NO_STATE = -1;
+    private static final int ERROR_STATE = -2;
+
+    private static final int SC_NONE = 0;
+    private static final int SC_PREDICATE = 1;
+    private static final int SC_PRECEDENCE = 2;
+    private static final int SC_AND = 3;
+    private static final int SC_OR = 4;
+
+    private static final int CTX_SINGLETON = 0;
+    private static final int CTX_ARRAY = 1;
+
+    private DFACache() {
+    }
+
+    /**
+     * Usage: DFACache cacheFile corpusFile...
+     */
+    public static void main(String... args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: DFACache cacheFile corpusFile...");
+            return;
+        }
+        for (int i = 1; i < args.length; i++) {
+            train(CharStreams.fromFileName(args[i]).toString());
+        }
+        save(Path.of(args[0]));
+    }
+
+    public static Path defaultCacheFile() {
+        return Path.of(System.getProperty(CACHE_FILE_PROPERTY, DEFAULT_CACHE_FILE));
+    }
+
+    public static void train(String source) {
+        var lexer = new LittleCalcLexer(CharStreams.fromString(source));
+        var parser = new LittleCalcParser(new CommonTokenStream(lexer));
+        parser.removeErrorListeners();
+        ParseStrategy.SLL_THEN_LL.parse(parser, LittleCalcParser::calcIn);
+    }
+
+    public static boolean loadIfPresent(Path file) {
+        if (!Files.isReadable(file)) {
+            return false;
+        }
+        try {
+            return load(file);
+        } catch (IOException | RuntimeException e) {
+            Logger.warn("could not load DFA cache " + file + " (" + e + ")");
+            return false;
+        }
+    }
+
+    public static synchronized void save(Path file) throws IOException {
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeUTF(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(grammarHash());
+            new Writer(out, LittleCalcLexer._ATN, true).write(LittleCalcLexer._decisionToDFA);
+            new Writer(out, LittleCalcParser._ATN, false).write(LittleCalcParser._decisionToDFA);
+        }
+        Logger.debug("saved DFA cache " + file);
+    }
+
+    public static synchronized boolean load(Path file) throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (!MAGIC.equals(in.readUTF()) || in.readInt() != FORMAT_VERSION
+                    || !grammarHash().equals(in.readUTF())) {
+                Logger.warn("ignoring stale DFA cache " + file);
+                return false;
+            }
+            var lexerDFAs = new Reader(in, LittleCalcLexer._ATN, true).read();
+            var parserDFAs = new Reader(in, LittleCalcParser._ATN, false).read();
+            // simulators share these arrays, so existing lexers and parsers pick up the loaded DFAs too
+            System.arraycopy(lexerDFAs, 0, LittleCalcLexer._decisionToDFA, 0, lexerDFAs.length);
+            System.arraycopy(parserDFAs, 0, LittleCalcParser._decisionToDFA, 0, parserDFAs.length);
+        }
+        Logger.debug("loaded DFA cache " + file);
+        return true;
+    }
+
+    static String grammarHash() {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(RuntimeMetaData.VERSION.getBytes(StandardCharsets.UTF_8));
+            digest.update(LittleCalcLexer._serializedATN.getBytes(StandardCharsets.UTF_8));
+            digest.update(LittleCalcParser._serializedATN.getBytes(StandardCharsets.UTF_8));
+            var hash = new StringBuilder();
+            for (var b : digest.digest()) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new LittleCalcImplementationException("SHA-256 is not available");
+        }
+    }
+
+    private static class Writer {
+        private final DataOutputStream out;
+        private final ATN atn;
+        private final boolean lexer;
+        private final Map<PredictionContext, Integer> contextIds = new IdentityHashMap<>();
+        private final List<PredictionContext> contexts = new ArrayList<>();
+
+        Writer(DataOutputStream out, ATN atn, boolean lexer) {
+            this.out = out;
+            this.atn = atn;
+            this.lexer = lexer;
+        }
+
+        void write(DFA[] dfas) throws IOException {
+            var snapshots = new ArrayList<List<DFAState>>();
+            for (var dfa : dfas) {
+                List<DFAState> states;
+                synchronized (dfa.states) {
+                    states = new ArrayList<>(dfa.states.keySet());
+                }
+                snapshots.add(states);
+                for (var state : states) {
+                    for (var config : state.configs) {
+                        collectContext(config.context);
+                    }
+                }
+            }
+            out.writeInt(contexts.size());
+            for (var context : contexts) {
+                writeContext(context);
+            }
+            out.writeInt(dfas.length);
+            for (int i = 0; i < dfas.length; i++) {
+                writeDFA(dfas[i], snapshots.get(i));
+            }
+        }
+
+        private void collectContext(PredictionContext context) {
+            if (context == null || contextIds.containsKey(context)) {
+                return;
+            }
+            for (int i = 0; i < context.size(); i++) {
+                collectContext(context.getParent(i));
+            }
+            contextIds.put(context, contexts.size());
+            contexts.add(context);
+        }
+
+        private void writeContext(PredictionContext context) throws IOException {
+            if (context instanceof ArrayPredictionContext) {
+                out.writeByte(CTX_ARRAY);
+            } else {
+                out.writeByte(CTX_SINGLETON);
+            }
+            out.writeInt(context.size());
+            for (int i = 0; i < context.size(); i++) {
+                var parent = context.getParent(i);
+                out.writeInt(parent == null ? NO_STATE : contextIds.get(parent));
+                out.writeInt(context.getReturnState(i));
+            }
+        }
+
+        private void writeDFA(DFA dfa, List<DFAState> states) throws IOException {
+            var stateIds = new HashMap<DFAState, Integer>();
+            for (var state : states) {
+                stateIds.put(state, stateIds.size());
+            }
+            out.writeInt(dfa.decision);
+            out.writeInt(states.size());
+            for (var state : states) {
+                writeState(state);
+            }
+            for (var state : states) {
+                writeEdges(state.edges, stateIds);
+            }
+            var s0 = dfa.s0;
+            if (dfa.isPrecedenceDfa()) {
+                writeEdges(s0 == null ? null : s0.edges, stateIds);
+            } else {
+                out.writeInt(s0 == null || !stateIds.containsKey(s0) ? NO_STATE : stateIds.get(s0));
+            }
+        }
+
+        private void writeState(DFAState state) throws IOException {
+            var configs = state.configs;
+            out.writeBoolean(configs.fullCtx);
+            out.writeInt(configs.size());
+            for (var config : configs) {
+                out.writeInt(config.state.stateNumber);
+                out.writeInt(config.alt);
+                out.writeInt(contextIds.get(config.context));
+                writeSemanticContext(config.semanticContext);
+                out.writeInt(config.reachesIntoOuterContext);
+                if (lexer) {
+                    var lexerConfig = (LexerATNConfig) config;
+                    out.writeBoolean(lexerConfig.hasPassedThroughNonGreedyDecision());
+                    writeExecutor(lexerConfig.getLexerActionExecutor());
+                }
+            }
+            out.writeInt(configs.uniqueAlt);
+            out.writeBoolean(configs.hasSemanticContext);
+            out.writeBoolean(configs.dipsIntoOuterContext);
+
+            out.writeBoolean(state.isAcceptState);
+            out.writeInt(state.prediction);
+            out.writeBoolean(state.requiresFullContext);
+            writeExecutor(state.lexerActionExecutor);
+            if (state.predicates == null) {
+                out.writeInt(NO_STATE);
+            } else {
+                out.writeInt(state.predicates.length);
+                for (var predicate : state.predicates) {
+                    writeSemanticContext(predicate.pred);
+                    out.writeInt(predicate.alt);
+                }
+            }
+        }
+
+        private void writeEdges(DFAState[] edges, Map<DFAState, Integer> stateIds) throws IOException {
+            if (edges == null) {
+                out.writeInt(NO_STATE);
+                return;
+            }
+            out.writeInt(edges.length);
+            var count = (int) Arrays.stream(edges).filter(edge -> edge == ATNSimulator.ERROR
+                    || (edge != null && stateIds.containsKey(edge))).count();
+            out.writeInt(count);
+            for (int i = 0; i < edges.length; i++) {
+                var edge = edges[i];
+                if (edge == ATNSimulator.ERROR) {
+                    out.writeInt(i);
+                    out.writeInt(ERROR_STATE);
+                } else if (edge != null && stateIds.containsKey(edge)) {
+                    out.writeInt(i);
+                    out.writeInt(stateIds.get(edge));
+                }
+            }
+        }
+
+        private void writeSemanticContext(SemanticContext context) throws IOException {
+            if (context == SemanticContext.NONE) {
+                out.writeByte(SC_NONE);
+            } else if (context instanceof SemanticContext.PrecedencePredicate) {
+                out.writeByte(SC_PRECEDENCE);
+                out.writeInt(((SemanticContext.PrecedencePredicate) context).precedence);
+            } else if (context instanceof SemanticContext.Predicate) {
+                var predicate = (SemanticContext.Predicate) context;
+                out.writeByte(SC_PREDICATE);
+                out.writeInt(predicate.ruleIndex);
+                out.writeInt(predicate.predIndex);
+                out.writeBoolean(predicate.isCtxDependent);
+            } else if (context instanceof SemanticContext.AND) {
+                out.writeByte(SC_AND);
+                writeOperands(((SemanticContext.AND) context).opnds);
+            } else if (context instanceof SemanticContext.OR) {
+                out.writeByte(SC_OR);
+                writeOperands(((SemanticContext.OR) context).opnds);
+            } else {
+                throw new LittleCalcImplementationException("Unknown semantic context " + context);
+            }
+        }
+
+        private void writeOperands(SemanticContext[] operands) throws IOException {
+            out.writeInt(operands.length);
+            for (var operand : operands) {
+                writeSemanticContext(operand);
+            }
+        }
+
+        private void writeExecutor(LexerActionExecutor executor) throws IOException {
+            if (executor == null) {
+                out.writeInt(NO_STATE);
+                return;
+            }
+            var actions = executor.getLexerActions();
+            out.writeInt(actions.length);
+            for (var action : actions) {
+                if (action instanceof LexerIndexedCustomAction) {
+                    var indexed = (LexerIndexedCustomAction) action;
+                    out.writeInt(indexed.getOffset());
+                    out.writeInt(actionIndex(indexed.getAction()));
+                } else {
+                    out.writeInt(NO_STATE);
+                    out.writeInt(actionIndex(action));
+                }
+            }
+        }
+
+        private int actionIndex(LexerAction action) {
+            var index = Arrays.asList(atn.lexerActions).indexOf(action);
+            if (index < 0) {
+                throw new LittleCalcImplementationException("Lexer action is not in the ATN: " + action);
+            }
+            return index;
+        }
+    }
+
+    private static class Reader {
+        private final DataInputStream in;
+        private final ATN atn;
+        private final boolean lexer;
+        private final DecisionState nonGreedyState;
+        private PredictionContext[] contexts;
+
+        Reader(DataInputStream in, ATN atn, boolean lexer) {
+            this.in = in;
+            this.atn = atn;
+            this.lexer = lexer;
+            this.nonGreedyState = atn.states.stream() //
+                    .filter(state -> state instanceof DecisionState && ((DecisionState) state).nonGreedy) //
+                    .map(state -> (DecisionState) state) //
+                    .findFirst().orElse(null);
+        }
+
+        DFA[] read() throws IOException {
+            contexts = new PredictionContext[in.readInt()];
+            for (int i = 0; i < contexts.length; i++) {
+                contexts[i] = readContext();
+            }
+            var dfas = new DFA[in.readInt()];
+            for (int i = 0; i < dfas.length; i++) {
+                dfas[i] = readDFA();
+            }
+            return dfas;
+        }
+
+        private PredictionContext readContext() throws IOException {
+            var type = in.readByte();
+            var size = in.readInt();
+            var parents = new PredictionContext[size];
+            var returnStates = new int[size];
+            for (int i = 0; i < size; i++) {
+                var parent = in.readInt();
+                parents[i] = parent == NO_STATE ? null : contexts[parent];
+                returnStates[i] = in.readInt();
+            }
+            if (type == CTX_ARRAY) {
+                return new ArrayPredictionContext(parents, returnStates);
+            }
+            return SingletonPredictionContext.create(parents[0], returnStates[0]);
+        }
+
+        private DFA readDFA() throws IOException {
+            var decision = in.readInt();
+            // the same as the generated _decisionToDFA initialization
+            var dfa = new DFA(atn.getDecisionState(decision), decision);
+            var states = new DFAState[in.readInt()];
+            for (int i = 0; i < states.length; i++) {
+                states[i] = readState();
+                states[i].stateNumber = i;
+                dfa.states.put(states[i], states[i]);
+            }
+            for (var state : states) {
+                state.edges = readEdges(states);
+            }
+            if (dfa.isPrecedenceDfa()) {
+                var edges = readEdges(states);
+                if (edges != null) {
+                    for (int precedence = 0; precedence < edges.length; precedence++) {
+                        if (edges[precedence] != null) {
+                            dfa.setPrecedenceStartState(precedence, edges[precedence]);
+                        }
+                    }
+                }
+            } else {
+                var s0 = in.readInt();
+                dfa.s0 = s0 == NO_STATE ? null : states[s0];
+            }
+            return dfa;
+        }
+
+        private DFAState readState() throws IOException {
+            var fullCtx = in.readBoolean();
+            var configs = lexer ? new OrderedATNConfigSet() : new CachedConfigSet(fullCtx);
+            var size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                configs.add(readConfig());
+            }
+            configs.uniqueAlt = in.readInt();
+            configs.hasSemanticContext = in.readBoolean();
+            configs.dipsIntoOuterContext = in.readBoolean();
+
+            var state = new DFAState(configs);
+            state.isAcceptState = in.readBoolean();
+            state.prediction = in.readInt();
+            state.requiresFullContext = in.readBoolean();
+            state.lexerActionExecutor = readExecutor();
+            var predicates = in.readInt();
+            if (predicates != NO_STATE) {
+                state.predicates = new DFAState.PredPrediction[predicates];
+                for (int i = 0; i < predicates; i++) {
+                    state.predicates[i] = new DFAState.PredPrediction(readSemanticContext(), in.readInt());
+                }
+            }
+            if (state.requiresFullContext && configs instanceof CachedConfigSet) {
+                // the same conflicting alternatives ParserATNSimulator.computeTargetState() finds
+                ((CachedConfigSet) configs).setConflictingAlts(
+                        PredictionMode.getAlts(PredictionMode.getConflictingAltSubsets(configs)));
+            }
+            configs.setReadonly(true);
+            return state;
+        }
+
+        private ATNConfig readConfig() throws IOException {
+            var atnState = atn.states.get(in.readInt());
+            var alt = in.readInt();
+            var context = contexts[in.readInt()];
+            var semanticContext = readSemanticContext();
+            var reachesIntoOuterContext = in.readInt();
+            ATNConfig config;
+            if (lexer) {
+                var passedThroughNonGreedyDecision = in.readBoolean();
+                var executor = readExecutor();
+                if (passedThroughNonGreedyDecision) {
+                    // LexerATNConfig only sets this flag when derived from a config on a non-greedy decision
+                    var nonGreedy = new LexerATNConfig(
+                            new LexerATNConfig(nonGreedyState, alt, context, executor), nonGreedyState);
+                    config = new LexerATNConfig(nonGreedy, atnState, context);
+                } else {
+                    config = new LexerATNConfig(atnState, alt, context, executor);
+                }
+            } else {
+                config = new ATNConfig(atnState, alt, context, semanticContext);
+            }
+            config.reachesIntoOuterContext = reachesIntoOuterContext;
+            return config;
+        }
+
+        private DFAState[] readEdges(DFAState[] states) throws IOException {
+            var length = in.readInt();
+            if (length == NO_STATE) {
+                return null;
+            }
+            var edges = new DFAState[length];
+            var count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                var index = in.readInt();
+                var target = in.readInt();
+                edges[index] = target == ERROR_STATE ? ATNSimulator.ERROR : states[target];
+            }
+            return edges;
+        }
+
+        private SemanticContext readSemanticContext() throws IOException {
+            return switch (in.readByte()) {
+                case SC_NONE -> SemanticContext.NONE;
+                case SC_PRECEDENCE -> new SemanticContext.PrecedencePredicate(in.readInt());
+                case SC_PREDICATE -> new SemanticContext.Predicate(in.readInt(), in.readInt(), in.readBoolean());
+                case SC_AND -> {
+                    var operands = readOperands();
+                    var result = operands[0];
+                    for (int i = 1; i < operands.length; i++) {
+                        result = new SemanticContext.AND(result, operands[i]);
+                    }
+                    yield result;
+                }
+                case SC_OR -> {
+                    var operands = readOperands();
+                    var result = operands[0];
+                    for (int i = 1; i < operands.length; i++) {
+                        result = new SemanticContext.OR(result, operands[i]);
+                    }
+                    yield result;
+                }
+                default -> throw new IOException("corrupt DFA cache (unknown semantic context)");
+            };
+        }
+
+        private SemanticContext[] readOperands() throws IOException {
+            var operands = new SemanticContext[in.readInt()];
+            for (int i = 0; i < operands.length; i++) {
+                operands[i] = readSemanticContext();
+            }
+            return operands;
+        }
+
+        private LexerActionExecutor readExecutor() throws IOException {
+            var length = in.readInt();
+            if (length == NO_STATE) {
+                return null;
+            }
+            var actions = new LexerAction[length];
+            for (int i = 0; i < length; i++) {
+                var offset = in.readInt();
+                var action = atn.lexerActions[in.readInt()];
+                actions[i] = offset == NO_STATE ? action : new LexerIndexedCustomAction(offset, action);
+            }
+            return new LexerActionExecutor(actions);
+        }
+    }
+
+    // conflictingAlts is protected, and only the simulator sets it
+    private static class CachedConfigSet extends ATNConfigSet {
+        CachedConfigSet(boolean fullCtx) {
+            super(fullCtx);
+        }
+
+        void setConflictingAlts(BitSet conflictingAlts) {
+            this.conflictingAlts = conflictingAlts;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package net.cargal.littlecalc;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Function;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTreeProperty;
+
+import net.cargal.littlecalc.LittleCalcParser.ExprContext;
+
+public enum EvalMode {
+    TREE_WALKING {
+        @Override
+        public ExprEvaluator evaluator(SymbolTable<LittleValue> variables, ParseTreeProperty<LittleValue> constants) {
+            return new LittleCalcExprVisitor(variables, constants)::visit;
+        }
+
+        @Override
+        public Function<ExprContext, CompiledExpr> compiler(Slots slots, ParseTreeProperty<LittleValue> constants) {
+            // (nothing to compile, just a visitor for each evaluation)
+            return ctx -> variables -> new LittleCalcExprVisitor(variables, constants).visit(ctx);
+        }
+    },
+    COMPILED {
+        @Override
+        public ExprEvaluator evaluator(SymbolTable<LittleValue> variables, ParseTreeProperty<LittleValue> constants) {
+            return cached(compiler(variables.slots(), constants), variables);
+        }
+
+        @Override
+        public Function<ExprContext, CompiledExpr> compiler(Slots slots, ParseTreeProperty<LittleValue> constants) {
+            return new ExprCompiler(constants, slots)::compile;
+        }
+    },
+    BYTECODE {
+        @Override
+        public ExprEvaluator evaluator(SymbolTable<LittleValue> variables, ParseTreeProperty<LittleValue> constants) {
+            return cached(compiler(variables.slots(), constants), variables);
+        }
+
+        @Override
+        public Function<ExprContext, CompiledExpr> compiler(Slots slots, ParseTreeProperty<LittleValue> constants) {
+            return new BytecodeCompiler(constants, slots)::compile;
+        }
+    },
+    MEMOIZED {
+        @Override
+        public ExprEvaluator evaluator(SymbolTable<LittleValue> variables, ParseTreeProperty<LittleValue> constants) {
+            // one DAG for each script (the parse tree the expression is in), which is dropped, with the
+            // script's parse tree, when another script is evaluated (so a REPL doesn't keep every line)
+            return new ExprEvaluator() {
+                private ParserRuleContext script = null;
+                private ExprEvaluator dag = null;
+
+                @Override
+                public LittleValue evaluate(ExprContext ctx) {
+                    var root = script(ctx);
+                    if (root != script) {
+                        script = root;
+                        dag = cached(new ExprDagCompiler(constants, variables.slots())::compile, variables);
+                    }
+                    return dag.evaluate(ctx);
+                }
+            };
+        }
+
+        @Override
+        public Function<ExprContext, CompiledExpr> compiler(Slots slots, ParseTreeProperty<LittleValue> constants) {
+            // (a DAG's nodes remember their values, so they can't be shared by threads)
+            return new ExprCompiler(constants, slots)::compile;
+        }
+    },
+    /**
+     * expressions are compiled for RegisterVM (and LittleCalcExecutionVisitor
+     * compiles whole scripts)
+     */
+    REGISTER_VM {
+        @Override
+        public ExprEvaluator evaluator(SymbolTable<LittleValue> variables, ParseTreeProperty<LittleValue> constants) {
+            var compiler = new RegisterCompiler(constants);
+            var vm = new RegisterVM(variables);
+            return cached(ctx -> {
+                var program = compiler.compileExpr(ctx);
+                return vars -> vm.run(program);
+            }, variables);
+        }
+
+        @Override
+        public Function<ExprContext, CompiledExpr> compiler(Slots slots, ParseTreeProperty<LittleValue> constants) {
+            var compiler = new RegisterCompiler(constants);
+            return ctx -> {
+                var program = compiler.compileExpr(ctx);
+                // (a VM remembers the slots of the last program it ran, so each evaluation has its own)
+                return variables -> new RegisterVM(variables).run(program);
+            };
+        }
+    };
+
+    /** an evaluator that uses the values of constant expressions (from LittleCalcOptimizer) */
+    public abstract ExprEvaluator evaluator(SymbolTable<LittleValue> variables,
+            ParseTreeProperty<LittleValue> constants);
+
+    /**
+     * a compiler (for tables with these slots) whose CompiledExprs can be
+     * evaluated by any number of threads at once, each with its own variables
+     */
+    public abstract Function<ExprContext, CompiledExpr> compiler(Slots slots,
+            ParseTreeProperty<LittleValue> constants);
+
+    public ExprEvaluator evaluator(SymbolTable<LittleValue> variables) {
+        return evaluator(variables, new ParseTreeProperty<>());
+    }
+
+    private static ExprEvaluator cached(Function<ExprContext, CompiledExpr> compiler,
+            SymbolTable<LittleValue> variables) {
+        // an expression that's evaluated again isn't compiled again (and, since what's compiled doesn't refer to
+        // it, the parse tree can still be collected)
+        Map<ExprContext, CompiledExpr> compiled = new WeakHashMap<>();
+        return ctx -> compiled.computeIfAbsent(ctx, compiler).eval(variables);
+    }
+
+    private static ParserRuleContext script(ParserRuleContext ctx) {
+        while (ctx.getParent() != null) {
+            ctx = ctx.getParent();
+        }
+        return ctx;
+    }
+}
@@ -0,0 +1,347 @@
+package net.cargal.littlecalc;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeProperty;
+
+import net.cargal.littlecalc.LittleCalcParser.AddSubExprContext;
+import net.cargal.littlecalc.LittleCalcParser.AndExprContext;
+import net.cargal.littlecalc.LittleCalcParser.CompareExprContext;
+import net.cargal.littlecalc.LittleCalcParser.EqualityExprContext;
+import net.cargal.littlecalc.LittleCalcParser.ExpExprContext;
+import net.cargal.littlecalc.LittleCalcParser.ExprContext;
+import net.cargal.littlecalc.LittleCalcParser.FalseExprContext;
+import net.cargal.littlecalc.LittleCalcParser.IDExprContext;
+import net.cargal.littlecalc.LittleCalcParser.MulDivExprContext;
+import net.cargal.littlecalc.LittleCalcParser.NegationExprContext;
+import net.cargal.littlecalc.LittleCalcParser.NumberExprContext;
+import net.cargal.littlecalc.LittleCalcParser.OrExprContext;
+import net.cargal.littlecalc.LittleCalcParser.ParenExprContext;
+import net.cargal.littlecalc.LittleCalcParser.StringExprContext;
+import net.cargal.littlecalc.LittleCalcParser.TernaryExprContext;
+import net.cargal.littlecalc.LittleCalcParser.TrueExprContext;
+import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
+
+/**
+ * Compiles a (validated) expression into a CompiledExpr that evaluates exactly
+ * like LittleCalcExprVisitor (same values and errors), without
+ * visiting the parse tree.
+ *
+ * Numbers and booleans flow between operators unboxed (as a NumberExpr's double
+ * or a BoolExpr's boolean), so a LittleValue is only created for the result,
+ * and for operands whose type isn't known until they're evaluated. Evaluating
+ * a NumberExpr (of arithmetic on number variables) doesn't allocate anything.
+ *
+ * Expressions with values in constants (see LittleCalcOptimizer) are compiled
+ * to those values, and variables are resolved to their slots.
+ */
+public class ExprCompiler extends LittleCalcBaseVisitor<CompiledExpr> {
+
+    @FunctionalInterface
+    public interface NumberExpr {
+        double eval(SymbolTable<LittleValue> variables);
+    }
+
+    @FunctionalInterface
+    public interface BoolExpr {
+        boolean eval(SymbolTable<LittleValue> variables);
+    }
+
+    private final ParseTreeProperty<LittleValue> constants;
+    private final Slots slots;
+
+    public ExprCompiler() {
+        this(new ParseTreeProperty<>());
+    }
+
+    public ExprCompiler(ParseTreeProperty<LittleValue> constants) {
+        this(constants, new Slots());
+    }
+
+    /** a compiler that resolves variables to their slots (for tables that share slots) */
+    public ExprCompiler(ParseTreeProperty<LittleValue> constants, Slots slots) {
+        this.constants = constants;
+        this.slots = slots;
+    }
+
+    public CompiledExpr compile(ExprContext ctx) {
+        return visit(ctx);
+    }
+
+    public NumberExpr number(ExprContext ctx) {
+        var folded = constants.get(ctx);
+        if (folded != null && folded.isNumber()) {
+            var value = folded.doubleValue();
+            return variables -> value;
+        } else if (folded != null) {
+            return unboxNumber(constant(folded), ctx);
+        } else if (ctx instanceof ParenExprContext paren) {
+            return number(paren.expr());
+        } else if (ctx instanceof NumberExprContext literal) {
+            var value = numberFromToken(literal);
+            return variables -> value;
+        } else if (ctx instanceof ExpExprContext exp) {
+            var base = number(exp.base);
+            var exponent = number(exp.exp);
+            return variables -> Math.pow(base.eval(variables), exponent.eval(variables));
+        } else if (ctx instanceof MulDivExprContext mulDiv) {
+            var lhs = number(mulDiv.lhs);
+            var rhs = number(mulDiv.rhs);
+            if (mulDiv.op.getType() == LittleCalcLexer.MUL) {
+                return variables -> lhs.eval(variables) * rhs.eval(variables);
+            }
+            return variables -> lhs.eval(variables) / rhs.eval(variables);
+        } else if (ctx instanceof AddSubExprContext addSub) {
+            var lhs = number(addSub.lhs);
+            var rhs = number(addSub.rhs);
+            if (addSub.op.getType() == LittleCalcLexer.ADD) {
+                return variables -> lhs.eval(variables) + rhs.eval(variables);
+            }
+            return variables -> lhs.eval(variables) - rhs.eval(variables);
+        } else if (ctx instanceof TernaryExprContext ternary) {
+            var cond = bool(ternary.cond);
+            var tv = number(ternary.tv);
+            var fv = number(ternary.fv);
+            return variables -> cond.eval(variables) ? tv.eval(variables) : fv.eval(variables);
+        }
+        // (doubleValue() reports a value of the wrong type)
+        return unboxNumber(visit(ctx), ctx);
+    }
+
+    public BoolExpr bool(ExprContext ctx) {
+        var folded = constants.get(ctx);
+        if (folded != null && folded.isBoolean()) {
+            var value = folded.bool();
+            return variables -> value;
+        } else if (folded != null) {
+            return unboxBool(constant(folded), ctx);
+        } else if (ctx instanceof ParenExprContext paren) {
+            return bool(paren.expr());
+        } else if (ctx instanceof TrueExprContext) {
+            return variables -> true;
+        } else if (ctx instanceof FalseExprContext) {
+            return variables -> false;
+        } else if (ctx instanceof NegationExprContext negation) {
+            var expr = bool(negation.expr());
+            return variables -> !expr.eval(variables);
+        } else if (ctx instanceof AndExprContext and) {
+            var lhs = bool(and.lhs);
+            var rhs = bool(and.rhs);
+            return variables -> lhs.eval(variables) && rhs.eval(variables);
+        } else if (ctx instanceof OrExprContext or) {
+            var lhs = bool(or.lhs);
+            var rhs = bool(or.rhs);
+            return variables -> lhs.eval(variables) || rhs.eval(variables);
+        } else if (ctx instanceof CompareExprContext compare) {
+            return compare(compare);
+        } else if (ctx instanceof EqualityExprContext equality) {
+            return equality(equality);
+        } else if (ctx instanceof TernaryExprContext ternary) {
+            var cond = bool(ternary.cond);
+            var tv = bool(ternary.tv);
+            var fv = bool(ternary.fv);
+            return variables -> cond.eval(variables) ? tv.eval(variables) : fv.eval(variables);
+        }
+        // (bool() reports a value of the wrong type)
+        return unboxBool(visit(ctx), ctx);
+    }
+
+    @Override
+    public CompiledExpr visit(ParseTree tree) {
+        var folded = constants.get(tree);
+        return folded != null ? constant(folded) : super.visit(tree);
+    }
+
+    @Override
+    public CompiledExpr visitIDExpr(IDExprContext ctx) {
+        var id = Symbol.of(ctx.ID().getSymbol());
+        var slot = slots.slot(id);
+        var line = line(ctx);
+        var column = column(ctx);
+        return variables -> {
+            var value = variables.find(id, slots, slot);
+            if (value == null) {
+                throw new LittleCalcRuntimeException(id + " has not been assigned a value", line, column);
+            }
+            return value;
+        };
+    }
+
+    @Override
+    public CompiledExpr visitExpExpr(ExpExprContext ctx) {
+        return numberValue(ctx);
+    }
+
+    @Override
+    public CompiledExpr visitParenExpr(ParenExprContext ctx) {
+        return visit(ctx.expr());
+    }
+
+    @Override
+    public CompiledExpr visitMulDivExpr(MulDivExprContext ctx) {
+        return numberValue(ctx);
+    }
+
+    @Override
+    public CompiledExpr visitAddSubExpr(AddSubExprContext ctx) {
+        return numberValue(ctx);
+    }
+
+    @Override
+    public CompiledExpr visitTernaryExpr(TernaryExprContext ctx) {
+        var cond = bool(ctx.cond);
+        var tv = visit(ctx.tv);
+        var fv = visit(ctx.fv);
+        return variables -> cond.eval(variables) ? tv.eval(variables) : fv.eval(variables);
+    }
+
+    @Override
+    public CompiledExpr visitCompareExpr(CompareExprContext ctx) {
+        return booleanValue(ctx);
+    }
+
+    @Override
+    public CompiledExpr visitEqualityExpr(EqualityExprContext ctx) {
+        return booleanValue(ctx);
+    }
+
+    @Override
+    public CompiledExpr visitNegationExpr(NegationExprContext ctx) {
+        return booleanValue(ctx);
+    }
+
+    @Override
+    public CompiledExpr visitAndExpr(AndExprContext ctx) {
+        return booleanValue(ctx);
+    }
+
+    @Override
+    public CompiledExpr visitOrExpr(OrExprContext ctx) {
+        return booleanValue(ctx);
+    }
+
+    @Override
+    public CompiledExpr visitNumberExpr(NumberExprContext ctx) {
+        return constant(LittleValue.numberValue(numberFromToken(ctx)));
+    }
+
+    @Override
+    public CompiledExpr visitTrueExpr(TrueExprContext ctx) {
+        return constant(LittleValue.booleanValue(true));
+    }
+
+    @Override
+    public CompiledExpr visitFalseExpr(FalseExprContext ctx) {
+        return constant(LittleValue.booleanValue(false));
+    }
+
+    @Override
+    public CompiledExpr visitStringExpr(StringExprContext ctx) {
+        var text = ctx.STRING().getText();
+        var trimmed = text.substring(1, text.length() - 1);
+        return constant(LittleValue.stringValue(trimmed.replace("\\\"", "\"").replace("\\'", "'")));
+    }
+
+    private BoolExpr compare(CompareExprContext ctx) {
+        var op = LVComparableOp.fromToken(ctx.op);
+        if (ExprTypes.isNumber(ctx.lhs) && ExprTypes.isNumber(ctx.rhs)) {
+            // Double.compare() orders the same way as LVNumber's compareTo() (unlike <, <=, etc.)
+            var lhs = number(ctx.lhs);
+            var rhs = number(ctx.rhs);
+            return switch (op) {
+                case LT -> variables -> Double.compare(lhs.eval(variables), rhs.eval(variables)) < 0;
+                case LE -> variables -> Double.compare(lhs.eval(variables), rhs.eval(variables)) <= 0;
+                case GT -> variables -> Double.compare(lhs.eval(variables), rhs.eval(variables)) > 0;
+                case GE -> variables -> Double.compare(lhs.eval(variables), rhs.eval(variables)) >= 0;
+            };
+        }
+        var lhs = visit(ctx.lhs);
+        var rhs = visit(ctx.rhs);
+        var line = line(ctx.lhs);
+        var column = column(ctx.lhs);
+        return variables -> {
+            var lhsValue = lhs.eval(variables);
+            var rhsValue = rhs.eval(variables);
+            try {
+                return lhsValue.evalCompare(op, rhsValue);
+            } catch (LittleCalcRuntimeException e) {
+                throw e.at(line, column);
+            }
+        };
+    }
+
+    private BoolExpr equality(EqualityExprContext ctx) {
+        var op = LVEquatableOp.fromToken(ctx.op);
+        var isEQ = op == LVEquatableOp.EQ;
+        if (ExprTypes.isNumber(ctx.lhs) && ExprTypes.isNumber(ctx.rhs)) {
+            var lhs = number(ctx.lhs);
+            var rhs = number(ctx.rhs);
+            return variables -> (Double.compare(lhs.eval(variables), rhs.eval(variables)) == 0) == isEQ;
+        }
+        if (ExprTypes.isBool(ctx.lhs) && ExprTypes.isBool(ctx.rhs)) {
+            var lhs = bool(ctx.lhs);
+            var rhs = bool(ctx.rhs);
+            return variables -> (lhs.eval(variables) == rhs.eval(variables)) == isEQ;
+        }
+        var lhs = visit(ctx.lhs);
+        var rhs = visit(ctx.rhs);
+        return variables -> lhs.eval(variables).evalEquality(op, rhs.eval(variables));
+    }
+
+    private CompiledExpr numberValue(ExprContext ctx) {
+        var number = number(ctx);
+        return variables -> LittleValue.numberValue(number.eval(variables));
+    }
+
+    private CompiledExpr booleanValue(ExprContext ctx) {
+        var bool = bool(ctx);
+        return variables -> LittleValue.booleanValue(bool.eval(variables));
+    }
+
+    // (a value of the wrong type is reported at the operand that produced it)
+    private static NumberExpr unboxNumber(CompiledExpr value, ExprContext ctx) {
+        var line = line(ctx);
+        var column = column(ctx);
+        return variables -> {
+            var operand = value.eval(variables);
+            try {
+                return operand.doubleValue();
+            } catch (LittleCalcRuntimeException e) {
+                throw e.at(line, column);
+            }
+        };
+    }
+
+    private static BoolExpr unboxBool(CompiledExpr value, ExprContext ctx) {
+        var line = line(ctx);
+        var column = column(ctx);
+        return variables -> {
+            var operand = value.eval(variables);
+            try {
+                return operand.bool();
+            } catch (LittleCalcRuntimeException e) {
+                throw e.at(line, column);
+            }
+        };
+    }
+
+    private static double numberFromToken(NumberExprContext ctx) {
+        return Double.parseDouble(ctx.NUMBER().getText().replace("_", ""));
+    }
+
+    // values are immutable, so a literal's value can be created once
+    private static CompiledExpr constant(LittleValue value) {
+        return variables -> value;
+    }
+
+    private static int line(ParserRuleContext ctx) {
+        Token tk = ctx.getStart();
+        return tk.getLine();
+    }
+
+    private static int column(ParserRuleContext ctx) {
+        Token tk = ctx.getStart();
+        return tk.getCharPositionInLine();
+    }
+}
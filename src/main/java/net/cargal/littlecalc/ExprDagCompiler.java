@@ -0,0 +1,253 @@
+package net.cargal.littlecalc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.antlr.v4.runtime.tree.ParseTreeProperty;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import net.cargal.littlecalc.LittleCalcParser.ExprContext;
+import net.cargal.littlecalc.LittleCalcParser.FalseExprContext;
+import net.cargal.littlecalc.LittleCalcParser.IDExprContext;
+import net.cargal.littlecalc.LittleCalcParser.NumberExprContext;
+import net.cargal.littlecalc.LittleCalcParser.ParenExprContext;
+import net.cargal.littlecalc.LittleCalcParser.StringExprContext;
+import net.cargal.littlecalc.LittleCalcParser.TrueExprContext;
+import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
+
+/**
+ * An ExprCompiler that hash-conses the operators of everything it compiles into
+ * a DAG: structurally identical sub-expressions (wherever they are, in
+ * whichever expression) share one node, which remembers its value (as a double
+ * or boolean) until a variable it reads is assigned a different value.
+ *
+ * Positions aren't part of a node, so the values of a shared node are only
+ * boxed (with their positions) by each expression that uses them, and if a
+ * shared node fails, the expression that used it is evaluated again without
+ * sharing, so the error is reported where it happened.
+ *
+ * Nodes remember the last values they saw, so, unlike ExprCompiler's
+ * CompiledExprs, what it compiles can't be evaluated by more than one thread.
+ * A compiler (and what it compiles) refers to the parse trees it compiled, so
+ * it should only live as long as they do (EvalMode.MEMOIZED has one for each
+ * script).
+ */
+public class ExprDagCompiler extends ExprCompiler {
+    private final ParseTreeProperty<LittleValue> constants;
+    private final Slots slots;
+    private final ExprCompiler unshared;
+    private final ParseTreeProperty<Node> nodes = new ParseTreeProperty<>();
+    private final Map<String, Node> nodesByKey = new HashMap<>();
+    private final List<MemoNumber> numbers = new ArrayList<>();
+    private final List<MemoBool> bools = new ArrayList<>();
+    private int evaluations = 0;
+
+    // a node of the DAG, and the variables it (or any node below it) reads
+    private record Node(int id, Symbol[] reads) {
+    }
+
+    public ExprDagCompiler() {
+        this(new ParseTreeProperty<>());
+    }
+
+    public ExprDagCompiler(ParseTreeProperty<LittleValue> constants) {
+        this(constants, new Slots());
+    }
+
+    public ExprDagCompiler(ParseTreeProperty<LittleValue> constants, Slots slots) {
+        super(constants, slots);
+        this.constants = constants;
+        this.slots = slots;
+        unshared = new ExprCompiler(constants, slots);
+    }
+
+    @Override
+    public NumberExpr number(ExprContext ctx) {
+        if (!isOperator(ctx)) {
+            return super.number(ctx);
+        }
+        var node = node(ctx);
+        while (numbers.size() <= node.id()) {
+            numbers.add(null);
+        }
+        var shared = numbers.get(node.id());
+        if (shared == null) {
+            // (not computeIfAbsent(), since compiling it compiles (and adds) the nodes below it)
+            shared = new MemoNumber(super.number(ctx), node.reads());
+            numbers.set(node.id(), shared);
+        }
+        var memo = shared;
+        return variables -> {
+            try {
+                return memo.eval(variables);
+            } catch (LittleCalcRuntimeException e) {
+                return unshared.number(ctx).eval(variables);
+            }
+        };
+    }
+
+    @Override
+    public BoolExpr bool(ExprContext ctx) {
+        if (!isOperator(ctx)) {
+            return super.bool(ctx);
+        }
+        var node = node(ctx);
+        while (bools.size() <= node.id()) {
+            bools.add(null);
+        }
+        var shared = bools.get(node.id());
+        if (shared == null) {
+            shared = new MemoBool(super.bool(ctx), node.reads());
+            bools.set(node.id(), shared);
+        }
+        var memo = shared;
+        return variables -> {
+            try {
+                return memo.eval(variables);
+            } catch (LittleCalcRuntimeException e) {
+                return unshared.bool(ctx).eval(variables);
+            }
+        };
+    }
+
+    /** the number of distinct nodes */
+    int size() {
+        return nodesByKey.size();
+    }
+
+    /** how many times shared nodes have been (re)evaluated */
+    int evaluations() {
+        return evaluations;
+    }
+
+    private boolean isOperator(ExprContext ctx) {
+        return constants.get(ctx) == null && !(ctx instanceof ParenExprContext || ctx instanceof NumberExprContext
+                || ctx instanceof TrueExprContext || ctx instanceof FalseExprContext
+                || ctx instanceof StringExprContext || ctx instanceof IDExprContext);
+    }
+
+    private Node node(ExprContext ctx) {
+        var node = nodes.get(ctx);
+        if (node != null) {
+            return node;
+        }
+        if (ctx instanceof ParenExprContext paren) {
+            node = node(paren.expr());
+        } else {
+            var key = new StringBuilder(leafKey(ctx));
+            var reads = new LinkedHashSet<Symbol>();
+            if (ctx instanceof IDExprContext id) {
+                reads.add(Symbol.of(id.ID().getSymbol()));
+            }
+            if (constants.get(ctx) == null) {
+                for (var operand : ctx.getRuleContexts(ExprContext.class)) {
+                    var operandNode = node(operand);
+                    key.append(' ').append(operandNode.id());
+                    reads.addAll(List.of(operandNode.reads()));
+                }
+            }
+            node = nodesByKey.get(key.toString());
+            if (node == null) {
+                node = new Node(nodesByKey.size(), reads.toArray(new Symbol[0]));
+                nodesByKey.put(key.toString(), node);
+            }
+        }
+        nodes.put(ctx, node);
+        return node;
+    }
+
+    // identifies the node, apart from its operands
+    private String leafKey(ExprContext ctx) {
+        var folded = constants.get(ctx);
+        if (folded != null) {
+            return folded.type() + ":" + folded;
+        } else if (ctx instanceof IDExprContext id) {
+            return "id:" + Symbol.of(id.ID().getSymbol()).id();
+        } else if (ctx instanceof NumberExprContext || ctx instanceof TrueExprContext
+                || ctx instanceof FalseExprContext || ctx instanceof StringExprContext) {
+            var value = unshared.compile(ctx).eval(null);
+            return value.type() + ":" + value;
+        }
+        // the operator's rule, and token (if it has one)
+        var op = ctx.getChildCount() > 1 && ctx.getChild(1) instanceof TerminalNode terminal
+                ? terminal.getSymbol().getType()
+                : -1;
+        return ctx.getClass().getSimpleName() + ":" + op;
+    }
+
+    private abstract class Memo {
+        private final Symbol[] reads;
+        private final int[] readSlots;
+        private final LittleValue[] seen;
+        private boolean valid = false;
+
+        Memo(Symbol[] reads) {
+            this.reads = reads;
+            readSlots = new int[reads.length];
+            for (int i = 0; i < reads.length; i++) {
+                readSlots[i] = slots.slot(reads[i]);
+            }
+            seen = new LittleValue[reads.length];
+        }
+
+        // whether the variables it reads still have the values they had when it was evaluated
+        boolean isValid(SymbolTable<LittleValue> variables) {
+            if (!valid) {
+                return false;
+            }
+            for (int i = 0; i < reads.length; i++) {
+                if (variables.find(reads[i], slots, readSlots[i]) != seen[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void evaluated(SymbolTable<LittleValue> variables) {
+            for (int i = 0; i < reads.length; i++) {
+                seen[i] = variables.find(reads[i], slots, readSlots[i]);
+            }
+            valid = true;
+            evaluations++;
+        }
+    }
+
+    private final class MemoNumber extends Memo {
+        private final NumberExpr expr;
+        private double value;
+
+        MemoNumber(NumberExpr expr, Symbol[] reads) {
+            super(reads);
+            this.expr = expr;
+        }
+
+        double eval(SymbolTable<LittleValue> variables) {
+            if (!isValid(variables)) {
+                value = expr.eval(variables);
+                evaluated(variables);
+            }
+            return value;
+        }
+    }
+
+    private final class MemoBool extends Memo {
+        private final BoolExpr expr;
+        private boolean value;
+
+        MemoBool(BoolExpr expr, Symbol[] reads) {
+            super(reads);
+            this.expr = expr;
+        }
+
+        boolean eval(SymbolTable<LittleValue> variables) {
+            if (!isValid(variables)) {
+                value = expr.eval(variables);
+                evaluated(variables);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package net.cargal.littlecalc;
+
+import net.cargal.littlecalc.LittleCalcParser.ExprContext;
+
+@FunctionalInterface
+public interface ExprEvaluator {
+    LittleValue evaluate(ExprContext ctx);
+}
@@ -0,0 +1,52 @@
+package net.cargal.littlecalc;
+
+import net.cargal.littlecalc.LittleCalcParser.AddSubExprContext;
+import net.cargal.littlecalc.LittleCalcParser.AndExprContext;
+import net.cargal.littlecalc.LittleCalcParser.CompareExprContext;
+import net.cargal.littlecalc.LittleCalcParser.EqualityExprContext;
+import net.cargal.littlecalc.LittleCalcParser.ExpExprContext;
+import net.cargal.littlecalc.LittleCalcParser.ExprContext;
+import net.cargal.littlecalc.LittleCalcParser.FalseExprContext;
+import net.cargal.littlecalc.LittleCalcParser.MulDivExprContext;
+import net.cargal.littlecalc.LittleCalcParser.NegationExprContext;
+import net.cargal.littlecalc.LittleCalcParser.NumberExprContext;
+import net.cargal.littlecalc.LittleCalcParser.OrExprContext;
+import net.cargal.littlecalc.LittleCalcParser.ParenExprContext;
+import net.cargal.littlecalc.LittleCalcParser.TernaryExprContext;
+import net.cargal.littlecalc.LittleCalcParser.TrueExprContext;
+
+/**
+ * The types the compilers can count on from an expression's form alone (the
+ * result of an arithmetic operator is always a number, whatever its operands
+ * turn out to be), so they can keep its value unboxed.
+ */
+final class ExprTypes {
+
+    private ExprTypes() {
+    }
+
+    // whether the expression's value (if it has one) is always a number
+    static boolean isNumber(ExprContext ctx) {
+        if (ctx instanceof ParenExprContext paren) {
+            return isNumber(paren.expr());
+        }
+        if (ctx instanceof TernaryExprContext ternary) {
+            return isNumber(ternary.tv) && isNumber(ternary.fv);
+        }
+        return ctx instanceof NumberExprContext || ctx instanceof ExpExprContext || ctx instanceof MulDivExprContext
+                || ctx instanceof AddSubExprContext;
+    }
+
+    // whether the expression's value (if it has one) is always a boolean
+    static boolean isBool(ExprContext ctx) {
+        if (ctx instanceof ParenExprContext paren) {
+            return isBool(paren.expr());
+        }
+        if (ctx instanceof TernaryExprContext ternary) {
+            return isBool(ternary.tv) && isBool(ternary.fv);
+        }
+        return ctx instanceof TrueExprContext || ctx instanceof FalseExprContext || ctx instanceof NegationExprContext
+                || ctx instanceof AndExprContext || ctx instanceof OrExprContext
+                || ctx instanceof CompareExprContext || ctx instanceof EqualityExprContext;
+    }
+}
@@ -0,0 +1,62 @@
+package net.cargal.littlecalc;
+
+import org.antlr.v4.runtime.TokenStream;
+
+import net.cargal.littlecalc.LittleCalcParser.CalcInContext;
+import net.cargal.littlecalc.LittleCalcParser.ReplInContext;
+import net.cargal.littlecalc.LittleCalcParser.StmtContext;
+
+public enum FrontEnd {
+    ANTLR {
+        @Override
+        public LittleCalcParser parser(TokenStream tokenStream) {
+            return new LittleCalcParser(tokenStream);
+        }
+
+        @Override
+        public CalcInContext calcIn(LittleCalcParser parser) {
+            return parser.calcIn();
+        }
+
+        @Override
+        public ReplInContext replIn(LittleCalcParser parser) {
+            return parser.replIn();
+        }
+
+        @Override
+        public StmtContext stmt(LittleCalcParser parser) {
+            return parser.stmt();
+        }
+    },
+    PRATT {
+        @Override
+        public LittleCalcParser parser(TokenStream tokenStream) {
+            return new LittleCalcPrattParser(tokenStream);
+        }
+
+        @Override
+        public CalcInContext calcIn(LittleCalcParser parser) {
+            return ((LittleCalcPrattParser) parser).parseCalcIn();
+        }
+
+        @Override
+        public ReplInContext replIn(LittleCalcParser parser) {
+            return ((LittleCalcPrattParser) parser).parseReplIn();
+        }
+
+        @Override
+        public StmtContext stmt(LittleCalcParser parser) {
+            return ((LittleCalcPrattParser) parser).parseStmt();
+        }
+    };
+
+    public abstract LittleCalcParser parser(TokenStream tokenStream);
+
+    // only valid for a parser created by this FrontEnd
+    public abstract CalcInContext calcIn(LittleCalcParser parser);
+
+    public abstract ReplInContext replIn(LittleCalcParser parser);
+
+    // a single statement, for streaming execution
+    public abstract StmtContext stmt(LittleCalcParser parser);
+}
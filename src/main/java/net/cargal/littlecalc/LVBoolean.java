@@ -4,16 +4,16 @@ import net.cargal.littlecalc.exceptions.LittleCalcImplementationException;
 import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
 
 public class LVBoolean extends LittleValue {
-    private final Boolean value;
+    public static final LVBoolean TRUE = new LVBoolean(true);
+    public static final LVBoolean FALSE = new LVBoolean(false);
 
-    public LVBoolean(Boolean value, int line, int column) {
-        super(line, column);
+    private final boolean value;
+
+    // (there are only TRUE and FALSE)
+    private LVBoolean(boolean value) {
         this.value = value;
     }
 
-    public static final LVBoolean TRUE = new LVBoolean(true, 0, 0);
-    public static final LVBoolean FALSE = new LVBoolean(false, 0, 0);
-
     @Override
     protected Object getValueObject() {
         return value;
@@ -42,18 +42,16 @@ public class LVBoolean extends LittleValue {
     @Override
     public boolean evalCompare(LVComparableOp op, LittleValue rhs) {
         throw new LittleCalcRuntimeException(
-                "Comparison operator ('" + op.getText() + "') is not valid for BOOLEAN values", line, column);
+                "Comparison operator ('" + op.getText() + "') is not valid for BOOLEAN values");
     }
 
     @Override
     public boolean equals(Object obj) {
-        if (!(obj instanceof LVBoolean))
-            return false;
-        return bool() == ((LittleValue) obj).bool();
+        return obj == this;
     }
 
     @Override
     public int hashCode() {
-        return value.hashCode();
+        return Boolean.hashCode(value);
     }
 }
@@ -1,10 +1,9 @@
 package net.cargal.littlecalc;
 
 public class LVNumber extends LittleValue {
-    private final Double value;
+    private final double value;
 
-    public LVNumber(Double value, int line, int column) {
-        super(line, column);
+    LVNumber(double value) {
         this.value = value;
     }
 
@@ -23,6 +22,11 @@ public class LVNumber extends LittleValue {
         return value;
     }
 
+    @Override
+    public double doubleValue() {
+        return value;
+    }
+
     @Override
     public LVType type() {
         return LVNumberType.INSTANCE;
@@ -30,18 +34,19 @@ public class LVNumber extends LittleValue {
 
     @Override
     public int compareTo(LittleValue o) {
-        return number().compareTo(o.number());
+        return Double.compare(value, o.doubleValue());
     }
 
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof LVNumber))
             return false;
-        return number().equals(((LittleValue) obj).number());
+        // (Double's equality, so NaN equals NaN, and 0.0 doesn't equal -0.0)
+        return Double.compare(value, ((LittleValue) obj).doubleValue()) == 0;
     }
 
     @Override
     public int hashCode() {
-        return value.hashCode();
+        return Double.hashCode(value);
     }
 }
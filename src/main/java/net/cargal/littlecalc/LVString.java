@@ -3,8 +3,7 @@ package net.cargal.littlecalc;
 public class LVString extends LittleValue {
     private final String value;
 
-    public LVString(String value, int line, int column) {
-        super(line, column);
+    LVString(String value) {
         this.value = value;
     }
 
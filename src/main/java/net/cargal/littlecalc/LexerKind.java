@@ -0,0 +1,22 @@
+package net.cargal.littlecalc;
+
+import org.antlr.v4.runtime.CharStream;
+
+public enum LexerKind {
+    ANTLR {
+        @Override
+        public LittleCalcLexer lexer(CharStream charStream, boolean needHiddenTokens) {
+            return new LittleCalcLexer(charStream);
+        }
+    },
+    HAND_WRITTEN {
+        @Override
+        public LittleCalcLexer lexer(CharStream charStream, boolean needHiddenTokens) {
+            var lexer = new LittleCalcFastLexer(charStream);
+            lexer.setSkipHidden(!needHiddenTokens);
+            return lexer;
+        }
+    };
+
+    public abstract LittleCalcLexer lexer(CharStream charStream, boolean needHiddenTokens);
+}
@@ -1,29 +1,216 @@
 package net.cargal.littlecalc;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
 
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenFactory;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.UnbufferedCharStream;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
+import org.antlr.v4.runtime.misc.Interval;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
+import net.cargal.littlecalc.exceptions.LittleCalcCompileException;
+
 public class LittleCalc {
+    private static final String STREAM_OPTION = "--stream";
+    private static final String CSV_OPTION = "--csv";
+    private static final int CACHED_SCRIPTS = 100;
+    private static final long CACHED_WEIGHT = 1 << 20;
+
+    private ParseStrategy parseStrategy = ParseStrategy.SLL_THEN_LL;
+    private FrontEnd frontEnd = FrontEnd.ANTLR;
+    private LexerKind lexerKind = LexerKind.ANTLR;
+    private EvalMode evalMode = EvalMode.COMPILED;
+    private boolean optimizing = true;
+    private ScriptCache scriptCache = null;
+    private int cachedScripts = 0;
+    private long cachedWeight = 0;
+
     public static void main(String... args) throws IOException {
-        new LittleCalc().run(CharStreams.fromFileName("./little.ltl"));
+        DFACache.loadIfPresent(DFACache.defaultCacheFile());
+        if (args.length == 2 && STREAM_OPTION.equals(args[0])) {
+            try (var reader = Files.newBufferedReader(Path.of(args[1]))) {
+                new LittleCalc().runStreaming(reader);
+            }
+            return;
+        }
+        // --csv script input.csv output.csv outputs (comma separated)
+        if (args.length == 5 && CSV_OPTION.equals(args[0])) {
+            boolean valid;
+            try (var input = Files.newBufferedReader(Path.of(args[2]));
+                    var output = Files.newBufferedWriter(Path.of(args[3]))) {
+                valid = new LittleCalc().runCsv(MappedCharStream.fromPath(Path.of(args[1])), input, output,
+                        Arrays.stream(args[4].split(",")).map(String::trim).toList());
+            }
+            // (after the files are closed)
+            if (!valid) {
+                System.exit(1);
+            }
+            return;
+        }
+        var lc = new LittleCalc();
+        lc.setScriptCache(CACHED_SCRIPTS, CACHED_WEIGHT);
+        lc.run(MappedCharStream.fromPath(Path.of("./little.ltl")));
+    }
+
+    public void setParseStrategy(ParseStrategy parseStrategy) {
+        this.parseStrategy = parseStrategy;
+        newScriptCache();
+    }
+
+    public void setFrontEnd(FrontEnd frontEnd) {
+        this.frontEnd = frontEnd;
+        newScriptCache();
+    }
+
+    public void setLexerKind(LexerKind lexerKind) {
+        this.lexerKind = lexerKind;
+        newScriptCache();
+    }
+
+    public void setEvalMode(EvalMode evalMode) {
+        this.evalMode = evalMode;
+    }
+
+    public void setOptimizing(boolean optimizing) {
+        this.optimizing = optimizing;
+        newScriptCache();
+    }
+
+    /**
+     * run() keeps up to maxScripts valid scripts (of up to maxWeight in all,
+     * see ScriptCache), compiled with these settings, so a script that's run
+     * again isn't parsed and validated again (0 scripts turns the cache off).
+     * Changing a setting that compiling depends on empties the cache.
+     */
+    public void setScriptCache(int maxScripts, long maxWeight) {
+        cachedScripts = maxScripts;
+        cachedWeight = maxWeight;
+        newScriptCache();
+    }
+
+    /** the cache run() uses (or null) */
+    public ScriptCache getScriptCache() {
+        return scriptCache;
+    }
+
+    private void newScriptCache() {
+        if (cachedScripts == 0) {
+            scriptCache = null;
+            return;
+        }
+        var engine = new LittleCalcEngine();
+        engine.setParseStrategy(parseStrategy);
+        engine.setFrontEnd(frontEnd);
+        engine.setLexerKind(lexerKind);
+        engine.setOptimizing(optimizing);
+        scriptCache = new ScriptCache(engine, cachedScripts, cachedWeight);
     }
 
     public void run(CharStream charStream) {
-        var lexer = new LittleCalcLexer(charStream);
+        if (scriptCache != null) {
+            runCached(charStream.getText(Interval.of(0, charStream.size() - 1)));
+            return;
+        }
+        runUncached(charStream);
+    }
+
+    private void runUncached(CharStream charStream) {
+        // calcIn has no ANTLR utilities, so nothing needs the hidden tokens
+        var lexer = lexerKind.lexer(charStream, false);
         var tokenStream = new CommonTokenStream(lexer);
-        var parser = new LittleCalcParser(tokenStream);
+        var parser = frontEnd.parser(tokenStream);
         var listener = new LittleCalcSemanticValidationListener();
 
-        var calcIn = parser.calcIn();
+        var calcIn = parseStrategy.parse(parser, frontEnd::calcIn);
         if (parser.getNumberOfSyntaxErrors() == 0) {
             ParseTreeWalker.DEFAULT.walk(listener, calcIn);
             if (!listener.hasErrors()) {
-                new LittleCalcExecutionVisitor().visit(calcIn);
+                var executionVisitor = new LittleCalcExecutionVisitor(listener.getSlots());
+                executionVisitor.setEvalMode(evalMode);
+                if (optimizing) {
+                    var optimizer = new LittleCalcOptimizer();
+                    optimizer.visit(calcIn);
+                    executionVisitor.setOptimizer(optimizer);
+                }
+                executionVisitor.visit(calcIn);
             }
         }
     }
-}
\ No newline at end of file
+
+    private void runCached(String source) {
+        CompiledScript script;
+        try {
+            script = scriptCache.get(source);
+        } catch (LittleCalcCompileException e) {
+            // (scripts with errors aren't cached, so this reports them just as an uncached run does)
+            runUncached(CharStreams.fromString(source));
+            return;
+        }
+        var executionVisitor = new LittleCalcExecutionVisitor(script.slots());
+        executionVisitor.setEvalMode(evalMode);
+        if (evalMode == EvalMode.REGISTER_VM) {
+            // (it's already compiled)
+            executionVisitor.runProgram(script.program());
+            return;
+        }
+        if (script.optimizer() != null) {
+            executionVisitor.setOptimizer(script.optimizer());
+        }
+        executionVisitor.visit(script.calcIn());
+    }
+
+    /**
+     * Lexes, parses, validates and executes one statement at a time, so memory
+     * use doesn't grow with the size of the script, and output starts with the
+     * first statement. Unlike run(), the statements before a syntax or semantic
+     * error have already been executed when it's reported.
+     */
+    public void runStreaming(Reader reader) {
+        var lexer = lexerKind.lexer(new UnbufferedCharStream(reader), false);
+        // the characters are gone once a token has been lexed, so tokens keep a copy of their text
+        lexer.setTokenFactory(new CommonTokenFactory(true));
+        var tokenStream = new UnbufferedTokenStream<>(new OnChannelTokenSource(lexer, Token.DEFAULT_CHANNEL));
+        var parser = frontEnd.parser(tokenStream);
+        var listener = new LittleCalcSemanticValidationListener();
+        var executionVisitor = new LittleCalcExecutionVisitor(listener.getSlots());
+        executionVisitor.setEvalMode(evalMode);
+
+        while (tokenStream.LA(1) != Token.EOF) {
+            var stmt = parseStrategy.parse(parser, frontEnd::stmt);
+            if (parser.getNumberOfSyntaxErrors() != 0) {
+                return;
+            }
+            ParseTreeWalker.DEFAULT.walk(listener, stmt);
+            if (listener.hasErrors()) {
+                return;
+            }
+            executionVisitor.visit(stmt);
+            listener.reset();
+        }
+    }
+
+    /**
+     * Runs a script's assignments for each row of a CSV file (see CsvBatch),
+     * and writes the outputs' values for each row. Returns false if the script
+     * has syntax errors, or isn't valid for the types of the file's columns.
+     */
+    public boolean runCsv(CharStream script, Reader input, Writer output, List<String> outputs) throws IOException {
+        var lexer = lexerKind.lexer(script, false);
+        var parser = frontEnd.parser(new CommonTokenStream(lexer));
+        var calcIn = parseStrategy.parse(parser, frontEnd::calcIn);
+        if (parser.getNumberOfSyntaxErrors() != 0) {
+            return false;
+        }
+        return new CsvBatch(calcIn, evalMode).run(input, output, outputs);
+    }
+}
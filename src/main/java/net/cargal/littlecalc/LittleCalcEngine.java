@@ -0,0 +1,133 @@
+package net.cargal.littlecalc;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+
+import net.cargal.littlecalc.LittleCalcParser.AssignmentStmtContext;
+import net.cargal.littlecalc.LittleCalcParser.CalcInContext;
+import net.cargal.littlecalc.LittleCalcParser.IDExprContext;
+import net.cargal.littlecalc.exceptions.LittleCalcCompileException;
+import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
+
+/**
+ * Compiles scripts for embedding: compile() lexes, parses, validates and
+ * optimizes a script once, and returns a CompiledScript that can be evaluated
+ * any number of times (from any number of threads), with its output returned
+ * rather than printed.
+ *
+ * Errors are thrown (as a LittleCalcCompileException with all of them), not
+ * printed. A script's inputs (the variables it reads without assigning them)
+ * have to be declared, with their types, so it can be validated, and eval()
+ * only has to bind the ones it reads.
+ */
+public class LittleCalcEngine {
+    private ParseStrategy parseStrategy = ParseStrategy.SLL_THEN_LL;
+    private FrontEnd frontEnd = FrontEnd.ANTLR;
+    private LexerKind lexerKind = LexerKind.ANTLR;
+    private boolean optimizing = true;
+
+    public void setParseStrategy(ParseStrategy parseStrategy) {
+        this.parseStrategy = parseStrategy;
+    }
+
+    public void setFrontEnd(FrontEnd frontEnd) {
+        this.frontEnd = frontEnd;
+    }
+
+    public void setLexerKind(LexerKind lexerKind) {
+        this.lexerKind = lexerKind;
+    }
+
+    public void setOptimizing(boolean optimizing) {
+        this.optimizing = optimizing;
+    }
+
+    /** compiles a script that has no inputs */
+    public CompiledScript compile(String source) {
+        return compile(source, Map.of());
+    }
+
+    public CompiledScript compile(String source, Map<String, LVType> inputs) {
+        var errors = new ArrayList<String>();
+        var errorListener = new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
+                    int charPositionInLine, String msg, RecognitionException e) {
+                errors.add(LittleCalcRuntimeException.message(msg, line, charPositionInLine));
+            }
+        };
+        var lexer = lexerKind.lexer(CharStreams.fromString(source), false);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(errorListener);
+        var parser = frontEnd.parser(new CommonTokenStream(lexer));
+        parser.removeErrorListeners();
+        parser.addErrorListener(errorListener);
+        var calcIn = parseStrategy.parse(parser, frontEnd::calcIn);
+        if (!errors.isEmpty()) {
+            throw new LittleCalcCompileException(errors);
+        }
+
+        var types = new SymbolTable<LVType>();
+        var inputSymbols = new LinkedHashMap<Symbol, LVType>();
+        inputs.forEach((name, type) -> {
+            types.put(Symbol.intern(name), type);
+            inputSymbols.put(Symbol.intern(name), type);
+        });
+        var listener = new LittleCalcSemanticValidationListener(types);
+        listener.setPrintingErrors(false);
+        ParseTreeWalker.DEFAULT.walk(listener, calcIn);
+        if (listener.hasErrors()) {
+            throw new LittleCalcCompileException(listener.getErrorMessages());
+        }
+
+        RegisterProgram program;
+        LittleCalcOptimizer optimizer = null;
+        if (optimizing) {
+            optimizer = new LittleCalcOptimizer();
+            optimizer.visit(calcIn);
+            // (only the constants: a dead store's value is still one of the results)
+            program = new RegisterCompiler(optimizer.getConstants()).compile(calcIn);
+        } else {
+            program = new RegisterCompiler().compile(calcIn);
+        }
+        return new CompiledScript(program, inputSymbols, required(calcIn, inputSymbols.keySet()), types.slots(),
+                calcIn, optimizer);
+    }
+
+    // the inputs the script reads before it assigns them (in either branch of a ternary)
+    private static Set<Symbol> required(CalcInContext calcIn, Set<Symbol> inputs) {
+        var required = new HashSet<Symbol>();
+        var assigned = new HashSet<Symbol>();
+        for (var stmt : calcIn.stmts().stmt()) {
+            addReads(stmt, inputs, assigned, required);
+            if (stmt instanceof AssignmentStmtContext assignment) {
+                assigned.add(Symbol.of(assignment.ID().getSymbol()));
+            }
+        }
+        return required;
+    }
+
+    private static void addReads(ParseTree tree, Set<Symbol> inputs, Set<Symbol> assigned, Set<Symbol> required) {
+        if (tree instanceof IDExprContext id) {
+            var symbol = Symbol.of(id.ID().getSymbol());
+            if (inputs.contains(symbol) && !assigned.contains(symbol)) {
+                required.add(symbol);
+            }
+            return;
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            addReads(tree.getChild(i), inputs, assigned, required);
+        }
+    }
+}
@@ -12,6 +12,7 @@ import org.tinylog.Logger;
 
 import net.cargal.littlecalc.LittleCalcParser.AddSubExprContext;
 import net.cargal.littlecalc.LittleCalcParser.AssignmentStmtContext;
+import net.cargal.littlecalc.LittleCalcParser.CalcInContext;
 import net.cargal.littlecalc.LittleCalcParser.EqualityExprContext;
 import net.cargal.littlecalc.LittleCalcParser.GUIUtilContext;
 import net.cargal.littlecalc.LittleCalcParser.ImplicitPrintStmtContext;
@@ -19,13 +20,17 @@ import net.cargal.littlecalc.LittleCalcParser.MulDivExprContext;
 import net.cargal.littlecalc.LittleCalcParser.PrintStmtContext;
 import net.cargal.littlecalc.LittleCalcParser.PrintVarsContext;
 import net.cargal.littlecalc.LittleCalcParser.RefactorUtilContext;
+import net.cargal.littlecalc.LittleCalcParser.ReplStmtsContext;
 import net.cargal.littlecalc.LittleCalcParser.TokensUtilContext;
 import net.cargal.littlecalc.LittleCalcParser.TreeUtilContext;
+import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
 
 public class LittleCalcExecutionVisitor extends LittleCalcBaseVisitor<Void> {
-    protected final LittleCalcExprVisitor exprVisitor;
+    protected ExprEvaluator exprEvaluator;
+    private EvalMode evalMode = EvalMode.COMPILED;
+    private LittleCalcOptimizer optimizer = new LittleCalcOptimizer();
 
-    protected final SymbolTable<LittleValue> variables = new SymbolTable<>();
+    protected final SymbolTable<LittleValue> variables;
     private Parser parser;
     private TokenStreamRewriter rewriter;
 
@@ -48,7 +53,16 @@ public class LittleCalcExecutionVisitor extends LittleCalcBaseVisitor<Void> {
     private ParseTreePattern times0PatternB;
 
     public LittleCalcExecutionVisitor(Parser parser) {
-        this();
+        this(parser, new Slots());
+    }
+
+    /** an executor whose frame is indexed by slots (shared with the validator) */
+    public LittleCalcExecutionVisitor(Parser parser, Slots slots) {
+        this(parser, new SymbolTable<>(slots));
+    }
+
+    public LittleCalcExecutionVisitor(Parser parser, SymbolTable<LittleValue> variables) {
+        this(variables);
         this.parser = parser;
         eqTruePattern = parser.compileParseTreePattern("<expr> == <TRUE>", LittleCalcParser.RULE_expr);
         neTruePattern = parser.compileParseTreePattern("<expr> != <TRUE>", LittleCalcParser.RULE_expr);
@@ -64,28 +78,105 @@ public class LittleCalcExecutionVisitor extends LittleCalcBaseVisitor<Void> {
     }
 
     public LittleCalcExecutionVisitor() {
-        exprVisitor = new LittleCalcExprVisitor(variables);
+        this(new Slots());
+    }
+
+    public LittleCalcExecutionVisitor(Slots slots) {
+        this(new SymbolTable<>(slots));
+    }
+
+    /** an executor that keeps its variables in a table of the caller's (an OffHeapSymbolTable, say) */
+    public LittleCalcExecutionVisitor(SymbolTable<LittleValue> variables) {
+        this.variables = variables;
+        setEvalMode(evalMode);
+    }
+
+    public void setEvalMode(EvalMode evalMode) {
+        this.evalMode = evalMode;
+        exprEvaluator = evalMode.evaluator(variables, optimizer.getConstants());
+    }
+
+    /** executes the tree the optimizer was run on, as it optimized it */
+    public void setOptimizer(LittleCalcOptimizer optimizer) {
+        this.optimizer = optimizer;
+        setEvalMode(evalMode);
+    }
+
+    /** a snapshot of the variables (which must be in a PersistentSymbolTable) */
+    public PersistentSymbolTable<LittleValue> snapshot() {
+        return persistentVariables().snapshot();
+    }
+
+    public void restore(PersistentSymbolTable<LittleValue> snapshot) {
+        persistentVariables().restore(snapshot);
+    }
+
+    /** an executor (without a parser) that starts with a snapshot of these variables */
+    public LittleCalcExecutionVisitor fork() {
+        var fork = new LittleCalcExecutionVisitor(snapshot());
+        fork.optimizer = optimizer;
+        fork.setEvalMode(evalMode);
+        return fork;
+    }
+
+    private PersistentSymbolTable<LittleValue> persistentVariables() {
+        if (!(variables instanceof PersistentSymbolTable<LittleValue> persistent)) {
+            throw new IllegalStateException("variables aren't in a PersistentSymbolTable");
+        }
+        return persistent;
     }
 
     public void resetRefactoring() {
         rewriter = new TokenStreamRewriter(parser.getInputStream());
     }
 
+    @Override
+    public Void visitCalcIn(CalcInContext ctx) {
+        if (evalMode != EvalMode.REGISTER_VM) {
+            return super.visitCalcIn(ctx);
+        }
+        runProgram(new RegisterCompiler(optimizer).compile(ctx));
+        return null;
+    }
+
+    @Override
+    public Void visitReplStmts(ReplStmtsContext ctx) {
+        if (evalMode != EvalMode.REGISTER_VM) {
+            return super.visitReplStmts(ctx);
+        }
+        runProgram(new RegisterCompiler(optimizer).compile(ctx));
+        return null;
+    }
+
+    /** runs a program compiled by RegisterCompiler, with these variables */
+    public void runProgram(RegisterProgram program) {
+        new RegisterVM(variables, this::processCommand, this::dumpVariables).run(program);
+    }
+
     @Override
     public Void visitAssignmentStmt(AssignmentStmtContext ctx) {
+        if (optimizer.isDeadStore(ctx)) {
+            return null;
+        }
         super.visitAssignmentStmt(ctx);
-        var val = exprVisitor.visit(ctx.expr());
-        var id = ctx.ID().getText();
+        var val = exprEvaluator.evaluate(ctx.expr());
+        var id = Symbol.of(ctx.ID().getSymbol());
         variables.put(id, val);
         Logger.debug("assignment to " + id);
-        processCommand(id);
+        try {
+            processCommand(id.name());
+        } catch (LittleCalcRuntimeException e) {
+            // (a command's value that isn't boolean)
+            var start = ctx.expr().getStart();
+            throw e.at(start.getLine(), start.getCharPositionInLine());
+        }
         return null;
     }
 
     @Override
     public Void visitPrintStmt(PrintStmtContext ctx) {
         for (LittleCalcParser.ExprContext exprCtx : ctx.expr()) {
-            System.out.print(exprVisitor.visit(exprCtx));
+            System.out.print(exprEvaluator.evaluate(exprCtx));
         }
         System.out.println();
         return null;
@@ -93,7 +184,7 @@ public class LittleCalcExecutionVisitor extends LittleCalcBaseVisitor<Void> {
 
     @Override
     public Void visitImplicitPrintStmt(ImplicitPrintStmtContext ctx) {
-        System.out.println(exprVisitor.visit(ctx.expr()));
+        System.out.println(exprEvaluator.evaluate(ctx.expr()));
         return null;
     }
 
@@ -227,6 +318,12 @@ public class LittleCalcExecutionVisitor extends LittleCalcBaseVisitor<Void> {
         return variables.get(varID);
     }
 
+    /** whether assigning to the variable is a tracing command */
+    static boolean isCommand(String varID) {
+        return PARSER_TRACING_CMD.equalsIgnoreCase(varID) || LEXER_TRACING_CMD.equalsIgnoreCase(varID)
+                || FULL_TRACING_CMD.equalsIgnoreCase(varID);
+    }
+
     private void processCommand(String cmd) {
         if (PARSER_TRACING_CMD.equalsIgnoreCase(cmd)) {
             parserTracingCmd();
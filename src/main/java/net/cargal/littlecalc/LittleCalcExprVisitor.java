@@ -1,9 +1,9 @@
 package net.cargal.littlecalc;
 
-import java.util.function.Supplier;
-
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeProperty;
 import org.antlr.v4.runtime.tree.TerminalNode;
 
 import net.cargal.littlecalc.LittleCalcParser.AddSubExprContext;
@@ -11,6 +11,7 @@ import net.cargal.littlecalc.LittleCalcParser.AndExprContext;
 import net.cargal.littlecalc.LittleCalcParser.CompareExprContext;
 import net.cargal.littlecalc.LittleCalcParser.EqualityExprContext;
 import net.cargal.littlecalc.LittleCalcParser.ExpExprContext;
+import net.cargal.littlecalc.LittleCalcParser.ExprContext;
 import net.cargal.littlecalc.LittleCalcParser.FalseExprContext;
 import net.cargal.littlecalc.LittleCalcParser.IDExprContext;
 import net.cargal.littlecalc.LittleCalcParser.MulDivExprContext;
@@ -25,22 +26,38 @@ import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
 
 public class LittleCalcExprVisitor extends LittleCalcBaseVisitor<LittleValue> {
     private final SymbolTable<LittleValue> variables;
+    private final ParseTreeProperty<LittleValue> constants;
 
     public LittleCalcExprVisitor(SymbolTable<LittleValue> variables) {
+        this(variables, new ParseTreeProperty<>());
+    }
+
+    public LittleCalcExprVisitor(SymbolTable<LittleValue> variables, ParseTreeProperty<LittleValue> constants) {
         this.variables = variables;
+        this.constants = constants;
+    }
+
+    // (constant expressions, from LittleCalcOptimizer, aren't evaluated again)
+    @Override
+    public LittleValue visit(ParseTree tree) {
+        var folded = constants.get(tree);
+        return folded != null ? folded : super.visit(tree);
     }
 
-    @SuppressWarnings("OptionalGetWithoutIsPresent")
     @Override
     public LittleValue visitIDExpr(IDExprContext ctx) {
-        var idVal = variables.get(ctx.ID().getText());
-        assertion(idVal.isPresent(), () -> ctx.ID().getText() + " has not been assigned a value", ctx);
-        return idVal.get();
+        // (the Symbol has its slot in the variables' Slots, so this is two array lookups)
+        var id = Symbol.of(ctx.ID().getSymbol());
+        var idVal = variables.find(id);
+        if (idVal == null) {
+            throw at(new LittleCalcRuntimeException(id + " has not been assigned a value"), ctx);
+        }
+        return idVal;
     }
 
     @Override
     public LittleValue visitExpExpr(ExpExprContext ctx) {
-        return lvNumber(Math.pow(number(ctx.base), number(ctx.exp)), ctx);
+        return lvNumber(Math.pow(number(ctx.base), number(ctx.exp)));
     }
 
     @Override
@@ -53,7 +70,7 @@ public class LittleCalcExprVisitor extends LittleCalcBaseVisitor<LittleValue> {
         var res = ctx.op.getType() == LittleCalcLexer.MUL //
                 ? number(ctx.lhs) * number(ctx.rhs) //
                 : number(ctx.lhs) / number(ctx.rhs);
-        return lvNumber(res, ctx);
+        return lvNumber(res);
     }
 
     @Override
@@ -61,7 +78,7 @@ public class LittleCalcExprVisitor extends LittleCalcBaseVisitor<LittleValue> {
         var res = ctx.op.getType() == LittleCalcLexer.ADD //
                 ? number(ctx.lhs) + number(ctx.rhs) //
                 : number(ctx.lhs) - number(ctx.rhs);
-        return lvNumber(res, ctx);
+        return lvNumber(res);
     }
 
     @Override
@@ -71,61 +88,59 @@ public class LittleCalcExprVisitor extends LittleCalcBaseVisitor<LittleValue> {
 
     @Override
     public LittleValue visitCompareExpr(CompareExprContext ctx) {
-        var res = visit(ctx.lhs).evalCompare(LVComparableOp.fromToken(ctx.op), visit(ctx.rhs));
-        return lvBool(res, ctx);
+        var lhs = visit(ctx.lhs);
+        var rhs = visit(ctx.rhs);
+        try {
+            return lvBool(lhs.evalCompare(LVComparableOp.fromToken(ctx.op), rhs));
+        } catch (LittleCalcRuntimeException e) {
+            throw at(e, ctx.lhs);
+        }
     }
 
     @Override
     public LittleValue visitEqualityExpr(EqualityExprContext ctx) {
         var res = visit(ctx.lhs).evalEquality(LVEquatableOp.fromToken(ctx.op), visit(ctx.rhs));
-        return lvBool(res, ctx);
+        return lvBool(res);
     }
 
     @Override
     public LittleValue visitNegationExpr(NegationExprContext ctx) {
-        return lvBool(!bool(ctx.expr()), ctx);
+        return lvBool(!bool(ctx.expr()));
     }
 
     @Override
     public LittleValue visitAndExpr(AndExprContext ctx) {
-        return lvBool(bool(ctx.lhs) && bool(ctx.rhs), ctx);
+        return lvBool(bool(ctx.lhs) && bool(ctx.rhs));
     }
 
     @Override
     public LittleValue visitOrExpr(OrExprContext ctx) {
-        return lvBool(bool(ctx.lhs) || bool(ctx.rhs), ctx);
+        return lvBool(bool(ctx.lhs) || bool(ctx.rhs));
     }
 
     @Override
     public LittleValue visitNumberExpr(NumberExprContext ctx) {
-        return lvNumber(doubleFromToken(ctx.NUMBER()), ctx);
+        return lvNumber(doubleFromToken(ctx.NUMBER()));
     }
 
     @Override
     public LittleValue visitTrueExpr(TrueExprContext ctx) {
-        return lvBool(true, ctx);
+        return lvBool(true);
     }
 
     @Override
     public LittleValue visitFalseExpr(FalseExprContext ctx) {
-        return lvBool(false, ctx);
+        return lvBool(false);
     }
 
     @Override
     public LittleValue visitStringExpr(StringExprContext ctx) {
-        return LittleValue.stringValue(stringFromToken(ctx.STRING()), ctx);
+        return LittleValue.stringValue(stringFromToken(ctx.STRING()));
     }
 
-    private void assertion(boolean condition, Supplier<String> messageSupplier, ParserRuleContext ctx) {
-        if (!condition) {
-            Token tk = ctx.getStart();
-            throw new LittleCalcRuntimeException(messageSupplier.get(), tk.getLine(), tk.getCharPositionInLine());
-        }
-    }
-
-    private Double doubleFromToken(TerminalNode token) {
+    private double doubleFromToken(TerminalNode token) {
         String tokenText = token.getText();
-        return Double.valueOf(tokenText.replace("_", ""));
+        return Double.parseDouble(tokenText.replace("_", ""));
     }
 
     private String stringFromToken(TerminalNode token) {
@@ -134,20 +149,47 @@ public class LittleCalcExprVisitor extends LittleCalcBaseVisitor<LittleValue> {
         return trimmed.replace("\\\"", "\"").replace("\\'", "'");
     }
 
-    private Double number(ParserRuleContext ctx) {
-        return visit(ctx).number();
+    // (a value of the wrong type is reported at the expression that produced it,
+    // looking through parentheses and ternaries, as the compilers do)
+    private double number(ExprContext ctx) {
+        if (constants.get(ctx) == null && ctx instanceof ParenExprContext paren) {
+            return number(paren.expr());
+        } else if (constants.get(ctx) == null && ctx instanceof TernaryExprContext ternary) {
+            return bool(ternary.cond) ? number(ternary.tv) : number(ternary.fv);
+        }
+        var value = visit(ctx);
+        try {
+            return value.doubleValue();
+        } catch (LittleCalcRuntimeException e) {
+            throw at(e, ctx);
+        }
+    }
+
+    private boolean bool(ExprContext ctx) {
+        if (constants.get(ctx) == null && ctx instanceof ParenExprContext paren) {
+            return bool(paren.expr());
+        } else if (constants.get(ctx) == null && ctx instanceof TernaryExprContext ternary) {
+            return bool(ternary.cond) ? bool(ternary.tv) : bool(ternary.fv);
+        }
+        var value = visit(ctx);
+        try {
+            return value.bool();
+        } catch (LittleCalcRuntimeException e) {
+            throw at(e, ctx);
+        }
     }
 
-    private boolean bool(ParserRuleContext ctx) {
-        return visit(ctx).bool();
+    private static LittleCalcRuntimeException at(LittleCalcRuntimeException e, ParserRuleContext ctx) {
+        Token tk = ctx.getStart();
+        return e.at(tk.getLine(), tk.getCharPositionInLine());
     }
 
-    private LittleValue lvNumber(double dv, ParserRuleContext ctx) {
-        return LittleValue.numberValue(dv, ctx);
+    private LittleValue lvNumber(double dv) {
+        return LittleValue.numberValue(dv);
     }
 
-    private LittleValue lvBool(boolean bv, ParserRuleContext ctx) {
-        return LittleValue.booleanValue(bv, ctx);
+    private LittleValue lvBool(boolean bv) {
+        return LittleValue.booleanValue(bv);
     }
 
 }
@@ -0,0 +1,265 @@
+package net.cargal.littlecalc;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.Token;
+
+import net.cargal.littlecalc.exceptions.LittleCalcImplementationException;
+
+/**
+ * A hand-written lexer that produces the same tokens (types, channels, and
+ * positions) as the generated LittleCalcLexer, without running the lexer DFA.
+ *
+ * Keywords are lexed as identifiers and then recognized with a (minimal)
+ * perfect hash over their lower-cased text, packed into a long. It extends
+ * LittleCalcLexer so it can be used anywhere a Lexer is expected (parse tree
+ * patterns, for example).
+ */
+public class LittleCalcFastLexer extends LittleCalcLexer {
+    private static final int MAX_KEYWORD_LENGTH = 8;
+    private static final long KEYWORD_HASH_MULTIPLIER = 0xe39639be7a605a91L;
+    private static final int KEYWORD_HASH_SHIFT = 61;
+    private static final long[] KEYWORD_TEXT = new long[1 << (64 - KEYWORD_HASH_SHIFT)];
+    private static final int[] KEYWORD_TYPE = new int[KEYWORD_TEXT.length];
+
+    static {
+        addKeyword("true", TRUE);
+        addKeyword("false", FALSE);
+        addKeyword("print", PRINT);
+        addKeyword("vars", VARS);
+        addKeyword("gui", GUI);
+        addKeyword("tree", TREE);
+        addKeyword("refactor", REFACTOR);
+        addKeyword("tokens", TOKENS);
+    }
+
+    private boolean skipHidden = false;
+
+    public LittleCalcFastLexer(CharStream input) {
+        super(input);
+    }
+
+    /**
+     * When no tool needs WS and COMMENT tokens (the TOKENS and REFACTOR
+     * utilities do), don't create them at all.
+     */
+    public void setSkipHidden(boolean skipHidden) {
+        this.skipHidden = skipHidden;
+    }
+
+    public boolean isSkipHidden() {
+        return skipHidden;
+    }
+
+    @Override
+    public Token nextToken() {
+        // like Lexer.nextToken(), keep the token's text around for unbuffered streams
+        var tokenStartMarker = _input.mark();
+        try {
+            while (true) {
+                _tokenStartCharIndex = _input.index();
+                _tokenStartLine = getLine();
+                _tokenStartCharPositionInLine = getCharPositionInLine();
+                var type = token(_input.LA(1));
+                if (type == Token.EOF) {
+                    _hitEOF = true;
+                    return emitEOF();
+                }
+                if (type == WS || type == COMMENT) {
+                    if (skipHidden) {
+                        continue;
+                    }
+                    return emit(type, HIDDEN);
+                }
+                return emit(type, DEFAULT_TOKEN_CHANNEL);
+            }
+        } finally {
+            _input.release(tokenStartMarker);
+        }
+    }
+
+    private int token(int c) {
+        return switch (c) {
+            case IntStream.EOF -> Token.EOF;
+            case ' ', '\t', '\r', '\n' -> whitespace();
+            case '(' -> single(O_PAREN);
+            case ')' -> single(C_PAREN);
+            case '{' -> single(O_CURLY);
+            case '}' -> single(C_CURLY);
+            case '^' -> single(EXP);
+            case '*' -> single(MUL);
+            case '+' -> single(ADD);
+            case '-' -> single(SUB);
+            case ':' -> single(COLON);
+            case '?' -> single(QMARK);
+            case '/' -> slash();
+            case '=' -> oneOrTwo('=', EQ, ASSIGN);
+            case '!' -> oneOrTwo('=', NE, NOT);
+            case '<' -> oneOrTwo('=', LE, LT);
+            case '>' -> oneOrTwo('=', GE, GT);
+            case '&' -> oneOrTwo('&', AND, BAD_TOKEN);
+            case '|' -> oneOrTwo('|', OR, BAD_TOKEN);
+            case '"', '\'' -> string(c);
+            default -> {
+                if (isDigit(c)) {
+                    yield number();
+                } else if (isIdStart(c)) {
+                    yield identifier();
+                }
+                yield single(BAD_TOKEN);
+            }
+        };
+    }
+
+    private Token emit(int type, int channel) {
+        var token = _factory.create(_tokenFactorySourcePair, type, null, channel, _tokenStartCharIndex,
+                _input.index() - 1, _tokenStartLine, _tokenStartCharPositionInLine);
+        emit(token);
+        return _token; // an ID is replaced with its SymbolToken
+    }
+
+    private void consume() {
+        getInterpreter().consume(_input);
+    }
+
+    private int single(int type) {
+        consume();
+        return type;
+    }
+
+    private int oneOrTwo(int second, int twoCharType, int oneCharType) {
+        consume();
+        if (_input.LA(1) == second) {
+            consume();
+            return twoCharType;
+        }
+        return oneCharType;
+    }
+
+    private int whitespace() {
+        do {
+            consume();
+        } while (isWhitespace(_input.LA(1)));
+        return WS;
+    }
+
+    private int slash() {
+        consume();
+        if (_input.LA(1) != '/') {
+            return DIV;
+        }
+        var c = _input.LA(1);
+        while (c != IntStream.EOF && c != '\n') {
+            consume();
+            c = _input.LA(1);
+        }
+        if (c == '\n') {
+            consume();
+        }
+        return COMMENT;
+    }
+
+    private int number() {
+        consumeDigitsOrUnderscores();
+        if (_input.LA(1) == '.' && isDigitOrUnderscore(_input.LA(2))) {
+            consume();
+            consumeDigitsOrUnderscores();
+        }
+        return NUMBER;
+    }
+
+    private void consumeDigitsOrUnderscores() {
+        do {
+            consume();
+        } while (isDigitOrUnderscore(_input.LA(1)));
+    }
+
+    private int identifier() {
+        long packed = 0;
+        int length = 0;
+        var c = _input.LA(1);
+        do {
+            if (length < MAX_KEYWORD_LENGTH) {
+                packed = (packed << 8) | (c | 0x20);
+            }
+            length++;
+            consume();
+            c = _input.LA(1);
+        } while (isIdStart(c) || isDigit(c));
+        if (length <= MAX_KEYWORD_LENGTH) {
+            var slot = keywordSlot(packed);
+            if (KEYWORD_TEXT[slot] == packed) {
+                return KEYWORD_TYPE[slot];
+            }
+        }
+        return ID;
+    }
+
+    /*
+     * Mirrors '"' ('\\"' | '\\\'' | .)*? '"' (and the single quoted version).
+     * ANTLR's longest match means an escaped quote never closes the string,
+     * unless the string is never closed, in which case the last escaped quote
+     * does. If neither happens, the quote is just a BAD_TOKEN.
+     */
+    private int string(int quote) {
+        var start = _input.index();
+        int lastEscapedQuote = -1;
+        int offset = 2;
+        var c = _input.LA(offset);
+        while (c != IntStream.EOF && c != quote) {
+            if (c == '\\' && (_input.LA(offset + 1) == '"' || _input.LA(offset + 1) == '\'')) {
+                offset++;
+                if (_input.LA(offset) == quote) {
+                    lastEscapedQuote = offset;
+                }
+            }
+            offset++;
+            c = _input.LA(offset);
+        }
+        int length;
+        if (c == quote) {
+            length = offset;
+        } else if (lastEscapedQuote != -1) {
+            length = lastEscapedQuote;
+        } else {
+            return single(BAD_TOKEN);
+        }
+        while (_input.index() - start < length) {
+            consume();
+        }
+        return STRING;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isDigitOrUnderscore(int c) {
+        return isDigit(c) || c == '_';
+    }
+
+    private static boolean isIdStart(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static int keywordSlot(long packed) {
+        return (int) ((packed * KEYWORD_HASH_MULTIPLIER) >>> KEYWORD_HASH_SHIFT);
+    }
+
+    private static void addKeyword(String keyword, int type) {
+        long packed = 0;
+        for (var c : keyword.toCharArray()) {
+            packed = (packed << 8) | c;
+        }
+        var slot = keywordSlot(packed);
+        if (KEYWORD_TEXT[slot] != 0) {
+            throw new LittleCalcImplementationException("keyword hash is not perfect for " + keyword);
+        }
+        KEYWORD_TEXT[slot] = packed;
+        KEYWORD_TYPE[slot] = type;
+    }
+}
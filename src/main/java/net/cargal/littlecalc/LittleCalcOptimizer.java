@@ -0,0 +1,150 @@
+package net.cargal.littlecalc;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.antlr.v4.runtime.tree.ParseTreeProperty;
+
+import net.cargal.littlecalc.LittleCalcParser.AndExprContext;
+import net.cargal.littlecalc.LittleCalcParser.AssignmentStmtContext;
+import net.cargal.littlecalc.LittleCalcParser.CalcInContext;
+import net.cargal.littlecalc.LittleCalcParser.ExprContext;
+import net.cargal.littlecalc.LittleCalcParser.IDExprContext;
+import net.cargal.littlecalc.LittleCalcParser.ImplicitPrintStmtContext;
+import net.cargal.littlecalc.LittleCalcParser.OrExprContext;
+import net.cargal.littlecalc.LittleCalcParser.PrintStmtContext;
+import net.cargal.littlecalc.LittleCalcParser.PrintVarsContext;
+import net.cargal.littlecalc.LittleCalcParser.TernaryExprContext;
+import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
+
+/**
+ * Runs between validation and execution of a script (calcIn): folds constant
+ * sub-expressions, propagates constant values through assignments (scripts
+ * have no control flow, so a variable's value is known from the statements
+ * before), and finds dead stores (assignments whose value is never read
+ * before it's overwritten, or the script ends).
+ *
+ * Values are folded by evaluating them, so they're exactly what execution
+ * would produce. Anything that fails is left for
+ * execution to report, and only an assignment of a constant can be a dead
+ * store, so no errors are lost. Assignments to tracing commands are left
+ * alone, as is everything assigned before a vars statement.
+ */
+public class LittleCalcOptimizer extends LittleCalcBaseVisitor<Void> {
+    private final ParseTreeProperty<LittleValue> constants = new ParseTreeProperty<>();
+    private final Set<AssignmentStmtContext> deadStores = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private final Map<Symbol, LittleValue> known = new HashMap<>();
+    // assignments that haven't been read (yet)
+    private final Map<Symbol, AssignmentStmtContext> unread = new HashMap<>();
+    private final ExprCompiler compiler = new ExprCompiler(constants);
+    private final SymbolTable<LittleValue> noVariables = new SymbolTable<>();
+
+    /** the values of the constant expressions */
+    public ParseTreeProperty<LittleValue> getConstants() {
+        return constants;
+    }
+
+    public boolean isDeadStore(AssignmentStmtContext ctx) {
+        return deadStores.contains(ctx);
+    }
+
+    @Override
+    public Void visitCalcIn(CalcInContext ctx) {
+        super.visitCalcIn(ctx);
+        deadStores.addAll(unread.values());
+        unread.clear();
+        return null;
+    }
+
+    @Override
+    public Void visitAssignmentStmt(AssignmentStmtContext ctx) {
+        var value = fold(ctx.expr());
+        var id = Symbol.of(ctx.ID().getSymbol());
+        var overwritten = unread.remove(id);
+        if (overwritten != null) {
+            deadStores.add(overwritten);
+        }
+        if (value == null || LittleCalcExecutionVisitor.isCommand(id.name())) {
+            // (the tracing commands also assign to each other)
+            known.remove(id);
+        } else {
+            known.put(id, value);
+            unread.put(id, ctx);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(PrintStmtContext ctx) {
+        ctx.expr().forEach(this::fold);
+        return null;
+    }
+
+    @Override
+    public Void visitImplicitPrintStmt(ImplicitPrintStmtContext ctx) {
+        fold(ctx.expr());
+        return null;
+    }
+
+    @Override
+    public Void visitPrintVars(PrintVarsContext ctx) {
+        unread.clear();
+        return null;
+    }
+
+    // the expression's value, if it's constant
+    private LittleValue fold(ExprContext ctx) {
+        LittleValue value = null;
+        if (ctx instanceof IDExprContext idExpr) {
+            var id = Symbol.of(idExpr.ID().getSymbol());
+            value = known.get(id);
+            if (value == null) {
+                // it'll be read when the script runs
+                unread.remove(id);
+            }
+        } else {
+            var allConstant = true;
+            for (var operand : ctx.getRuleContexts(ExprContext.class)) {
+                allConstant &= fold(operand) != null;
+            }
+            if (allConstant || onlyNeedsConstants(ctx)) {
+                value = evaluate(ctx);
+            }
+        }
+        if (value != null) {
+            constants.put(ctx, value);
+        }
+        return value;
+    }
+
+    // whether the operands a short-circuiting operator (or ternary) will evaluate are constants
+    private boolean onlyNeedsConstants(ExprContext ctx) {
+        if (ctx instanceof AndExprContext and) {
+            return isConstant(and.lhs, false);
+        } else if (ctx instanceof OrExprContext or) {
+            return isConstant(or.lhs, true);
+        } else if (ctx instanceof TernaryExprContext ternary) {
+            var cond = constants.get(ternary.cond);
+            return cond != null && cond.isBoolean() && constants.get(cond.bool() ? ternary.tv : ternary.fv) != null;
+        }
+        return false;
+    }
+
+    private boolean isConstant(ExprContext ctx, boolean value) {
+        var constant = constants.get(ctx);
+        return constant != null && constant.isBoolean() && constant.bool() == value;
+    }
+
+    // (everything it evaluates is a constant, so it only fails if execution would)
+    private LittleValue evaluate(ExprContext ctx) {
+        try {
+            return compiler.compile(ctx).eval(noVariables);
+        } catch (LittleCalcRuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package net.cargal.littlecalc;
+
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+
+/**
+ * A hand-written, precedence climbing, parser for LittleCalc.
+ *
+ * It builds the same LittleCalcParser contexts that the generated parser does,
+ * so the validation listener and the visitors can't tell the difference. The
+ * operator precedences mirror what ANTLR generates for the left-recursive expr
+ * rule (the LittleCalc.g4 grammar remains the reference implementation).
+ *
+ * The generated rule methods are final, so the entry points are parseCalcIn(),
+ * parseReplIn() and parseStmt() (FrontEnd picks the right one).
+ */
+public class LittleCalcPrattParser extends LittleCalcParser {
+    private static final int NO_STATE = -1;
+
+    private static final int EXP_PREC = 14;
+    private static final int MUL_DIV_PREC = 13;
+    private static final int ADD_SUB_PREC = 12;
+    private static final int COMPARE_PREC = 11;
+    private static final int EQUALITY_PREC = 10;
+    private static final int TERNARY_PREC = 9;
+    private static final int AND_PREC = 8;
+    private static final int OR_PREC = 7;
+    private static final int NEGATION_PREC = 6;
+    private static final int NOT_AN_OPERATOR = -1;
+
+    public LittleCalcPrattParser(TokenStream input) {
+        super(input);
+    }
+
+    public ReplInContext parseReplIn() {
+        matchedEOF = false;
+        var replIn = new ReplInContext(_ctx, NO_STATE);
+        var start = _input.LT(1);
+        ReplInContext result;
+        if (isUtilKeyword(_input.LA(1))) {
+            result = new AntlrUtilStmtContext(replIn);
+        } else {
+            result = new ReplStmtsContext(replIn);
+        }
+        result.start = start;
+        try {
+            if (result instanceof AntlrUtilStmtContext) {
+                attach(result, antlrUtil(result));
+            } else {
+                attach(result, stmts(result));
+            }
+            match(EOF, result);
+        } catch (SyntaxError e) {
+            skipToEOF();
+        }
+        return finish(result);
+    }
+
+    public CalcInContext parseCalcIn() {
+        matchedEOF = false;
+        var calcIn = begin(new CalcInContext(_ctx, NO_STATE));
+        try {
+            attach(calcIn, stmts(calcIn));
+            match(EOF, calcIn);
+        } catch (SyntaxError e) {
+            skipToEOF();
+        }
+        return finish(calcIn);
+    }
+
+    public StmtContext parseStmt() {
+        matchedEOF = false;
+        try {
+            return stmt(_ctx);
+        } catch (SyntaxError e) {
+            skipToEOF();
+        }
+        return finish(begin(new StmtContext(_ctx, NO_STATE)));
+    }
+
+    public ExprContext parseExpr() {
+        var expr = expr(_ctx, 0);
+        return _ctx == null ? expr : attach(_ctx, expr);
+    }
+
+    private StmtsContext stmts(ParserRuleContext parent) {
+        var stmts = begin(new StmtsContext(parent, NO_STATE));
+        while (startsStmt(_input.LA(1))) {
+            attach(stmts, stmt(stmts));
+        }
+        return finish(stmts);
+    }
+
+    private StmtContext stmt(ParserRuleContext parent) {
+        var stmt = new StmtContext(parent, NO_STATE);
+        var start = _input.LT(1);
+        StmtContext result;
+        if (startsAssignment()) {
+            var assignment = new AssignmentStmtContext(stmt);
+            assignment.start = start;
+            match(ID, assignment);
+            match(ASSIGN, assignment);
+            attach(assignment, expr(assignment, 0));
+            result = assignment;
+        } else if (start.getType() == PRINT) {
+            result = new PrintStmtContext(stmt);
+            result.start = start;
+            match(PRINT, result);
+            // an ID followed by '=' can only be the start of the next statement
+            while (startsExpr(_input.LA(1)) && !startsAssignment()) {
+                attach(result, expr(result, 0));
+            }
+        } else if (start.getType() == VARS) {
+            result = new PrintVarsContext(stmt);
+            result.start = start;
+            match(VARS, result);
+        } else {
+            result = new ImplicitPrintStmtContext(stmt);
+            result.start = start;
+            attach(result, expr(result, 0));
+        }
+        return finish(result);
+    }
+
+    private AntlrUtilContext antlrUtil(ParserRuleContext parent) {
+        var util = new AntlrUtilContext(parent, NO_STATE);
+        var start = _input.LT(1);
+        AntlrUtilContext result = switch (start.getType()) {
+            case TREE -> new TreeUtilContext(util);
+            case GUI -> new GUIUtilContext(util);
+            case REFACTOR -> new RefactorUtilContext(util);
+            case TOKENS -> new TokensUtilContext(util);
+            default -> throw syntaxError("no viable alternative at input " + display(start));
+        };
+        result.start = start;
+        match(start.getType(), result);
+        match(O_CURLY, result);
+        if (isUtilKeyword(_input.LA(1))) {
+            attach(result, antlrUtil(result));
+        } else {
+            attach(result, stmts(result));
+        }
+        match(C_CURLY, result);
+        return finish(result);
+    }
+
+    private ExprContext expr(ParserRuleContext parent, int minPrec) {
+        var lhs = primary(parent);
+        while (true) {
+            var opType = _input.LA(1);
+            var prec = binaryPrecedence(opType);
+            if (prec == NOT_AN_OPERATOR || prec < minPrec) {
+                return lhs;
+            }
+            var exprCtx = new ExprContext(parent, NO_STATE);
+            lhs = switch (opType) {
+                case EXP -> {
+                    var ctx = binary(new ExpExprContext(exprCtx), lhs);
+                    ctx.base = lhs;
+                    match(EXP, ctx);
+                    ctx.exp = attach(ctx, expr(ctx, EXP_PREC));
+                    yield finish(ctx);
+                }
+                case MUL, DIV -> {
+                    var ctx = binary(new MulDivExprContext(exprCtx), lhs);
+                    ctx.lhs = lhs;
+                    ctx.op = match(opType, ctx);
+                    ctx.rhs = attach(ctx, expr(ctx, MUL_DIV_PREC + 1));
+                    yield finish(ctx);
+                }
+                case ADD, SUB -> {
+                    var ctx = binary(new AddSubExprContext(exprCtx), lhs);
+                    ctx.lhs = lhs;
+                    ctx.op = match(opType, ctx);
+                    ctx.rhs = attach(ctx, expr(ctx, ADD_SUB_PREC + 1));
+                    yield finish(ctx);
+                }
+                case LT, LE, GT, GE -> {
+                    var ctx = binary(new CompareExprContext(exprCtx), lhs);
+                    ctx.lhs = lhs;
+                    ctx.op = match(opType, ctx);
+                    ctx.rhs = attach(ctx, expr(ctx, COMPARE_PREC + 1));
+                    yield finish(ctx);
+                }
+                case EQ, NE -> {
+                    var ctx = binary(new EqualityExprContext(exprCtx), lhs);
+                    ctx.lhs = lhs;
+                    ctx.op = match(opType, ctx);
+                    ctx.rhs = attach(ctx, expr(ctx, EQUALITY_PREC + 1));
+                    yield finish(ctx);
+                }
+                case QMARK -> {
+                    var ctx = binary(new TernaryExprContext(exprCtx), lhs);
+                    ctx.cond = lhs;
+                    match(QMARK, ctx);
+                    ctx.tv = attach(ctx, expr(ctx, 0));
+                    match(COLON, ctx);
+                    ctx.fv = attach(ctx, expr(ctx, TERNARY_PREC + 1));
+                    yield finish(ctx);
+                }
+                case AND -> {
+                    var ctx = binary(new AndExprContext(exprCtx), lhs);
+                    ctx.lhs = lhs;
+                    match(AND, ctx);
+                    ctx.rhs = attach(ctx, expr(ctx, AND_PREC + 1));
+                    yield finish(ctx);
+                }
+                default -> {
+                    var ctx = binary(new OrExprContext(exprCtx), lhs);
+                    ctx.lhs = lhs;
+                    match(OR, ctx);
+                    ctx.rhs = attach(ctx, expr(ctx, OR_PREC + 1));
+                    yield finish(ctx);
+                }
+            };
+        }
+    }
+
+    private ExprContext primary(ParserRuleContext parent) {
+        var exprCtx = new ExprContext(parent, NO_STATE);
+        var start = _input.LT(1);
+        ExprContext result = switch (start.getType()) {
+            case O_PAREN -> new ParenExprContext(exprCtx);
+            case NOT -> new NegationExprContext(exprCtx);
+            case NUMBER -> new NumberExprContext(exprCtx);
+            case TRUE -> new TrueExprContext(exprCtx);
+            case FALSE -> new FalseExprContext(exprCtx);
+            case STRING -> new StringExprContext(exprCtx);
+            case ID -> new IDExprContext(exprCtx);
+            default -> throw syntaxError("no viable alternative at input " + display(start));
+        };
+        result.start = start;
+        match(start.getType(), result);
+        if (result instanceof ParenExprContext) {
+            attach(result, expr(result, 0));
+            match(C_PAREN, result);
+        } else if (result instanceof NegationExprContext) {
+            attach(result, expr(result, NEGATION_PREC));
+        }
+        return finish(result);
+    }
+
+    private static int binaryPrecedence(int tokenType) {
+        return switch (tokenType) {
+            case EXP -> EXP_PREC;
+            case MUL, DIV -> MUL_DIV_PREC;
+            case ADD, SUB -> ADD_SUB_PREC;
+            case LT, LE, GT, GE -> COMPARE_PREC;
+            case EQ, NE -> EQUALITY_PREC;
+            case QMARK -> TERNARY_PREC;
+            case AND -> AND_PREC;
+            case OR -> OR_PREC;
+            default -> NOT_AN_OPERATOR;
+        };
+    }
+
+    private static boolean startsExpr(int tokenType) {
+        return switch (tokenType) {
+            case O_PAREN, NOT, NUMBER, TRUE, FALSE, STRING, ID -> true;
+            default -> false;
+        };
+    }
+
+    private static boolean startsStmt(int tokenType) {
+        return tokenType == PRINT || tokenType == VARS || startsExpr(tokenType);
+    }
+
+    private static boolean isUtilKeyword(int tokenType) {
+        return switch (tokenType) {
+            case TREE, GUI, REFACTOR, TOKENS -> true;
+            default -> false;
+        };
+    }
+
+    private boolean startsAssignment() {
+        return _input.LA(1) == ID && _input.LA(2) == ASSIGN;
+    }
+
+    private Token match(int tokenType, ParserRuleContext ctx) {
+        var token = _input.LT(1);
+        if (token.getType() != tokenType) {
+            throw syntaxError("mismatched input " + display(token) + " expecting "
+                    + getVocabulary().getDisplayName(tokenType));
+        }
+        ctx.addChild(createTerminalNode(ctx, token));
+        if (tokenType == EOF) {
+            matchedEOF = true;
+        } else {
+            _input.consume();
+        }
+        return token;
+    }
+
+    private void skipToEOF() {
+        while (_input.LA(1) != EOF) {
+            _input.consume();
+        }
+    }
+
+    private <T extends ParserRuleContext> T begin(T ctx) {
+        ctx.start = _input.LT(1);
+        return ctx;
+    }
+
+    private <T extends ExprContext> T binary(T ctx, ExprContext lhs) {
+        ctx.start = lhs.start;
+        attach(ctx, lhs);
+        return ctx;
+    }
+
+    private <T extends ParserRuleContext> T finish(T ctx) {
+        ctx.stop = matchedEOF ? _input.LT(1) : _input.LT(-1);
+        return ctx;
+    }
+
+    private static <T extends ParserRuleContext> T attach(ParserRuleContext parent, T child) {
+        child.setParent(parent);
+        parent.addChild(child);
+        return child;
+    }
+
+    private String display(Token token) {
+        return token.getType() == EOF ? "'<EOF>'" : "'" + token.getText() + "'";
+    }
+
+    private RuntimeException syntaxError(String msg) {
+        notifyErrorListeners(_input.LT(1), msg, null);
+        if (getErrorHandler() instanceof BailErrorStrategy) {
+            return new ParseCancellationException(msg);
+        }
+        return new SyntaxError();
+    }
+
+    // unwinds to the start rule, which skips the rest of the input
+    private static class SyntaxError extends RuntimeException {
+        SyntaxError() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -1,10 +1,20 @@
 package net.cargal.littlecalc;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonToken;
 import org.antlr.v4.runtime.CommonTokenFactory;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ListTokenSource;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Pair;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import org.jline.reader.LineReader;
 import org.jline.reader.LineReader.Option;
@@ -18,6 +28,8 @@ public class LittleCalcRepl {
     private static final String INITIAL_PROMPT = "> ";
     private static final String CONTINUE_PROMPT = "| ";
     private static final String INPUT_CONTINUE_SUFFIX = "\\";
+    private static final String SNAPSHOT_CMD = "snapshot";
+    private static final String RESTORE_CMD = "restore";
 
     private LittleCalcLexer lexer;
     private CommonTokenStream tokenStream;
@@ -25,20 +37,56 @@ public class LittleCalcRepl {
     private LittleCalcExecutionVisitor replVisitor;
     private LittleReplErrorListener replErrListener;
     private LittleCalcSemanticValidationListener listener;
+    // the session's variables (and their types), so they can be snapshotted
+    private CopyOnWriteSymbolTable<LittleValue> variables;
+    private CopyOnWriteSymbolTable<LVType> types;
+    private final Map<String, Snapshot> snapshots = new HashMap<>();
+    private ParseStrategy parseStrategy = ParseStrategy.SLL_THEN_LL;
+    private FrontEnd frontEnd = FrontEnd.ANTLR;
+    private LexerKind lexerKind = LexerKind.ANTLR;
+    private EvalMode evalMode = EvalMode.COMPILED;
+
+    // the input so far (for a multi-line statement), with all but its last line already lexed
+    private final StringBuilder pendingSource = new StringBuilder();
+    private final List<Token> pendingTokens = new ArrayList<>();
+    private final TokenBalance pendingBalance = new TokenBalance();
+    private final StringBuilder unlexed = new StringBuilder();
+    private int unlexedLine = 1;
+    private int unlexedColumn = 0;
+    // how many tokens were pending when incomplete input was last parsed (to look for a syntax error before its end)
+    private int checkedTokens = 0;
 
     public static void main(String... args) throws IOException {
+        DFACache.loadIfPresent(DFACache.defaultCacheFile());
         new LittleCalcRepl().run(TerminalBuilder.builder().build());
     }
 
+    public void setParseStrategy(ParseStrategy parseStrategy) {
+        this.parseStrategy = parseStrategy;
+    }
+
+    public void setFrontEnd(FrontEnd frontEnd) {
+        this.frontEnd = frontEnd;
+    }
+
+    public void setLexerKind(LexerKind lexerKind) {
+        this.lexerKind = lexerKind;
+    }
+
+    public void setEvalMode(EvalMode evalMode) {
+        this.evalMode = evalMode;
+    }
+
     void run(Terminal terminal) {
         var lineReader = getLineReader(terminal);
         initParser();
-        var parseString = "";
         while (true) {
-            var input = getInput(lineReader, parseString);
+            var input = getInput(lineReader, pendingSource.length() > 0);
             if (input.trim().equals("quit"))
                 break;
-            parseString = process(parseString + input + "\n");
+            if (!snapshotCommand(input)) {
+                process(input + "\n");
+            }
         }
         System.out.println("Exiting...");
     }
@@ -50,30 +98,78 @@ public class LittleCalcRepl {
                 .build();
     }
 
-    String getInput(LineReader lineReader, String existingSrc) {
-        return lineReader.readLine(existingSrc.isEmpty() ? INITIAL_PROMPT : CONTINUE_PROMPT);
+    String getInput(LineReader lineReader, boolean continuing) {
+        return lineReader.readLine(continuing ? CONTINUE_PROMPT : INITIAL_PROMPT);
     }
 
     private void initParser() {
-        lexer = new LittleCalcLexer(CharStreams.fromString(""));
+        // the tokens and refactor utilities need the hidden tokens
+        lexer = lexerKind.lexer(CharStreams.fromString(""), true);
         tokenStream = new CommonTokenStream(lexer);
-        parser = new LittleCalcParser(tokenStream);
-        listener = new LittleCalcSemanticValidationListener();
-        replVisitor = new LittleCalcExecutionVisitor(parser);
+        parser = frontEnd.parser(tokenStream);
+        // (a variable keeps its slot from one input to the next)
+        types = new CopyOnWriteSymbolTable<>();
+        listener = new LittleCalcSemanticValidationListener(types);
+        variables = new CopyOnWriteSymbolTable<>(types.slots());
+        replVisitor = new LittleCalcExecutionVisitor(parser, variables);
+        replVisitor.setEvalMode(evalMode);
 
         replErrListener = new LittleReplErrorListener();
         parser.removeErrorListeners();
         parser.addErrorListener(replErrListener);
     }
 
-    private String process(String source) {
-        if (source.trim().endsWith(INPUT_CONTINUE_SUFFIX)) {
-            return source.substring(0, source.lastIndexOf(INPUT_CONTINUE_SUFFIX));
+    /*
+     * "snapshot [name]" saves the session's variables (in O(1), however many
+     * there are, though the next assignment copies the frame), and "restore
+     * [name]" goes back to them. Returns whether the input was one of them.
+     */
+    private boolean snapshotCommand(String input) {
+        var words = input.trim().split("\\s+");
+        if (pendingSource.length() > 0 || words.length > 2
+                || !(words[0].equals(SNAPSHOT_CMD) || words[0].equals(RESTORE_CMD))) {
+            return false;
+        }
+        var name = words.length > 1 ? words[1] : "";
+        if (words[0].equals(SNAPSHOT_CMD)) {
+            snapshots.put(name, new Snapshot(variables.snapshot(), types.snapshot()));
+            System.out.println("Snapshot saved" + (name.isEmpty() ? "" : " as " + name));
+        } else if (snapshots.containsKey(name)) {
+            var snapshot = snapshots.get(name);
+            variables.restore(snapshot.variables());
+            types.restore(snapshot.types());
+            System.out.println("Snapshot restored" + (name.isEmpty() ? "" : " from " + name));
+        } else {
+            System.err.println("No snapshot" + (name.isEmpty() ? "" : " named " + name));
+        }
+        return true;
+    }
+
+    private record Snapshot(CopyOnWriteSymbolTable<LittleValue> variables, CopyOnWriteSymbolTable<LVType> types) {
+    }
+
+    private void process(String line) {
+        if (line.trim().endsWith(INPUT_CONTINUE_SUFFIX)) {
+            var continued = line.substring(0, line.lastIndexOf(INPUT_CONTINUE_SUFFIX));
+            pendingSource.append(continued);
+            unlexed.append(continued);
+            return;
+        }
+        pendingSource.append(line);
+        unlexed.append(line);
+        ReplInContext replTree;
+        if (replVisitor.isLexerTracing()) {
+            // re-lex everything, so the token trace is interleaved with the parser trace
+            replTree = parseInput(pendingSource.toString());
+        } else {
+            var tokens = lexPending();
+            if (tokens == null) {
+                return;
+            }
+            replTree = parseTokens(tokens);
         }
-        var result = source;
-        var replTree = parseInput(source);
         if (replErrListener.completeInput()) {
-            result = "";
+            clearPending();
             if (parser.getNumberOfSyntaxErrors() == 0) {
                 ParseTreeWalker.DEFAULT.walk(listener, replTree);
                 if (!listener.hasErrors()) {
@@ -84,7 +180,87 @@ public class LittleCalcRepl {
         }
         replErrListener.reset();
         listener.reset();
-        return result;
+    }
+
+    /*
+     * Lexes just the text that hasn't been lexed yet, so a long multi-line
+     * statement isn't re-lexed (or re-parsed) for every line. Returns all of the
+     * pending tokens, or null when they're obviously incomplete.
+     *
+     * Obviously incomplete input is still parsed (so a syntax error before its
+     * end is reported, rather than waiting for lines that can't fix it) each
+     * time its tokens have doubled, so a pasted block is parsed in linear time.
+     *
+     * The last tokens stay unlexed if more input could change them: trailing
+     * whitespace, an unterminated string (a BAD_TOKEN quote), or a string closed
+     * by an escaped quote.
+     */
+    private List<Token> lexPending() {
+        var offset = pendingSource.length() - unlexed.length();
+        var text = unlexed.toString();
+        lexer.setInputStream(CharStreams.fromString(text));
+        lexer.setLine(unlexedLine);
+        lexer.setCharPositionInLine(unlexedColumn);
+        lexer.setTokenFactory(new OffsetTokenFactory(offset));
+        var lexed = new ArrayList<Token>();
+        for (var token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+            lexed.add(token);
+        }
+        var stable = lexed.size();
+        if (stable > 0 && lexed.get(stable - 1).getType() == LittleCalcLexer.WS) {
+            stable--;
+        }
+        for (int i = 0; i < stable; i++) {
+            if (mayChange(lexed.get(i))) {
+                stable = i;
+                break;
+            }
+        }
+        for (var token : lexed.subList(0, stable)) {
+            pendingTokens.add(token);
+            pendingBalance.add(token);
+        }
+        unlexed.setLength(0);
+        if (stable < lexed.size()) {
+            var first = lexed.get(stable);
+            unlexed.append(text, first.getStartIndex() - offset, text.length());
+            unlexedLine = first.getLine();
+            unlexedColumn = first.getCharPositionInLine();
+        } else {
+            unlexedLine = lexer.getLine();
+            unlexedColumn = lexer.getCharPositionInLine();
+        }
+
+        var tail = lexed.subList(stable, lexed.size());
+        var balance = new TokenBalance(pendingBalance);
+        tail.forEach(balance::add);
+        var size = pendingTokens.size() + tail.size();
+        if (balance.isIncomplete()) {
+            if (size < checkedTokens * 2) {
+                return null;
+            }
+            checkedTokens = size;
+        }
+        var tokens = new ArrayList<>(pendingTokens);
+        tokens.addAll(tail);
+        return tokens;
+    }
+
+    private static boolean mayChange(Token token) {
+        var text = token.getText();
+        return (token.getType() == LittleCalcLexer.BAD_TOKEN && TokenBalance.isQuote(text))
+                || (token.getType() == LittleCalcLexer.STRING && text.length() > 2
+                        && text.charAt(text.length() - 2) == '\\');
+    }
+
+    private void clearPending() {
+        pendingSource.setLength(0);
+        pendingTokens.clear();
+        pendingBalance.reset();
+        unlexed.setLength(0);
+        unlexedLine = 1;
+        unlexedColumn = 0;
+        checkedTokens = 0;
     }
 
     private ReplInContext parseInput(String source) {
@@ -93,7 +269,32 @@ public class LittleCalcRepl {
         parser.setTokenStream(tokenStream);
         lexer.setTokenFactory(replVisitor.isLexerTracing() ? TracingTokenFactory.DEFAULT : CommonTokenFactory.DEFAULT);
         parser.setTrace(replVisitor.isParserTracing());
-        return parser.replIn();
+        return parseStrategy.parse(parser, frontEnd::replIn);
+    }
+
+    private ReplInContext parseTokens(List<Token> tokens) {
+        tokenStream.setTokenSource(new ListTokenSource(tokens));
+        parser.setTokenStream(tokenStream);
+        parser.setTrace(replVisitor.isParserTracing());
+        return parseStrategy.parse(parser, frontEnd::replIn);
     }
 
-}
\ No newline at end of file
+    // tokens lexed from part of the pending input, with char indexes into all of it (and their own copy of their text)
+    private static class OffsetTokenFactory extends CommonTokenFactory {
+        private final int offset;
+
+        OffsetTokenFactory(int offset) {
+            super(true);
+            this.offset = offset;
+        }
+
+        @Override
+        public CommonToken create(Pair<TokenSource, CharStream> source, int type, String text, int channel, int start,
+                int stop, int line, int charPositionInLine) {
+            var token = super.create(source, type, text, channel, start, stop, line, charPositionInLine);
+            token.setStartIndex(start + offset);
+            token.setStopIndex(stop + offset);
+            return token;
+        }
+    }
+}
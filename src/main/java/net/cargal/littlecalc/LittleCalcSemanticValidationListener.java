@@ -16,24 +16,54 @@ import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
 public class LittleCalcSemanticValidationListener extends LittleCalcBaseListener {
     protected final List<String> errorMessages = new ArrayList<>();
 
-    protected final Map<String, LVType> variables = new HashMap<>();
+    // (assigning a variable gives it its slot)
+    protected final SymbolTable<LVType> variables;
     protected final Deque<LVType> typeStack = new ArrayDeque<>();
     protected int utilLevel = 0;
+    private boolean printingErrors = true;
+
+    public LittleCalcSemanticValidationListener() {
+        this(new Slots());
+    }
+
+    /** a listener whose variables get their slots in slots (shared with the executor) */
+    public LittleCalcSemanticValidationListener(Slots slots) {
+        this(new SymbolTable<>(slots));
+    }
+
+    /** a listener that keeps the types of variables in a table of the caller's */
+    public LittleCalcSemanticValidationListener(SymbolTable<LVType> variables) {
+        this.variables = variables;
+    }
+
+    public Slots getSlots() {
+        return variables.slots();
+    }
+
+    /** whether errors are printed (to System.out) as they're found; they're always in getErrorMessages() */
+    public void setPrintingErrors(boolean printingErrors) {
+        this.printingErrors = printingErrors;
+    }
+
+    public List<String> getErrorMessages() {
+        return Collections.unmodifiableList(errorMessages);
+    }
 
     @Override
     public void exitAssignmentStmt(LittleCalcParser.AssignmentStmtContext ctx) {
         var val = typeStack.pop();
 
-        var id = ctx.ID().getText();
+        var id = Symbol.of(ctx.ID().getSymbol());
         variables.put(id, val);
         Logger.debug("assignment to " + id);
     }
 
     @Override
     public void exitIDExpr(LittleCalcParser.IDExprContext ctx) {
-        var idVal = variables.get(ctx.ID().getText());
-        assertion(idVal != null, () -> ctx.ID().getText() + " has not been assigned a value", ctx);
-        typeStack.push(Objects.requireNonNullElse(idVal, LVUnknownType.INSTANCE));
+        var id = Symbol.of(ctx.ID().getSymbol());
+        var idVal = variables.find(id);
+        assertion(idVal != null, () -> id + " has not been assigned a value", ctx);
+        typeStack.push(idVal != null ? idVal : LVUnknownType.INSTANCE);
     }
 
     @Override
@@ -146,6 +176,7 @@ public class LittleCalcSemanticValidationListener extends LittleCalcBaseListener
 
     public void reset() {
         errorMessages.clear();
+        typeStack.clear();
     }
 
     public boolean hasErrors() {
@@ -168,7 +199,9 @@ public class LittleCalcSemanticValidationListener extends LittleCalcBaseListener
             Token tk = ctx.getStart();
             var msg = LittleCalcRuntimeException.message(messageSupplier.get(), tk.getLine(),
                     tk.getCharPositionInLine());
-            System.out.println(msg);
+            if (printingErrors) {
+                System.out.println(msg);
+            }
             errorMessages.add(msg);
         }
     }
@@ -1,13 +1,13 @@
 package net.cargal.littlecalc;
 
 import java.io.IOException;
+import java.nio.file.Path;
 
-import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
 
 public class LittleCalcSmokeTest {
     public static void main(String... args) throws IOException {
-        var charStream = CharStreams.fromFileName("./little.ltl");
+        var charStream = MappedCharStream.fromPath(Path.of("./little.ltl"));
         var lexer = new LittleCalcLexer(charStream);
         var tokenStream = new CommonTokenStream(lexer);
         var parser = new LittleCalcParser(tokenStream);
@@ -5,8 +5,17 @@ import org.antlr.v4.runtime.ConsoleErrorListener;
 import org.antlr.v4.runtime.RecognitionException;
 import org.antlr.v4.runtime.Recognizer;
 
+/**
+ * Reports syntax errors, except those at the end of the input, which the REPL
+ * takes to mean the input is incomplete (and waits for another line).
+ *
+ * An unterminated string (lexed as a BAD_TOKEN for its opening quote) runs to
+ * the end of the input, so an error there is at EOF too. An error anywhere
+ * else can't be fixed by more input, so the input is complete (and wrong).
+ */
 public class LittleReplErrorListener extends ConsoleErrorListener {
     private boolean errorAtEOF = false;
+    private boolean errorBeforeEOF = false;
 
     @Override
     public void syntaxError( //
@@ -16,20 +25,22 @@ public class LittleReplErrorListener extends ConsoleErrorListener {
             int charPositionInLine, //
             String msg, //
             RecognitionException e) {
-        if (offendingSymbol instanceof Token && //
-                ((Token) offendingSymbol).getType() == Recognizer.EOF) {
+        if (offendingSymbol instanceof Token token && (token.getType() == Recognizer.EOF
+                || (token.getType() == LittleCalcLexer.BAD_TOKEN && TokenBalance.isQuote(token.getText())))) {
             errorAtEOF = true;
         } else {
+            errorBeforeEOF = true;
             super.syntaxError(recognizer, offendingSymbol, line, charPositionInLine, msg, e);
         }
     }
 
     public void reset() {
         errorAtEOF = false;
+        errorBeforeEOF = false;
     }
 
     public boolean completeInput() {
-        return !errorAtEOF;
+        return !errorAtEOF || errorBeforeEOF;
     }
 
 }
@@ -1,55 +1,43 @@
 package net.cargal.littlecalc;
 
-import java.util.function.Supplier;
-
-import org.antlr.v4.runtime.ParserRuleContext;
-import org.antlr.v4.runtime.Token;
-
 import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
 
+/**
+ * A runtime value. Values don't know where they came from: the evaluator that
+ * catches a LittleCalcRuntimeException from one of them supplies the position
+ * (see LittleCalcRuntimeException.at()).
+ */
 public abstract class LittleValue implements Comparable<LittleValue> {
 
-    protected final int line;
-    protected final int column;
-
-    public int getLine() {
-        return line;
-    }
-
-    public int getColumn() {
-        return column;
-    }
-
-    protected LittleValue(int line, int column) {
-        this.line = line;
-        this.column = column;
-    }
-
-    static LittleValue numberValue(Double dv, ParserRuleContext ctx) {
-        Token tk = ctx.getStart();
-        return new LVNumber(dv, tk.getLine(), tk.getCharPositionInLine());
-    }
+    // integral values from -128 to 1023 (not -0.0) are shared
+    private static final int CACHE_LOW = -128;
+    private static final LVNumber[] NUMBERS = new LVNumber[1024 - CACHE_LOW];
+    private static final long NEGATIVE_ZERO = Double.doubleToRawLongBits(-0.0);
 
-    static LittleValue stringValue(String sv, ParserRuleContext ctx) {
-        Token tk = ctx.getStart();
-        return new LVString(sv, tk.getLine(), tk.getCharPositionInLine());
+    static {
+        for (int i = 0; i < NUMBERS.length; i++) {
+            NUMBERS[i] = new LVNumber(i + CACHE_LOW);
+        }
     }
 
-    static LittleValue booleanValue(boolean bv, ParserRuleContext ctx) {
-        Token tk = ctx.getStart();
-        return new LVBoolean(bv, tk.getLine(), tk.getCharPositionInLine());
+    protected LittleValue() {
     }
 
-    static LittleValue numberValue(Double dv, int line, int column) {
-        return new LVNumber(dv, line, column);
+    static LittleValue numberValue(double dv) {
+        var index = (int) dv - CACHE_LOW;
+        if (index >= 0 && index < NUMBERS.length && index + CACHE_LOW == dv
+                && Double.doubleToRawLongBits(dv) != NEGATIVE_ZERO) {
+            return NUMBERS[index];
+        }
+        return new LVNumber(dv);
     }
 
-    static LittleValue stringValue(String sv, int line, int column) {
-        return new LVString(sv, line, column);
+    static LittleValue stringValue(String sv) {
+        return new LVString(sv);
     }
 
-    static LittleValue booleanValue(boolean bv, int line, int column) {
-        return new LVBoolean(bv, line, column);
+    static LittleValue booleanValue(boolean bv) {
+        return bv ? LVBoolean.TRUE : LVBoolean.FALSE;
     }
 
     public boolean isBoolean() {
@@ -67,15 +55,20 @@ public abstract class LittleValue implements Comparable<LittleValue> {
     protected abstract Object getValueObject();
 
     public boolean bool() {
-        throw new LittleCalcRuntimeException("value is not boolean (" + getValueObject() + ")", line, column);
+        throw new LittleCalcRuntimeException("value is not boolean (" + getValueObject() + ")");
     }
 
     public Double number() {
-        throw new LittleCalcRuntimeException("value is not a Number (" + getValueObject() + ")", line, column);
+        throw new LittleCalcRuntimeException("value is not a Number (" + getValueObject() + ")");
+    }
+
+    /** number(), without boxing it */
+    public double doubleValue() {
+        return number();
     }
 
     public String string() {
-        throw new LittleCalcRuntimeException("value is not a String (" + getValueObject() + ")", line, column);
+        throw new LittleCalcRuntimeException("value is not a String (" + getValueObject() + ")");
     }
 
     public abstract LVType type();
@@ -85,7 +78,10 @@ public abstract class LittleValue implements Comparable<LittleValue> {
     }
 
     public boolean evalCompare(LVComparableOp op, LittleValue rhs) {
-        assertion(canCompareTo(rhs), () -> "Cannot compare " + this.type() + " to " + rhs.type());
+        // (not through a message Supplier, which would be allocated for every comparison)
+        if (!canCompareTo(rhs)) {
+            throw new LittleCalcRuntimeException("Cannot compare " + this.type() + " to " + rhs.type());
+        }
         return switch (op) {
             case LT:
                 yield compareTo(rhs) < 0;
@@ -102,12 +98,6 @@ public abstract class LittleValue implements Comparable<LittleValue> {
         return ((op == LVEquatableOp.EQ) == equals(rhs));
     }
 
-    private void assertion(boolean condition, Supplier<String> messageSupplier) {
-        if (!condition) {
-            throw new LittleCalcRuntimeException(messageSupplier.get(), line, column);
-        }
-    }
-
     private boolean canCompareTo(LittleValue other) {
         return this.type().canCompareTo(other.type());
     }
@@ -0,0 +1,249 @@
+package net.cargal.littlecalc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+/**
+ * A CharStream over a memory-mapped file, so a script never has to be decoded
+ * onto the heap (CharStreams.fromFileName() needs an int per code point as soon
+ * as a script has a single character outside of Latin-1).
+ *
+ * Latin-1 files, and UTF-8 files up to their first non-ASCII byte, are read
+ * directly from the mapped bytes (stream index == file offset). Past that, UTF-8
+ * is decoded as it's read, with the file offset of every CHECKPOINT_INTERVAL-th
+ * code point recorded (when the file is opened) so seek() doesn't have to decode
+ * from the beginning. Text is only copied out of the buffer by getText().
+ *
+ * Like CodePointCharStream, mark() and release() are no-ops, since the whole
+ * file is always available.
+ */
+public class MappedCharStream implements CharStream {
+    private static final int CHECKPOINT_INTERVAL = 1024;
+    private static final int REPLACEMENT_CHARACTER = 0xFFFD;
+
+    private final ByteBuffer bytes;
+    private final String name;
+    private final int size;
+    // UTF-8 only: the stream is ASCII (so index == offset) before this index
+    private final int asciiPrefix;
+    private final int[] checkpoints;
+
+    private int position = 0;
+    private int positionOffset = 0;
+
+    public static MappedCharStream fromPath(Path path) throws IOException {
+        return fromPath(path, StandardCharsets.UTF_8);
+    }
+
+    public static MappedCharStream fromPath(Path path, Charset charset) throws IOException {
+        var latin1 = charset.equals(StandardCharsets.ISO_8859_1) || charset.equals(StandardCharsets.US_ASCII);
+        if (!latin1 && !charset.equals(StandardCharsets.UTF_8)) {
+            throw new IllegalArgumentException("MappedCharStream only supports UTF-8 and Latin-1, not " + charset);
+        }
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too large to map (" + channel.size() + " bytes)");
+            }
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedCharStream(buffer, path.toString(), latin1);
+        }
+    }
+
+    MappedCharStream(ByteBuffer bytes, String name, boolean latin1) {
+        this.bytes = bytes;
+        this.name = name;
+        var limit = bytes.limit();
+        var prefix = 0;
+        if (!latin1) {
+            while (prefix < limit && bytes.get(prefix) >= 0) {
+                prefix++;
+            }
+        }
+        if (latin1 || prefix == limit) {
+            asciiPrefix = limit;
+            size = limit;
+            checkpoints = new int[0];
+            return;
+        }
+        asciiPrefix = prefix;
+        var offsets = new int[16];
+        var count = 0;
+        var codePoints = prefix;
+        for (int offset = prefix; offset < limit; offset++) {
+            // (a stray continuation byte right after the ASCII prefix still starts a code point)
+            if (offset == prefix || !isContinuation(bytes.get(offset))) {
+                if ((codePoints - prefix) % CHECKPOINT_INTERVAL == 0) {
+                    if (count == offsets.length) {
+                        offsets = Arrays.copyOf(offsets, count * 2);
+                    }
+                    offsets[count++] = offset;
+                }
+                codePoints++;
+            }
+        }
+        size = codePoints;
+        checkpoints = Arrays.copyOf(offsets, count);
+    }
+
+    @Override
+    public void consume() {
+        if (position >= size) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        positionOffset = nextOffset(position, positionOffset);
+        position++;
+    }
+
+    @Override
+    public int LA(int i) {
+        if (i == 0) {
+            return 0; // undefined
+        }
+        var index = i > 0 ? position + i - 1 : position + i;
+        if (index < 0 || index >= size) {
+            return IntStream.EOF;
+        }
+        if (index < asciiPrefix) {
+            return bytes.get(index) & 0xFF;
+        }
+        var offset = positionOffset;
+        if (i > 0) {
+            for (int j = position; j < index; j++) {
+                offset = nextOffset(j, offset);
+            }
+        } else {
+            offset = offset(index);
+        }
+        return codePointAt(offset);
+    }
+
+    @Override
+    public int mark() {
+        return -1;
+    }
+
+    @Override
+    public void release(int marker) {
+    }
+
+    @Override
+    public int index() {
+        return position;
+    }
+
+    @Override
+    public void seek(int index) {
+        position = Math.min(index, size);
+        positionOffset = offset(position);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String getSourceName() {
+        return name == null || name.isEmpty() ? UNKNOWN_SOURCE_NAME : name;
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        var start = Math.min(interval.a, size);
+        var stop = Math.min(interval.b, size - 1);
+        if (stop < start) {
+            return "";
+        }
+        if (stop < asciiPrefix) {
+            var text = new byte[stop - start + 1];
+            bytes.get(start, text);
+            return new String(text, StandardCharsets.ISO_8859_1);
+        }
+        var text = new StringBuilder(stop - start + 1);
+        var offset = offset(start);
+        for (int index = start; index <= stop; index++) {
+            text.appendCodePoint(index < asciiPrefix ? bytes.get(index) & 0xFF : codePointAt(offset));
+            offset = nextOffset(index, offset);
+        }
+        return text.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getText(Interval.of(0, size - 1));
+    }
+
+    private int offset(int index) {
+        if (index <= asciiPrefix) {
+            return index;
+        }
+        var checkpoint = Math.min((index - asciiPrefix) / CHECKPOINT_INTERVAL, checkpoints.length - 1);
+        var offset = checkpoints[checkpoint];
+        for (int i = asciiPrefix + checkpoint * CHECKPOINT_INTERVAL; i < index; i++) {
+            offset = nextOffset(i, offset);
+        }
+        return offset;
+    }
+
+    // the offset of the code point after the one at (index, offset)
+    private int nextOffset(int index, int offset) {
+        if (index < asciiPrefix) {
+            return offset + 1;
+        }
+        var limit = bytes.limit();
+        do {
+            offset++;
+        } while (offset < limit && isContinuation(bytes.get(offset)));
+        return offset;
+    }
+
+    private int codePointAt(int offset) {
+        var lead = bytes.get(offset) & 0xFF;
+        int length;
+        int codePoint;
+        if (lead < 0x80) {
+            return lead;
+        } else if (lead >= 0xC2 && lead < 0xE0) {
+            length = 2;
+            codePoint = lead & 0x1F;
+        } else if (lead >= 0xE0 && lead < 0xF0) {
+            length = 3;
+            codePoint = lead & 0x0F;
+        } else if (lead >= 0xF0 && lead < 0xF5) {
+            length = 4;
+            codePoint = lead & 0x07;
+        } else {
+            return REPLACEMENT_CHARACTER;
+        }
+        for (int i = 1; i < length; i++) {
+            if (offset + i >= bytes.limit() || !isContinuation(bytes.get(offset + i))) {
+                return REPLACEMENT_CHARACTER;
+            }
+            codePoint = (codePoint << 6) | (bytes.get(offset + i) & 0x3F);
+        }
+        var minimum = length == 2 ? 0x80 : length == 3 ? 0x800 : 0x10000;
+        if (codePoint < minimum || codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            return REPLACEMENT_CHARACTER;
+        }
+        if (offset + length < bytes.limit() && isContinuation(bytes.get(offset + length))) {
+            // stray continuation bytes are part of this (malformed) code point
+            return REPLACEMENT_CHARACTER;
+        }
+        return codePoint;
+    }
+
+    private static boolean isContinuation(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+}
@@ -0,0 +1,334 @@
+package net.cargal.littlecalc;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
+
+/**
+ * A SymbolTable for scripts with millions of variables: an open-addressing
+ * (linear probing) table in direct (off-heap) memory, keyed by the variables'
+ * names (whose chars are kept off-heap too, in a second buffer), with numbers
+ * and booleans stored in their entries. Strings are kept on the heap, in an
+ * array their entries refer to by index.
+ *
+ * So a table of numbers has no objects for the collector to trace, however
+ * many variables it has: it doesn't use Slots (slot() is always null, so
+ * lookups resolved to a slot fall back to the name), and it doesn't keep the
+ * Symbols it's given. number() and putNumber() read and write numbers without
+ * boxing them (get() boxes them). keyStream() lists this table's variables in
+ * table order.
+ */
+public class OffHeapSymbolTable extends SymbolTable<LittleValue> {
+    // each entry: its name's hash, its name's offset + 1 (0 for an empty entry) and length, its kind, and its number
+    private static final int ENTRY = 24;
+    private static final int HASH = 0;
+    private static final int NAME = 4;
+    private static final int LENGTH = 8;
+    private static final int KIND = 12;
+    private static final int NUMBER_VALUE = 16;
+    // kinds (any other kind is the index of a string in strings)
+    private static final int NUMBER = -1;
+    private static final int TRUE = -2;
+    private static final int FALSE = -3;
+    // (a variable that was assigned null, which is no value)
+    private static final int NONE = -4;
+
+    private static final int MIN_CAPACITY = 16;
+    // (so every entry's offset is an int)
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    private ByteBuffer table;
+    private int mask;
+    private int entries = 0;
+    private int size = 0;
+    // the names' chars
+    private ByteBuffer names = allocate(MIN_CAPACITY * 16);
+    private LittleValue[] strings = new LittleValue[16];
+    private int stringCount = 0;
+    // indexes in strings that were overwritten by numbers or booleans
+    private int[] free = new int[16];
+    private int freeCount = 0;
+
+    public OffHeapSymbolTable() {
+        this(new Slots(), MIN_CAPACITY);
+    }
+
+    public OffHeapSymbolTable(Slots slots) {
+        this(slots, MIN_CAPACITY);
+    }
+
+    /** a table with room for expectedSize variables before it has to grow */
+    public OffHeapSymbolTable(Slots slots, int expectedSize) {
+        super(slots);
+        newTable(capacityFor(expectedSize));
+    }
+
+    public OffHeapSymbolTable(SymbolTable<LittleValue> parent) {
+        super(parent);
+        newTable(MIN_CAPACITY);
+    }
+
+    /** the number of variables with values in this table (not its parents) */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public LittleValue slot(int slot) {
+        return null;
+    }
+
+    @Override
+    public Optional<LittleValue> get(String id) {
+        var value = local(id);
+        if (value == null && parent().isPresent()) {
+            return parent().get().get(id);
+        }
+        return Optional.ofNullable(value);
+    }
+
+    /** the variable's number, without boxing it */
+    public double number(String id) {
+        var offset = probe(id);
+        if (table.getInt(offset + NAME) == 0 || table.getInt(offset + KIND) == NONE) {
+            if (parent().isPresent()) {
+                return parent().get().get(id).orElseThrow(() -> unassigned(id)).doubleValue();
+            }
+            throw unassigned(id);
+        }
+        if (table.getInt(offset + KIND) != NUMBER) {
+            return local(id).doubleValue();
+        }
+        return table.getDouble(offset + NUMBER_VALUE);
+    }
+
+    @Override
+    public void put(String key, LittleValue value) {
+        var offset = entry(key);
+        var kind = table.getInt(offset + KIND);
+        if (value == null) {
+            if (kind >= 0) {
+                freeString(kind);
+            }
+            if (kind != NONE) {
+                size--;
+            }
+            table.putInt(offset + KIND, NONE);
+        } else if (value.isString()) {
+            if (kind == NONE) {
+                size++;
+            }
+            if (kind < 0) {
+                kind = newString();
+            }
+            strings[kind] = value;
+            table.putInt(offset + KIND, kind);
+        } else if (value.isNumber()) {
+            putNumber(offset, kind, value.doubleValue());
+        } else {
+            setKind(offset, kind, value.bool() ? TRUE : FALSE);
+        }
+    }
+
+    /** put(), for a number that isn't boxed */
+    public void putNumber(String key, double number) {
+        var offset = entry(key);
+        putNumber(offset, table.getInt(offset + KIND), number);
+    }
+
+    @Override
+    public void put(Symbol symbol, LittleValue value) {
+        put(symbol.name(), value);
+    }
+
+    @Override
+    public Stream<String> keyStream() {
+        return Stream.concat(localNames(), parent().isPresent() ? parent().get().keyStream() : Stream.empty());
+    }
+
+    @Override
+    protected LittleValue local(Symbol symbol) {
+        return local(symbol.name());
+    }
+
+    @Override
+    protected Stream<Symbol> localKeys() {
+        return localNames().map(Symbol::intern);
+    }
+
+    private LittleValue local(String id) {
+        var offset = probe(id);
+        if (table.getInt(offset + NAME) == 0) {
+            return null;
+        }
+        var kind = table.getInt(offset + KIND);
+        return switch (kind) {
+            case NUMBER -> LittleValue.numberValue(table.getDouble(offset + NUMBER_VALUE));
+            case TRUE -> LVBoolean.TRUE;
+            case FALSE -> LVBoolean.FALSE;
+            case NONE -> null;
+            default -> strings[kind];
+        };
+    }
+
+    private Stream<String> localNames() {
+        return IntStream.range(0, table.capacity() / ENTRY) //
+                .map(index -> index * ENTRY) //
+                .filter(offset -> table.getInt(offset + NAME) != 0 && table.getInt(offset + KIND) != NONE) //
+                .mapToObj(this::name);
+    }
+
+    private void putNumber(int offset, int kind, double number) {
+        setKind(offset, kind, NUMBER);
+        table.putDouble(offset + NUMBER_VALUE, number);
+    }
+
+    // (for a number or a boolean)
+    private void setKind(int offset, int kind, int newKind) {
+        if (kind >= 0) {
+            freeString(kind);
+        } else if (kind == NONE) {
+            size++;
+        }
+        table.putInt(offset + KIND, newKind);
+    }
+
+    // the offset of key's entry, which is added (with no value) if it isn't there
+    private int entry(String key) {
+        var offset = probe(key);
+        if (table.getInt(offset + NAME) != 0) {
+            return offset;
+        }
+        if ((entries + 1) * 3L > table.capacity() / ENTRY * 2L) {
+            grow();
+            offset = probe(key);
+        }
+        table.putInt(offset + HASH, hash(key));
+        table.putInt(offset + NAME, addName(key) + 1);
+        table.putInt(offset + LENGTH, key.length());
+        table.putInt(offset + KIND, NONE);
+        entries++;
+        return offset;
+    }
+
+    // the offset of key's entry, or of the empty entry where it would go
+    private int probe(String key) {
+        var hash = hash(key);
+        var index = hash & mask;
+        while (true) {
+            var offset = index * ENTRY;
+            var name = table.getInt(offset + NAME);
+            if (name == 0 || (table.getInt(offset + HASH) == hash && nameEquals(offset, key))) {
+                return offset;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private static int hash(String key) {
+        var h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private boolean nameEquals(int offset, String key) {
+        if (table.getInt(offset + LENGTH) != key.length()) {
+            return false;
+        }
+        var name = table.getInt(offset + NAME) - 1;
+        for (int i = 0; i < key.length(); i++) {
+            if (names.getChar(name + i * 2) != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String name(int offset) {
+        var name = table.getInt(offset + NAME) - 1;
+        var chars = new char[table.getInt(offset + LENGTH)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = names.getChar(name + i * 2);
+        }
+        return new String(chars);
+    }
+
+    // the offset of the key's chars (appended to names)
+    private int addName(String key) {
+        var needed = (long) names.position() + key.length() * 2L;
+        if (needed > names.capacity()) {
+            if (needed > Integer.MAX_VALUE) {
+                throw new IllegalStateException("too many variables (" + size + ")");
+            }
+            var grown = allocate((int) Math.min(Integer.MAX_VALUE, Math.max(needed, names.capacity() * 2L)));
+            grown.put(names.flip());
+            names = grown;
+        }
+        var offset = names.position();
+        for (int i = 0; i < key.length(); i++) {
+            names.putChar(key.charAt(i));
+        }
+        return offset;
+    }
+
+    private static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    private void newTable(int capacity) {
+        table = allocate(capacity * ENTRY);
+        mask = capacity - 1;
+    }
+
+    private void grow() {
+        var capacity = table.capacity() / ENTRY;
+        if (capacity == MAX_CAPACITY) {
+            throw new IllegalStateException("too many variables (" + size + ")");
+        }
+        var old = table;
+        newTable(capacity * 2);
+        for (int offset = 0; offset < old.capacity(); offset += ENTRY) {
+            if (old.getInt(offset + NAME) != 0) {
+                var index = old.getInt(offset + HASH) & mask;
+                while (table.getInt(index * ENTRY + NAME) != 0) {
+                    index = (index + 1) & mask;
+                }
+                table.put(index * ENTRY, old, offset, ENTRY);
+            }
+        }
+    }
+
+    private static int capacityFor(int expectedSize) {
+        var capacity = MIN_CAPACITY;
+        while (capacity < MAX_CAPACITY && capacity * 2L < expectedSize * 3L) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    private static LittleCalcRuntimeException unassigned(String id) {
+        return new LittleCalcRuntimeException(id + " has not been assigned a value");
+    }
+
+    private int newString() {
+        if (freeCount > 0) {
+            return free[--freeCount];
+        }
+        if (stringCount == strings.length) {
+            strings = Arrays.copyOf(strings, stringCount * 2);
+        }
+        return stringCount++;
+    }
+
+    private void freeString(int index) {
+        strings[index] = null;
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, freeCount * 2);
+        }
+        free[freeCount++] = index;
+    }
+}
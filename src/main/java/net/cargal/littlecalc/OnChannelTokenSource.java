@@ -0,0 +1,59 @@
+package net.cargal.littlecalc;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+
+/**
+ * Passes on only the tokens on one channel. UnbufferedTokenStream (unlike
+ * CommonTokenStream) hands the parser every token its source produces.
+ */
+public class OnChannelTokenSource implements TokenSource {
+    private final TokenSource source;
+    private final int channel;
+
+    public OnChannelTokenSource(TokenSource source, int channel) {
+        this.source = source;
+        this.channel = channel;
+    }
+
+    @Override
+    public Token nextToken() {
+        var token = source.nextToken();
+        while (token.getChannel() != channel && token.getType() != Token.EOF) {
+            token = source.nextToken();
+        }
+        return token;
+    }
+
+    @Override
+    public int getLine() {
+        return source.getLine();
+    }
+
+    @Override
+    public int getCharPositionInLine() {
+        return source.getCharPositionInLine();
+    }
+
+    @Override
+    public CharStream getInputStream() {
+        return source.getInputStream();
+    }
+
+    @Override
+    public String getSourceName() {
+        return source.getSourceName();
+    }
+
+    @Override
+    public void setTokenFactory(TokenFactory<?> factory) {
+        source.setTokenFactory(factory);
+    }
+
+    @Override
+    public TokenFactory<?> getTokenFactory() {
+        return source.getTokenFactory();
+    }
+}
@@ -0,0 +1,158 @@
+package net.cargal.littlecalc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.antlr.v4.runtime.tree.ParseTreeProperty;
+
+import net.cargal.littlecalc.LittleCalcParser.AssignmentStmtContext;
+import net.cargal.littlecalc.LittleCalcParser.CalcInContext;
+import net.cargal.littlecalc.LittleCalcParser.ImplicitPrintStmtContext;
+import net.cargal.littlecalc.LittleCalcParser.PrintStmtContext;
+
+/**
+ * Runs a (validated) script once for each of many sets of bindings, in
+ * parallel (on a ForkJoinPool), and returns the outputs' values (and what the
+ * script printed) for each, in the order of the bindings.
+ *
+ * The script's expressions are compiled once (with EvalMode.compiler()), and
+ * shared by the workers. The bindings are split into ranges, and each range
+ * is run by a worker with its own child SymbolTable (whose parent is the
+ * shared constants, which mustn't change while evaluate() runs), so workers
+ * share nothing that's written. A binding's variables (and the script's) are
+ * cleared before the next binding in the range is run, so each run sees only
+ * its bindings and the constants.
+ *
+ * Assignments and prints are run (prints are captured, rather than written to
+ * System.out); other statements are skipped, and assignments aren't commands.
+ */
+public class ParallelEvaluator {
+    // (ranges per thread, so a slow range doesn't leave the other threads idle)
+    private static final int RANGES_PER_THREAD = 8;
+
+    private final SymbolTable<LittleValue> constants;
+    private final List<Stmt> stmts = new ArrayList<>();
+    private final List<Symbol> targets = new ArrayList<>();
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    /** a script's outputs (in the order they were asked for) and printed output, for one set of bindings */
+    public record Result(List<LittleValue> values, String printed) {
+    }
+
+    // an assignment (target isn't null), or a print (of exprs, and a newline)
+    private record Stmt(Symbol target, CompiledExpr[] exprs) {
+    }
+
+    public ParallelEvaluator(CalcInContext script, SymbolTable<LittleValue> constants) {
+        this(script, constants, EvalMode.COMPILED);
+    }
+
+    public ParallelEvaluator(CalcInContext script, SymbolTable<LittleValue> constants, EvalMode evalMode) {
+        this.constants = constants;
+        var compiler = evalMode.compiler(constants.slots(), new ParseTreeProperty<>());
+        for (var stmt : script.stmts().stmt()) {
+            if (stmt instanceof AssignmentStmtContext assignment) {
+                var target = Symbol.of(assignment.ID().getSymbol());
+                stmts.add(new Stmt(target, new CompiledExpr[] { compiler.apply(assignment.expr()) }));
+                targets.add(target);
+            } else if (stmt instanceof PrintStmtContext print) {
+                stmts.add(new Stmt(null, print.expr().stream().map(compiler).toArray(CompiledExpr[]::new)));
+            } else if (stmt instanceof ImplicitPrintStmtContext print) {
+                stmts.add(new Stmt(null, new CompiledExpr[] { compiler.apply(print.expr()) }));
+            }
+        }
+    }
+
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public List<Result> evaluate(List<Map<String, LittleValue>> bindings, List<String> outputs) {
+        var slots = constants.slots();
+        var outputSymbols = outputs.stream().map(Symbol::intern).toArray(Symbol[]::new);
+        // (resolved up front, so workers don't contend to add them)
+        targets.forEach(slots::slot);
+        Arrays.stream(outputSymbols).forEach(slots::slot);
+        if (!bindings.isEmpty()) {
+            bindings.get(0).keySet().forEach(name -> slots.slot(Symbol.intern(name)));
+        }
+
+        var results = new Result[bindings.size()];
+        var rangeSize = Math.max(1, bindings.size() / (pool.getParallelism() * RANGES_PER_THREAD));
+        pool.invoke(new Range(bindings, outputSymbols, results, 0, bindings.size(), rangeSize));
+        return Arrays.asList(results);
+    }
+
+    private final class Range extends RecursiveAction {
+        private final List<Map<String, LittleValue>> bindings;
+        private final Symbol[] outputs;
+        private final Result[] results;
+        private final int from;
+        private final int to;
+        private final int rangeSize;
+
+        Range(List<Map<String, LittleValue>> bindings, Symbol[] outputs, Result[] results, int from, int to,
+                int rangeSize) {
+            this.bindings = bindings;
+            this.outputs = outputs;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.rangeSize = rangeSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > rangeSize) {
+                var middle = (from + to) >>> 1;
+                invokeAll(new Range(bindings, outputs, results, from, middle, rangeSize),
+                        new Range(bindings, outputs, results, middle, to, rangeSize));
+                return;
+            }
+            var worker = new Worker();
+            for (int i = from; i < to; i++) {
+                results[i] = worker.run(bindings.get(i), outputs);
+            }
+        }
+    }
+
+    private final class Worker {
+        private final SymbolTable<LittleValue> variables = new SymbolTable<>(constants);
+        private final StringBuilder printed = new StringBuilder();
+        private final List<Symbol> bound = new ArrayList<>();
+
+        Result run(Map<String, LittleValue> binding, Symbol[] outputs) {
+            for (var entry : binding.entrySet()) {
+                var symbol = Symbol.intern(entry.getKey());
+                variables.put(symbol, entry.getValue());
+                bound.add(symbol);
+            }
+            for (var stmt : stmts) {
+                if (stmt.target != null) {
+                    variables.put(stmt.target, stmt.exprs[0].eval(variables));
+                } else {
+                    for (var expr : stmt.exprs) {
+                        printed.append(expr.eval(variables));
+                    }
+                    printed.append('\n');
+                }
+            }
+            var values = new LittleValue[outputs.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = variables.find(outputs[i]);
+            }
+            var result = new Result(Arrays.asList(values), printed.toString());
+
+            // (a null value is no value, so the constants show through again)
+            bound.forEach(symbol -> variables.put(symbol, null));
+            targets.forEach(symbol -> variables.put(symbol, null));
+            bound.clear();
+            printed.setLength(0);
+            return result;
+        }
+    }
+}
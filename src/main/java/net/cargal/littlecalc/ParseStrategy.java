@@ -0,0 +1,82 @@
+package net.cargal.littlecalc;
+
+import java.util.ArrayList;
+import java.util.function.Function;
+
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.tinylog.Logger;
+
+public enum ParseStrategy {
+    LL {
+        @Override
+        public <T extends ParserRuleContext> T parse(LittleCalcParser parser, Function<LittleCalcParser, T> rule) {
+            var start = System.nanoTime();
+            var result = llParse(parser, rule);
+            log(parser, result, "LL", start);
+            return result;
+        }
+    },
+    // SLL only fails on syntax errors or true LL ambiguities, so re-parsing
+    // with LL when it does gives the same trees (and error messages) as LL alone
+    SLL_THEN_LL {
+        @Override
+        public <T extends ParserRuleContext> T parse(LittleCalcParser parser, Function<LittleCalcParser, T> rule) {
+            if (parser.isTrace()) {
+                // don't show the trace for a parse that may be thrown away
+                return LL.parse(parser, rule);
+            }
+            var start = System.nanoTime();
+            var input = parser.getInputStream();
+            input.LA(1); // a buffered stream isn't positioned on its first token until it's used
+            var startIndex = input.index();
+            var marker = input.mark();
+            try {
+                var listeners = new ArrayList<>(parser.getErrorListeners());
+                var interpreter = parser.getInterpreter();
+                interpreter.setPredictionMode(PredictionMode.SLL);
+                parser.removeErrorListeners();
+                parser.setErrorHandler(new BailErrorStrategy());
+                try {
+                    var result = rule.apply(parser);
+                    log(parser, result, "SLL", start);
+                    return result;
+                } catch (ParseCancellationException ex) {
+                    Logger.debug("SLL parse failed (" + ex.getCause() + "), retrying with LL");
+                } finally {
+                    for (ANTLRErrorListener listener : listeners) {
+                        parser.addErrorListener(listener);
+                    }
+                    parser.setErrorHandler(new DefaultErrorStrategy());
+                }
+                // unlike reset(), this doesn't seek to 0, so it works for unbuffered streams
+                // (and for parses that don't start at the beginning of the input)
+                input.seek(startIndex);
+                parser.setInputStream(input);
+                var result = llParse(parser, rule);
+                log(parser, result, "SLL->LL", start);
+                return result;
+            } finally {
+                input.release(marker);
+            }
+        }
+    };
+
+    public abstract <T extends ParserRuleContext> T parse(LittleCalcParser parser,
+            Function<LittleCalcParser, T> rule);
+
+    private static <T extends ParserRuleContext> T llParse(LittleCalcParser parser,
+            Function<LittleCalcParser, T> rule) {
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+        return rule.apply(parser);
+    }
+
+    private static void log(LittleCalcParser parser, ParserRuleContext result, String path, long start) {
+        Logger.debug(parser.getRuleNames()[result.getRuleIndex()] + " parsed with " + path + " in "
+                + (System.nanoTime() - start) / 1000 + "us");
+    }
+}
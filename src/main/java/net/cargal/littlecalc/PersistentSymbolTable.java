@@ -0,0 +1,153 @@
+package net.cargal.littlecalc;
+
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * A SymbolTable whose variables are in a persistent (immutable, structurally
+ * shared) hash array mapped trie, so snapshot() is O(1), and a snapshot (or a
+ * fork of a session run on one) only pays for the variables it changes: put()
+ * copies the path to its variable (at most 7 small nodes), and shares the rest.
+ *
+ * The trie is keyed by Symbol id (5 bits a level, lowest first). Ids are
+ * unique, so there are never collisions, and dense, so the trie stays shallow.
+ */
+public class PersistentSymbolTable<T> extends SymbolTable<T> {
+    private static final int BITS = 5;
+    private static final Node EMPTY = new Node(0, new Object[0]);
+
+    private Node root = EMPTY;
+    private int size = 0;
+
+    public PersistentSymbolTable() {
+        super();
+    }
+
+    public PersistentSymbolTable(Slots slots) {
+        super(slots);
+    }
+
+    public PersistentSymbolTable(SymbolTable<T> parent) {
+        super(parent);
+    }
+
+    /** a table with this table's variables, that doesn't see (or make) later changes (its parent is shared) */
+    public PersistentSymbolTable<T> snapshot() {
+        var snapshot = parent().isPresent() ? new PersistentSymbolTable<>(parent().get())
+                : new PersistentSymbolTable<T>(slots());
+        snapshot.restore(this);
+        return snapshot;
+    }
+
+    /** gives this table the variables a snapshot has (without copying them) */
+    public void restore(PersistentSymbolTable<T> snapshot) {
+        root = snapshot.root;
+        size = snapshot.size;
+    }
+
+    /** the number of variables in this table (not its parents) */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public T slot(int slot) {
+        return slot < slots().size() ? local(slots().symbol(slot)) : null;
+    }
+
+    @Override
+    public T find(Symbol symbol, Slots resolvedIn, int slot) {
+        // (this table isn't indexed by slot)
+        return find(symbol);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected T local(Symbol symbol) {
+        var id = symbol.id();
+        var node = root;
+        for (int shift = 0;; shift += BITS) {
+            var bit = bit(id, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            var child = node.children[node.index(bit)];
+            if (child instanceof Entry entry) {
+                return entry.symbol == symbol ? (T) entry.value : null;
+            }
+            node = (Node) child;
+        }
+    }
+
+    @Override
+    public void put(Symbol symbol, T value) {
+        root = put(root, new Entry(symbol, value), 0);
+    }
+
+    @Override
+    protected Stream<Symbol> localKeys() {
+        return keys(root);
+    }
+
+    private Node put(Node node, Entry entry, int shift) {
+        var bit = bit(entry.symbol.id(), shift);
+        var index = node.index(bit);
+        if ((node.bitmap & bit) == 0) {
+            size++;
+            return node.inserted(bit, index, entry);
+        }
+        var child = node.children[index];
+        if (child instanceof Entry existing) {
+            if (existing.symbol == entry.symbol) {
+                return node.replaced(index, entry);
+            }
+            size++;
+            return node.replaced(index, merge(existing, entry, shift + BITS));
+        }
+        return node.replaced(index, put((Node) child, entry, shift + BITS));
+    }
+
+    // a node with two entries, whose ids are the same below shift
+    private static Node merge(Entry a, Entry b, int shift) {
+        var bitA = bit(a.symbol.id(), shift);
+        var bitB = bit(b.symbol.id(), shift);
+        if (bitA == bitB) {
+            return new Node(bitA, new Object[] { merge(a, b, shift + BITS) });
+        }
+        return new Node(bitA | bitB, Integer.compareUnsigned(bitA, bitB) < 0 ? new Object[] { a, b }
+                : new Object[] { b, a });
+    }
+
+    private static Stream<Symbol> keys(Node node) {
+        return Arrays.stream(node.children)
+                .flatMap(child -> child instanceof Entry entry ? Stream.of(entry.symbol) : keys((Node) child));
+    }
+
+    private static int bit(int id, int shift) {
+        return 1 << ((id >>> shift) & ((1 << BITS) - 1));
+    }
+
+    private record Entry(Symbol symbol, Object value) {
+    }
+
+    // children (Entries or Nodes) are in the order of their bits in bitmap
+    private record Node(int bitmap, Object[] children) {
+        int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        Node inserted(int bit, int index, Object child) {
+            var copy = new Object[children.length + 1];
+            System.arraycopy(children, 0, copy, 0, index);
+            copy[index] = child;
+            System.arraycopy(children, index, copy, index + 1, children.length - index);
+            return new Node(bitmap | bit, copy);
+        }
+
+        Node replaced(int index, Object child) {
+            var copy = children.clone();
+            copy[index] = child;
+            return new Node(bitmap, copy);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package net.cargal.littlecalc;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import net.cargal.littlecalc.LittleCalcParser.AssignmentStmtContext;
+import net.cargal.littlecalc.LittleCalcParser.CalcInContext;
+import net.cargal.littlecalc.LittleCalcParser.IDExprContext;
+
+/**
+ * Runs the assignments of a (validated) script like a spreadsheet: after the
+ * first run(), set() changes an input and recomputes only the assignments it
+ * affects, in script order (which is a topological order of the dependencies),
+ * and stops wherever a recomputed value hasn't changed. The values are the
+ * ones re-running the whole script would give.
+ *
+ * Each assignment is a node of the graph, which depends on the assignments
+ * (or inputs) that gave the variables its expression reads the values it
+ * sees (so a variable that's assigned more than once is a different node each
+ * time). Statements other than assignments aren't run.
+ */
+public class ReactiveExecutor {
+    private final List<Assignment> assignments = new ArrayList<>();
+    private final Map<Symbol, Assignment> firstAssignments = new HashMap<>();
+    // the assignments that read each input (a variable read before it's assigned)
+    private final Map<Symbol, List<Assignment>> inputReaders = new HashMap<>();
+    private final Map<Symbol, LittleValue> inputs = new HashMap<>();
+    // what the assignment being evaluated reads
+    private final SymbolTable<LittleValue> reads = new SymbolTable<>();
+    private final SymbolTable<LittleValue> variables = new SymbolTable<>();
+    private final ExprEvaluator evaluator;
+    private final PriorityQueue<Assignment> dirty = new PriorityQueue<>(Comparator.comparingInt(a -> a.index));
+    private boolean hasRun = false;
+    private int recomputations = 0;
+
+    private static final class Assignment {
+        final int index;
+        final Symbol variable;
+        final AssignmentStmtContext ctx;
+        final Symbol[] reads;
+        // the assignment each read sees (null for an input)
+        final Assignment[] sources;
+        final List<Assignment> dependents = new ArrayList<>();
+        boolean last = true;
+        boolean pinned = false;
+        boolean queued = false;
+        LittleValue value;
+
+        Assignment(int index, AssignmentStmtContext ctx, Symbol[] reads) {
+            this.index = index;
+            this.variable = Symbol.of(ctx.ID().getSymbol());
+            this.ctx = ctx;
+            this.reads = reads;
+            this.sources = new Assignment[reads.length];
+        }
+    }
+
+    public ReactiveExecutor(CalcInContext script) {
+        this(script, EvalMode.COMPILED);
+    }
+
+    public ReactiveExecutor(CalcInContext script, EvalMode evalMode) {
+        evaluator = evalMode.evaluator(reads);
+        var latest = new HashMap<Symbol, Assignment>();
+        for (var stmt : script.stmts().stmt()) {
+            if (!(stmt instanceof AssignmentStmtContext ctx)) {
+                continue;
+            }
+            var found = new LinkedHashSet<Symbol>();
+            findReads(ctx.expr(), found);
+            var assignment = new Assignment(assignments.size(), ctx, found.toArray(new Symbol[0]));
+            for (int i = 0; i < assignment.reads.length; i++) {
+                var source = latest.get(assignment.reads[i]);
+                assignment.sources[i] = source;
+                if (source != null) {
+                    source.dependents.add(assignment);
+                } else {
+                    inputReaders.computeIfAbsent(assignment.reads[i], k -> new ArrayList<>()).add(assignment);
+                }
+            }
+            var previous = latest.put(assignment.variable, assignment);
+            if (previous != null) {
+                previous.last = false;
+            }
+            firstAssignments.putIfAbsent(assignment.variable, assignment);
+            assignments.add(assignment);
+        }
+    }
+
+    private static void findReads(ParseTree tree, Set<Symbol> found) {
+        if (tree instanceof IDExprContext id) {
+            found.add(Symbol.of(id.ID().getSymbol()));
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            findReads(tree.getChild(i), found);
+        }
+    }
+
+    /** runs every assignment, in order */
+    public void run() {
+        for (var assignment : assignments) {
+            if (!assignment.pinned) {
+                assignment.value = evaluate(assignment);
+            }
+            publish(assignment);
+        }
+        hasRun = true;
+        recomputations += assignments.size();
+    }
+
+    /**
+     * changes an input: a variable the script reads without assigning it, or the
+     * value of a variable's first assignment (as if it assigned it the
+     * constant). Returns the number of assignments that were recomputed.
+     */
+    public int set(String name, LittleValue value) {
+        var variable = Symbol.intern(name);
+        var assignment = firstAssignments.get(variable);
+        List<Assignment> readers;
+        if (assignment != null) {
+            assignment.pinned = true;
+            if (value.equals(assignment.value)) {
+                return 0;
+            }
+            assignment.value = value;
+            if (hasRun) {
+                publish(assignment);
+            }
+            readers = assignment.dependents;
+        } else {
+            if (value.equals(inputs.put(variable, value))) {
+                return 0;
+            }
+            variables.put(variable, value);
+            readers = inputReaders.getOrDefault(variable, List.of());
+        }
+        return hasRun ? propagate(readers) : 0;
+    }
+
+    public Optional<LittleValue> get(String name) {
+        return variables.get(name);
+    }
+
+    /** how many assignments have been computed (by run() and set()) */
+    public int recomputations() {
+        return recomputations;
+    }
+
+    private int propagate(List<Assignment> readers) {
+        readers.forEach(this::enqueue);
+        var count = 0;
+        while (!dirty.isEmpty()) {
+            var assignment = dirty.poll();
+            assignment.queued = false;
+            if (assignment.pinned) {
+                continue;
+            }
+            var value = evaluate(assignment);
+            count++;
+            if (!value.equals(assignment.value)) {
+                assignment.value = value;
+                publish(assignment);
+                assignment.dependents.forEach(this::enqueue);
+            }
+        }
+        recomputations += count;
+        return count;
+    }
+
+    private void enqueue(Assignment assignment) {
+        if (!assignment.queued) {
+            assignment.queued = true;
+            dirty.add(assignment);
+        }
+    }
+
+    private LittleValue evaluate(Assignment assignment) {
+        for (int i = 0; i < assignment.reads.length; i++) {
+            var source = assignment.sources[i];
+            // (null, for an input that hasn't been set, so the evaluator reports it)
+            reads.put(assignment.reads[i], source != null ? source.value : inputs.get(assignment.reads[i]));
+        }
+        return evaluator.evaluate(assignment.ctx.expr());
+    }
+
+    private void publish(Assignment assignment) {
+        if (assignment.last) {
+            variables.put(assignment.variable, assignment.value);
+        }
+    }
+}
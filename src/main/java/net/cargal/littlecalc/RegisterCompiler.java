@@ -0,0 +1,442 @@
+package net.cargal.littlecalc;
+
+import static net.cargal.littlecalc.RegisterProgram.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTreeProperty;
+
+import net.cargal.littlecalc.LittleCalcParser.AddSubExprContext;
+import net.cargal.littlecalc.LittleCalcParser.AndExprContext;
+import net.cargal.littlecalc.LittleCalcParser.AntlrUtilStmtContext;
+import net.cargal.littlecalc.LittleCalcParser.AssignmentStmtContext;
+import net.cargal.littlecalc.LittleCalcParser.CompareExprContext;
+import net.cargal.littlecalc.LittleCalcParser.EqualityExprContext;
+import net.cargal.littlecalc.LittleCalcParser.ExpExprContext;
+import net.cargal.littlecalc.LittleCalcParser.ExprContext;
+import net.cargal.littlecalc.LittleCalcParser.FalseExprContext;
+import net.cargal.littlecalc.LittleCalcParser.IDExprContext;
+import net.cargal.littlecalc.LittleCalcParser.ImplicitPrintStmtContext;
+import net.cargal.littlecalc.LittleCalcParser.MulDivExprContext;
+import net.cargal.littlecalc.LittleCalcParser.NegationExprContext;
+import net.cargal.littlecalc.LittleCalcParser.NumberExprContext;
+import net.cargal.littlecalc.LittleCalcParser.OrExprContext;
+import net.cargal.littlecalc.LittleCalcParser.ParenExprContext;
+import net.cargal.littlecalc.LittleCalcParser.PrintStmtContext;
+import net.cargal.littlecalc.LittleCalcParser.PrintVarsContext;
+import net.cargal.littlecalc.LittleCalcParser.StringExprContext;
+import net.cargal.littlecalc.LittleCalcParser.TernaryExprContext;
+import net.cargal.littlecalc.LittleCalcParser.TrueExprContext;
+import net.cargal.littlecalc.exceptions.LittleCalcImplementationException;
+
+/**
+ * Compiles a (validated) calcIn, replIn (without ANTLR utilities), statement or
+ * expression into a RegisterProgram.
+ *
+ * Number registers are used for anything ExprTypes says is a number, and
+ * conditions are compiled to jumps (so && and || short-circuit, and a ternary
+ * only evaluates one branch). Results, and errors and their positions, are
+ * the same as LittleCalcExprVisitor's. Constant expressions and dead stores
+ * (see LittleCalcOptimizer) are compiled to their values and left out.
+ */
+public class RegisterCompiler extends LittleCalcBaseVisitor<Void> {
+    private final ParseTreeProperty<LittleValue> constants;
+    private final Predicate<AssignmentStmtContext> deadStores;
+
+    private int[] code = new int[64];
+    private int size = 0;
+    private final List<Double> numbers = new ArrayList<>();
+    private final Map<Long, Integer> numberIndexes = new HashMap<>();
+    private final List<LittleValue> values = new ArrayList<>();
+    private final Map<LittleValue, Integer> valueIndexes = new HashMap<>();
+    private final List<Symbol> symbols = new ArrayList<>();
+    private final Map<Symbol, Integer> symbolIndexes = new HashMap<>();
+    // registers are allocated like a stack, so a register's free once its expression has been evaluated
+    private int numberRegisters = 0;
+    private int valueRegisters = 0;
+    private int maxNumberRegisters = 0;
+    private int maxValueRegisters = 0;
+
+    // a jump target, with the jumps to it that need patching once it's marked
+    private static class Label {
+        private int target = -1;
+        private int[] uses = new int[2];
+        private int useCount = 0;
+    }
+
+    public RegisterCompiler() {
+        this(new ParseTreeProperty<>());
+    }
+
+    public RegisterCompiler(ParseTreeProperty<LittleValue> constants) {
+        this.constants = constants;
+        this.deadStores = ctx -> false;
+    }
+
+    /** a compiler for the tree the optimizer was run on */
+    public RegisterCompiler(LittleCalcOptimizer optimizer) {
+        this.constants = optimizer.getConstants();
+        this.deadStores = optimizer::isDeadStore;
+    }
+
+    /** compiles statements (a calcIn, replIn, stmts or stmt) */
+    public RegisterProgram compile(ParserRuleContext ctx) {
+        reset();
+        visit(ctx);
+        return program(-1);
+    }
+
+    /** compiles an expression, into a program whose result is its value */
+    public RegisterProgram compileExpr(ExprContext ctx) {
+        reset();
+        var result = valueRegister();
+        value(ctx, result);
+        return program(result);
+    }
+
+    @Override
+    public Void visitAntlrUtilStmt(AntlrUtilStmtContext ctx) {
+        throw new LittleCalcImplementationException("ANTLR utilities can't be compiled");
+    }
+
+    @Override
+    public Void visitAssignmentStmt(AssignmentStmtContext ctx) {
+        if (deadStores.test(ctx)) {
+            return null;
+        }
+        var id = Symbol.of(ctx.ID().getSymbol());
+        var value = valueRegister();
+        value(ctx.expr(), value);
+        emit(STORE, symbol(id), value);
+        if (LittleCalcExecutionVisitor.isCommand(id.name())) {
+            emit(COMMAND, symbol(id), line(ctx.expr()), column(ctx.expr()));
+        }
+        freeValueRegister();
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(PrintStmtContext ctx) {
+        for (var expr : ctx.expr()) {
+            print(expr);
+        }
+        emit(NEWLINE);
+        return null;
+    }
+
+    @Override
+    public Void visitImplicitPrintStmt(ImplicitPrintStmtContext ctx) {
+        print(ctx.expr());
+        emit(NEWLINE);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintVars(PrintVarsContext ctx) {
+        emit(VARS);
+        return null;
+    }
+
+    private void print(ExprContext ctx) {
+        var value = valueRegister();
+        value(ctx, value);
+        emit(PRINT, value);
+        freeValueRegister();
+    }
+
+    // v[dst] = the expression's value
+    private void value(ExprContext ctx, int dst) {
+        var folded = constants.get(ctx);
+        if (folded != null) {
+            emit(VALUE, dst, value(folded));
+        } else if (ctx instanceof ParenExprContext paren) {
+            value(paren.expr(), dst);
+        } else if (ctx instanceof NumberExprContext literal) {
+            emit(VALUE, dst, value(LittleValue.numberValue(numberFromToken(literal))));
+        } else if (ctx instanceof TrueExprContext) {
+            emit(BOOLEAN, dst, 1);
+        } else if (ctx instanceof FalseExprContext) {
+            emit(BOOLEAN, dst, 0);
+        } else if (ctx instanceof StringExprContext string) {
+            var text = string.STRING().getText();
+            var trimmed = text.substring(1, text.length() - 1);
+            emit(VALUE, dst, value(LittleValue.stringValue(trimmed.replace("\\\"", "\"").replace("\\'", "'"))));
+        } else if (ctx instanceof IDExprContext id) {
+            emit(LOAD, dst, symbol(Symbol.of(id.ID().getSymbol())), line(ctx), column(ctx));
+        } else if (ctx instanceof TernaryExprContext ternary) {
+            var otherwise = new Label();
+            var end = new Label();
+            branch(ternary.cond, false, otherwise);
+            value(ternary.tv, dst);
+            jump(end);
+            mark(otherwise);
+            value(ternary.fv, dst);
+            mark(end);
+        } else if (ExprTypes.isNumber(ctx)) {
+            var number = numberRegister();
+            number(ctx, number);
+            emit(BOX, dst, number);
+            freeNumberRegister();
+        } else {
+            var otherwise = new Label();
+            var end = new Label();
+            branch(ctx, false, otherwise);
+            emit(BOOLEAN, dst, 1);
+            jump(end);
+            mark(otherwise);
+            emit(BOOLEAN, dst, 0);
+            mark(end);
+        }
+    }
+
+    // n[dst] = the expression's number
+    private void number(ExprContext ctx, int dst) {
+        var folded = constants.get(ctx);
+        if (folded != null && folded.isNumber()) {
+            emit(NUMBER, dst, number(folded.doubleValue()));
+        } else if (folded == null && ctx instanceof ParenExprContext paren) {
+            number(paren.expr(), dst);
+        } else if (folded == null && ctx instanceof NumberExprContext literal) {
+            emit(NUMBER, dst, number(numberFromToken(literal)));
+        } else if (folded == null && ctx instanceof ExpExprContext exp) {
+            arithmetic(POW, exp.base, exp.exp, dst);
+        } else if (folded == null && ctx instanceof MulDivExprContext mulDiv) {
+            arithmetic(mulDiv.op.getType() == LittleCalcLexer.MUL ? MUL : DIV, mulDiv.lhs, mulDiv.rhs, dst);
+        } else if (folded == null && ctx instanceof AddSubExprContext addSub) {
+            arithmetic(addSub.op.getType() == LittleCalcLexer.ADD ? ADD : SUB, addSub.lhs, addSub.rhs, dst);
+        } else if (folded == null && ctx instanceof TernaryExprContext ternary) {
+            var otherwise = new Label();
+            var end = new Label();
+            branch(ternary.cond, false, otherwise);
+            number(ternary.tv, dst);
+            jump(end);
+            mark(otherwise);
+            number(ternary.fv, dst);
+            mark(end);
+        } else {
+            // (UNBOX reports a value of the wrong type)
+            var value = valueRegister();
+            value(ctx, value);
+            emit(UNBOX, dst, value, line(ctx), column(ctx));
+            freeValueRegister();
+        }
+    }
+
+    private void arithmetic(int opcode, ExprContext lhs, ExprContext rhs, int dst) {
+        number(lhs, dst);
+        var operand = numberRegister();
+        number(rhs, operand);
+        emit(opcode, dst, dst, operand);
+        freeNumberRegister();
+    }
+
+    // jumps to target if the expression's boolean is sense (and falls through if it isn't)
+    private void branch(ExprContext ctx, boolean sense, Label target) {
+        var folded = constants.get(ctx);
+        if (folded != null && folded.isBoolean()) {
+            if (folded.bool() == sense) {
+                jump(target);
+            }
+        } else if (folded == null && ctx instanceof ParenExprContext paren) {
+            branch(paren.expr(), sense, target);
+        } else if (folded == null && (ctx instanceof TrueExprContext || ctx instanceof FalseExprContext)) {
+            if ((ctx instanceof TrueExprContext) == sense) {
+                jump(target);
+            }
+        } else if (folded == null && ctx instanceof NegationExprContext negation) {
+            branch(negation.expr(), !sense, target);
+        } else if (folded == null && ctx instanceof AndExprContext and) {
+            shortCircuit(and.lhs, and.rhs, false, sense, target);
+        } else if (folded == null && ctx instanceof OrExprContext or) {
+            shortCircuit(or.lhs, or.rhs, true, sense, target);
+        } else if (folded == null && ctx instanceof CompareExprContext compare) {
+            compare(compare, sense, target);
+        } else if (folded == null && ctx instanceof EqualityExprContext equality) {
+            equality(equality, sense, target);
+        } else if (folded == null && ctx instanceof TernaryExprContext ternary) {
+            var otherwise = new Label();
+            var end = new Label();
+            branch(ternary.cond, false, otherwise);
+            branch(ternary.tv, sense, target);
+            jump(end);
+            mark(otherwise);
+            branch(ternary.fv, sense, target);
+            mark(end);
+        } else {
+            // (JUMP_IF reports a value of the wrong type)
+            var value = valueRegister();
+            value(ctx, value);
+            jump(target, JUMP_IF, value, line(ctx), column(ctx), sense ? 1 : 0);
+            freeValueRegister();
+        }
+    }
+
+    // && (decisive == false) or || (decisive == true): lhs being decisive decides the result
+    private void shortCircuit(ExprContext lhs, ExprContext rhs, boolean decisive, boolean sense, Label target) {
+        if (sense == decisive) {
+            branch(lhs, sense, target);
+            branch(rhs, sense, target);
+        } else {
+            var decided = new Label();
+            branch(lhs, decisive, decided);
+            branch(rhs, sense, target);
+            mark(decided);
+        }
+    }
+
+    private void compare(CompareExprContext ctx, boolean sense, Label target) {
+        var op = LVComparableOp.fromToken(ctx.op);
+        if (ExprTypes.isNumber(ctx.lhs) && ExprTypes.isNumber(ctx.rhs)) {
+            var condition = switch (op) {
+                case LT -> LT;
+                case LE -> LE;
+                case GT -> GT;
+                case GE -> GE;
+            };
+            numberJump(ctx.lhs, ctx.rhs, sense ? condition : condition ^ 1, target);
+            return;
+        }
+        var lhs = valueRegister();
+        var rhs = valueRegister();
+        value(ctx.lhs, lhs);
+        value(ctx.rhs, rhs);
+        jump(target, JUMP_IF_COMPARE, op.ordinal(), lhs, rhs, line(ctx.lhs), column(ctx.lhs), sense ? 1 : 0);
+        freeValueRegister();
+        freeValueRegister();
+    }
+
+    private void equality(EqualityExprContext ctx, boolean sense, Label target) {
+        var equal = (ctx.op.getType() == LittleCalcLexer.EQ) == sense;
+        if (ExprTypes.isNumber(ctx.lhs) && ExprTypes.isNumber(ctx.rhs)) {
+            numberJump(ctx.lhs, ctx.rhs, equal ? EQ : NE, target);
+            return;
+        }
+        // (booleans are TRUE or FALSE, so they're equal when they're the same value)
+        var lhs = valueRegister();
+        var rhs = valueRegister();
+        value(ctx.lhs, lhs);
+        value(ctx.rhs, rhs);
+        jump(target, JUMP_IF_EQUAL, lhs, rhs, equal ? 1 : 0);
+        freeValueRegister();
+        freeValueRegister();
+    }
+
+    private void numberJump(ExprContext lhs, ExprContext rhs, int condition, Label target) {
+        var a = numberRegister();
+        var b = numberRegister();
+        number(lhs, a);
+        number(rhs, b);
+        jump(target, JUMP_IF_NUMBER, condition, a, b);
+        freeNumberRegister();
+        freeNumberRegister();
+    }
+
+    private void reset() {
+        size = 0;
+        numbers.clear();
+        numberIndexes.clear();
+        values.clear();
+        valueIndexes.clear();
+        symbols.clear();
+        symbolIndexes.clear();
+        numberRegisters = 0;
+        valueRegisters = 0;
+        maxNumberRegisters = 0;
+        maxValueRegisters = 0;
+    }
+
+    private RegisterProgram program(int result) {
+        var numberPool = numbers.stream().mapToDouble(Double::doubleValue).toArray();
+        return new RegisterProgram(Arrays.copyOf(code, size), numberPool, values.toArray(new LittleValue[0]),
+                symbols.toArray(new Symbol[0]), maxNumberRegisters, maxValueRegisters, result);
+    }
+
+    private void emit(int... instruction) {
+        if (size + instruction.length > code.length) {
+            code = Arrays.copyOf(code, Math.max(size + instruction.length, code.length * 2));
+        }
+        System.arraycopy(instruction, 0, code, size, instruction.length);
+        size += instruction.length;
+    }
+
+    private void jump(Label target) {
+        jump(target, JUMP);
+    }
+
+    // emits a jump instruction, with target as its last operand
+    private void jump(Label target, int... instruction) {
+        emit(instruction);
+        if (target.target < 0) {
+            if (target.useCount == target.uses.length) {
+                target.uses = Arrays.copyOf(target.uses, target.useCount * 2);
+            }
+            target.uses[target.useCount++] = size;
+        }
+        emit(target.target);
+    }
+
+    private void mark(Label label) {
+        label.target = size;
+        for (int i = 0; i < label.useCount; i++) {
+            code[label.uses[i]] = size;
+        }
+    }
+
+    private int numberRegister() {
+        maxNumberRegisters = Math.max(maxNumberRegisters, ++numberRegisters);
+        return numberRegisters - 1;
+    }
+
+    private void freeNumberRegister() {
+        numberRegisters--;
+    }
+
+    private int valueRegister() {
+        maxValueRegisters = Math.max(maxValueRegisters, ++valueRegisters);
+        return valueRegisters - 1;
+    }
+
+    private void freeValueRegister() {
+        valueRegisters--;
+    }
+
+    // pool indexes (each constant is only pooled once)
+    private int number(double number) {
+        return numberIndexes.computeIfAbsent(Double.doubleToRawLongBits(number), bits -> {
+            numbers.add(number);
+            return numbers.size() - 1;
+        });
+    }
+
+    private int value(LittleValue value) {
+        return valueIndexes.computeIfAbsent(value, v -> {
+            values.add(v);
+            return values.size() - 1;
+        });
+    }
+
+    private int symbol(Symbol symbol) {
+        return symbolIndexes.computeIfAbsent(symbol, s -> {
+            symbols.add(s);
+            return symbols.size() - 1;
+        });
+    }
+
+    private static double numberFromToken(NumberExprContext ctx) {
+        return Double.parseDouble(ctx.NUMBER().getText().replace("_", ""));
+    }
+
+    private static int line(ParserRuleContext ctx) {
+        return ctx.getStart().getLine();
+    }
+
+    private static int column(ParserRuleContext ctx) {
+        return ctx.getStart().getCharPositionInLine();
+    }
+}
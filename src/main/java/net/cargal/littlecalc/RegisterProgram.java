@@ -0,0 +1,355 @@
+package net.cargal.littlecalc;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A compiled script (or expression) for RegisterVM: instructions encoded in an
+ * int[] (an opcode followed by its operands), with pools of the numbers,
+ * values (strings, and constants from LittleCalcOptimizer) and variables they
+ * refer to.
+ *
+ * Registers come in two banks: numbers (doubles) and values (LittleValues).
+ * Booleans are never kept in registers (conditions are compiled to jumps)
+ * unless they're needed as values.
+ *
+ * Programs are immutable and don't refer to the parse tree, so they can be
+ * kept, shared between threads, or written out (writeTo()) and read back in
+ * (readFrom()), which checks every instruction, and that every register is
+ * written before it's read.
+ */
+public final class RegisterProgram {
+    static final int NUMBER = 0; // n[dst] = numbers[k]
+    static final int VALUE = 1; // v[dst] = values[k]
+    static final int BOOLEAN = 2; // v[dst] = TRUE or FALSE
+    static final int LOAD = 3; // v[dst] = the variable (or its error at line, col)
+    static final int STORE = 4; // variable = v[src]
+    static final int UNBOX = 5; // n[dst] = v[src].doubleValue() (or its error at line, col)
+    static final int BOX = 6; // v[dst] = numberValue(n[src])
+    static final int ADD = 7; // n[dst] = n[a] + n[b]
+    static final int SUB = 8;
+    static final int MUL = 9;
+    static final int DIV = 10;
+    static final int POW = 11;
+    static final int JUMP = 12;
+    static final int JUMP_IF = 13; // if v[src].bool() == sense (or its error at line, col)
+    static final int JUMP_IF_NUMBER = 14; // if Double.compare(n[a], n[b]) meets the condition
+    static final int JUMP_IF_COMPARE = 15; // if v[a].evalCompare(op, v[b]) == sense (or its error at line, col)
+    static final int JUMP_IF_EQUAL = 16; // if v[a].equals(v[b]) == sense
+    static final int PRINT = 17;
+    static final int NEWLINE = 18;
+    static final int VARS = 19;
+    static final int COMMAND = 20; // the variable was assigned a tracing command (errors at line, col)
+
+    // JUMP_IF_NUMBER conditions (each one's negation is the one at index ^ 1)
+    static final int LT = 0;
+    static final int GE = 1;
+    static final int GT = 2;
+    static final int LE = 3;
+    static final int EQ = 4;
+    static final int NE = 5;
+
+    private static final String[] NAMES = { "NUMBER", "VALUE", "BOOLEAN", "LOAD", "STORE", "UNBOX", "BOX", "ADD",
+            "SUB", "MUL", "DIV", "POW", "JUMP", "JUMP_IF", "JUMP_IF_NUMBER", "JUMP_IF_COMPARE", "JUMP_IF_EQUAL",
+            "PRINT", "NEWLINE", "VARS", "COMMAND" };
+    /*
+     * The operands of each opcode: n (number register), v (value register), N
+     * (numbers index), V (values index), s (symbols index), b (0 or 1), c
+     * (condition), o (LVComparableOp ordinal), i (line or column), l (jump target)
+     */
+    private static final String[] OPERANDS = { "nN", "vV", "vb", "vsii", "sv", "nvii", "vn", "nnn", "nnn", "nnn",
+            "nnn", "nnn", "l", "viibl", "cnnl", "ovviibl", "vvbl", "v", "", "", "sii" };
+
+    private static final int MAGIC = 0x4C43524D; // "LCRM"
+    private static final int VERSION = 1;
+    private static final int NO_RESULT = -1;
+    // (of each kind, so a program that's read can't make run() allocate too much)
+    static final int MAX_REGISTERS = 1 << 16;
+
+    private final int[] code;
+    private final double[] numbers;
+    private final LittleValue[] values;
+    private final Symbol[] symbols;
+    private final int numberRegisters;
+    private final int valueRegisters;
+    private final int result;
+
+    RegisterProgram(int[] code, double[] numbers, LittleValue[] values, Symbol[] symbols, int numberRegisters,
+            int valueRegisters, int result) {
+        this.code = code;
+        this.numbers = numbers;
+        this.values = values;
+        this.symbols = symbols;
+        this.numberRegisters = numberRegisters;
+        this.valueRegisters = valueRegisters;
+        this.result = result;
+    }
+
+    /** the length of each instruction (its opcode and operands) */
+    static int length(int opcode) {
+        return 1 + OPERANDS[opcode].length();
+    }
+
+    int[] code() {
+        return code;
+    }
+
+    double[] numbers() {
+        return numbers;
+    }
+
+    LittleValue[] values() {
+        return values;
+    }
+
+    Symbol[] symbols() {
+        return symbols;
+    }
+
+    int numberRegisters() {
+        return numberRegisters;
+    }
+
+    int valueRegisters() {
+        return valueRegisters;
+    }
+
+    /** the value register with the program's result (if it's an expression's) */
+    int result() {
+        return result;
+    }
+
+    boolean hasResult() {
+        return result != NO_RESULT;
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(numberRegisters);
+        out.writeInt(valueRegisters);
+        out.writeInt(result);
+        out.writeInt(numbers.length);
+        for (var number : numbers) {
+            out.writeDouble(number);
+        }
+        out.writeInt(values.length);
+        for (var value : values) {
+            if (value.isNumber()) {
+                out.writeByte('N');
+                out.writeDouble(value.doubleValue());
+            } else if (value.isBoolean()) {
+                out.writeByte(value.bool() ? 'T' : 'F');
+            } else {
+                out.writeByte('S');
+                out.writeUTF(value.string());
+            }
+        }
+        out.writeInt(symbols.length);
+        for (var symbol : symbols) {
+            out.writeUTF(symbol.name());
+        }
+        out.writeInt(code.length);
+        for (var word : code) {
+            out.writeInt(word);
+        }
+    }
+
+    public static RegisterProgram readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a LittleCalc program");
+        }
+        var version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported program version (" + version + ")");
+        }
+        var numberRegisters = in.readInt();
+        var valueRegisters = in.readInt();
+        var result = in.readInt();
+        var numbers = new double[count(in)];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = in.readDouble();
+        }
+        var values = new LittleValue[count(in)];
+        for (int i = 0; i < values.length; i++) {
+            var tag = in.readByte();
+            values[i] = switch (tag) {
+                case 'N' -> LittleValue.numberValue(in.readDouble());
+                case 'T' -> LVBoolean.TRUE;
+                case 'F' -> LVBoolean.FALSE;
+                case 'S' -> LittleValue.stringValue(in.readUTF());
+                default -> throw new IOException("unknown value type (" + tag + ")");
+            };
+        }
+        var symbols = new Symbol[count(in)];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = Symbol.intern(in.readUTF());
+        }
+        var code = new int[count(in)];
+        for (int i = 0; i < code.length; i++) {
+            code[i] = in.readInt();
+        }
+        var program = new RegisterProgram(code, numbers, values, symbols, numberRegisters, valueRegisters, result);
+        program.verify();
+        program.verifyWrittenBeforeRead();
+        return program;
+    }
+
+    private static int count(DataInputStream in) throws IOException {
+        var count = in.readInt();
+        if (count < 0) {
+            throw new IOException("invalid program (negative count)");
+        }
+        return count;
+    }
+
+    // checks that every operand is in range, so the VM can't be sent outside its arrays
+    private void verify() throws IOException {
+        if (numberRegisters < 0 || valueRegisters < 0 || numberRegisters > MAX_REGISTERS
+                || valueRegisters > MAX_REGISTERS || result < NO_RESULT || result >= valueRegisters) {
+            throw new IOException("invalid program (registers)");
+        }
+        var starts = new boolean[code.length + 1];
+        for (int pc = 0; pc < code.length; pc += length(code[pc])) {
+            starts[pc] = true;
+            if (code[pc] < 0 || code[pc] >= OPERANDS.length || pc + length(code[pc]) > code.length) {
+                throw new IOException("invalid instruction at " + pc);
+            }
+        }
+        starts[code.length] = true;
+        for (int pc = 0; pc < code.length; pc += length(code[pc])) {
+            var operands = OPERANDS[code[pc]];
+            for (int i = 0; i < operands.length(); i++) {
+                var operand = code[pc + 1 + i];
+                var limit = switch (operands.charAt(i)) {
+                    case 'n' -> numberRegisters;
+                    case 'v' -> valueRegisters;
+                    case 'N' -> numbers.length;
+                    case 'V' -> values.length;
+                    case 's' -> symbols.length;
+                    case 'b' -> 2;
+                    case 'c' -> NE + 1;
+                    case 'o' -> LVComparableOp.values().length;
+                    case 'l' -> operand <= code.length && starts[Math.max(0, operand)] ? Integer.MAX_VALUE : 0;
+                    default -> Integer.MAX_VALUE;
+                };
+                if (operand < 0 || operand >= limit) {
+                    throw new IOException("invalid operand at " + (pc + 1 + i));
+                }
+            }
+        }
+    }
+
+    /*
+     * checks that, along every path (both ways from a conditional jump), every
+     * register is written before it's read (so the VM never reads a null
+     * value), and that the result is written before the program ends
+     */
+    private void verifyWrittenBeforeRead() throws IOException {
+        // the registers written before each instruction (numbers, then values), on every path to it
+        var written = new BitSet[code.length + 1];
+        written[0] = new BitSet();
+        var work = new ArrayDeque<Integer>();
+        work.add(0);
+        while (!work.isEmpty()) {
+            var pc = (int) work.poll();
+            if (pc == code.length) {
+                continue;
+            }
+            var after = (BitSet) written[pc].clone();
+            var opcode = code[pc];
+            var operands = OPERANDS[opcode];
+            var target = -1;
+            for (int i = 0; i < operands.length(); i++) {
+                var operand = code[pc + 1 + i];
+                var kind = operands.charAt(i);
+                if (kind == 'l') {
+                    target = operand;
+                } else if (kind == 'n' || kind == 'v') {
+                    var register = kind == 'n' ? operand : numberRegisters + operand;
+                    if (i == 0 && writes(opcode)) {
+                        after.set(register);
+                    } else if (!written[pc].get(register)) {
+                        throw new IOException("invalid program (" + kind + operand + " is read before it's written at "
+                                + pc + ")");
+                    }
+                }
+            }
+            if (target >= 0) {
+                merge(written, target, after, work);
+            }
+            if (opcode != JUMP) {
+                merge(written, pc + length(opcode), after, work);
+            }
+        }
+        if (hasResult() && (written[code.length] == null || !written[code.length].get(numberRegisters + result))) {
+            throw new IOException("invalid program (the result isn't written)");
+        }
+    }
+
+    // (an instruction's first operand is the register it writes)
+    private static boolean writes(int opcode) {
+        return opcode <= POW && opcode != STORE;
+    }
+
+    // what's written on every path to pc
+    private static void merge(BitSet[] written, int pc, BitSet after, ArrayDeque<Integer> work) {
+        if (written[pc] == null) {
+            written[pc] = (BitSet) after.clone();
+            work.add(pc);
+        } else {
+            var both = (BitSet) written[pc].clone();
+            both.and(after);
+            if (!both.equals(written[pc])) {
+                written[pc] = both;
+                work.add(pc);
+            }
+        }
+    }
+
+    /** a listing of the instructions */
+    @Override
+    public String toString() {
+        var listing = new StringBuilder();
+        for (int pc = 0; pc < code.length; pc += length(code[pc])) {
+            listing.append(pc).append(": ").append(NAMES[code[pc]]);
+            var operands = OPERANDS[code[pc]];
+            for (int i = 0; i < operands.length(); i++) {
+                var operand = code[pc + 1 + i];
+                listing.append(i == 0 ? " " : ", ").append(switch (operands.charAt(i)) {
+                    case 'n' -> "n" + operand;
+                    case 'v' -> "v" + operand;
+                    case 'N' -> String.valueOf(numbers[operand]);
+                    case 'V' -> values[operand].isString() ? "'" + values[operand] + "'" : values[operand].toString();
+                    case 's' -> symbols[operand].name();
+                    case 'o' -> LVComparableOp.values()[operand].getText();
+                    case 'c' -> new String[] { "<", ">=", ">", "<=", "==", "!=" }[operand];
+                    case 'l' -> "@" + operand;
+                    default -> String.valueOf(operand);
+                });
+            }
+            listing.append('\n');
+        }
+        if (hasResult()) {
+            listing.append("result: v").append(result).append('\n');
+        }
+        return listing.toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof RegisterProgram other && Arrays.equals(code, other.code)
+                && Arrays.equals(numbers, other.numbers) && Arrays.equals(values, other.values)
+                && Arrays.equals(symbols, other.symbols) && numberRegisters == other.numberRegisters
+                && valueRegisters == other.valueRegisters && result == other.result;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(code);
+    }
+}
@@ -0,0 +1,212 @@
+package net.cargal.littlecalc;
+
+import static net.cargal.littlecalc.RegisterProgram.*;
+
+import java.util.function.Consumer;
+
+import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
+
+/**
+ * Runs RegisterPrograms against a table of variables, in a single dispatch loop
+ * over the program's int[] code (registers are allocated for each run, so a VM
+ * can run a program again, or another program).
+ *
+ * Tracing commands and vars are handed back to the caller (usually the
+ * LittleCalcExecutionVisitor that owns the variables).
+ */
+public class RegisterVM {
+    private static final LVComparableOp[] COMPARABLE_OPS = LVComparableOp.values();
+
+    private final SymbolTable<LittleValue> variables;
+    private final Consumer<String> commands;
+    private final Runnable vars;
+    private final Consumer<String> out;
+    // the slots of the last program's symbols (programs don't have slots of their own)
+    private RegisterProgram resolved;
+    private int[] symbolSlots;
+
+    /** a VM for expressions (which have no statements) */
+    public RegisterVM(SymbolTable<LittleValue> variables) {
+        this(variables, command -> {
+        }, () -> {
+        });
+    }
+
+    public RegisterVM(SymbolTable<LittleValue> variables, Consumer<String> commands, Runnable vars) {
+        // (System.out is looked up when printing, so it can be redirected)
+        this(variables, commands, vars, text -> System.out.print(text));
+    }
+
+    /** a VM whose prints go to out (rather than System.out) */
+    public RegisterVM(SymbolTable<LittleValue> variables, Consumer<String> commands, Runnable vars,
+            Consumer<String> out) {
+        this.variables = variables;
+        this.commands = commands;
+        this.vars = vars;
+        this.out = out;
+    }
+
+    /** runs the program (returning its result, if it's an expression's, or null) */
+    public LittleValue run(RegisterProgram program) {
+        final var code = program.code();
+        final var constantNumbers = program.numbers();
+        final var constantValues = program.values();
+        final var symbols = program.symbols();
+        final var slots = variables.slots();
+        final var symbolSlots = resolve(program);
+        final var n = new double[program.numberRegisters()];
+        final var v = new LittleValue[program.valueRegisters()];
+        var pc = 0;
+        while (pc < code.length) {
+            switch (code[pc]) {
+                case NUMBER -> {
+                    n[code[pc + 1]] = constantNumbers[code[pc + 2]];
+                    pc += 3;
+                }
+                case VALUE -> {
+                    v[code[pc + 1]] = constantValues[code[pc + 2]];
+                    pc += 3;
+                }
+                case BOOLEAN -> {
+                    v[code[pc + 1]] = code[pc + 2] != 0 ? LVBoolean.TRUE : LVBoolean.FALSE;
+                    pc += 3;
+                }
+                case LOAD -> {
+                    var symbol = symbols[code[pc + 2]];
+                    var value = variables.find(symbol, slots, symbolSlots[code[pc + 2]]);
+                    if (value == null) {
+                        throw new LittleCalcRuntimeException(symbol + " has not been assigned a value", code[pc + 3],
+                                code[pc + 4]);
+                    }
+                    v[code[pc + 1]] = value;
+                    pc += 5;
+                }
+                case STORE -> {
+                    variables.put(symbols[code[pc + 1]], v[code[pc + 2]]);
+                    pc += 3;
+                }
+                case UNBOX -> {
+                    n[code[pc + 1]] = number(v[code[pc + 2]], code[pc + 3], code[pc + 4]);
+                    pc += 5;
+                }
+                case BOX -> {
+                    v[code[pc + 1]] = LittleValue.numberValue(n[code[pc + 2]]);
+                    pc += 3;
+                }
+                case ADD -> {
+                    n[code[pc + 1]] = n[code[pc + 2]] + n[code[pc + 3]];
+                    pc += 4;
+                }
+                case SUB -> {
+                    n[code[pc + 1]] = n[code[pc + 2]] - n[code[pc + 3]];
+                    pc += 4;
+                }
+                case MUL -> {
+                    n[code[pc + 1]] = n[code[pc + 2]] * n[code[pc + 3]];
+                    pc += 4;
+                }
+                case DIV -> {
+                    n[code[pc + 1]] = n[code[pc + 2]] / n[code[pc + 3]];
+                    pc += 4;
+                }
+                case POW -> {
+                    n[code[pc + 1]] = Math.pow(n[code[pc + 2]], n[code[pc + 3]]);
+                    pc += 4;
+                }
+                case JUMP -> pc = code[pc + 1];
+                case JUMP_IF -> {
+                    var jump = bool(v[code[pc + 1]], code[pc + 2], code[pc + 3]) == (code[pc + 4] != 0);
+                    pc = jump ? code[pc + 5] : pc + 6;
+                }
+                case JUMP_IF_NUMBER -> {
+                    var jump = condition(code[pc + 1], Double.compare(n[code[pc + 2]], n[code[pc + 3]]));
+                    pc = jump ? code[pc + 4] : pc + 5;
+                }
+                case JUMP_IF_COMPARE -> {
+                    var jump = compare(v[code[pc + 2]], COMPARABLE_OPS[code[pc + 1]], v[code[pc + 3]], code[pc + 4],
+                            code[pc + 5]) == (code[pc + 6] != 0);
+                    pc = jump ? code[pc + 7] : pc + 8;
+                }
+                case JUMP_IF_EQUAL -> {
+                    var jump = v[code[pc + 1]].equals(v[code[pc + 2]]) == (code[pc + 3] != 0);
+                    pc = jump ? code[pc + 4] : pc + 5;
+                }
+                case PRINT -> {
+                    out.accept(v[code[pc + 1]].toString());
+                    pc += 2;
+                }
+                case NEWLINE -> {
+                    out.accept(System.lineSeparator());
+                    pc += 1;
+                }
+                case VARS -> {
+                    vars.run();
+                    pc += 1;
+                }
+                case COMMAND -> {
+                    command(symbols[code[pc + 1]], code[pc + 2], code[pc + 3]);
+                    pc += 4;
+                }
+                default -> throw new IllegalStateException("invalid opcode " + code[pc] + " at " + pc);
+            }
+        }
+        return program.hasResult() ? v[program.result()] : null;
+    }
+
+    private int[] resolve(RegisterProgram program) {
+        if (program != resolved) {
+            var symbols = program.symbols();
+            symbolSlots = new int[symbols.length];
+            for (int i = 0; i < symbols.length; i++) {
+                symbolSlots[i] = variables.slots().slot(symbols[i]);
+            }
+            resolved = program;
+        }
+        return symbolSlots;
+    }
+
+    // (the error handling is kept out of the loop, so it stays small)
+
+    private static double number(LittleValue value, int line, int column) {
+        try {
+            return value.doubleValue();
+        } catch (LittleCalcRuntimeException e) {
+            throw e.at(line, column);
+        }
+    }
+
+    private static boolean bool(LittleValue value, int line, int column) {
+        try {
+            return value.bool();
+        } catch (LittleCalcRuntimeException e) {
+            throw e.at(line, column);
+        }
+    }
+
+    private static boolean compare(LittleValue lhs, LVComparableOp op, LittleValue rhs, int line, int column) {
+        try {
+            return lhs.evalCompare(op, rhs);
+        } catch (LittleCalcRuntimeException e) {
+            throw e.at(line, column);
+        }
+    }
+
+    private static boolean condition(int condition, int comparison) {
+        return switch (condition) {
+            case LT -> comparison < 0;
+            case GE -> comparison >= 0;
+            case GT -> comparison > 0;
+            case LE -> comparison <= 0;
+            case EQ -> comparison == 0;
+            default -> comparison != 0;
+        };
+    }
+
+    private void command(Symbol symbol, int line, int column) {
+        try {
+            commands.accept(symbol.name());
+        } catch (LittleCalcRuntimeException e) {
+            throw e.at(line, column);
+        }
+    }
+}
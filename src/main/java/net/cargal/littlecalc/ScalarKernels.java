@@ -0,0 +1,115 @@
+package net.cargal.littlecalc;
+
+/** BatchKernels as plain loops (which the JIT may still vectorize), for when the Vector API isn't available */
+final class ScalarKernels implements BatchKernels {
+
+    @Override
+    public void add(double[] a, double[] b, double[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = a[i] + b[i];
+        }
+    }
+
+    @Override
+    public void sub(double[] a, double[] b, double[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = a[i] - b[i];
+        }
+    }
+
+    @Override
+    public void mul(double[] a, double[] b, double[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = a[i] * b[i];
+        }
+    }
+
+    @Override
+    public void div(double[] a, double[] b, double[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = a[i] / b[i];
+        }
+    }
+
+    @Override
+    public void pow(double[] a, double[] b, double[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = Math.pow(a[i], b[i]);
+        }
+    }
+
+    @Override
+    public void compare(LVComparableOp op, double[] a, double[] b, boolean[] out, int n) {
+        switch (op) {
+            case LT -> {
+                for (int i = 0; i < n; i++) {
+                    out[i] = Double.compare(a[i], b[i]) < 0;
+                }
+            }
+            case LE -> {
+                for (int i = 0; i < n; i++) {
+                    out[i] = Double.compare(a[i], b[i]) <= 0;
+                }
+            }
+            case GT -> {
+                for (int i = 0; i < n; i++) {
+                    out[i] = Double.compare(a[i], b[i]) > 0;
+                }
+            }
+            case GE -> {
+                for (int i = 0; i < n; i++) {
+                    out[i] = Double.compare(a[i], b[i]) >= 0;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void equal(double[] a, double[] b, boolean negated, boolean[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = (Double.compare(a[i], b[i]) == 0) != negated;
+        }
+    }
+
+    @Override
+    public void equal(boolean[] a, boolean[] b, boolean negated, boolean[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = (a[i] == b[i]) != negated;
+        }
+    }
+
+    @Override
+    public void and(boolean[] a, boolean[] b, boolean[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = a[i] & b[i];
+        }
+    }
+
+    @Override
+    public void or(boolean[] a, boolean[] b, boolean[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = a[i] | b[i];
+        }
+    }
+
+    @Override
+    public void not(boolean[] a, boolean[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = !a[i];
+        }
+    }
+
+    @Override
+    public void blend(boolean[] cond, double[] t, double[] f, double[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = cond[i] ? t[i] : f[i];
+        }
+    }
+
+    @Override
+    public void blend(boolean[] cond, boolean[] t, boolean[] f, boolean[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = cond[i] ? t[i] : f[i];
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package net.cargal.littlecalc;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+
+/**
+ * A least recently used cache of CompiledScripts (for scripts without inputs),
+ * bounded by the number of scripts and by their total weight (the size of
+ * their programs), so a service that runs the same scripts over and over only
+ * parses and validates each one once.
+ *
+ * Scripts are keyed by their tokens (so whitespace and comments don't matter),
+ * which only needs the lexer. Threads that miss on a script that's being
+ * compiled wait for that compile, rather than compiling it again. Scripts
+ * with errors aren't cached (so their errors are reported every time).
+ */
+public class ScriptCache {
+    private final LittleCalcEngine engine;
+    private final int maxScripts;
+    private final long maxWeight;
+    // (in access order, so the least recently used script is first)
+    private final LinkedHashMap<String, Cached> scripts = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<CompiledScript>> compiling = new HashMap<>();
+    private long weight = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long compiles = 0;
+    private long compileNanos = 0;
+
+    private record Cached(CompiledScript script, long weight) {
+    }
+
+    /** a snapshot of the cache's counters */
+    public record Stats(long hits, long misses, long evictions, long compiles, long compileNanos, int scripts,
+            long weight) {
+        public double hitRate() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+    }
+
+    public ScriptCache(int maxScripts, long maxWeight) {
+        this(new LittleCalcEngine(), maxScripts, maxWeight);
+    }
+
+    public ScriptCache(LittleCalcEngine engine, int maxScripts, long maxWeight) {
+        this.engine = engine;
+        this.maxScripts = maxScripts;
+        this.maxWeight = maxWeight;
+    }
+
+    /** the compiled script (throwing a LittleCalcCompileException if it has errors) */
+    public CompiledScript get(String source) {
+        var key = key(source);
+        CompletableFuture<CompiledScript> inFlight;
+        var compile = new CompletableFuture<CompiledScript>();
+        synchronized (this) {
+            var cached = scripts.get(key);
+            if (cached != null) {
+                hits++;
+                return cached.script;
+            }
+            misses++;
+            inFlight = compiling.putIfAbsent(key, compile);
+        }
+        // (waiting outside the lock, which the compiling thread needs to add the script)
+        if (inFlight != null) {
+            return await(inFlight);
+        }
+
+        var start = System.nanoTime();
+        try {
+            var script = engine.compile(source);
+            added(key, script, System.nanoTime() - start);
+            compile.complete(script);
+            return script;
+        } catch (RuntimeException e) {
+            added(key, null, System.nanoTime() - start);
+            compile.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, compiles, compileNanos, scripts.size(), weight);
+    }
+
+    public synchronized void clear() {
+        scripts.clear();
+        weight = 0;
+    }
+
+    // (a script with errors is null, and isn't cached)
+    private synchronized void added(String key, CompiledScript script, long nanos) {
+        compiling.remove(key);
+        compiles++;
+        compileNanos += nanos;
+        if (script == null) {
+            return;
+        }
+        var cached = new Cached(script, weight(script));
+        scripts.put(key, cached);
+        weight += cached.weight;
+        var eldest = scripts.values().iterator();
+        while (scripts.size() > maxScripts || weight > maxWeight) {
+            weight -= eldest.next().weight;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private static CompiledScript await(CompletableFuture<CompiledScript> compile) {
+        try {
+            return compile.join();
+        } catch (CompletionException e) {
+            // (the compiling thread's exception, e.g. the script's errors)
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // the ints of code, and the entries in the pools
+    private static long weight(CompiledScript script) {
+        var program = script.program();
+        return program.code().length + program.numbers().length + program.values().length
+                + program.symbols().length;
+    }
+
+    /**
+     * the text of a script's tokens, separated by spaces (or, if it has a
+     * lexical error, the script itself, so it can't share a key with a
+     * script that doesn't)
+     */
+    static String key(String source) {
+        var lexer = new LittleCalcLexer(CharStreams.fromString(source));
+        var lexicalErrors = new boolean[1];
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
+                    int charPositionInLine, String msg, RecognitionException e) {
+                lexicalErrors[0] = true;
+            }
+        });
+        var key = new StringBuilder(source.length());
+        for (var token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+            if (token.getChannel() == Token.DEFAULT_CHANNEL) {
+                if (key.length() > 0) {
+                    key.append(' ');
+                }
+                key.append(token.getText());
+            }
+        }
+        return lexicalErrors[0] ? source : key.toString();
+    }
+}
@@ -0,0 +1,99 @@
+package net.cargal.littlecalc;
+
+import java.util.Arrays;
+
+/**
+ * Gives each variable a slot: a fixed index into the flat array of values of
+ * the SymbolTables that share the Slots. Slots are dense (numbered from 0 in
+ * the order variables are first seen) and never change, so a frame only grows
+ * (the REPL's, from one input to the next), and compiled code can resolve a
+ * variable's slot when it's compiled.
+ *
+ * The validator, executor and optimizer of a script (or REPL session) share
+ * one Slots. Slots can be shared between threads: find() doesn't lock, and
+ * slot() only locks to give a symbol a new slot. A Slots' size is
+ * proportional to its own variables (not to the number of Symbols).
+ */
+public final class Slots {
+    private static final int NONE = -1;
+
+    // an open-addressing (linear probing) index of the symbols' slots, by
+    // Symbol id: each entry is a slot + 1 (0 for an empty entry), and the
+    // symbol it's for is that slot's symbol, so an entry is a single write
+    // (a new slot is published by writing size, after the arrays)
+    private volatile int[] index = new int[32];
+    private volatile Symbol[] symbols = new Symbol[16];
+    private volatile int size = 0;
+
+    /** the symbol's slot (giving it the next one, if it doesn't have one) */
+    public int slot(Symbol symbol) {
+        var slot = find(symbol);
+        return slot != NONE ? slot : assign(symbol);
+    }
+
+    private synchronized int assign(Symbol symbol) {
+        var slot = find(symbol);
+        if (slot != NONE) {
+            return slot;
+        }
+        slot = size;
+        if (slot == symbols.length) {
+            symbols = Arrays.copyOf(symbols, slot * 2);
+        }
+        symbols[slot] = symbol;
+        // (at most half full)
+        if ((slot + 1) * 2 > index.length) {
+            var grown = new int[index.length * 2];
+            for (int i = 0; i < slot; i++) {
+                grown[empty(grown, symbols[i])] = i + 1;
+            }
+            index = grown;
+        }
+        index[empty(index, symbol)] = slot + 1;
+        size = slot + 1;
+        return slot;
+    }
+
+    /** the symbol's slot, or -1 if it doesn't have one */
+    public int find(Symbol symbol) {
+        if (size == 0) {
+            return NONE;
+        }
+        var index = this.index;
+        var symbols = this.symbols;
+        var mask = index.length - 1;
+        for (int i = hash(symbol) & mask;; i = (i + 1) & mask) {
+            var entry = index[i];
+            if (entry == 0) {
+                return NONE;
+            }
+            if (entry <= symbols.length && symbols[entry - 1] == symbol) {
+                return entry - 1;
+            }
+        }
+    }
+
+    public Symbol symbol(int slot) {
+        return symbols[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // the empty entry symbol goes in
+    private static int empty(int[] index, Symbol symbol) {
+        var mask = index.length - 1;
+        var i = hash(symbol) & mask;
+        while (index[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    // (ids are dense, so they're spread over the index)
+    private static int hash(Symbol symbol) {
+        var h = symbol.id() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,109 @@
+package net.cargal.littlecalc;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.antlr.v4.runtime.Token;
+
+/**
+ * An interned identifier. There's only ever one Symbol for a name (while
+ * anything refers to it), so Symbols compare by identity, and each has a
+ * stable id (never reused) that tables can use as a key.
+ *
+ * The pool only refers to Symbols weakly, so the identifiers of scripts that
+ * are gone (lexed by a long running service, say) don't stay on the heap.
+ * That costs a WeakReference (and a map entry) for each distinct name, not
+ * each occurrence: lexing a name that's already pooled is a map lookup and a
+ * get(). The collector has to process those references, and collected names
+ * are only removed from the map when another name is added. A strong pool
+ * scoped to a table or a compilation would avoid that work, but it would
+ * break ids being global: the same name in two scripts (or in a script and
+ * the REPL's session) would be two Symbols. For the few thousand names a
+ * script typically has, the overhead is small.
+ *
+ * The hash code is the name's hash code, so a hashed collection of Symbols
+ * iterates in the same order as the same collection of their names would.
+ */
+public final class Symbol {
+    private static final ConcurrentHashMap<String, PoolRef> POOL = new ConcurrentHashMap<>();
+    // (the pool's references to symbols that have been collected)
+    private static final ReferenceQueue<Symbol> COLLECTED = new ReferenceQueue<>();
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    private static final class PoolRef extends WeakReference<Symbol> {
+        private final String name;
+
+        PoolRef(Symbol symbol) {
+            super(symbol, COLLECTED);
+            this.name = symbol.name;
+        }
+    }
+
+    private final String name;
+    private final int id;
+    private final int hash;
+
+    private Symbol(String name) {
+        this.name = name;
+        this.id = NEXT_ID.getAndIncrement();
+        this.hash = name.hashCode();
+    }
+
+    public static Symbol intern(String name) {
+        var ref = POOL.get(name);
+        var symbol = ref != null ? ref.get() : null;
+        return symbol != null ? symbol : add(name);
+    }
+
+    private static Symbol add(String name) {
+        removeCollected();
+        var added = new Symbol[1];
+        POOL.compute(name, (key, ref) -> {
+            added[0] = ref != null ? ref.get() : null;
+            if (added[0] != null) {
+                return ref;
+            }
+            // (a new symbol, or one whose symbol was collected)
+            added[0] = new Symbol(key);
+            return new PoolRef(added[0]);
+        });
+        return added[0];
+    }
+
+    private static void removeCollected() {
+        for (var ref = (PoolRef) COLLECTED.poll(); ref != null; ref = (PoolRef) COLLECTED.poll()) {
+            // (unless it's already been replaced)
+            POOL.remove(ref.name, ref);
+        }
+    }
+
+    // tokens from the LittleCalc lexers are already interned
+    public static Symbol of(Token token) {
+        return token instanceof SymbolToken ? ((SymbolToken) token).symbol() : intern(token.getText());
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return this == obj;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
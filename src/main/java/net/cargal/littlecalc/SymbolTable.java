@@ -1,43 +1,109 @@
 package net.cargal.littlecalc;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Stream;
 
+/**
+ * Variables, in a flat (growable) frame indexed by their Slots. A child table
+ * shares its parent's Slots, so a slot means the same variable all the way
+ * up the chain.
+ *
+ * Subclasses can keep their variables some other way by overriding local(),
+ * slot(), put() and localKeys() (lookups through the parents, and keyStream(),
+ * are done here).
+ */
 public class SymbolTable<T> {
-    private final Map<String, T> symbols = new HashMap<>();
+    private final Slots slots;
+    // indexed by slot
+    private Object[] values = new Object[16];
+    private final Set<Symbol> keys = new HashSet<>();
     @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
     private final Optional<SymbolTable<T>> parent;
 
     public SymbolTable() {
-        this(null);
+        this(new Slots());
+    }
+
+    public SymbolTable(Slots slots) {
+        this.slots = slots;
+        this.parent = Optional.empty();
     }
 
     public SymbolTable(SymbolTable<T> parent) {
-        this.parent = Optional.ofNullable(parent);
+        this.slots = parent.slots;
+        this.parent = Optional.of(parent);
+    }
+
+    public Slots slots() {
+        return slots;
+    }
+
+    /** the value in a slot (of slots()) of this table (not its parents), or null */
+    @SuppressWarnings("unchecked")
+    public T slot(int slot) {
+        return slot < values.length ? (T) values[slot] : null;
     }
 
     public Optional<T> get(String id) {
-        var res = symbols.get(id);
+        return get(Symbol.intern(id));
+    }
+
+    public Optional<T> get(Symbol symbol) {
+        return Optional.ofNullable(find(symbol));
+    }
+
+    /** get(), without the Optional (null if there's no value) */
+    public T find(Symbol symbol) {
+        var res = local(symbol);
         if (res != null)
-            return Optional.of(res);
+            return res;
         if (parent.isPresent())
-            return parent.get().get(id);
-        return Optional.empty();
+            return parent.get().find(symbol);
+        return null;
+    }
+
+    /** find(), for a symbol that was resolved to a slot (of resolvedIn) when it was compiled */
+    public T find(Symbol symbol, Slots resolvedIn, int slot) {
+        var res = resolvedIn == slots ? slot(slot) : null;
+        return res != null ? res : find(symbol);
     }
 
     public void put(String key, T value) {
-        symbols.put(key, value);
+        put(Symbol.intern(key), value);
+    }
+
+    public void put(Symbol symbol, T value) {
+        var slot = slots.slot(symbol);
+        if (slot >= values.length) {
+            values = Arrays.copyOf(values, Math.max(slot + 1, values.length * 2));
+        }
+        if (values[slot] == null) {
+            keys.add(symbol);
+        }
+        values[slot] = value;
     }
 
     public Stream<String> keyStream() {
         return Stream.concat( //
-                symbols.keySet().stream(), //
+                localKeys().map(Symbol::name), //
                 (parent.isPresent()) ? parent.get().keyStream() : Stream.empty());
     }
 
     public Optional<SymbolTable<T>> parent() {
         return parent;
     }
+
+    /** the symbol's value in this table (not its parents), or null */
+    protected T local(Symbol symbol) {
+        var slot = slots.find(symbol);
+        return slot >= 0 ? slot(slot) : null;
+    }
+
+    /** the symbols with values in this table (not its parents) */
+    protected Stream<Symbol> localKeys() {
+        return keys.stream();
+    }
 }
@@ -0,0 +1,26 @@
+package net.cargal.littlecalc;
+
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.Token;
+
+/**
+ * An ID token, with its text interned as a Symbol when it's lexed (so
+ * getText() doesn't create a new String each time it's called).
+ */
+public class SymbolToken extends CommonToken {
+    private final Symbol symbol;
+
+    public SymbolToken(Token token) {
+        super(token);
+        symbol = Symbol.intern(token.getText());
+    }
+
+    public Symbol symbol() {
+        return symbol;
+    }
+
+    @Override
+    public String getText() {
+        return symbol.name();
+    }
+}
@@ -0,0 +1,78 @@
+package net.cargal.littlecalc;
+
+import org.antlr.v4.runtime.Token;
+
+/**
+ * Keeps count of open brackets and ternaries, and of the last significant
+ * token, so the REPL can tell that input is incomplete (and wait for another
+ * line) without parsing it.
+ *
+ * It's only a heuristic: input it considers complete can still be incomplete
+ * (the parser has the final word), but input it considers incomplete can't be
+ * a complete replIn.
+ */
+public class TokenBalance {
+    private int openParens = 0;
+    private int openCurlies = 0;
+    private int openTernaries = 0;
+    private int lastType = Token.INVALID_TYPE;
+    private boolean openString = false;
+
+    public TokenBalance() {
+    }
+
+    public TokenBalance(TokenBalance other) {
+        openParens = other.openParens;
+        openCurlies = other.openCurlies;
+        openTernaries = other.openTernaries;
+        lastType = other.lastType;
+        openString = other.openString;
+    }
+
+    public void add(Token token) {
+        if (token.getChannel() != Token.DEFAULT_CHANNEL) {
+            return;
+        }
+        switch (token.getType()) {
+            case LittleCalcLexer.O_PAREN -> openParens++;
+            case LittleCalcLexer.C_PAREN -> openParens--;
+            case LittleCalcLexer.O_CURLY -> openCurlies++;
+            case LittleCalcLexer.C_CURLY -> openCurlies--;
+            case LittleCalcLexer.QMARK -> openTernaries++;
+            case LittleCalcLexer.COLON -> openTernaries--;
+            case LittleCalcLexer.BAD_TOKEN -> openString |= isQuote(token.getText());
+            default -> {
+            }
+        }
+        lastType = token.getType();
+    }
+
+    public boolean isIncomplete() {
+        return openParens > 0 || openCurlies > 0 || openTernaries > 0 || openString || expectsMore(lastType);
+    }
+
+    public void reset() {
+        openParens = 0;
+        openCurlies = 0;
+        openTernaries = 0;
+        lastType = Token.INVALID_TYPE;
+        openString = false;
+    }
+
+    // an unterminated string is lexed as a BAD_TOKEN for its opening quote
+    static boolean isQuote(String text) {
+        return "\"".equals(text) || "'".equals(text);
+    }
+
+    private static boolean expectsMore(int tokenType) {
+        return switch (tokenType) {
+            case LittleCalcLexer.ASSIGN, LittleCalcLexer.EXP, LittleCalcLexer.MUL, LittleCalcLexer.DIV,
+                    LittleCalcLexer.ADD, LittleCalcLexer.SUB, LittleCalcLexer.LT, LittleCalcLexer.LE,
+                    LittleCalcLexer.GT, LittleCalcLexer.GE, LittleCalcLexer.EQ, LittleCalcLexer.NE,
+                    LittleCalcLexer.AND, LittleCalcLexer.OR, LittleCalcLexer.NOT, LittleCalcLexer.QMARK,
+                    LittleCalcLexer.COLON, LittleCalcLexer.TREE, LittleCalcLexer.GUI, LittleCalcLexer.REFACTOR,
+                    LittleCalcLexer.TOKENS -> true;
+            default -> false;
+        };
+    }
+}
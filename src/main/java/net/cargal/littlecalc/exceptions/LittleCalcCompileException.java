@@ -0,0 +1,18 @@
+package net.cargal.littlecalc.exceptions;
+
+import java.util.List;
+
+/** a script that has syntax or semantic errors (in the order they were found) */
+public class LittleCalcCompileException extends RuntimeException {
+    private final List<String> errors;
+
+    public LittleCalcCompileException(List<String> errors) {
+        super(String.join("\n", errors));
+        this.errors = List.copyOf(errors);
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+}
@@ -1,9 +1,38 @@
 package net.cargal.littlecalc.exceptions;
 
 public class LittleCalcRuntimeException extends RuntimeException {
+    private static final int NO_POSITION = -1;
+
+    private int line = NO_POSITION;
+    private int column = NO_POSITION;
+
+    /** an error without a position yet (values don't have one; see at()) */
+    public LittleCalcRuntimeException(String message) {
+        super(message);
+    }
 
     public LittleCalcRuntimeException(String message, int line, int column) {
-        super(message(message, line, column));
+        super(message);
+        this.line = line;
+        this.column = column;
+    }
+
+    /** gives the error a position, unless it already has one */
+    public LittleCalcRuntimeException at(int line, int column) {
+        if (!hasPosition()) {
+            this.line = line;
+            this.column = column;
+        }
+        return this;
+    }
+
+    public boolean hasPosition() {
+        return line != NO_POSITION;
+    }
+
+    @Override
+    public String getMessage() {
+        return hasPosition() ? message(super.getMessage(), line, column) : super.getMessage();
     }
 
     public static String message(String message, int line, int column) {
@@ -0,0 +1,131 @@
+package net.cargal.littlecalc;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import net.cargal.littlecalc.LittleCalcParser.ExprContext;
+import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
+
+public class BatchEvaluatorTest extends LCTestBase {
+    // (not a multiple of the block size)
+    private static final int ROWS = 5_000;
+    private static final double[] SPECIAL = { 0.0, -0.0, 1, 2, -1, Double.NaN, Double.POSITIVE_INFINITY,
+            Double.NEGATIVE_INFINITY, Double.MIN_VALUE, 0.5 };
+    private static final String[] EXPRESSIONS = { //
+            "a + b * c - a / b", //
+            "a ^ b", //
+            "(a - b) ^ 0.5 * c", //
+            "a < b && p || !q", //
+            "a <= b ? a : b * 2", //
+            "(a == b) != (p == q)", //
+            "a != b || a == c", //
+            "a > b == (c >= a)", //
+            "p ? q : a > 1", //
+            "a >= 0 ? (b > 0 ? 1 : 2) : c", //
+            "(true && p) ? 1_000 : 2.5" };
+
+    private Columns columns() {
+        var random = new Random(42);
+        var columns = new Columns(ROWS);
+        for (var name : new String[] { "a", "b", "c" }) {
+            var column = new double[ROWS];
+            for (int i = 0; i < ROWS; i++) {
+                column[i] = random.nextBoolean() ? SPECIAL[random.nextInt(SPECIAL.length)] : random.nextGaussian();
+            }
+            columns.add(name, column);
+        }
+        for (var name : new String[] { "p", "q" }) {
+            var column = new boolean[ROWS];
+            for (int i = 0; i < ROWS; i++) {
+                column[i] = random.nextBoolean();
+            }
+            columns.add(name, column);
+        }
+        return columns;
+    }
+
+    // what the tree interpreter gives, row by row
+    private LittleValue[] interpreted(ExprContext expr, Columns columns) {
+        var results = new LittleValue[ROWS];
+        var variables = new SymbolTable<LittleValue>();
+        var visitor = new LittleCalcExprVisitor(variables);
+        for (int i = 0; i < ROWS; i++) {
+            for (var name : new String[] { "a", "b", "c" }) {
+                variables.put(name, LittleValue.numberValue(columns.numbers(Symbol.intern(name))[i]));
+            }
+            for (var name : new String[] { "p", "q" }) {
+                variables.put(name, LittleValue.booleanValue(columns.booleans(Symbol.intern(name))[i]));
+            }
+            results[i] = visitor.visit(expr);
+        }
+        return results;
+    }
+
+    @Test
+    void testVectorAPI() {
+        // (the tests run with --add-modules jdk.incubator.vector, and VectorKernels on the class path)
+        assertTrue(new BatchEvaluator(parseExpr("1")).isVectorized());
+        assertFalse(new BatchEvaluator(parseExpr("1"), new ScalarKernels()).isVectorized());
+    }
+
+    @Test
+    void testSameAsInterpreter() {
+        var columns = columns();
+        for (var source : EXPRESSIONS) {
+            var expr = parseExpr(source);
+            var expected = interpreted(expr, columns);
+            for (var kernels : new BatchKernels[] { BatchKernels.BEST, new ScalarKernels() }) {
+                var evaluator = new BatchEvaluator(expr, kernels);
+                if (evaluator.isNumber(columns)) {
+                    var actual = evaluator.numbers(columns);
+                    // (the same bits, but for NaNs' payloads, which Java doesn't pin down)
+                    for (int i = 0; i < ROWS; i++) {
+                        assertEquals(Double.doubleToLongBits(expected[i].number()),
+                                Double.doubleToLongBits(actual[i]), source + " row " + i);
+                    }
+                } else {
+                    var actual = evaluator.booleans(columns);
+                    for (int i = 0; i < ROWS; i++) {
+                        assertEquals(expected[i].bool(), actual[i], source + " row " + i);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void testSmallBatches() {
+        for (var rows : new int[] { 0, 1, 7, BatchEvaluator.BLOCK + 1 }) {
+            var a = new double[rows];
+            var expected = new double[rows];
+            for (int i = 0; i < rows; i++) {
+                a[i] = i;
+                expected[i] = i * 2 + 1;
+            }
+            assertArrayEquals(expected,
+                    new BatchEvaluator(parseExpr("a * 2 + 1")).numbers(new Columns(rows).add("a", a)));
+        }
+    }
+
+    @Test
+    void testErrors() {
+        var columns = new Columns(1).add("a", new double[1]).add("p", new boolean[1]);
+        var e = assertThrows(LittleCalcRuntimeException.class,
+                () -> new BatchEvaluator(parseExpr("a + x")).numbers(columns));
+        assertEquals("line:1 col:5 -- x has no column of numbers", e.getMessage());
+        e = assertThrows(LittleCalcRuntimeException.class,
+                () -> new BatchEvaluator(parseExpr("p && a")).booleans(columns));
+        assertEquals("line:1 col:6 -- a has no column of booleans", e.getMessage());
+        e = assertThrows(LittleCalcRuntimeException.class,
+                () -> new BatchEvaluator(parseExpr("'s' == 's'")).booleans(columns));
+        assertEquals("line:1 col:1 -- 's' is not boolean", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> columns.add("b", new double[2]));
+    }
+}
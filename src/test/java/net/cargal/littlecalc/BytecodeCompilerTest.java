@@ -0,0 +1,93 @@
+package net.cargal.littlecalc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.ref.WeakReference;
+
+import org.junit.jupiter.api.Test;
+
+import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
+
+public class BytecodeCompilerTest extends LCTestBase {
+    private boolean isGenerated(CompiledExpr compiled) {
+        // (lambdas are hidden classes too)
+        return compiled.getClass().getName().startsWith("net.cargal.littlecalc.GeneratedExpr");
+    }
+
+    @Test
+    void testGeneratedClass() {
+        var compiled = new BytecodeCompiler().compile(parseExpr("x * 2 + 1 > 10 ? 'big' : 'small'"));
+        assertTrue(isGenerated(compiled));
+
+        var variables = new SymbolTable<LittleValue>();
+        for (int i = 0; i < 10; i++) {
+            variables.put("x", LittleValue.numberValue((double) i));
+            assertEquals(i * 2 + 1 > 10 ? "big" : "small", compiled.eval(variables).string());
+        }
+        variables.put("x", LVBoolean.TRUE);
+        var e = assertThrows(LittleCalcRuntimeException.class, () -> compiled.eval(variables));
+        assertEquals("line:1 col:1 -- value is not a Number (true)", e.getMessage());
+    }
+
+    @Test
+    void testErrorPositions() {
+        // (reported at the operand that produced the value, not where the value was created)
+        var variables = new SymbolTable<LittleValue>();
+        variables.put("x", LVBoolean.TRUE);
+        var compiled = new BytecodeCompiler().compile(parseExpr("1 +\n  (2 < 3 ? x : 6)"));
+        var e = assertThrows(LittleCalcRuntimeException.class, () -> compiled.eval(variables));
+        assertEquals("line:2 col:12 -- value is not a Number (true)", e.getMessage());
+        var compare = new BytecodeCompiler().compile(parseExpr("x ||\n  'a' < x"));
+        variables.put("x", LVBoolean.FALSE);
+        e = assertThrows(LittleCalcRuntimeException.class, () -> compare.eval(variables));
+        assertEquals("line:2 col:3 -- Cannot compare STRING to BOOLEAN", e.getMessage());
+    }
+
+    @Test
+    void testLargeExpression() {
+        // too much code for one method, so it's compiled to closures
+        var source = sum(5000);
+        var compiled = new BytecodeCompiler().compile(parseExpr(source));
+        assertFalse(isGenerated(compiled));
+        var variables = new SymbolTable<LittleValue>();
+        variables.put("x", LittleValue.numberValue(1.0));
+        assertEquals(EvalMode.TREE_WALKING.evaluator(variables).evaluate(parseExpr(source)).number(),
+                compiled.eval(variables).number());
+    }
+
+    @Test
+    void testTooManyConstants() {
+        // (the pool's indexes are 16 bits, so a class with more constants than that can't be written)
+        var writer = new ClassFileWriter("net/cargal/littlecalc/GeneratedExpr", "java/lang/Object");
+        for (int i = 0; writer.utf8("c" + i) < 65534; i++) {
+            assertFalse(writer.isTooLarge());
+        }
+        assertFalse(writer.isTooLarge());
+        writer.utf8("one more");
+        assertTrue(writer.isTooLarge());
+    }
+
+    // (balanced, so it isn't nested too deeply to parse)
+    private String sum(int terms) {
+        if (terms == 1) {
+            return "(x < 1 ? x : 2)";
+        }
+        return "(" + sum(terms / 2) + " + " + sum(terms - terms / 2) + ")";
+    }
+
+    @Test
+    void testUnloading() throws InterruptedException {
+        var compiled = new BytecodeCompiler().compile(parseExpr("1 + 2"));
+        var generatedClass = new WeakReference<Class<?>>(compiled.getClass());
+        compiled = null;
+        for (int i = 0; i < 20 && generatedClass.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(generatedClass.get());
+    }
+}
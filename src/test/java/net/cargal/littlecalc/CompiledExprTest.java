@@ -0,0 +1,143 @@
+package net.cargal.littlecalc;
+
+import static com.github.stefanbirkner.systemlambda.SystemLambda.tapSystemErrAndOutNormalized;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.jupiter.api.Test;
+
+import net.cargal.littlecalc.LittleCalcParser.ExprContext;
+import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
+
+public class CompiledExprTest extends LCTestBase {
+    private static final String[] OPERATORS = { "^", "*", "/", "+", "-", "<", "<=", ">", ">=", "==", "!=", "&&",
+            "||" };
+    private static final String[] PRIMARIES = { "1", "2.5", "1_000", "x", "y", "b", "u", "true", "false", "'s'",
+            "\"t\"", "'\\'q'", "(0 / 0)", "(0 * (0 - 1))" };
+
+    private String evaluate(ExprEvaluator evaluator, ExprContext expr) {
+        try {
+            var value = evaluator.evaluate(expr);
+            return value.type() + " " + value;
+        } catch (LittleCalcRuntimeException e) {
+            return e.getMessage();
+        }
+    }
+
+    private void assertSameResult(SymbolTable<LittleValue> variables, String source) {
+        var expr = parseExpr(source);
+        var expected = evaluate(EvalMode.TREE_WALKING.evaluator(variables), expr);
+        for (var evalMode : EvalMode.values()) {
+            assertEquals(expected, evaluate(evalMode.evaluator(variables), expr), evalMode + ": " + source);
+        }
+    }
+
+    private SymbolTable<LittleValue> variables() {
+        var variables = new SymbolTable<LittleValue>();
+        variables.put("x", LittleValue.numberValue(3.0));
+        variables.put("y", LittleValue.numberValue(-0.5));
+        variables.put("b", LVBoolean.TRUE);
+        return variables;
+    }
+
+    @Test
+    void testRandomExpressions() {
+        var variables = variables();
+        var random = new Random(9);
+        for (int i = 0; i < 2000; i++) {
+            assertSameResult(variables, randomExpr(random, 4));
+        }
+    }
+
+    @Test
+    void testErrors() {
+        var variables = variables();
+        assertSameResult(variables, "x + u");
+        assertSameResult(variables, "1 + 'a'");
+        assertSameResult(variables, "b ? x : true + 1");
+        assertSameResult(variables, "!x");
+        assertSameResult(variables, "(\n  'a' <\n  true)");
+        assertSameResult(variables, "1 +\n  (b ? (\n  b) : x)");
+        assertSameResult(variables, "!(x > 1 ? 'a' : b)");
+        // short-circuited operands aren't evaluated
+        assertSameResult(variables, "false && u");
+        assertSameResult(variables, "true || u");
+        assertSameResult(variables, "false ? u : x");
+    }
+
+    @Test
+    void testReevaluation() {
+        var expr = parseExpr("x * 2 + 1");
+        var compiled = new ExprCompiler().compile(expr);
+        var variables = new SymbolTable<LittleValue>();
+        for (int i = 0; i < 10; i++) {
+            variables.put("x", LittleValue.numberValue((double) i));
+            assertEquals(i * 2 + 1.0, compiled.eval(variables).number());
+        }
+    }
+
+    @Test
+    void testConstantsResolvedOnce() {
+        var compiled = new ExprCompiler().compile(parseExpr("'abc'"));
+        var variables = new SymbolTable<LittleValue>();
+        assertSame(compiled.eval(variables), compiled.eval(variables));
+    }
+
+    @Test
+    void testUnboxedArithmetic() {
+        var compiler = new ExprCompiler();
+        var number = compiler.number(parseExpr("(x + 2) * y ^ 2 / 3 - (x > y ? x : y)"));
+        var variables = variables();
+        assertEquals((3 + 2) * Math.pow(-0.5, 2) / 3 - 3, number.eval(variables));
+
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var threadId = Thread.currentThread().getId();
+        var sum = 0.0;
+        for (int i = 0; i < 10_000; i++) {
+            sum += number.eval(variables);
+        }
+        var before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 10_000; i++) {
+            sum += number.eval(variables);
+        }
+        var allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        // (10,000 LVNumbers would be hundreds of KB)
+        assertTrue(allocated < 1024, allocated + " bytes allocated");
+        assertEquals(20_000 * number.eval(variables), sum, 1e-6);
+    }
+
+    @Test
+    void testLittleScript() throws Exception {
+        var source = Files.readString(Path.of("./little.ltl"));
+        var outputs = new String[EvalMode.values().length];
+        for (var evalMode : EvalMode.values()) {
+            var lc = new LittleCalc();
+            lc.setEvalMode(evalMode);
+            outputs[evalMode.ordinal()] = tapSystemErrAndOutNormalized(() -> lc.run(CharStreams.fromString(source)));
+        }
+        for (var evalMode : EvalMode.values()) {
+            assertEquals(outputs[EvalMode.TREE_WALKING.ordinal()], outputs[evalMode.ordinal()], evalMode.name());
+        }
+    }
+
+    private String randomExpr(Random random, int depth) {
+        if (depth == 0) {
+            return PRIMARIES[random.nextInt(PRIMARIES.length)];
+        }
+        return switch (random.nextInt(5)) {
+            case 0 -> "(" + randomExpr(random, depth - 1) + ")";
+            case 1 -> "!" + randomExpr(random, depth - 1);
+            case 2 -> randomExpr(random, depth - 1) + " ? " + randomExpr(random, depth - 1) + " : "
+                    + randomExpr(random, depth - 1);
+            default -> randomExpr(random, depth - 1) + " " + OPERATORS[random.nextInt(OPERATORS.length)] + " "
+                    + randomExpr(random, depth - 1);
+        };
+    }
+}
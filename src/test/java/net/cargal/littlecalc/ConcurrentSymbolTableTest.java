@@ -0,0 +1,111 @@
+package net.cargal.littlecalc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.cargal.littlecalc.LittleCalcParser.AssignmentStmtContext;
+
+public class ConcurrentSymbolTableTest extends LCTestBase {
+    private static final int THREADS = 4;
+    private ExecutorService pool;
+
+    @BeforeEach
+    void setUp() {
+        pool = Executors.newFixedThreadPool(THREADS + 1);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        pool.shutdownNow();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testTable() {
+        var parent = new SymbolTable<LittleValue>();
+        parent.put("p", LittleValue.numberValue(1));
+        var table = new ConcurrentSymbolTable<LittleValue>(parent);
+        table.put("a", LittleValue.numberValue(2));
+        table.put("p", LittleValue.numberValue(3));
+        table.put("a", LittleValue.numberValue(4));
+        assertEquals(4.0, table.get("a").get().number());
+        assertEquals(3.0, table.get("p").get().number());
+        assertEquals(1.0, parent.get("p").get().number());
+        assertEquals(List.of("a", "p", "p"), table.keyStream().collect(Collectors.toList()));
+    }
+
+    @Test
+    void testConcurrentReaders() throws Exception {
+        // a writer keeps changing x (always to an integer) while readers evaluate against it
+        var variables = new ConcurrentSymbolTable<LittleValue>();
+        variables.put("x", LittleValue.numberValue(0));
+        var reads = parseCalcIn("y = x * 2 z = y / 2");
+        var writer = pool.submit(() -> {
+            for (int i = 1; i <= 20_000; i++) {
+                variables.put("x", LittleValue.numberValue(i));
+            }
+        });
+        List<Future<?>> readers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            var evalMode = EvalMode.values()[t % EvalMode.values().length];
+            readers.add(pool.submit(() -> {
+                // each thread has its own child table (for its outputs) and executor
+                var locals = new ConcurrentSymbolTable<>(variables);
+                var executor = new LittleCalcExecutionVisitor(locals);
+                executor.setEvalMode(evalMode);
+                var expr = new LittleCalcExprVisitor(variables);
+                for (int i = 0; i < 2_000; i++) {
+                    executor.visit(reads);
+                    var z = locals.get("z").get().number();
+                    assertEquals(locals.get("y").get().number(), z * 2, evalMode.name());
+                    assertEquals(Math.rint(z), z);
+                    assertTrue(expr.visit(((AssignmentStmtContext) reads.stmts().stmt(0)).expr()).number() >= 0);
+                }
+                return null;
+            }));
+        }
+        writer.get();
+        for (var reader : readers) {
+            reader.get();
+        }
+        assertEquals(20_000.0, variables.get("x").get().number());
+    }
+
+    @Test
+    void testKeySnapshots() throws Exception {
+        var variables = new ConcurrentSymbolTable<LittleValue>();
+        var writers = new ArrayList<Future<?>>();
+        for (int t = 0; t < THREADS; t++) {
+            var prefix = "t" + t + "_";
+            writers.add(pool.submit(() -> {
+                for (int i = 0; i < 5_000; i++) {
+                    variables.put(prefix + i, LittleValue.numberValue(i));
+                }
+            }));
+        }
+        var last = 0L;
+        while (!writers.stream().allMatch(Future::isDone)) {
+            // a snapshot only grows, and every variable in it has a value
+            var snapshot = variables.keyStream().collect(Collectors.toList());
+            assertTrue(snapshot.size() >= last);
+            assertTrue(snapshot.stream().allMatch(key -> variables.get(key).isPresent()));
+            last = snapshot.size();
+        }
+        for (var writer : writers) {
+            writer.get();
+        }
+        assertEquals(THREADS * 5_000, variables.keyStream().distinct().count());
+    }
+}
@@ -0,0 +1,61 @@
+package net.cargal.littlecalc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+public class CopyOnWriteSymbolTableTest extends LCTestBase {
+
+    @Test
+    void testSnapshots() {
+        var table = new CopyOnWriteSymbolTable<LittleValue>();
+        for (int i = 0; i < 10_000; i++) {
+            table.put("v" + i, LittleValue.numberValue(i));
+        }
+        var snapshot = table.snapshot();
+        table.put("v1", LittleValue.stringValue("changed"));
+        table.put("added", LVBoolean.TRUE);
+        assertEquals("changed", table.get("v1").get().string());
+        assertEquals(1.0, snapshot.get("v1").get().number());
+        assertTrue(snapshot.get("added").isEmpty());
+        assertEquals(10_000, snapshot.keyStream().count());
+        assertEquals(10_001, table.keyStream().count());
+
+        table.restore(snapshot);
+        assertEquals(1.0, table.get("v1").get().number());
+        assertTrue(table.get("added").isEmpty());
+        // (a change after restoring doesn't change the snapshot)
+        table.put("v2", LVBoolean.FALSE);
+        assertEquals(2.0, snapshot.get("v2").get().number());
+    }
+
+    @Test
+    void testSlots() {
+        // (variables are still read from the frame by slot)
+        var table = new CopyOnWriteSymbolTable<LittleValue>();
+        var value = LittleValue.numberValue(1);
+        table.put("a", value);
+        var symbol = Symbol.intern("a");
+        var slot = table.slots().find(symbol);
+        assertSame(value, table.snapshot().slot(slot));
+        assertSame(value, table.find(symbol, table.slots(), slot));
+    }
+
+    @Test
+    void testParent() {
+        var parent = new SymbolTable<LittleValue>();
+        parent.put("p", LittleValue.numberValue(1));
+        var table = new CopyOnWriteSymbolTable<>(parent);
+        table.put("c", LittleValue.numberValue(2));
+        var snapshot = table.snapshot();
+        parent.put("p", LittleValue.numberValue(3));
+        // (the parent is shared, not snapshotted)
+        assertEquals(3.0, snapshot.get("p").get().number());
+        assertEquals(List.of("c", "p"), snapshot.keyStream().collect(Collectors.toList()));
+    }
+}
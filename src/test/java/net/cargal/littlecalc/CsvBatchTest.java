@@ -0,0 +1,131 @@
+package net.cargal.littlecalc;
+
+import static com.github.stefanbirkner.systemlambda.SystemLambda.tapSystemErrAndOutNormalized;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.jupiter.api.Test;
+
+import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
+
+public class CsvBatchTest extends LCTestBase {
+    private static final String SCRIPT = """
+            total = price * qty
+            big = total > 100
+            label = big ? 'big' : name
+            """;
+
+    private String runCsv(EvalMode evalMode, String script, String csv, String... outputs) throws Exception {
+        var lc = new LittleCalc();
+        lc.setEvalMode(evalMode);
+        var output = new StringWriter();
+        assertTrue(lc.runCsv(CharStreams.fromString(script), new StringReader(csv), output, List.of(outputs)));
+        return output.toString();
+    }
+
+    @Test
+    void testRows() throws Exception {
+        var csv = """
+                name,price,qty
+                apple,2.5,4
+                pear,30,5
+                """;
+        for (var evalMode : EvalMode.values()) {
+            assertEquals("""
+                    name,total,big,label
+                    apple,10.0,false,apple
+                    pear,150.0,true,big
+                    """, runCsv(evalMode, SCRIPT, csv, "name", "total", "big", "label"), evalMode.toString());
+        }
+    }
+
+    @Test
+    void testLargeInput() throws Exception {
+        // (many more rows than the queues hold)
+        var rows = 100_000;
+        var csv = new StringBuilder("name,price,qty\n");
+        for (int i = 0; i < rows; i++) {
+            csv.append("n").append(i).append(',').append(i).append(",2\n");
+        }
+        var lines = runCsv(EvalMode.COMPILED, SCRIPT, csv.toString(), "total", "label").split("\n");
+        assertEquals(rows + 1, lines.length);
+        assertEquals("0.0,n0", lines[1]);
+        assertEquals("100.0,n50", lines[51]);
+        assertEquals("102.0,big", lines[52]);
+        assertEquals("199998.0,big", lines[rows]);
+    }
+
+    @Test
+    void testQuoting() throws Exception {
+        assertArrayEquals(new String[] { "a", "b,c", "say \"hi\"", "" },
+                CsvBatch.parseLine("a,\"b,c\",\"say \"\"hi\"\"\","));
+        // (text blocks can't have three quotes in a row)
+        var csv = "name,price,qty\n\"a, b\",1,2\n\"say \"\"hi\"\"\",1,1\n";
+        assertEquals("label,total\n\"a, b\",2.0\n\"say \"\"hi\"\"\",1.0\n",
+                runCsv(EvalMode.COMPILED, SCRIPT, csv, "label", "total"));
+    }
+
+    @Test
+    void testTypeMismatch() {
+        var csv = """
+                name,price,qty
+                apple,2.5,4
+                pear,lots,5
+                """;
+        var e = assertThrows(LittleCalcRuntimeException.class,
+                () -> runCsv(EvalMode.COMPILED, SCRIPT, csv, "total"));
+        assertEquals("line 3: price is not a number (lots)", e.getMessage());
+    }
+
+    @Test
+    void testNumbers() throws Exception {
+        for (var number : new String[] { "5", "1_000", "2.5", "0.0_1" }) {
+            assertTrue(CsvBatch.isNumber(number), number);
+        }
+        // (Java's numbers, but not LittleCalc's)
+        for (var number : new String[] { "", "1d", "2f", "0x1p3", "NaN", "Infinity", " 5 ", "-1", "1.", ".5", "1e3",
+                "_1" }) {
+            assertFalse(CsvBatch.isNumber(number), number);
+        }
+        var csv = """
+                name,price,qty
+                apple,1_000,2
+                pear,NaN,1
+                """;
+        assertEquals("total\n2000.0\n", runCsv(EvalMode.COMPILED, SCRIPT, csv.replace("pear,NaN,1\n", ""), "total"));
+        var e = assertThrows(LittleCalcRuntimeException.class,
+                () -> runCsv(EvalMode.COMPILED, SCRIPT, csv, "total"));
+        assertEquals("line 3: price is not a number (NaN)", e.getMessage());
+    }
+
+    @Test
+    void testValidation() throws Exception {
+        // (qty is a column of strings, so total can't be computed)
+        var csv = """
+                name,price,qty
+                apple,2.5,four
+                """;
+        var output = new StringWriter();
+        var capturedOutput = tapSystemErrAndOutNormalized(() -> assertFalse(new LittleCalc().runCsv(
+                CharStreams.fromString(SCRIPT), new StringReader(csv), output, List.of("total"))));
+        assertTrue(capturedOutput.contains("qty"), capturedOutput);
+        assertEquals("", output.toString());
+    }
+
+    @Test
+    void testUnknownOutput() {
+        var csv = """
+                name,price,qty
+                apple,2.5,4
+                """;
+        assertThrows(LittleCalcRuntimeException.class, () -> runCsv(EvalMode.COMPILED, SCRIPT, csv, "missing"));
+    }
+}
@@ -0,0 +1,76 @@
+package net.cargal.littlecalc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DFACacheTest {
+    @TempDir
+    Path tempDir;
+
+    private static void clear(DFA[] dfas) {
+        for (int i = 0; i < dfas.length; i++) {
+            dfas[i] = new DFA(dfas[i].atnStartState, i);
+        }
+    }
+
+    private static int stateCount(DFA[] dfas) {
+        return Arrays.stream(dfas).mapToInt(dfa -> dfa.states.size()).sum();
+    }
+
+    private static String parseTree(String source) {
+        var parser = new LittleCalcParser(new CommonTokenStream(new LittleCalcLexer(CharStreams.fromString(source))));
+        var tree = ParseStrategy.SLL_THEN_LL.parse(parser, LittleCalcParser::calcIn);
+        assertEquals(0, parser.getNumberOfSyntaxErrors());
+        return tree.toStringTree(parser);
+    }
+
+    @Test
+    void testSaveAndLoad() throws IOException {
+        var source = Files.readString(Path.of("./little.ltl"));
+        clear(LittleCalcLexer._decisionToDFA);
+        clear(LittleCalcParser._decisionToDFA);
+        var expectedTree = parseTree(source);
+        var lexerStates = stateCount(LittleCalcLexer._decisionToDFA);
+        var parserStates = stateCount(LittleCalcParser._decisionToDFA);
+        assertTrue(lexerStates > 0);
+        assertTrue(parserStates > 0);
+
+        var cacheFile = tempDir.resolve("littlecalc.dfa");
+        DFACache.save(cacheFile);
+        clear(LittleCalcLexer._decisionToDFA);
+        clear(LittleCalcParser._decisionToDFA);
+        assertTrue(DFACache.load(cacheFile));
+        assertEquals(lexerStates, stateCount(LittleCalcLexer._decisionToDFA));
+        assertEquals(parserStates, stateCount(LittleCalcParser._decisionToDFA));
+
+        // a warm DFA doesn't need any new states for input it has already seen
+        assertEquals(expectedTree, parseTree(source));
+        assertEquals(lexerStates, stateCount(LittleCalcLexer._decisionToDFA));
+        assertEquals(parserStates, stateCount(LittleCalcParser._decisionToDFA));
+
+        // and can still grow for input it hasn't
+        parseTree(Files.readString(Path.of("./expr.ltl")));
+        assertTrue(parserStates <= stateCount(LittleCalcParser._decisionToDFA));
+    }
+
+    @Test
+    void testStaleCacheIsIgnored() throws IOException {
+        var cacheFile = tempDir.resolve("stale.dfa");
+        Files.writeString(cacheFile, "not a DFA cache");
+        assertFalse(DFACache.loadIfPresent(cacheFile));
+        assertFalse(DFACache.loadIfPresent(tempDir.resolve("missing.dfa")));
+        assertEquals(parseTree("x = 1 + 2\nprint x"), parseTree("x = 1 + 2\nprint x"));
+    }
+}
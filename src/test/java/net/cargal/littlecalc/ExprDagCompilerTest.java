@@ -0,0 +1,113 @@
+package net.cargal.littlecalc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.lang.ref.WeakReference;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
+
+public class ExprDagCompilerTest extends LCTestBase {
+    private SymbolTable<LittleValue> variables(double x, double y) {
+        var variables = new SymbolTable<LittleValue>();
+        variables.put("x", LittleValue.numberValue(x));
+        variables.put("y", LittleValue.numberValue(y));
+        return variables;
+    }
+
+    @Test
+    void testSharing() {
+        var compiler = new ExprDagCompiler();
+        var a = compiler.compile(parseExpr("(y / 8) * 4^2 + x"));
+        var size = compiler.size();
+        var b = compiler.compile(parseExpr("x < (y/8)*(4 ^ 2) ? 1 : 2"));
+        // only the comparison is new
+        assertEquals(size + 1, compiler.size());
+
+        var variables = variables(1, 16);
+        assertEquals(33.0, a.eval(variables).number());
+        var evaluations = compiler.evaluations();
+        assertEquals(1.0, b.eval(variables).number());
+        // (y / 8) * 4^2 wasn't evaluated again, just the comparison
+        assertEquals(evaluations + 1, compiler.evaluations());
+    }
+
+    @Test
+    void testInvalidation() {
+        var compiler = new ExprDagCompiler();
+        var a = compiler.compile(parseExpr("(y / 8) * 4^2 + x"));
+        var variables = variables(1, 16);
+        assertEquals(33.0, a.eval(variables).number());
+
+        var evaluations = compiler.evaluations();
+        variables.put("x", LittleValue.numberValue(2.0));
+        assertEquals(34.0, a.eval(variables).number());
+        // only the addition reads x
+        assertEquals(evaluations + 1, compiler.evaluations());
+
+        variables.put("y", LittleValue.numberValue(8.0));
+        assertEquals(18.0, a.eval(variables).number());
+    }
+
+    @Test
+    void testErrorPositions() {
+        var compiler = new ExprDagCompiler();
+        var a = compiler.compile(parseExpr("u * 2 + 1"));
+        var b = compiler.compile(parseExpr("\n   u * 2 + 1"));
+        var variables = new SymbolTable<LittleValue>();
+        var e = assertThrows(LittleCalcRuntimeException.class, () -> a.eval(variables));
+        assertEquals("line:1 col:1 -- u has not been assigned a value", e.getMessage());
+        e = assertThrows(LittleCalcRuntimeException.class, () -> b.eval(variables));
+        assertEquals("line:2 col:4 -- u has not been assigned a value", e.getMessage());
+    }
+
+    @Test
+    void testScriptsCollected() throws InterruptedException {
+        // (MEMOIZED keeps one script's DAG, so an earlier script's parse tree can be collected)
+        var evaluator = EvalMode.MEMOIZED.evaluator(variables(1, 2));
+        var expr = parseExpr("x * y + 1");
+        assertEquals(3.0, evaluator.evaluate(expr).number());
+        var script = new WeakReference<>(expr);
+        expr = null;
+        assertEquals(4.0, evaluator.evaluate(parseExpr("x * y + 2")).number());
+        for (int i = 0; i < 20 && script.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(script.get());
+    }
+
+    @Test
+    void testRandomStatements() {
+        // lots of small expressions over a few variables, so there's plenty of sharing
+        var random = new Random(13);
+        var compiler = new ExprDagCompiler();
+        var variables = variables(3, 5);
+        var treeWalking = new LittleCalcExprVisitor(variables);
+        for (int i = 0; i < 2000; i++) {
+            var expr = parseExpr(randomExpr(random, 3));
+            var expected = treeWalking.visit(expr);
+            var actual = compiler.compile(expr).eval(variables);
+            assertEquals(expected.toString(), actual.toString(), expr.getText());
+            if (random.nextInt(4) == 0) {
+                variables.put(random.nextBoolean() ? "x" : "y", LittleValue.numberValue(random.nextInt(4)));
+            }
+        }
+    }
+
+    private String randomExpr(Random random, int depth) {
+        if (depth == 0) {
+            return new String[] { "x", "y", "2", "0.5" }[random.nextInt(4)];
+        }
+        return switch (random.nextInt(4)) {
+            case 0 -> "(" + randomExpr(random, depth - 1) + " < " + randomExpr(random, depth - 1) + " ? "
+                    + randomExpr(random, depth - 1) + " : " + randomExpr(random, depth - 1) + ")";
+            default -> "(" + randomExpr(random, depth - 1) + " " + "^*/+-".charAt(random.nextInt(5)) + " "
+                    + randomExpr(random, depth - 1) + ")";
+        };
+    }
+}
@@ -0,0 +1,87 @@
+package net.cargal.littlecalc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.Token;
+import org.junit.jupiter.api.Test;
+
+public class FastLexerTest {
+    private static final String ALPHABET = "aZ_9.  \t\n\r\"'\\/=!<>&|(){}^*+-:?tRuEfAlSEpintVgoRkc$\u00e9";
+
+    private List<String> tokens(Lexer lexer) {
+        var result = new ArrayList<String>();
+        Token token;
+        do {
+            token = lexer.nextToken();
+            result.add(token.toString() + " ch:" + token.getChannel());
+        } while (token.getType() != Token.EOF);
+        return result;
+    }
+
+    private void assertSameTokens(String source) {
+        var expected = tokens(new LittleCalcLexer(CharStreams.fromString(source)));
+        var actual = tokens(new LittleCalcFastLexer(CharStreams.fromString(source)));
+        assertEquals(expected, actual, source);
+    }
+
+    @Test
+    void testSourceFiles() throws IOException {
+        for (var file : List.of("./little.ltl", "./alltokens.ltl", "./expr.ltl")) {
+            assertSameTokens(Files.readString(Path.of(file)));
+        }
+    }
+
+    @Test
+    void testKeywords() {
+        assertSameTokens("true TRUE True truex false print PRINT vars gui tree Tree refactor tokens TOKENSS tru");
+        assertSameTokens("_ _9 a1_b guI refactoring Refactor9 tokens_");
+    }
+
+    @Test
+    void testEdgeCases() {
+        assertSameTokens("1. 1._ 1.5.6 1__ _1 & | && || // comment");
+        assertSameTokens("\"abc\\\"def\" 'x\\'y' \"a\\\\\" + \"b\"");
+        assertSameTokens("\"unterminated \\\" string");
+        assertSameTokens("'unterminated");
+        assertSameTokens("\"multi\nline\"\n// last comment without a newline");
+    }
+
+    @Test
+    void testRandomInput() {
+        var random = new Random(17);
+        for (int i = 0; i < 2000; i++) {
+            var source = new StringBuilder();
+            var length = random.nextInt(20);
+            for (int j = 0; j < length; j++) {
+                source.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            assertSameTokens(source.toString());
+        }
+    }
+
+    @Test
+    void testSkipHidden() {
+        var source = "x = 1 // comment\n  print x\n";
+        var lexer = new LittleCalcFastLexer(CharStreams.fromString(source));
+        lexer.setSkipHidden(true);
+        var actual = tokens(lexer);
+        var expected = tokens(new LittleCalcLexer(CharStreams.fromString(source)));
+        expected.removeIf(token -> !token.endsWith("ch:0"));
+        assertTrue(actual.stream().allMatch(token -> token.endsWith("ch:0")));
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            // token indexes aren't assigned until the tokens are in a token stream
+            assertEquals(expected.get(i), actual.get(i));
+        }
+    }
+}
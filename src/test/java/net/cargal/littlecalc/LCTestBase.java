@@ -4,7 +4,30 @@ import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+
+import net.cargal.littlecalc.LittleCalcParser.CalcInContext;
+import net.cargal.littlecalc.LittleCalcParser.ExprContext;
+
 public class LCTestBase {
+    protected CalcInContext parseCalcIn(String source) {
+        return parser(source).calcIn();
+    }
+
+    // (an expression without syntax errors)
+    protected ExprContext parseExpr(String source) {
+        var parser = parser(source);
+        parser.removeErrorListeners();
+        var expr = parser.expr();
+        assertEquals(0, parser.getNumberOfSyntaxErrors(), source);
+        return expr;
+    }
+
+    private LittleCalcParser parser(String source) {
+        return new LittleCalcParser(new CommonTokenStream(new LittleCalcLexer(CharStreams.fromString(source))));
+    }
+
     protected void assertMatchedOutput(String expected,String capturedOutput) {
         var expectedLines = expected.split("\n");
         var outputLines = capturedOutput.split("[\n\r]+");
@@ -0,0 +1,119 @@
+package net.cargal.littlecalc;
+
+import static com.github.stefanbirkner.systemlambda.SystemLambda.tapSystemErrAndOutNormalized;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.junit.jupiter.api.Test;
+
+import net.cargal.littlecalc.exceptions.LittleCalcCompileException;
+import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
+
+public class LittleCalcEngineTest extends LCTestBase {
+    private static final String SCRIPT = """
+            total = price * qty
+            big = total > 100
+            label = big ? 'big' : 'small'
+            print 'total ' total
+            label
+            vars
+            """;
+    private static final Map<String, LVType> INPUTS = Map.of("price", LVNumberType.INSTANCE, "qty",
+            LVNumberType.INSTANCE);
+
+    @Test
+    void testEval() throws Exception {
+        var script = new LittleCalcEngine().compile(SCRIPT, INPUTS);
+        var result = script.eval(Map.of("price", LittleValue.numberValue(25), "qty", LittleValue.numberValue(5)));
+        assertEquals(125.0, result.get("total").number());
+        assertEquals("big", result.get("label").string());
+        assertEquals(5.0, result.get("qty").number());
+
+        // (the same output as running the script with the inputs assigned first)
+        var executor = new LittleCalcExecutionVisitor();
+        var expected = tapSystemErrAndOutNormalized(() -> executor.visit(new LittleCalcParser(new CommonTokenStream(
+                new LittleCalcLexer(CharStreams.fromString("price = 25\nqty = 5\n" + SCRIPT)))).calcIn()));
+        assertEquals(expected, result.output().replace(System.lineSeparator(), "\n"));
+    }
+
+    @Test
+    void testSharedBetweenThreads() {
+        var script = new LittleCalcEngine().compile(SCRIPT, INPUTS);
+        IntStream.range(0, 10_000).parallel().forEach(i -> {
+            var result = script.eval(Map.of("price", LittleValue.numberValue(i), "qty", LittleValue.numberValue(2)));
+            assertEquals(i * 2.0, result.get("total").number());
+            assertEquals(i * 2 > 100 ? "big" : "small", result.get("label").string());
+        });
+    }
+
+    @Test
+    void testNoInputs() {
+        for (var frontEnd : FrontEnd.values()) {
+            var engine = new LittleCalcEngine();
+            engine.setFrontEnd(frontEnd);
+            engine.setOptimizing(false);
+            var result = engine.compile("x = 2 ^ 10\nprint x").eval();
+            assertEquals(1024.0, result.get("x").number());
+            assertEquals("1024.0" + System.lineSeparator(), result.output());
+        }
+    }
+
+    @Test
+    void testUnreadVariables() {
+        // (the optimizer's dead stores are still results)
+        var result = new LittleCalcEngine().compile("x = 1\nx = 2\ny = 'never read'").eval();
+        assertEquals(2.0, result.get("x").number());
+        assertEquals("never read", result.get("y").string());
+    }
+
+    @Test
+    void testCompileErrors() throws Exception {
+        var engine = new LittleCalcEngine();
+        var output = tapSystemErrAndOutNormalized(() -> {
+            var syntax = assertThrows(LittleCalcCompileException.class, () -> engine.compile("x = (1 + 2"));
+            assertEquals(1, syntax.getErrors().size());
+            assertEquals("line:1 col:11 -- missing ')' at '<EOF>'", syntax.getErrors().get(0));
+
+            var semantic = assertThrows(LittleCalcCompileException.class,
+                    () -> engine.compile("x = y + 1\nz = 'a' * 2"));
+            assertEquals(3, semantic.getErrors().size());
+            assertEquals("line:1 col:5 -- y has not been assigned a value", semantic.getErrors().get(0));
+        });
+        // (errors are only in the exceptions)
+        assertEquals("", output);
+    }
+
+    @Test
+    void testBindingErrors() {
+        var script = new LittleCalcEngine().compile(SCRIPT, INPUTS);
+        var price = LittleValue.numberValue(1);
+        assertThrows(LittleCalcRuntimeException.class, () -> script.eval(Map.of("price", price)));
+        assertThrows(LittleCalcRuntimeException.class,
+                () -> script.eval(Map.of("price", price, "qty", LittleValue.stringValue("2"))));
+        assertThrows(LittleCalcRuntimeException.class,
+                () -> script.eval(Map.of("price", price, "qty", price, "other", price)));
+        assertEquals(Map.of("price", LVNumberType.INSTANCE, "qty", LVNumberType.INSTANCE), script.inputs());
+        var nullBinding = new HashMap<String, LittleValue>(Map.of("price", price));
+        nullBinding.put("qty", null);
+        var e = assertThrows(LittleCalcRuntimeException.class, () -> script.eval(nullBinding));
+        assertEquals("qty is bound to null", e.getMessage());
+    }
+
+    @Test
+    void testUnreadInputs() {
+        // (an input that's never read, or is assigned before it's read, needn't be bound)
+        Map<String, LVType> inputs = Map.of("a", LVNumberType.INSTANCE, "b", LVNumberType.INSTANCE, "c",
+                LVNumberType.INSTANCE);
+        var script = new LittleCalcEngine().compile("b = 2\nx = a + b", inputs);
+        assertEquals(3.0, script.eval(Map.of("a", LittleValue.numberValue(1))).get("x").number());
+        assertEquals(inputs, script.inputs());
+        var e = assertThrows(LittleCalcRuntimeException.class, () -> script.eval(Map.of()));
+        assertEquals("a has not been bound", e.getMessage());
+    }
+}
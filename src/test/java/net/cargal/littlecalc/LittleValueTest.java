@@ -3,11 +3,11 @@ package net.cargal.littlecalc;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
-import org.antlr.v4.runtime.CommonToken;
-import org.antlr.v4.runtime.ParserRuleContext;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -23,10 +23,6 @@ class LittleValueTest {
     private static final String BBB = "BBB";
     private static final String CCC = "CCC";
 
-    private final int LINE = 5;
-    private final int COLUMN = 20;
-    ParserRuleContext mockContext;
-
     LittleValue lv1;
     LittleValue lv2;
     LittleValue lv2Dup;
@@ -42,24 +38,18 @@ class LittleValueTest {
 
     @BeforeEach
     public void before() {
-        mockContext = new ParserRuleContext();
-        var token = new CommonToken(1);
-        token.setLine(LINE);
-        token.setCharPositionInLine(COLUMN);
-        mockContext.start = token;
-
-        lv1 = LittleValue.numberValue(D1_0, mockContext);
-        lv2 = LittleValue.numberValue(D2_0, LINE, COLUMN);
-        lv2Dup = LittleValue.numberValue(D2_0, LINE, COLUMN);
-        lv3 = LittleValue.numberValue(D3_0, LINE, COLUMN);
-        lvA = LittleValue.stringValue(AAA, mockContext);
-        lvB = LittleValue.stringValue(BBB, LINE, COLUMN);
-        lvBDup = LittleValue.stringValue(BBB, LINE, COLUMN);
-        lvC = LittleValue.stringValue(CCC, LINE, COLUMN);
-        lvTrue = LittleValue.booleanValue(true, mockContext);
-        lvTrueDup = LittleValue.booleanValue(true, LINE, COLUMN);
-        lvFalse = LittleValue.booleanValue(false, LINE, COLUMN);
-        lvFalseDup = LittleValue.booleanValue(false, LINE, COLUMN);
+        lv1 = LittleValue.numberValue(D1_0);
+        lv2 = LittleValue.numberValue(D2_0);
+        lv2Dup = LittleValue.numberValue(D2_0);
+        lv3 = LittleValue.numberValue(D3_0);
+        lvA = LittleValue.stringValue(AAA);
+        lvB = LittleValue.stringValue(BBB);
+        lvBDup = LittleValue.stringValue(BBB);
+        lvC = LittleValue.stringValue(CCC);
+        lvTrue = LittleValue.booleanValue(true);
+        lvTrueDup = LittleValue.booleanValue(true);
+        lvFalse = LittleValue.booleanValue(false);
+        lvFalseDup = LittleValue.booleanValue(false);
     }
 
     @Test
@@ -68,13 +58,35 @@ class LittleValueTest {
         assertFalse(lvA.isNumber());
         assertFalse(lvA.isBoolean());
         assertEquals(AAA, lvA.string());
-        assertEquals(LINE, lvA.getLine());
-        assertEquals(COLUMN, lvA.getColumn());
         assertEquals(AAA, lvA.toString());
         assertThrows(LittleCalcRuntimeException.class, () -> lvA.bool());
         assertThrows(LittleCalcRuntimeException.class, () -> lvA.number());
     }
 
+    @Test
+    void sharesValues() {
+        assertSame(LVBoolean.TRUE, lvTrue);
+        assertSame(LVBoolean.FALSE, lvFalseDup);
+        assertSame(lv2, lv2Dup);
+        assertSame(LittleValue.numberValue(-128.0), LittleValue.numberValue(-128.0));
+        assertSame(LittleValue.numberValue(1023.0), LittleValue.numberValue(1023.0));
+        assertNotSame(LittleValue.numberValue(1024.0), LittleValue.numberValue(1024.0));
+        assertNotSame(LittleValue.numberValue(0.5), LittleValue.numberValue(0.5));
+        assertEquals(0.0, LittleValue.numberValue(0.0).number());
+        assertEquals(-0.0, LittleValue.numberValue(-0.0).number());
+        assertTrue(LittleValue.numberValue(Double.NaN).number().isNaN());
+    }
+
+    @Test
+    void errorPositions() {
+        var ex = assertThrows(LittleCalcRuntimeException.class, () -> lvA.number());
+        assertFalse(ex.hasPosition());
+        assertEquals("value is not a Number (AAA)", ex.getMessage());
+        // (only the innermost position is kept)
+        assertSame(ex, ex.at(5, 20).at(1, 0));
+        assertEquals("line:5 col:21 -- value is not a Number (AAA)", ex.getMessage());
+    }
+
     @Test
     void unknownType() {
         assertThrows(LittleCalcImplementationException.class, () -> LVUnknownType.INSTANCE.canCompareTo(LVNumberType.INSTANCE));
@@ -86,8 +98,6 @@ class LittleValueTest {
         assertFalse(lv1.isString());
         assertFalse(lv1.isBoolean());
         assertEquals(D1_0, lv1.number());
-        assertEquals(LINE, lv1.getLine());
-        assertEquals(COLUMN, lv1.getColumn());
         assertEquals("1.0", lv1.toString());
         assertThrows(LittleCalcRuntimeException.class, () -> lv1.bool());
         assertThrows(LittleCalcRuntimeException.class, () -> lv1.string());
@@ -99,8 +109,6 @@ class LittleValueTest {
         assertFalse(lvTrue.isString());
         assertFalse(lvTrue.isNumber());
         assertTrue(lvTrue.bool());
-        assertEquals(LINE, lvTrue.getLine());
-        assertEquals(COLUMN, lvTrue.getColumn());
         assertEquals("true", lvTrue.toString());
         assertThrows(LittleCalcRuntimeException.class, () -> lvTrue.string());
         assertThrows(LittleCalcRuntimeException.class, () -> lvTrue.number());
@@ -115,8 +123,6 @@ class LittleValueTest {
         assertFalse(lvFalse.isString());
         assertFalse(lvFalse.isNumber());
         assertFalse(lvFalse.bool());
-        assertEquals(LINE, lvFalse.getLine());
-        assertEquals(COLUMN, lvFalse.getColumn());
         assertEquals("false", lvFalse.toString());
         assertThrows(LittleCalcRuntimeException.class, () -> lvFalse.string());
         assertThrows(LittleCalcRuntimeException.class, () -> lvFalse.number());
@@ -177,11 +183,11 @@ class LittleValueTest {
     void testNumberComparesToOther() {
         LittleCalcRuntimeException ex = assertThrows(LittleCalcRuntimeException.class, () -> lvA.evalCompare(LVComparableOp.LT, lv1));
 
-        assertEquals("line:5 col:21 -- Cannot compare STRING to NUMBER", ex.getMessage());
+        assertEquals("Cannot compare STRING to NUMBER", ex.getMessage());
 
         ex = assertThrows(LittleCalcRuntimeException.class, () -> lvA.evalCompare(LVComparableOp.LT, lvTrue));
 
-        assertEquals("line:5 col:21 -- Cannot compare STRING to BOOLEAN", ex.getMessage());
+        assertEquals("Cannot compare STRING to BOOLEAN", ex.getMessage());
     }
 
     @Test
@@ -239,11 +245,11 @@ class LittleValueTest {
     void testStringComparesToOther() {
         LittleCalcRuntimeException ex = assertThrows(LittleCalcRuntimeException.class, () -> lvA.evalCompare(LVComparableOp.LT, lvTrue));
 
-        assertEquals("line:5 col:21 -- Cannot compare STRING to BOOLEAN", ex.getMessage());
+        assertEquals("Cannot compare STRING to BOOLEAN", ex.getMessage());
 
         ex = assertThrows(LittleCalcRuntimeException.class, () -> lvA.evalCompare(LVComparableOp.LT, lv1));
 
-        assertEquals("line:5 col:21 -- Cannot compare STRING to NUMBER", ex.getMessage());
+        assertEquals("Cannot compare STRING to NUMBER", ex.getMessage());
     }
 
     @Test
@@ -264,25 +270,25 @@ class LittleValueTest {
     @Test
     void testBoolFailsLT() {
         LittleCalcRuntimeException ex = assertThrows(LittleCalcRuntimeException.class, () -> assertTrue(lvTrue.evalCompare(LVComparableOp.LT, lvFalse)));
-        assertEquals("line:5 col:21 -- Comparison operator ('<') is not valid for BOOLEAN values", ex.getMessage());
+        assertEquals("Comparison operator ('<') is not valid for BOOLEAN values", ex.getMessage());
     }
 
     @Test
     void testBoolFailsLE() {
         LittleCalcRuntimeException ex = assertThrows(LittleCalcRuntimeException.class, () -> assertTrue(lvTrue.evalCompare(LVComparableOp.LE, lvFalse)));
-        assertEquals("line:5 col:21 -- Comparison operator ('<=') is not valid for BOOLEAN values", ex.getMessage());
+        assertEquals("Comparison operator ('<=') is not valid for BOOLEAN values", ex.getMessage());
     }
 
     @Test
     void testBoolFailsGE() {
         LittleCalcRuntimeException ex = assertThrows(LittleCalcRuntimeException.class, () -> lvTrue.evalCompare(LVComparableOp.GE, lvFalse));
-        assertEquals("line:5 col:21 -- Comparison operator ('>=') is not valid for BOOLEAN values", ex.getMessage());
+        assertEquals("Comparison operator ('>=') is not valid for BOOLEAN values", ex.getMessage());
     }
 
     @Test
     void testBoolFailsGT() {
         LittleCalcRuntimeException ex = assertThrows(LittleCalcRuntimeException.class, () -> assertTrue(lvTrue.evalCompare(LVComparableOp.GT, lvFalse)));
-        assertEquals("line:5 col:21 -- Comparison operator ('>') is not valid for BOOLEAN values", ex.getMessage());
+        assertEquals("Comparison operator ('>') is not valid for BOOLEAN values", ex.getMessage());
     }
 
     @Test
@@ -0,0 +1,117 @@
+package net.cargal.littlecalc;
+
+import static com.github.stefanbirkner.systemlambda.SystemLambda.tapSystemErrAndOutNormalized;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.Interval;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MappedCharStreamTest extends LCTestBase {
+    @TempDir
+    Path tempDir;
+
+    private Path write(String name, byte[] content) throws IOException {
+        var path = tempDir.resolve(name);
+        Files.write(path, content);
+        return path;
+    }
+
+    private static List<String> tokens(CharStream charStream) {
+        var result = new ArrayList<String>();
+        var tokenStream = new CommonTokenStream(new LittleCalcLexer(charStream));
+        tokenStream.fill();
+        for (var token : tokenStream.getTokens()) {
+            result.add(token.toString());
+        }
+        return result;
+    }
+
+    private static void assertSameStream(CharStream expected, CharStream actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.getText(Interval.of(0, expected.size() - 1)), actual.toString());
+        while (expected.LA(1) != IntStream.EOF) {
+            assertEquals(expected.LA(1), actual.LA(1), "at " + expected.index());
+            assertEquals(expected.LA(3), actual.LA(3), "at " + expected.index());
+            assertEquals(expected.LA(-1), actual.LA(-1), "at " + expected.index());
+            expected.consume();
+            actual.consume();
+        }
+        assertEquals(IntStream.EOF, actual.LA(1));
+        var random = new Random(3);
+        for (int i = 0; i < 200; i++) {
+            var a = random.nextInt(expected.size() + 1);
+            var b = a - 1 + random.nextInt(40);
+            expected.seek(a);
+            actual.seek(a);
+            assertEquals(expected.LA(1), actual.LA(1), "seek " + a);
+            assertEquals(expected.getText(Interval.of(a, b)), actual.getText(Interval.of(a, b)), a + ".." + b);
+        }
+    }
+
+    private void assertSameAsCharStreams(String source) throws IOException {
+        var path = write("script.ltl", source.getBytes(StandardCharsets.UTF_8));
+        assertSameStream(CharStreams.fromPath(path), MappedCharStream.fromPath(path));
+        assertEquals(tokens(CharStreams.fromPath(path)), tokens(MappedCharStream.fromPath(path)));
+    }
+
+    @Test
+    void testAscii() throws IOException {
+        assertSameAsCharStreams(Files.readString(Path.of("./little.ltl")));
+        assertSameAsCharStreams("");
+    }
+
+    @Test
+    void testUtf8() throws IOException {
+        assertSameAsCharStreams("x = 1\nprint \"caf\u00e9 \u20ac \ud83d\ude00\" x\n");
+        var longScript = new StringBuilder("s = \"");
+        for (int i = 0; i < 3000; i++) {
+            longScript.append(i % 3 == 0 ? "\u00e9" : i % 3 == 1 ? "\ud83d\ude00" : "a");
+        }
+        longScript.append("\"\nprint s \"\u4e2d\u6587\"\n");
+        assertSameAsCharStreams(longScript.toString());
+    }
+
+    @Test
+    void testLatin1() throws IOException {
+        var source = "print \"gar\u00e7on\"";
+        var path = write("latin1.ltl", source.getBytes(StandardCharsets.ISO_8859_1));
+        assertSameStream(CharStreams.fromString(source),
+                MappedCharStream.fromPath(path, StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    void testMalformedUtf8() throws IOException {
+        var path = write("bad.ltl", new byte[] { 'a', (byte) 0x80, 'b', (byte) 0xC3, 'c', (byte) 0xE2, (byte) 0x82,
+                ' ', (byte) 0xC3, (byte) 0xA9, (byte) 0xA9, 'd' });
+        var stream = MappedCharStream.fromPath(path);
+        var text = new StringBuilder();
+        while (stream.LA(1) != Token.EOF) {
+            text.appendCodePoint(stream.LA(1));
+            stream.consume();
+        }
+        assertEquals(stream.size(), text.codePointCount(0, text.length()));
+        assertEquals("a\ufffdb\ufffdc\ufffd \ufffdd", text.toString());
+        assertEquals(text.toString(), stream.toString());
+    }
+
+    @Test
+    void testRun() throws Exception {
+        var path = write("run.ltl", "s = \"\u00e9t\u00e9\"\nprint s == \"\u00e9t\u00e9\" \" \" 2 * 3\n".getBytes(StandardCharsets.UTF_8));
+        var capturedOutput = tapSystemErrAndOutNormalized(() -> new LittleCalc().run(MappedCharStream.fromPath(path)));
+        assertMatchedOutput("true 6.0", capturedOutput);
+    }
+}
@@ -0,0 +1,129 @@
+package net.cargal.littlecalc;
+
+import static com.github.stefanbirkner.systemlambda.SystemLambda.tapSystemErrAndOutNormalized;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.junit.jupiter.api.Test;
+
+import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
+
+public class OffHeapSymbolTableTest extends LCTestBase {
+
+    @Test
+    void testValues() {
+        var table = new OffHeapSymbolTable();
+        table.put("n", LittleValue.numberValue(2.5));
+        table.put("t", LVBoolean.TRUE);
+        table.put("s", LittleValue.stringValue("abc"));
+        assertEquals(2.5, table.get("n").get().number());
+        assertSame(LVBoolean.TRUE, table.get("t").get());
+        assertEquals("abc", table.get("s").get().string());
+        assertEquals(Optional.empty(), table.get("x"));
+        // values can change kind
+        table.put("s", LVBoolean.FALSE);
+        table.put("n", LittleValue.stringValue("def"));
+        table.put("t", LittleValue.numberValue(-0.0));
+        assertSame(LVBoolean.FALSE, table.get("s").get());
+        assertEquals("def", table.get("n").get().string());
+        assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(table.get("t").get().number()));
+        assertEquals(3, table.size());
+    }
+
+    @Test
+    void testGrowth() {
+        var table = new OffHeapSymbolTable();
+        for (int i = 0; i < 100_000; i++) {
+            table.put("v" + i, i % 3 == 0 ? LittleValue.stringValue("s" + i) : LittleValue.numberValue(i));
+        }
+        assertEquals(100_000, table.size());
+        for (int i = 0; i < 100_000; i++) {
+            var value = table.get("v" + i).get();
+            assertEquals(i % 3 == 0 ? "s" + i : String.valueOf((double) i), value.toString());
+        }
+        assertEquals(100_000, table.keyStream().count());
+    }
+
+    @Test
+    void testUnboxed() {
+        var table = new OffHeapSymbolTable();
+        table.putNumber("n", 1.5);
+        table.put("s", LittleValue.stringValue("abc"));
+        assertEquals(1.5, table.number("n"));
+        assertEquals(1.5, table.get("n").get().number());
+        table.putNumber("s", 2);
+        assertEquals(2.0, table.number("s"));
+        table.put("b", LVBoolean.TRUE);
+        assertThrows(LittleCalcRuntimeException.class, () -> table.number("b"));
+        var e = assertThrows(LittleCalcRuntimeException.class, () -> table.number("x"));
+        assertEquals("x has not been assigned a value", e.getMessage());
+        // (names are kept in the table, not in Slots)
+        assertEquals(0, table.slots().size());
+    }
+
+    @Test
+    void testNoValue() {
+        // (a null value is no value, so a parent's shows through)
+        var parent = new SymbolTable<LittleValue>();
+        parent.put("p", LittleValue.numberValue(1));
+        var child = new OffHeapSymbolTable(parent);
+        child.put("p", LittleValue.stringValue("child"));
+        child.put("q", LittleValue.numberValue(2));
+        child.put("p", null);
+        assertEquals(1.0, child.number("p"));
+        assertEquals(1, child.size());
+        assertEquals(List.of("q", "p"), child.keyStream().collect(Collectors.toList()));
+        child.put("p", LVBoolean.FALSE);
+        assertSame(LVBoolean.FALSE, child.get("p").get());
+        assertEquals(2, child.size());
+    }
+
+    @Test
+    void testParent() {
+        var parent = new SymbolTable<LittleValue>();
+        parent.put("p", LittleValue.numberValue(1));
+        parent.put("shadowed", LittleValue.numberValue(1));
+        var child = new OffHeapSymbolTable(parent);
+        child.put("c", LittleValue.numberValue(2));
+        child.put("shadowed", LittleValue.numberValue(2));
+        assertEquals(1.0, child.get("p").get().number());
+        assertEquals(2.0, child.get("shadowed").get().number());
+        assertEquals(1.0, parent.get("shadowed").get().number());
+        assertTrue(parent.get("c").isEmpty());
+        var keys = child.keyStream().collect(Collectors.toList());
+        assertEquals(4, keys.size());
+        assertTrue(keys.subList(0, 2).containsAll(List.of("c", "shadowed")));
+    }
+
+    @Test
+    void testExecution() throws Exception {
+        var source = Files.readString(Path.of("./little.ltl"));
+        for (var evalMode : EvalMode.values()) {
+            var expected = tapSystemErrAndOutNormalized(() -> run(source, new SymbolTable<>(new Slots()), evalMode));
+            var actual = tapSystemErrAndOutNormalized(() -> run(source, new OffHeapSymbolTable(), evalMode));
+            // (only vars' order can differ)
+            assertEquals(expected.lines().sorted().collect(Collectors.toList()),
+                    actual.lines().sorted().collect(Collectors.toList()), evalMode.name());
+        }
+    }
+
+    private void run(String source, SymbolTable<LittleValue> variables, EvalMode evalMode) {
+        var parser = new LittleCalcParser(new CommonTokenStream(new LittleCalcLexer(CharStreams.fromString(source))));
+        var calcIn = parser.calcIn();
+        ParseTreeWalker.DEFAULT.walk(new LittleCalcSemanticValidationListener(variables.slots()), calcIn);
+        var executor = new LittleCalcExecutionVisitor(variables);
+        executor.setEvalMode(evalMode);
+        executor.visit(calcIn);
+    }
+}
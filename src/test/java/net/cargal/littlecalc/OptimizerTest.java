@@ -0,0 +1,132 @@
+package net.cargal.littlecalc;
+
+import static com.github.stefanbirkner.systemlambda.SystemLambda.tapSystemErrAndOutNormalized;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.junit.jupiter.api.Test;
+
+import net.cargal.littlecalc.LittleCalcParser.AssignmentStmtContext;
+import net.cargal.littlecalc.LittleCalcParser.CalcInContext;
+import net.cargal.littlecalc.LittleCalcParser.ExprContext;
+
+public class OptimizerTest extends LCTestBase {
+
+    private CalcInContext calcIn;
+    private LittleCalcOptimizer optimizer;
+
+    private void optimize(String source) {
+        var parser = new LittleCalcParser(new CommonTokenStream(new LittleCalcLexer(CharStreams.fromString(source))));
+        calcIn = parser.calcIn();
+        optimizer = new LittleCalcOptimizer();
+        optimizer.visit(calcIn);
+    }
+
+    private List<AssignmentStmtContext> assignments() {
+        return calcIn.stmts().getRuleContexts(LittleCalcParser.StmtContext.class).stream()
+                .filter(AssignmentStmtContext.class::isInstance).map(AssignmentStmtContext.class::cast).toList();
+    }
+
+    private LittleValue constant(ExprContext ctx) {
+        return optimizer.getConstants().get(ctx);
+    }
+
+    private void assertSameOutput(String source) throws Exception {
+        for (var evalMode : EvalMode.values()) {
+            var lc = new LittleCalc();
+            lc.setEvalMode(evalMode);
+            lc.setOptimizing(false);
+            var expected = tapSystemErrAndOutNormalized(() -> lc.run(CharStreams.fromString(source)));
+            lc.setOptimizing(true);
+            var actual = tapSystemErrAndOutNormalized(() -> lc.run(CharStreams.fromString(source)));
+            assertEquals(expected, actual, evalMode + ": " + source);
+        }
+    }
+
+    @Test
+    void testFolding() {
+        optimize("c = 2^4^0.5 print c * 2");
+        var c = assignments().get(0).expr();
+        assertEquals(4.0, constant(c).number());
+    }
+
+    @Test
+    void testPropagation() {
+        optimize("""
+                a = 3
+                b = a * 2
+                print b + 1
+                a = u
+                print a + 1
+                """);
+        var assignments = assignments();
+        assertEquals(6.0, constant(assignments.get(1).expr()).number());
+        var print = (LittleCalcParser.PrintStmtContext) calcIn.stmts().stmt(2);
+        assertEquals(7.0, constant(print.expr(0)).number());
+        print = (LittleCalcParser.PrintStmtContext) calcIn.stmts().stmt(4);
+        assertNull(constant(print.expr(0)));
+    }
+
+    @Test
+    void testShortCircuits() {
+        optimize("print (false && u) (true || u) (true ? 1 : u) (false ? u : 2) (true && u)");
+        var print = (LittleCalcParser.PrintStmtContext) calcIn.stmts().stmt(0);
+        assertEquals(false, constant(print.expr(0)).bool());
+        assertEquals(true, constant(print.expr(1)).bool());
+        assertEquals(1.0, constant(print.expr(2)).number());
+        assertEquals(2.0, constant(print.expr(3)).number());
+        assertNull(constant(print.expr(4)));
+    }
+
+    @Test
+    void testDeadStores() {
+        optimize("""
+                a = 1
+                a = 2
+                b = 3
+                print a
+                c = u
+                c = 4
+                fullTracing = false
+                d = 5
+                """);
+        var assignments = assignments();
+        // every read of a and b was folded, so none of their assignments are needed
+        assertTrue(optimizer.isDeadStore(assignments.get(0)));
+        assertTrue(optimizer.isDeadStore(assignments.get(1)));
+        assertTrue(optimizer.isDeadStore(assignments.get(2)));
+        // u's missing value is still reported
+        assertFalse(optimizer.isDeadStore(assignments.get(3)));
+        assertTrue(optimizer.isDeadStore(assignments.get(4)));
+        assertFalse(optimizer.isDeadStore(assignments.get(5)));
+        assertTrue(optimizer.isDeadStore(assignments.get(6)));
+
+        optimize("a = 1 b = a vars b = 2");
+        assignments = assignments();
+        assertFalse(optimizer.isDeadStore(assignments.get(0)));
+        assertFalse(optimizer.isDeadStore(assignments.get(1)));
+        assertTrue(optimizer.isDeadStore(assignments.get(2)));
+    }
+
+    @Test
+    void testSameOutput() throws Exception {
+        assertSameOutput(Files.readString(Path.of("./little.ltl")));
+        assertSameOutput("""
+                a = 1 a = 2 b = a + 1 print a b
+                vars
+                c = b > 2 ? "yes" : "no" print c
+                print 0 / 0 == 0 / 0 " " 0 * (0 - 1) == 0
+                fullTracing = true fullTracing = false print fullTracing
+                """);
+        assertSameOutput("a = 1 print a print a + u");
+        assertSameOutput("a = 'x' print a == 'x' ? a < 'y' : a + 1");
+    }
+}
@@ -0,0 +1,89 @@
+package net.cargal.littlecalc;
+
+import static com.github.stefanbirkner.systemlambda.SystemLambda.tapSystemErrAndOutNormalized;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
+
+public class ParallelEvaluatorTest extends LCTestBase {
+    private static final String SCRIPT = """
+            total = price * qty * (1 - discount)
+            big = total > limit
+            print 'total ' total
+            """;
+
+    private SymbolTable<LittleValue> constants() {
+        var constants = new SymbolTable<LittleValue>();
+        constants.put("discount", LittleValue.numberValue(0.25));
+        constants.put("limit", LittleValue.numberValue(100));
+        return constants;
+    }
+
+    private List<Map<String, LittleValue>> bindings(int count) {
+        var bindings = new ArrayList<Map<String, LittleValue>>();
+        for (int i = 0; i < count; i++) {
+            bindings.add(Map.of("price", LittleValue.numberValue(i), "qty", LittleValue.numberValue(i % 7)));
+        }
+        return bindings;
+    }
+
+    @Test
+    void testMatchesSequential() throws Exception {
+        var bindings = bindings(200);
+        for (var evalMode : EvalMode.values()) {
+            var evaluator = new ParallelEvaluator(parseCalcIn(SCRIPT), constants(), evalMode);
+            var results = evaluator.evaluate(bindings, List.of("total", "big"));
+            assertEquals(bindings.size(), results.size());
+            for (int i = 0; i < bindings.size(); i++) {
+                var variables = new SymbolTable<>(constants());
+                bindings.get(i).forEach(variables::put);
+                var executor = new LittleCalcExecutionVisitor(variables);
+                var printed = tapSystemErrAndOutNormalized(() -> executor.visit(parseCalcIn(SCRIPT)));
+                assertEquals(executor.getVar("total").get(), results.get(i).values().get(0), evalMode + " " + i);
+                assertEquals(executor.getVar("big").get(), results.get(i).values().get(1), evalMode + " " + i);
+                assertEquals(printed, results.get(i).printed(), evalMode + " " + i);
+            }
+        }
+    }
+
+    @Test
+    void testInputOrder() {
+        var bindings = bindings(100_000);
+        var evaluator = new ParallelEvaluator(parseCalcIn(SCRIPT), constants());
+        evaluator.setPool(new ForkJoinPool(8));
+        var results = evaluator.evaluate(bindings, List.of("price", "total"));
+        for (int i = 0; i < bindings.size(); i++) {
+            assertEquals(i, results.get(i).values().get(0).number());
+            assertEquals(i * (i % 7) * 0.75, results.get(i).values().get(1).number());
+        }
+    }
+
+    @Test
+    void testBindingsDontLeak() {
+        // (the second binding doesn't bind discount, so it sees the constant)
+        var bindings = List.of(
+                Map.of("price", LittleValue.numberValue(10), "qty", LittleValue.numberValue(1), "discount",
+                        LittleValue.numberValue(0.5)),
+                Map.of("price", LittleValue.numberValue(10), "qty", LittleValue.numberValue(1)));
+        var evaluator = new ParallelEvaluator(parseCalcIn(SCRIPT), constants());
+        evaluator.setPool(new ForkJoinPool(1));
+        var results = evaluator.evaluate(bindings, List.of("total"));
+        assertEquals(5.0, results.get(0).values().get(0).number());
+        assertEquals(7.5, results.get(1).values().get(0).number());
+    }
+
+    @Test
+    void testErrors() {
+        var bindings = List.of(Map.of("price", LittleValue.numberValue(10)));
+        var evaluator = new ParallelEvaluator(parseCalcIn(SCRIPT), constants());
+        assertThrows(LittleCalcRuntimeException.class, () -> evaluator.evaluate(bindings, List.of("total")));
+    }
+}
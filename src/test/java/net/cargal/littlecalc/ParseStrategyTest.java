@@ -0,0 +1,66 @@
+package net.cargal.littlecalc;
+
+import static com.github.stefanbirkner.systemlambda.SystemLambda.tapSystemErrAndOutNormalized;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.junit.jupiter.api.Test;
+
+public class ParseStrategyTest extends LCTestBase {
+    private static final String SOURCE = """
+            c=2^4^0.5
+            x = 8
+            y = x^2
+            b = x < 7 ? 42 : 84
+            print a < 5 ? "a < 5" : "a >= 5"
+            print (y / 8) * 4^2 "!" y
+            """;
+
+    private LittleCalcParser parserFor(String source) {
+        var lexer = new LittleCalcLexer(CharStreams.fromString(source));
+        return new LittleCalcParser(new CommonTokenStream(lexer));
+    }
+
+    @Test
+    void testSameTree() {
+        var llParser = parserFor(SOURCE);
+        var llTree = ParseStrategy.LL.parse(llParser, LittleCalcParser::calcIn);
+        var sllParser = parserFor(SOURCE);
+        var sllTree = ParseStrategy.SLL_THEN_LL.parse(sllParser, LittleCalcParser::calcIn);
+
+        assertEquals(0, sllParser.getNumberOfSyntaxErrors());
+        assertEquals(llTree.toStringTree(llParser), sllTree.toStringTree(sllParser));
+    }
+
+    @Test
+    void testFallbackReportsErrors() throws Exception {
+        var parser = parserFor("""
+                mike = 10
+                print 8 * 9 ^ / (mike / 6)
+                """);
+        var capturedOutput = tapSystemErrAndOutNormalized(
+                () -> ParseStrategy.SLL_THEN_LL.parse(parser, LittleCalcParser::calcIn));
+        var expected = """
+                no viable alternative at input '8 * 9 ^ /
+                extraneous input '/' expecting
+                """;
+        assertEquals(2, parser.getNumberOfSyntaxErrors());
+        assertEquals(PredictionMode.LL, parser.getInterpreter().getPredictionMode());
+        assertMatchedOutput(expected, capturedOutput);
+    }
+
+    @Test
+    void testRunWithEitherStrategy() throws Exception {
+        for (var strategy : ParseStrategy.values()) {
+            var lc = new LittleCalc();
+            lc.setParseStrategy(strategy);
+            var capturedOutput = tapSystemErrAndOutNormalized(() -> lc.run(CharStreams.fromString("""
+                    x = 10
+                    print x * 2
+                    """)));
+            assertMatchedOutput("20", capturedOutput);
+        }
+    }
+}
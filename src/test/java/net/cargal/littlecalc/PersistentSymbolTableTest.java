@@ -0,0 +1,79 @@
+package net.cargal.littlecalc;
+
+import static com.github.stefanbirkner.systemlambda.SystemLambda.tapSystemErrAndOutNormalized;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.junit.jupiter.api.Test;
+
+public class PersistentSymbolTableTest extends LCTestBase {
+
+    private void run(LittleCalcExecutionVisitor executor, String source) {
+        var parser = new LittleCalcParser(new CommonTokenStream(new LittleCalcLexer(CharStreams.fromString(source))));
+        executor.visit(parser.calcIn());
+    }
+
+    @Test
+    void testSnapshots() {
+        var table = new PersistentSymbolTable<LittleValue>();
+        for (int i = 0; i < 10_000; i++) {
+            table.put("v" + i, LittleValue.numberValue(i));
+        }
+        var snapshot = table.snapshot();
+        table.put("v1", LittleValue.stringValue("changed"));
+        table.put("added", LVBoolean.TRUE);
+        assertEquals("changed", table.get("v1").get().string());
+        assertEquals(1.0, snapshot.get("v1").get().number());
+        assertTrue(snapshot.get("added").isEmpty());
+        assertEquals(10_001, table.size());
+        assertEquals(10_000, snapshot.size());
+        for (int i = 0; i < 10_000; i += 7) {
+            assertEquals((double) i, snapshot.get("v" + i).get().number());
+        }
+        assertEquals(10_000, snapshot.keyStream().distinct().count());
+        table.restore(snapshot);
+        assertEquals(1.0, table.get("v1").get().number());
+        assertTrue(table.get("added").isEmpty());
+    }
+
+    @Test
+    void testParent() {
+        var parent = new SymbolTable<LittleValue>();
+        parent.put("p", LittleValue.numberValue(1));
+        var table = new PersistentSymbolTable<>(parent);
+        table.put("c", LittleValue.numberValue(2));
+        var snapshot = table.snapshot();
+        parent.put("p", LittleValue.numberValue(3));
+        // (the parent is shared, not snapshotted)
+        assertEquals(3.0, snapshot.get("p").get().number());
+        assertEquals(List.of("c", "p"), snapshot.keyStream().collect(Collectors.toList()));
+    }
+
+    @Test
+    void testFork() throws Exception {
+        var session = new LittleCalcExecutionVisitor(new PersistentSymbolTable<>());
+        run(session, "rate = 0.5 base = 100");
+        var fork = session.fork();
+        run(fork, "rate = 0.25 print base * rate");
+        run(session, "print base * rate");
+        assertEquals(0.25, fork.getVar("rate").get().number());
+        assertEquals(0.5, session.getVar("rate").get().number());
+
+        var snapshot = session.snapshot();
+        run(session, "base = 0");
+        session.restore(snapshot);
+        assertMatchedOutput("50.0", tapSystemErrAndOutNormalized(() -> run(session, "print base * rate")));
+    }
+
+    @Test
+    void testNotPersistent() {
+        var executor = new LittleCalcExecutionVisitor();
+        assertThrows(IllegalStateException.class, executor::snapshot);
+    }
+}
@@ -0,0 +1,121 @@
+package net.cargal.littlecalc;
+
+import static com.github.stefanbirkner.systemlambda.SystemLambda.tapSystemErrAndOutNormalized;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.junit.jupiter.api.Test;
+
+public class PrattParserTest extends LCTestBase {
+    private static final String[] OPERATORS = { "^", "*", "/", "+", "-", "<", "<=", ">", ">=", "==", "!=", "&&",
+            "||" };
+    private static final String[] PRIMARIES = { "1", "2.5", "x", "y", "true", "false", "'s'", "\"t\"" };
+
+    private LittleCalcParser parser(FrontEnd frontEnd, String source) {
+        var lexer = new LittleCalcLexer(CharStreams.fromString(source));
+        var parser = frontEnd.parser(new CommonTokenStream(lexer));
+        parser.removeErrorListeners();
+        return parser;
+    }
+
+    private void assertSameTree(boolean repl, String source) {
+        var antlr = parser(FrontEnd.ANTLR, source);
+        ParserRuleContext antlrTree = repl ? antlr.replIn() : antlr.calcIn();
+        var pratt = (LittleCalcPrattParser) parser(FrontEnd.PRATT, source);
+        ParserRuleContext prattTree = repl ? pratt.parseReplIn() : pratt.parseCalcIn();
+        assertEquals(0, antlr.getNumberOfSyntaxErrors(), source);
+        assertEquals(0, pratt.getNumberOfSyntaxErrors(), source);
+        assertEquals(antlrTree.toStringTree(antlr), prattTree.toStringTree(pratt), source);
+        assertEquals(antlrTree.getSourceInterval(), prattTree.getSourceInterval(), source);
+    }
+
+    @Test
+    void testLittleScript() throws IOException {
+        assertSameTree(false, Files.readString(Path.of("./little.ltl")));
+    }
+
+    @Test
+    void testStatements() {
+        assertSameTree(false, """
+                a = 1
+                print a b
+                c = 2
+                print
+                vars
+                print "x" (a)
+                a + 1
+                print a
+                b
+                """);
+        assertSameTree(true, "x = 2 + 3 * 4");
+        assertSameTree(true, "tree { refactor { print x == true } }");
+        assertSameTree(true, "tokens { }");
+    }
+
+    @Test
+    void testPrecedence() {
+        assertSameTree(false, """
+                a = 2^4^0.5
+                b = !x && y || z
+                c = x ? y : z ? 1 : 2
+                d = x ? y ? 1 : 2 : 3
+                e = 1 + 2 * 3 - 4 / 5 ^ 6 < 7 == 8 >= 9 != 10
+                f = (1 + 2) * !(x || y)
+                """);
+    }
+
+    @Test
+    void testRandomExpressions() {
+        var random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            assertSameTree(false, "v = " + randomExpr(random, 4));
+        }
+    }
+
+    @Test
+    void testSyntaxErrors() {
+        var parser = parser(FrontEnd.PRATT, "x = 9 * + 4");
+        FrontEnd.PRATT.calcIn(parser);
+        assertNotEquals(0, parser.getNumberOfSyntaxErrors());
+
+        var replErrListener = new LittleReplErrorListener();
+        parser = parser(FrontEnd.PRATT, "7 +\n");
+        parser.addErrorListener(replErrListener);
+        FrontEnd.PRATT.replIn(parser);
+        assertFalse(replErrListener.completeInput());
+    }
+
+    @Test
+    void testRun() throws Exception {
+        var lc = new LittleCalc();
+        lc.setFrontEnd(FrontEnd.PRATT);
+        var capturedOutput = tapSystemErrAndOutNormalized(() -> lc.run(CharStreams.fromString("""
+                x = 10
+                print x * 2 " " x > 5 ? "big" : "small"
+                """)));
+        assertMatchedOutput("20.0 big", capturedOutput);
+    }
+
+    private String randomExpr(Random random, int depth) {
+        if (depth == 0) {
+            return PRIMARIES[random.nextInt(PRIMARIES.length)];
+        }
+        return switch (random.nextInt(5)) {
+            case 0 -> "(" + randomExpr(random, depth - 1) + ")";
+            case 1 -> "!" + randomExpr(random, depth - 1);
+            case 2 -> randomExpr(random, depth - 1) + " ? " + randomExpr(random, depth - 1) + " : "
+                    + randomExpr(random, depth - 1);
+            default -> randomExpr(random, depth - 1) + " " + OPERATORS[random.nextInt(OPERATORS.length)] + " "
+                    + randomExpr(random, depth - 1);
+        };
+    }
+}
@@ -1,6 +1,8 @@
 package net.cargal.littlecalc;
 
 import static com.github.stefanbirkner.systemlambda.SystemLambda.tapSystemErrAndOutNormalized;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import java.io.ByteArrayInputStream;
@@ -244,6 +246,62 @@ public class REPLTest extends LCTestBase {
         verifyRun(source, expected);
     }
 
+    @Test
+    void testMultiLineInput() throws Exception {
+        var source = """
+                x = (1 +
+                2) *
+                3
+                s = x > 5 ?
+                "big" :
+                "small"
+                print s " " x
+                """;
+        verifyOutputContains(source, "big 9.0");
+    }
+
+    @Test
+    void testMultiLineTokens() throws Exception {
+        var source = """
+                tokens{
+                1+
+                2}
+                """;
+        // char indexes count from the start of the statement, not its last line
+        verifyOutputContains(source, //
+                "[@3,8:8='1',<30>,2:0]", //
+                "[@4,9:9='+',<8>,2:1]", //
+                "[@5,10:10='\\n',<34>,channel=1,2:2]", //
+                "[@6,11:11='2',<30>,3:0]");
+    }
+
+    @Test
+    void testLargePastedBlock() throws Exception {
+        var source = new StringBuilder("x = (0\n");
+        for (int i = 0; i < 1000; i++) {
+            source.append("+ 1\n");
+        }
+        source.append(")\nprint \"x=\" x\n");
+        verifyOutputContains(source.toString(), "x=1000.0");
+    }
+
+    @Test
+    void testSyntaxErrorInIncompleteInput() throws Exception {
+        // (reported straight away, rather than waiting for lines that can't fix it)
+        var source = """
+                x = 1 + * 2 + (
+                print "after x"
+                y = 2 * * 3 *
+                print "after y"
+                z = * 1 ? 2
+                print "after z"
+                s = 'multi
+                line'
+                print s
+                """;
+        verifyOutputContains(source, "extraneous input '*'", "after x", "after y", "after z", "multi\nline");
+    }
+
     private Terminal getTerminal(String inputString) throws IOException {
         var inputStream = new ByteArrayInputStream(inputString.getBytes());
         return TerminalBuilder.builder() //
@@ -252,6 +310,25 @@ public class REPLTest extends LCTestBase {
                 .build();
     }
 
+    @Test
+    void testSnapshotRestore() throws Exception {
+        var source = """
+                x = 10
+                snapshot
+                x = 'ten'
+                y = 1
+                snapshot other
+                restore
+                x * 2
+                y
+                restore other
+                x
+                restore missing
+                """;
+        verifyOutputContains(source, "Snapshot saved\n", "Snapshot saved as other", "Snapshot restored\n", "20.0",
+                "y has not been assigned a value", "Snapshot restored from other", "ten", "No snapshot named missing");
+    }
+
     private void verifyRun(String source, String expected) throws Exception {
         var pair = prep(source, expected);
         var preppedSource = pair.a;
@@ -260,6 +337,13 @@ public class REPLTest extends LCTestBase {
         assertMatchedOutput(preppedExpected, capturedOutput);
     }
 
+    private void verifyOutputContains(String source, String... expected) throws Exception {
+        String capturedOutput = tapSystemErrAndOutNormalized(() -> repl.run(getTerminal(source + "quit\n")));
+        for (var fragment : expected) {
+            assertThat(capturedOutput, containsString(fragment));
+        }
+    }
+
     private Pair<String, String> prep(String source, String expected) {
         var resSource = source + "quit\n";
         var resExpected = resSource + expected + """
@@ -0,0 +1,98 @@
+package net.cargal.littlecalc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
+
+public class ReactiveExecutorTest extends LCTestBase {
+    private static final String SHEET = """
+            price = 10
+            qty = 3
+            discount = qty > 5 ? 0.1 : 0
+            total = price * qty * (1 - discount)
+            label = total > 100 ? 'big' : 'small'
+            shipping = 5
+            due = total + shipping
+            """;
+
+    // the values of running the script from scratch with the changes (assignments replaced by constants)
+    private LittleCalcExecutionVisitor rerun(String source, Map<String, String> changes) {
+        for (var change : changes.entrySet()) {
+            source = source.replaceFirst("(?m)^" + change.getKey() + " = .*$", change.getKey() + " = " + change.getValue());
+        }
+        var executor = new LittleCalcExecutionVisitor();
+        executor.visit(parseCalcIn(source));
+        return executor;
+    }
+
+    @Test
+    void testIncremental() {
+        for (var evalMode : EvalMode.values()) {
+            var reactive = new ReactiveExecutor(parseCalcIn(SHEET), evalMode);
+            reactive.run();
+            assertEquals(30.0, reactive.get("total").get().number());
+
+            // qty feeds discount and total, which feeds label and due
+            assertEquals(4, reactive.set("qty", LittleValue.numberValue(12)));
+            assertEquals("big", reactive.get("label").get().string());
+            assertEquals(rerun(SHEET, Map.of("qty", "12")).getVar("due"), reactive.get("due"));
+
+            // shipping only feeds due
+            assertEquals(1, reactive.set("shipping", LittleValue.numberValue(0)));
+            assertEquals(108.0, reactive.get("due").get().number());
+
+            // discount doesn't change (so it doesn't change total), but qty changes total itself
+            assertEquals(4, reactive.set("qty", LittleValue.numberValue(13)));
+            assertEquals(0, reactive.set("price", LittleValue.numberValue(10)));
+            assertEquals(rerun(SHEET, Map.of("qty", "13", "shipping", "0")).getVar("due"), reactive.get("due"));
+        }
+    }
+
+    @Test
+    void testCutoff() {
+        var reactive = new ReactiveExecutor(parseCalcIn("""
+                a = 1
+                positive = a > 0
+                b = positive ? 1 : 0 - 1
+                c = b * 100
+                """));
+        reactive.run();
+        // positive is recomputed, is unchanged, and b and c aren't
+        assertEquals(1, reactive.set("a", LittleValue.numberValue(5)));
+        assertEquals(3, reactive.set("a", LittleValue.numberValue(-5)));
+        assertEquals(-100.0, reactive.get("c").get().number());
+        assertEquals(4 + 1 + 3, reactive.recomputations());
+    }
+
+    @Test
+    void testVersions() {
+        // each read sees the assignment before it, and inputs are read from outside
+        var source = """
+                x = base
+                y = x * 2
+                x = y + 1
+                z = x + base
+                """;
+        var reactive = new ReactiveExecutor(parseCalcIn(source));
+        reactive.set("base", LittleValue.numberValue(1));
+        reactive.run();
+        assertEquals(3.0, reactive.get("x").get().number());
+        assertEquals(4.0, reactive.get("z").get().number());
+        assertEquals(4, reactive.set("base", LittleValue.numberValue(10)));
+        assertEquals(21.0, reactive.get("x").get().number());
+        assertEquals(20.0, reactive.get("y").get().number());
+        assertEquals(31.0, reactive.get("z").get().number());
+    }
+
+    @Test
+    void testMissingInput() {
+        var reactive = new ReactiveExecutor(parseCalcIn("a = 1 b = a + c"));
+        var e = assertThrows(LittleCalcRuntimeException.class, reactive::run);
+        assertEquals("line:1 col:15 -- c has not been assigned a value", e.getMessage());
+    }
+}
@@ -0,0 +1,156 @@
+package net.cargal.littlecalc;
+
+import static com.github.stefanbirkner.systemlambda.SystemLambda.tapSystemErrAndOutNormalized;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.junit.jupiter.api.Test;
+
+import net.cargal.littlecalc.exceptions.LittleCalcRuntimeException;
+
+public class RegisterVMTest extends LCTestBase {
+
+    private RegisterProgram compile(String source) {
+        var parser = new LittleCalcParser(new CommonTokenStream(new LittleCalcLexer(CharStreams.fromString(source))));
+        return new RegisterCompiler().compile(parser.calcIn());
+    }
+
+    private String run(String source) throws Exception {
+        return tapSystemErrAndOutNormalized(() -> new LittleCalcExecutionVisitor().runProgram(compile(source)));
+    }
+
+    private void assertSameOutput(String source) throws Exception {
+        for (var optimizing : new boolean[] { false, true }) {
+            var lc = new LittleCalc();
+            lc.setOptimizing(optimizing);
+            lc.setEvalMode(EvalMode.TREE_WALKING);
+            var expected = tapSystemErrAndOutNormalized(() -> lc.run(CharStreams.fromString(source)));
+            lc.setEvalMode(EvalMode.REGISTER_VM);
+            var actual = tapSystemErrAndOutNormalized(() -> lc.run(CharStreams.fromString(source)));
+            assertEquals(expected, actual, source);
+        }
+    }
+
+    private RegisterProgram roundTrip(RegisterProgram program) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        program.writeTo(new DataOutputStream(bytes));
+        return RegisterProgram.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    void testScripts() throws Exception {
+        assertSameOutput(Files.readString(Path.of("./little.ltl")));
+        assertSameOutput("""
+                a = 1 b = 2.5 s = 'abc'
+                print a + b * 2 ^ 2 s
+                print a < b && s != 'x' || a == 0
+                print a > b ? 'big' : s == 'abc' ? a : b
+                print !(a >= b) (a <= b) == (b > a)
+                c = a
+                c = s < 'abd'
+                vars
+                c
+                """);
+    }
+
+    @Test
+    void testStatements() throws Exception {
+        assertMatchedOutput("3.0\n1.0atrue", run("x = 1 + 2 print x print 1 'a' x > 2"));
+        assertMatchedOutput("Parser Tracing On\nparserTracing : true", run("parserTracing = 1 < 2 vars"));
+    }
+
+    @Test
+    void testErrors() throws Exception {
+        var e = assertThrows(LittleCalcRuntimeException.class, () -> run("x = 1\nprint\n  x + y"));
+        assertEquals("line:3 col:7 -- y has not been assigned a value", e.getMessage());
+        e = assertThrows(LittleCalcRuntimeException.class, () -> run("lexerTracing = 'yes'"));
+        assertEquals("line:1 col:16 -- value is not boolean (yes)", e.getMessage());
+    }
+
+    @Test
+    void testShortCircuit() throws Exception {
+        // (u is never assigned, so the VM would report it)
+        assertMatchedOutput("false\ntrue\n1.0", run("print false && u print true || u print true ? 1 : u"));
+    }
+
+    @Test
+    void testRoundTrip() throws Exception {
+        var program = compile(Files.readString(Path.of("./little.ltl")));
+        var copy = roundTrip(program);
+        assertEquals(program, copy);
+        assertEquals(program.toString(), copy.toString());
+        var expected = tapSystemErrAndOutNormalized(() -> new LittleCalcExecutionVisitor().runProgram(program));
+        assertEquals(expected, tapSystemErrAndOutNormalized(() -> new LittleCalcExecutionVisitor().runProgram(copy)));
+    }
+
+    @Test
+    void testInvalidProgram() throws Exception {
+        var bytes = new ByteArrayOutputStream();
+        compile("x = 1 + 2").writeTo(new DataOutputStream(bytes));
+        var data = bytes.toByteArray();
+        // the last word of the code is an operand (STORE's register)
+        data[data.length - 1] = 99;
+        var e = assertThrows(IOException.class,
+                () -> RegisterProgram.readFrom(new DataInputStream(new ByteArrayInputStream(data))));
+        assertTrue(e.getMessage().startsWith("invalid operand"), e.getMessage());
+    }
+
+    @Test
+    void testRegistersWrittenBeforeRead() throws Exception {
+        // (every program the compiler writes passes)
+        for (var source : new String[] { "a = 1 b = a < 2 ? 'x' : a print a && b || !b b", "print 1 (2 > 1) 'a'" }) {
+            assertEquals(compile(source), roundTrip(compile(source)));
+        }
+        var expr = new RegisterCompiler().compileExpr(parseExpr("x > 1 ? x : 2"));
+        assertEquals(expr, roundTrip(expr));
+
+        var none = new double[0];
+        var one = new LittleValue[] { LittleValue.stringValue("s") };
+        var symbols = new Symbol[0];
+        // v0 is printed before it's written
+        var e = assertThrows(IOException.class, () -> roundTrip(new RegisterProgram(
+                new int[] { RegisterProgram.PRINT, 0 }, none, one, symbols, 0, 1, -1)));
+        assertTrue(e.getMessage().contains("v0 is read before it's written"), e.getMessage());
+        // v1 is only written when the jump isn't taken
+        e = assertThrows(IOException.class, () -> roundTrip(new RegisterProgram(new int[] { //
+                RegisterProgram.BOOLEAN, 0, 1, //
+                RegisterProgram.JUMP_IF, 0, 1, 1, 1, 12, //
+                RegisterProgram.VALUE, 1, 0, //
+                RegisterProgram.PRINT, 1 }, none, one, symbols, 0, 2, -1)));
+        assertTrue(e.getMessage().contains("v1 is read before it's written at 12"), e.getMessage());
+        // n0 is unboxed from a register that's never written
+        e = assertThrows(IOException.class, () -> roundTrip(new RegisterProgram(
+                new int[] { RegisterProgram.UNBOX, 0, 0, 1, 1 }, none, one, symbols, 1, 1, -1)));
+        assertTrue(e.getMessage().contains("v0 is read"), e.getMessage());
+        // the result is never written
+        assertThrows(IOException.class,
+                () -> roundTrip(new RegisterProgram(new int[0], none, one, symbols, 0, 1, 0)));
+        // (run() would allocate the registers)
+        e = assertThrows(IOException.class, () -> roundTrip(new RegisterProgram(new int[0], none, one, symbols,
+                Integer.MAX_VALUE, 0, -1)));
+        assertEquals("invalid program (registers)", e.getMessage());
+    }
+
+    @Test
+    void testExpressionProgram() {
+        var parser = new LittleCalcParser(new CommonTokenStream(new LittleCalcLexer(CharStreams.fromString("x * 2"))));
+        var program = new RegisterCompiler().compileExpr(parser.expr());
+        var variables = new SymbolTable<LittleValue>();
+        var vm = new RegisterVM(variables);
+        for (int i = 0; i < 5; i++) {
+            variables.put("x", LittleValue.numberValue(i));
+            assertEquals(i * 2.0, vm.run(program).number());
+        }
+    }
+}
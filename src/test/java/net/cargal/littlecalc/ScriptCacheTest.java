@@ -0,0 +1,164 @@
+package net.cargal.littlecalc;
+
+import static com.github.stefanbirkner.systemlambda.SystemLambda.tapSystemErrAndOutNormalized;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.jupiter.api.Test;
+
+import net.cargal.littlecalc.exceptions.LittleCalcCompileException;
+
+public class ScriptCacheTest extends LCTestBase {
+    @Test
+    void testHits() {
+        var cache = new ScriptCache(10, Long.MAX_VALUE);
+        var script = cache.get("x = 1\nprint x\n");
+        // (whitespace and comments aren't part of the key)
+        assertSame(script, cache.get("x = 1\r\n  print   x // x\n\n"));
+        assertNotSame(script, cache.get("x = 2\nprint x\n"));
+        // (nor is whitespace in strings)
+        assertNotSame(cache.get("print 'a b'"), cache.get("print 'a  b'"));
+
+        var stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(4, stats.misses());
+        assertEquals(4, stats.compiles());
+        assertEquals(0.2, stats.hitRate());
+    }
+
+    @Test
+    void testLeastRecentlyUsed() {
+        var cache = new ScriptCache(2, Long.MAX_VALUE);
+        var a = cache.get("a = 1");
+        var b = cache.get("b = 1");
+        assertSame(a, cache.get("a = 1"));
+        // (b is the least recently used)
+        cache.get("c = 1");
+        assertSame(a, cache.get("a = 1"));
+        assertNotSame(b, cache.get("b = 1"));
+        assertEquals(2, cache.stats().evictions());
+        assertEquals(2, cache.stats().scripts());
+    }
+
+    @Test
+    void testWeight() {
+        var small = "print 1";
+        var big = "print 'a' 'b' 'c' 'd' 'e' 'f' 'g' 'h'";
+        var weights = new ScriptCache(100, Long.MAX_VALUE);
+        weights.get(small);
+        var smallWeight = weights.stats().weight();
+        weights.get(big);
+        var bigWeight = weights.stats().weight() - smallWeight;
+
+        // (the big script doesn't fit with the small one)
+        var cache = new ScriptCache(100, smallWeight + bigWeight - 1);
+        cache.get(small);
+        cache.get(big);
+        var stats = cache.stats();
+        assertEquals(1, stats.evictions());
+        assertEquals(1, stats.scripts());
+        assertEquals(bigWeight, stats.weight());
+    }
+
+    @Test
+    void testSingleFlight() throws Exception {
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var engine = new LittleCalcEngine() {
+            @Override
+            public CompiledScript compile(String source, Map<String, LVType> inputs) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.compile(source, inputs);
+            }
+        };
+        var cache = new ScriptCache(engine, 10, Long.MAX_VALUE);
+        var threads = Executors.newFixedThreadPool(8);
+        try {
+            var first = threads.submit(() -> cache.get("x = 1"));
+            started.await();
+            List<Future<CompiledScript>> waiters = new ArrayList<>();
+            for (int i = 0; i < 7; i++) {
+                waiters.add(threads.submit(() -> cache.get("x  =  1")));
+            }
+            // (every waiter has missed before the compile finishes)
+            while (cache.stats().misses() < 8) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            for (var waiter : waiters) {
+                assertSame(first.get(), waiter.get());
+            }
+        } finally {
+            threads.shutdown();
+            threads.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        assertEquals(1, cache.stats().compiles());
+    }
+
+    @Test
+    void testErrorsArentCached() {
+        var cache = new ScriptCache(10, Long.MAX_VALUE);
+        assertThrows(LittleCalcCompileException.class, () -> cache.get("x = y"));
+        assertThrows(LittleCalcCompileException.class, () -> cache.get("x = y"));
+        assertEquals(2, cache.stats().compiles());
+        assertEquals(0, cache.stats().scripts());
+    }
+
+    @Test
+    void testLittleCalc() throws Exception {
+        var source = """
+                a = 3
+                b = a ^ 2
+                print 'b is ' b
+                b > 5 ? 'big' : 'small'
+                c = d
+                """;
+        var valid = source.replace("c = d", "c = b");
+        for (var evalMode : EvalMode.values()) {
+            var lc = new LittleCalc();
+            lc.setEvalMode(evalMode);
+            lc.setScriptCache(10, Long.MAX_VALUE);
+            var uncached = new LittleCalc();
+            uncached.setEvalMode(evalMode);
+            // (errors are reported as they are without the cache)
+            assertEquals(tapSystemErrAndOutNormalized(() -> uncached.run(CharStreams.fromString(source))),
+                    tapSystemErrAndOutNormalized(() -> lc.run(CharStreams.fromString(source))), evalMode.name());
+            var expected = tapSystemErrAndOutNormalized(() -> uncached.run(CharStreams.fromString(valid)));
+            for (int i = 0; i < 2; i++) {
+                assertEquals(expected, tapSystemErrAndOutNormalized(() -> lc.run(CharStreams.fromString(valid))),
+                        evalMode.name());
+            }
+            assertEquals(1, lc.getScriptCache().stats().hits());
+        }
+    }
+
+    @Test
+    void testLittleCalcSettings() {
+        var lc = new LittleCalc();
+        assertNull(lc.getScriptCache());
+        lc.setScriptCache(10, Long.MAX_VALUE);
+        var cache = lc.getScriptCache();
+        // (scripts compiled with other settings aren't reused)
+        lc.setOptimizing(false);
+        assertNotSame(cache, lc.getScriptCache());
+        lc.setScriptCache(0, 0);
+        assertNull(lc.getScriptCache());
+    }
+}
@@ -0,0 +1,125 @@
+package net.cargal.littlecalc;
+
+import static com.github.stefanbirkner.systemlambda.SystemLambda.tapSystemErrAndOutNormalized;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.jupiter.api.Test;
+
+public class StreamingTest extends LCTestBase {
+
+    // generates "x = 0 print x x = x + 1 print x ..." without ever holding the whole script
+    private static class GeneratedScript extends Reader {
+        private final int statements;
+        private int statement = 0;
+        private String pending = "x = 0\n";
+        private int pos = 0;
+
+        GeneratedScript(int statements) {
+            this.statements = statements;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (pos == pending.length()) {
+                if (++statement >= statements) {
+                    return -1;
+                }
+                pending = statement % 2 == 0 ? "x = x + 1\n" : "print \"x=\" x\n";
+                pos = 0;
+            }
+            var count = Math.min(len, pending.length() - pos);
+            pending.getChars(pos, pos + count, cbuf, off);
+            pos += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private void assertSameOutput(String source) throws Exception {
+        for (var frontEnd : FrontEnd.values()) {
+            for (var lexerKind : LexerKind.values()) {
+                var lc = new LittleCalc();
+                lc.setFrontEnd(frontEnd);
+                lc.setLexerKind(lexerKind);
+                var expected = tapSystemErrAndOutNormalized(() -> lc.run(CharStreams.fromString(source)));
+                var actual = tapSystemErrAndOutNormalized(() -> lc.runStreaming(new StringReader(source)));
+                assertEquals(expected, actual, frontEnd + " " + lexerKind);
+            }
+        }
+    }
+
+    @Test
+    void testLittleScript() throws Exception {
+        assertSameOutput(Files.readString(Path.of("./little.ltl")));
+        assertSameOutput("""
+                a = 1 print a b = 2 print a
+                b vars
+                // a comment
+                print "b" a < b ? 1 : 2
+                """);
+    }
+
+    @Test
+    void testGeneratedScript() throws Exception {
+        var lc = new LittleCalc();
+        var capturedOutput = tapSystemErrAndOutNormalized(() -> lc.runStreaming(new GeneratedScript(20_001)));
+        var lines = capturedOutput.split("\n");
+        assertEquals(10_000, lines.length);
+        assertEquals("x=0.0", lines[0]);
+        assertEquals("x=9999.0", lines[lines.length - 1]);
+    }
+
+    @Test
+    void testOutputBeforeEndOfInput() throws Exception {
+        var lc = new LittleCalc();
+        var capturedOutput = tapSystemErrAndOutNormalized(() -> assertThrows(RuntimeException.class,
+                () -> lc.runStreaming(new Reader() {
+                    private final Reader script = new StringReader("x = 1\nprint x\nprint x + 1\n");
+
+                    @Override
+                    public int read(char[] cbuf, int off, int len) throws IOException {
+                        var count = script.read(cbuf, off, len);
+                        if (count == -1) {
+                            throw new IOException("the rest of the script is still on its way");
+                        }
+                        return count;
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                })));
+        // the last print can't end until its next token arrives
+        assertMatchedOutput("1.0", capturedOutput);
+    }
+
+    @Test
+    void testErrorsStopExecution() throws Exception {
+        var lc = new LittleCalc();
+        var capturedOutput = tapSystemErrAndOutNormalized(() -> lc.runStreaming(new StringReader("""
+                x = 1
+                print x
+                x = 9 * + 4
+                print x
+                """)));
+        assertMatchedOutput("1.0\nline 3:8", capturedOutput);
+
+        capturedOutput = tapSystemErrAndOutNormalized(() -> lc.runStreaming(new StringReader("""
+                print 1
+                print y
+                print 2
+                """)));
+        assertMatchedOutput("1.0\ny has not been assigned a value", capturedOutput);
+    }
+}
@@ -1,11 +1,16 @@
 package net.cargal.littlecalc;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.Optional;
 import java.util.stream.Collectors;
 
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -13,8 +18,6 @@ import org.junit.jupiter.api.Test;
 public class SymbolTableTest {
     private static final String PARENT_AAA = "ParentAAA";
     private static final String AAA = "AAA";
-    private static final int LINE = 1;
-    private static final int COLUMN = 3;
 
     SymbolTable<LittleValue> root;
     SymbolTable<LittleValue> child;
@@ -25,9 +28,9 @@ public class SymbolTableTest {
     @BeforeEach
     void before() {
 
-        lvA = LittleValue.stringValue(AAA, LINE, COLUMN);
-        lvB = LittleValue.stringValue(AAA, LINE, COLUMN);
-        lvPA = LittleValue.stringValue(PARENT_AAA, LINE, COLUMN);
+        lvA = LittleValue.stringValue(AAA);
+        lvB = LittleValue.stringValue(AAA);
+        lvPA = LittleValue.stringValue(PARENT_AAA);
 
         root = new SymbolTable<>();
         child = new SymbolTable<>(root);
@@ -66,9 +69,79 @@ public class SymbolTableTest {
         assertEquals(Optional.empty(), child.get("NotThere"));
     }
 
+    @Test
+    void testSymbolKeys() {
+        var symbol = Symbol.intern(AAA);
+        assertEquals(lvA, child.get(symbol).get());
+        child.put(symbol, lvB);
+        assertEquals(lvB, child.get(AAA).get());
+        assertEquals(lvA, root.get(symbol).get());
+    }
+
     @Test
     void testKeyStream() {
         assertEquals("AAA, ParentAAA", child.keyStream().collect(Collectors.joining(", ")));
     }
 
+
+    @Test
+    void testSlots() {
+        // slots are numbered in the order variables are first assigned, and shared with children
+        var slots = root.slots();
+        assertSame(slots, child.slots());
+        assertEquals(0, slots.find(Symbol.intern(PARENT_AAA)));
+        assertEquals(1, slots.find(Symbol.intern(AAA)));
+        assertEquals(-1, slots.find(Symbol.intern("NotThere")));
+        child.put("BBB", lvB);
+        assertEquals(2, slots.find(Symbol.intern("BBB")));
+        assertEquals(lvB, child.slot(2));
+        assertNull(root.slot(2));
+        assertEquals(lvA, root.slot(1));
+    }
+
+    @Test
+    void testManySlots() {
+        // (the index grows with the Slots' own symbols, in any order of ids)
+        var slots = new Slots();
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i, slots.slot(Symbol.intern("many" + (i * 7919 % 10_000))));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i, slots.find(Symbol.intern("many" + (i * 7919 % 10_000))));
+        }
+        assertEquals(-1, slots.find(Symbol.intern("NotThere")));
+        assertEquals(10_000, slots.size());
+    }
+
+    @Test
+    void testResolvedFind() {
+        var symbol = Symbol.intern(AAA);
+        var slot = root.slots().find(symbol);
+        assertSame(lvA, root.find(symbol, root.slots(), slot));
+        // (a child looks in its parent for what it doesn't have)
+        assertSame(lvA, child.find(symbol, root.slots(), slot));
+        // resolved in another Slots, so the slot means nothing here
+        var other = new Slots();
+        other.slot(Symbol.intern("Other"));
+        assertSame(lvA, root.find(symbol, other, other.slot(symbol)));
+    }
+
+    @Test
+    void testSharedSlots() {
+        var listener = new LittleCalcSemanticValidationListener();
+        var slots = listener.getSlots();
+        var executor = new LittleCalcExecutionVisitor(slots);
+        for (var source : new String[] { "a = 1 b = a + 1", "c = b * 2 a = c" }) {
+            var parser = new LittleCalcParser(
+                    new CommonTokenStream(new LittleCalcLexer(CharStreams.fromString(source))));
+            var calcIn = parser.calcIn();
+            ParseTreeWalker.DEFAULT.walk(listener, calcIn);
+            executor.visit(calcIn);
+        }
+        // one slot per variable, which kept its slot from one script to the next
+        assertEquals(3, slots.size());
+        assertEquals("a", slots.symbol(0).name());
+        assertEquals("c", slots.symbol(2).name());
+        assertEquals(4.0, executor.getVar("a").get().number());
+    }
 }
@@ -0,0 +1,61 @@
+package net.cargal.littlecalc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.ref.WeakReference;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.Token;
+import org.junit.jupiter.api.Test;
+
+public class SymbolTest {
+    @Test
+    void testIntern() {
+        var a = Symbol.intern("alpha");
+        assertSame(a, Symbol.intern(new String("alpha")));
+        assertEquals("alpha", a.name());
+        assertEquals("alpha".hashCode(), a.hashCode());
+        assertNotEquals(a.id(), Symbol.intern("beta").id());
+        assertSame(a, Symbol.of(new CommonToken(LittleCalcLexer.ID, "alpha")));
+    }
+
+    @Test
+    void testLexersIntern() {
+        var source = "total = total + 1 print total";
+        for (var lexerKind : LexerKind.values()) {
+            var lexer = lexerKind.lexer(CharStreams.fromString(source), false);
+            Symbol total = null;
+            var ids = 0;
+            for (var token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+                if (token.getType() == LittleCalcLexer.ID) {
+                    assertTrue(token instanceof SymbolToken, lexerKind.toString());
+                    var symbol = ((SymbolToken) token).symbol();
+                    total = total == null ? symbol : total;
+                    assertSame(total, symbol);
+                    assertSame(total.name(), token.getText());
+                    ids++;
+                }
+            }
+            assertEquals(3, ids);
+            assertSame(Symbol.intern("total"), total);
+        }
+    }
+
+    @Test
+    void testCollected() {
+        // (a symbol nothing refers to can be collected, and its name interned again)
+        var collected = new WeakReference<>(Symbol.intern("collectedSymbol"));
+        var id = collected.get().id();
+        for (int i = 0; i < 100 && collected.get() != null; i++) {
+            System.gc();
+        }
+        assertTrue(collected.get() == null);
+        var again = Symbol.intern("collectedSymbol");
+        assertNotEquals(id, again.id());
+        assertSame(again, Symbol.intern("collectedSymbol"));
+    }
+}
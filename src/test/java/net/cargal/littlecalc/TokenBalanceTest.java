@@ -0,0 +1,47 @@
+package net.cargal.littlecalc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Token;
+import org.junit.jupiter.api.Test;
+
+public class TokenBalanceTest {
+    private static boolean incomplete(String source) {
+        var balance = new TokenBalance();
+        var lexer = new LittleCalcLexer(CharStreams.fromString(source));
+        for (var token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+            balance.add(token);
+        }
+        return balance.isIncomplete();
+    }
+
+    @Test
+    void testComplete() {
+        for (var source : new String[] { "", "x", "x = 1 + 2", "print", "print a b", "(1 + 2) * 3",
+                "tree { 5 }", "a ? b : c", "x = 1 // comment +", "1 +)", "\"a\" 'b'" }) {
+            assertEquals(false, incomplete(source), source);
+        }
+    }
+
+    @Test
+    void testIncomplete() {
+        for (var source : new String[] { "x =", "1 +", "7 +\n", "!", "(1 + 2", "tree {", "tree", "a ? b",
+                "a ? b :", "x = \"unterminated", "1 + 2 // comment\n*", "refactor { tree { 5 }" }) {
+            assertEquals(true, incomplete(source), source);
+        }
+    }
+
+    @Test
+    void testCopy() {
+        var balance = new TokenBalance();
+        var lexer = new LittleCalcLexer(CharStreams.fromString("( 1"));
+        balance.add(lexer.nextToken());
+        var copy = new TokenBalance(balance);
+        copy.add(new LittleCalcLexer(CharStreams.fromString(")")).nextToken());
+        assertEquals(true, balance.isIncomplete());
+        assertEquals(false, copy.isIncomplete());
+        balance.reset();
+        assertEquals(false, balance.isIncomplete());
+    }
+}
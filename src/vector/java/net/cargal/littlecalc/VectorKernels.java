@@ -0,0 +1,138 @@
+package net.cargal.littlecalc;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * BatchKernels with the (incubating) Vector API: comparisons are masks,
+ * && and || are mask operations, and the ternary is a blend.
+ *
+ * Comparisons map each double to a long that orders the way Double.compare()
+ * does (NaN above everything, -0.0 below 0.0). ^ stays a loop of Math.pow(),
+ * since the Vector API's POW isn't guaranteed to give the same bits.
+ */
+final class VectorKernels implements BatchKernels {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = VectorSpecies.of(long.class, DOUBLES.vectorShape());
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+    private static final long NAN = Double.doubleToLongBits(Double.NaN);
+
+    @Override
+    public void add(double[] a, double[] b, double[] out, int n) {
+        for (int i = 0; i < n; i += DOUBLES.length()) {
+            DoubleVector.fromArray(DOUBLES, a, i).add(DoubleVector.fromArray(DOUBLES, b, i)).intoArray(out, i);
+        }
+    }
+
+    @Override
+    public void sub(double[] a, double[] b, double[] out, int n) {
+        for (int i = 0; i < n; i += DOUBLES.length()) {
+            DoubleVector.fromArray(DOUBLES, a, i).sub(DoubleVector.fromArray(DOUBLES, b, i)).intoArray(out, i);
+        }
+    }
+
+    @Override
+    public void mul(double[] a, double[] b, double[] out, int n) {
+        for (int i = 0; i < n; i += DOUBLES.length()) {
+            DoubleVector.fromArray(DOUBLES, a, i).mul(DoubleVector.fromArray(DOUBLES, b, i)).intoArray(out, i);
+        }
+    }
+
+    @Override
+    public void div(double[] a, double[] b, double[] out, int n) {
+        for (int i = 0; i < n; i += DOUBLES.length()) {
+            DoubleVector.fromArray(DOUBLES, a, i).div(DoubleVector.fromArray(DOUBLES, b, i)).intoArray(out, i);
+        }
+    }
+
+    @Override
+    public void pow(double[] a, double[] b, double[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = Math.pow(a[i], b[i]);
+        }
+    }
+
+    @Override
+    public void compare(LVComparableOp op, double[] a, double[] b, boolean[] out, int n) {
+        var test = switch (op) {
+            case LT -> VectorOperators.LT;
+            case LE -> VectorOperators.LE;
+            case GT -> VectorOperators.GT;
+            case GE -> VectorOperators.GE;
+        };
+        for (int i = 0; i < n; i += DOUBLES.length()) {
+            ordered(a, i).compare(test, ordered(b, i)).intoArray(out, i);
+        }
+    }
+
+    @Override
+    public void equal(double[] a, double[] b, boolean negated, boolean[] out, int n) {
+        var test = negated ? VectorOperators.NE : VectorOperators.EQ;
+        for (int i = 0; i < n; i += DOUBLES.length()) {
+            ordered(a, i).compare(test, ordered(b, i)).intoArray(out, i);
+        }
+    }
+
+    @Override
+    public void equal(boolean[] a, boolean[] b, boolean negated, boolean[] out, int n) {
+        for (int i = 0; i < n; i += BYTES.length()) {
+            var equal = mask(a, i).eq(mask(b, i));
+            (negated ? equal.not() : equal).intoArray(out, i);
+        }
+    }
+
+    @Override
+    public void and(boolean[] a, boolean[] b, boolean[] out, int n) {
+        for (int i = 0; i < n; i += BYTES.length()) {
+            mask(a, i).and(mask(b, i)).intoArray(out, i);
+        }
+    }
+
+    @Override
+    public void or(boolean[] a, boolean[] b, boolean[] out, int n) {
+        for (int i = 0; i < n; i += BYTES.length()) {
+            mask(a, i).or(mask(b, i)).intoArray(out, i);
+        }
+    }
+
+    @Override
+    public void not(boolean[] a, boolean[] out, int n) {
+        for (int i = 0; i < n; i += BYTES.length()) {
+            mask(a, i).not().intoArray(out, i);
+        }
+    }
+
+    @Override
+    public void blend(boolean[] cond, double[] t, double[] f, double[] out, int n) {
+        for (int i = 0; i < n; i += DOUBLES.length()) {
+            DoubleVector.fromArray(DOUBLES, f, i)
+                    .blend(DoubleVector.fromArray(DOUBLES, t, i), VectorMask.fromArray(DOUBLES, cond, i))
+                    .intoArray(out, i);
+        }
+    }
+
+    @Override
+    public void blend(boolean[] cond, boolean[] t, boolean[] f, boolean[] out, int n) {
+        for (int i = 0; i < n; i += BYTES.length()) {
+            var c = mask(cond, i);
+            c.and(mask(t, i)).or(mask(f, i).andNot(c)).intoArray(out, i);
+        }
+    }
+
+    private static VectorMask<Byte> mask(boolean[] bools, int i) {
+        return VectorMask.fromArray(BYTES, bools, i);
+    }
+
+    // longs that compare the way Double.compare() compares the doubles
+    private static LongVector ordered(double[] a, int i) {
+        var v = DoubleVector.fromArray(DOUBLES, a, i);
+        var bits = v.reinterpretAsLongs().blend(NAN, v.test(VectorOperators.IS_NAN).cast(LONGS));
+        // (negative doubles order backwards, so all but their sign bit are flipped)
+        return bits.lanewise(VectorOperators.XOR,
+                bits.lanewise(VectorOperators.ASHR, 63).lanewise(VectorOperators.AND, Long.MAX_VALUE));
+    }
+}